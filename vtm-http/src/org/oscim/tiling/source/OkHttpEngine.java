@@ -3,6 +3,7 @@
  * Copyright 2014 Hannes Janetzek
  * Copyright 2017 devemux86
  * Copyright 2017 Mathieu De Brito
+ * Copyright 2019 Gustl22
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -20,6 +21,9 @@
 package org.oscim.tiling.source;
 
 import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITilePrefetcher;
 import org.oscim.utils.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +35,7 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.util.Map.Entry;
 
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -41,30 +46,95 @@ public class OkHttpEngine implements HttpEngine {
 
     private final OkHttpClient mClient;
     private final UrlTileSource mTileSource;
+    private final OkHttpPipeline mPipeline;
 
     private InputStream mInputStream;
     private byte[] mCachedData;
 
+    /**
+     * Creates the engines of all tile loaders with one shared client, i.e.
+     * connection pool, dispatcher and cache.
+     */
     public static class OkHttpFactory implements HttpEngine.Factory {
         private final OkHttpClient.Builder mClientBuilder;
+        private final int mPrefetch;
+
+        private OkHttpClient mClient;
+        private OkHttpPipeline mPipeline;
 
         public OkHttpFactory() {
-            mClientBuilder = new OkHttpClient.Builder();
+            this(new OkHttpClient.Builder());
         }
 
         public OkHttpFactory(OkHttpClient.Builder clientBuilder) {
+            this(clientBuilder, 0);
+        }
+
+        /**
+         * @param prefetch number of queued tiles which are requested
+         *                 asynchronously ahead of the loaders, 0 to send
+         *                 requests only when a tile is loaded. Replaces the
+         *                 dispatcher of the builder.
+         */
+        public OkHttpFactory(OkHttpClient.Builder clientBuilder, int prefetch) {
             mClientBuilder = clientBuilder;
+            mPrefetch = prefetch;
+        }
+
+        /**
+         * @return the client shared by the engines.
+         */
+        public synchronized OkHttpClient getClient() {
+            if (mClient == null) {
+                if (mPrefetch > 0) {
+                    /* prefetched calls plus the requests of the loaders */
+                    Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequestsPerHost(Math.max(dispatcher.getMaxRequestsPerHost(),
+                            2 * mPrefetch));
+                    mClientBuilder.dispatcher(dispatcher);
+                }
+                mClient = mClientBuilder.build();
+                if (mPrefetch > 0)
+                    mPipeline = new OkHttpPipeline(mClient, mPrefetch);
+            }
+            return mClient;
+        }
+
+        /**
+         * Cancel the prefetched calls and stop prefetching, the engines
+         * then send their requests when a tile is loaded.
+         */
+        public synchronized void close() {
+            if (mPipeline != null)
+                mPipeline.close();
         }
 
         @Override
-        public HttpEngine create(UrlTileSource tileSource) {
-            return new OkHttpEngine(mClientBuilder.build(), tileSource);
+        public synchronized HttpEngine create(UrlTileSource tileSource) {
+            OkHttpClient client = getClient();
+            if (mPipeline != null)
+                return new PrefetchEngine(client, tileSource, mPipeline);
+            return new OkHttpEngine(client, tileSource);
+        }
+    }
+
+    /**
+     * Engine of a factory which prefetches tiles.
+     */
+    static class PrefetchEngine extends OkHttpEngine implements ITilePrefetcher {
+        PrefetchEngine(OkHttpClient client, UrlTileSource tileSource, OkHttpPipeline pipeline) {
+            super(client, tileSource, pipeline);
         }
     }
 
     public OkHttpEngine(OkHttpClient client, UrlTileSource tileSource) {
+        this(client, tileSource, null);
+    }
+
+    OkHttpEngine(OkHttpClient client, UrlTileSource tileSource, OkHttpPipeline pipeline) {
         mClient = client;
         mTileSource = tileSource;
+        mPipeline = pipeline;
     }
 
     @Override
@@ -78,13 +148,17 @@ public class OkHttpEngine implements HttpEngine {
             throw new IllegalArgumentException("Tile cannot be null.");
         }
         try {
-            URL url = new URL(mTileSource.getTileUrl(tile));
-            Request.Builder builder = new Request.Builder()
-                    .url(url);
-            for (Entry<String, String> opt : mTileSource.getRequestHeader().entrySet())
-                builder.addHeader(opt.getKey(), opt.getValue());
-            Request request = builder.build();
-            Response response = mClient.newCall(request).execute();
+            Request request = newRequest(tile);
+            Response response;
+
+            OkHttpPipeline.Entry prefetched = null;
+            if (mPipeline != null)
+                prefetched = mPipeline.take(request.url().toString());
+            if (prefetched != null)
+                response = prefetched.await();
+            else
+                response = mClient.newCall(request).execute();
+
             if (mTileSource.tileCache != null) {
                 mCachedData = response.body().bytes();
                 mInputStream = new ByteArrayInputStream(mCachedData);
@@ -95,6 +169,41 @@ public class OkHttpEngine implements HttpEngine {
         }
     }
 
+    private Request newRequest(Tile tile) throws IOException {
+        URL url = new URL(mTileSource.getTileUrl(tile));
+        Request.Builder builder = new Request.Builder()
+                .url(url);
+        for (Entry<String, String> opt : mTileSource.getRequestHeader().entrySet())
+            builder.addHeader(opt.getKey(), opt.getValue());
+        return builder.build();
+    }
+
+    /**
+     * Send the request of a queued tile, when the factory prefetches tiles.
+     * Tiles which were sent already or are cached are skipped.
+     */
+    public void prefetch(Tile tile) {
+        if (mPipeline == null)
+            return;
+        try {
+            Request request = newRequest(tile);
+            if (!mPipeline.accepts(request.url().toString()))
+                return;
+
+            ITileCache cache = mTileSource.tileCache;
+            if (cache != null) {
+                TileReader c = cache.getTile(tile);
+                if (c != null) {
+                    IOUtils.closeQuietly(c.getInputStream());
+                    return;
+                }
+            }
+            mPipeline.prefetch(request);
+        } catch (Exception e) {
+            log.debug("{} prefetch: {}", tile, e.getMessage());
+        }
+    }
+
     @Override
     public void close() {
         if (mInputStream == null)
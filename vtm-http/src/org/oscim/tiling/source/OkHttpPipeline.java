@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Tile requests sent asynchronously ahead of the loaders, shared by the
+ * engines of an {@link OkHttpEngine.OkHttpFactory}. With HTTP/2 the calls
+ * are multiplexed over one connection.
+ * <p/>
+ * An engine takes the call of its tile when it is prefetched and reads the
+ * body as it arrives. Calls which are not taken within {@link #STALE_MS},
+ * e.g. for tiles which are no longer visible, are canceled.
+ */
+class OkHttpPipeline {
+
+    static final long STALE_MS = 2000;
+
+    static final class Entry implements Callback {
+        final Call call;
+        final long time;
+
+        private Response mResponse;
+        private IOException mError;
+        private boolean mDone;
+        private boolean mCanceled;
+
+        Entry(Call call) {
+            this.call = call;
+            time = System.currentTimeMillis();
+        }
+
+        @Override
+        public synchronized void onFailure(Call call, IOException e) {
+            mError = e;
+            mDone = true;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void onResponse(Call call, Response response) {
+            if (mCanceled) {
+                response.close();
+                return;
+            }
+            mResponse = response;
+            mDone = true;
+            notifyAll();
+        }
+
+        /**
+         * @return the response, waits until the headers were received.
+         */
+        synchronized Response await() throws IOException {
+            try {
+                while (!mDone)
+                    wait();
+            } catch (InterruptedException e) {
+                cancel();
+                throw new InterruptedIOException();
+            }
+            if (mError != null)
+                throw mError;
+            return mResponse;
+        }
+
+        void cancel() {
+            call.cancel();
+            synchronized (this) {
+                mCanceled = true;
+                if (mResponse != null)
+                    mResponse.close();
+                mResponse = null;
+            }
+        }
+    }
+
+    private final OkHttpClient mClient;
+    private final int mMaxCalls;
+
+    /* calls by url in the order they were sent */
+    private final LinkedHashMap<String, Entry> mCalls = new LinkedHashMap<>();
+    private boolean mClosed;
+
+    /**
+     * @param maxCalls the number of calls which are not taken yet.
+     */
+    OkHttpPipeline(OkHttpClient client, int maxCalls) {
+        mClient = client;
+        mMaxCalls = maxCalls;
+    }
+
+    /**
+     * @return true if the request of the url can be sent, i.e. it was not
+     * sent already and the pipeline is not full.
+     */
+    boolean accepts(String url) {
+        ArrayList<Entry> stale = new ArrayList<>();
+        try {
+            synchronized (this) {
+                removeStale(stale);
+                return !mClosed && mCalls.size() < mMaxCalls && !mCalls.containsKey(url);
+            }
+        } finally {
+            cancel(stale);
+        }
+    }
+
+    /**
+     * Send the request unless it was sent already.
+     */
+    void prefetch(Request request) {
+        String url = request.url().toString();
+        ArrayList<Entry> stale = new ArrayList<>();
+        Entry entry = null;
+
+        synchronized (this) {
+            removeStale(stale);
+            if (!mClosed && mCalls.size() < mMaxCalls && !mCalls.containsKey(url)) {
+                entry = new Entry(mClient.newCall(request));
+                mCalls.put(url, entry);
+            }
+        }
+
+        cancel(stale);
+        if (entry != null)
+            entry.call.enqueue(entry);
+    }
+
+    /**
+     * @return the call of the url which is removed from the pipeline, or
+     * null if it was not prefetched.
+     */
+    Entry take(String url) {
+        ArrayList<Entry> stale = new ArrayList<>();
+        Entry entry;
+        synchronized (this) {
+            entry = mCalls.remove(url);
+            removeStale(stale);
+        }
+        cancel(stale);
+        return entry;
+    }
+
+    /**
+     * Cancel all calls which are not taken yet and stop prefetching.
+     */
+    void close() {
+        ArrayList<Entry> entries;
+        synchronized (this) {
+            mClosed = true;
+            entries = new ArrayList<>(mCalls.values());
+            mCalls.clear();
+        }
+        cancel(entries);
+    }
+
+    /**
+     * Remove the calls older than {@link #STALE_MS}, in the order they
+     * were sent.
+     */
+    private void removeStale(ArrayList<Entry> stale) {
+        long time = System.currentTimeMillis() - STALE_MS;
+        for (Iterator<Entry> it = mCalls.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.time > time)
+                break;
+            it.remove();
+            stale.add(entry);
+        }
+    }
+
+    private static void cancel(ArrayList<Entry> entries) {
+        for (Entry entry : entries)
+            entry.cancel();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.vector;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.oscim.core.Tile;
+import org.oscim.layers.vector.geometries.Drawable;
+import org.oscim.layers.vector.geometries.Style;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Caches the {@link ProjectedGeometry} of drawables per zoom level, so that
+ * geometries are only projected and simplified again when the zoom level,
+ * the geometry or its generalization changes.
+ * <p/>
+ * Not thread-safe, {@link VectorLayer} synchronizes the access.
+ */
+class GeometryCache {
+
+    /**
+     * Zoom levels above are simplified like MAX_ZOOM.
+     */
+    static final int MAX_ZOOM = 22;
+
+    /**
+     * Number of zoom levels above and below the last used one which are kept
+     * per drawable.
+     */
+    static final int KEEP_ZOOM_LEVELS = 2;
+
+    private final IdentityHashMap<Drawable, Entry> mEntries = new IdentityHashMap<>();
+
+    /**
+     * @param polygon true for polygons, false for lines
+     * @return the projected geometry of d, simplified for the zoom level.
+     */
+    ProjectedGeometry get(Drawable d, int zoomLevel, boolean polygon) {
+        Geometry geometry = d.getGeometry();
+        Style style = d.getStyle();
+        int generalization = style == null ? Style.GENERALIZATION_NONE : style.generalization;
+
+        Entry e = mEntries.get(d);
+        if (e == null || e.geometry != geometry || e.generalization != generalization
+                || e.polygon != polygon) {
+            e = new Entry(geometry, generalization, polygon);
+            mEntries.put(d, e);
+        }
+
+        /* without generalization all levels share the same geometry */
+        int level = generalization == Style.GENERALIZATION_NONE ? 0
+                : Math.max(0, Math.min(zoomLevel, MAX_ZOOM));
+
+        ProjectedGeometry projected = e.levels[level];
+        if (projected == null) {
+            Geometry g = geometry;
+            if (generalization != Style.GENERALIZATION_NONE)
+                g = DouglasPeuckerSimplifier.simplify(g, getTolerance(level) * generalization);
+
+            projected = new ProjectedGeometry(g, polygon);
+            e.levels[level] = projected;
+
+            /* drop levels far away from the current one */
+            for (int i = 0; i < e.levels.length; i++) {
+                if (Math.abs(i - level) > KEEP_ZOOM_LEVELS)
+                    e.levels[i] = null;
+            }
+        }
+        return projected;
+    }
+
+    /**
+     * @return the size of a pixel in degrees longitude at the maximum scale
+     * of the zoom level, i.e. the simplification never removes more than
+     * with the actual scale.
+     */
+    static double getTolerance(int zoomLevel) {
+        return 360.0 / ((long) Tile.SIZE << (zoomLevel + 1));
+    }
+
+    void remove(Drawable d) {
+        mEntries.remove(d);
+    }
+
+    void clear() {
+        mEntries.clear();
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    private static final class Entry {
+        final Geometry geometry;
+        final int generalization;
+        final boolean polygon;
+        final ProjectedGeometry[] levels = new ProjectedGeometry[MAX_ZOOM + 1];
+
+        Entry(Geometry geometry, int generalization, boolean polygon) {
+            this.geometry = geometry;
+            this.generalization = generalization;
+            this.polygon = polygon;
+        }
+    }
+}
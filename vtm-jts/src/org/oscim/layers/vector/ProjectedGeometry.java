@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.vector;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.oscim.core.GeometryBuffer;
+
+import java.util.Arrays;
+
+import static org.oscim.core.MercatorProjection.latitudeToY;
+import static org.oscim.core.MercatorProjection.longitudeToX;
+
+/**
+ * Lines or polygons of a JTS geometry, projected to map coordinates and packed
+ * into primitive arrays. Converting them into a {@link GeometryBuffer} for a
+ * map position only needs a translation and scale.
+ */
+public class ProjectedGeometry {
+
+    /**
+     * Packed x,y map coordinates.
+     */
+    final double[] points;
+
+    /**
+     * For each part the number of rings, followed by the ring lengths in points.
+     */
+    final int[] index;
+
+    final boolean polygon;
+
+    private final int numParts;
+    private final int[] partIndex;
+    private final int[] partPoints;
+
+    /**
+     * @param geometry LineStrings or Polygons, depending on polygon.
+     * @param polygon  true for Polygons; the closing points of rings are dropped.
+     */
+    public ProjectedGeometry(Geometry geometry, boolean polygon) {
+        this.polygon = polygon;
+
+        int n = geometry.getNumGeometries();
+        int numPoints = 0;
+        int numIndex = 0;
+        for (int i = 0; i < n; i++) {
+            Geometry g = geometry.getGeometryN(i);
+            if (polygon) {
+                Polygon p = (Polygon) g;
+                numIndex += 2 + p.getNumInteriorRing();
+                numPoints += p.getNumPoints();
+            } else {
+                numIndex += 2;
+                numPoints += g.getNumPoints();
+            }
+        }
+
+        double[] points = new double[numPoints * 2];
+        int[] index = new int[numIndex];
+        partIndex = new int[n];
+        partPoints = new int[n];
+
+        int pos = 0;
+        int ipos = 0;
+        for (int i = 0; i < n; i++) {
+            partIndex[i] = ipos;
+            partPoints[i] = pos;
+            Geometry g = geometry.getGeometryN(i);
+            if (polygon) {
+                Polygon p = (Polygon) g;
+                int rings = p.getNumInteriorRing();
+                index[ipos++] = rings + 1;
+                pos = addRing(points, pos, index, ipos++,
+                        p.getExteriorRing().getCoordinateSequence(), true);
+                for (int j = 0; j < rings; j++)
+                    pos = addRing(points, pos, index, ipos++,
+                            p.getInteriorRingN(j).getCoordinateSequence(), true);
+            } else {
+                index[ipos++] = 1;
+                pos = addRing(points, pos, index, ipos++,
+                        ((LineString) g).getCoordinateSequence(), false);
+            }
+        }
+        this.points = pos < points.length ? Arrays.copyOf(points, pos) : points;
+        this.index = index;
+        this.numParts = n;
+    }
+
+    private static int addRing(double[] points, int pos, int[] index, int ipos,
+                               CoordinateSequence ring, boolean closed) {
+        int n = ring.size();
+        if (closed && n > 0)
+            n--;
+        for (int i = 0; i < n; i++) {
+            points[pos++] = longitudeToX(ring.getX(i));
+            points[pos++] = latitudeToY(ring.getY(i));
+        }
+        index[ipos] = n;
+        return pos;
+    }
+
+    public int getNumParts() {
+        return numParts;
+    }
+
+    /**
+     * Add a part as line or polygon to g.
+     *
+     * @param x     map x of the origin
+     * @param y     map y of the origin
+     * @param scale map to output coordinate scale
+     */
+    public void transform(GeometryBuffer g, int part, double x, double y, double scale) {
+        int ipos = partIndex[part];
+        int pos = partPoints[part];
+        for (int r = 0, rings = index[ipos++]; r < rings; r++) {
+            if (!polygon)
+                g.startLine();
+            else if (r == 0)
+                g.startPolygon();
+            else
+                g.startHole();
+
+            for (int end = pos + index[ipos++] * 2; pos < end; pos += 2)
+                g.addPoint((float) ((points[pos] - x) * scale),
+                        (float) ((points[pos + 1] - y) * scale));
+        }
+    }
+}
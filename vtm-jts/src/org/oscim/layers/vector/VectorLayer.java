@@ -1,6 +1,7 @@
 /*
  * Copyright 2014 Hannes Janetzek
  * Copyright 2016-2018 devemux86
+ * Copyright 2019 Gustl22
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -29,6 +30,7 @@ import org.oscim.core.GeoPoint;
 import org.oscim.core.GeometryBuffer;
 import org.oscim.core.MapPosition;
 import org.oscim.core.Tile;
+import org.oscim.event.Event;
 import org.oscim.event.Gesture;
 import org.oscim.event.GestureListener;
 import org.oscim.event.MotionEvent;
@@ -53,6 +55,8 @@ import java.util.List;
 
 import static org.oscim.core.MercatorProjection.latitudeToY;
 import static org.oscim.core.MercatorProjection.longitudeToX;
+import static org.oscim.core.MercatorProjection.toLatitude;
+import static org.oscim.core.MercatorProjection.toLongitude;
 
 /* TODO keep bounding box of geometries - only try to render when bbox intersects viewport */
 
@@ -67,8 +71,14 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
 
     private static final int STROKE_MIN_ZOOM = 12;
 
+    /**
+     * Part of the viewport size which is added on each side when the buckets
+     * are built, so that they can be translated on small pans.
+     */
+    public static double PAN_BUFFER = 0.5;
+
     //private final SpatialIndex<Drawable> mDrawables = new RTree<Drawable>();
-    protected final SpatialIndex<Drawable> mDrawables = new QuadTree<Drawable>(1 << 30, 18);
+    protected final SpatialIndex<Drawable> mDrawables;
 
     protected final List<Drawable> tmpDrawables = new ArrayList<Drawable>(128);
 
@@ -76,6 +86,18 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
     protected double mMinX;
     protected double mMinY;
 
+    private final GeometryCache mCache = new GeometryCache();
+
+    /* the drawable passed to drawLine/drawPolygon by draw() */
+    private Drawable mDrawable;
+
+    /* set when drawables were added or removed */
+    private volatile boolean mDirty = true;
+
+    /* map coordinates and scale covered by the current buckets */
+    private final Box mBucketsBox = new Box();
+    private double mBucketsScale;
+
     private static class GeometryWithStyle implements Drawable {
         final Geometry geometry;
         final Style style;
@@ -98,13 +120,18 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
 
     protected Polygon mEnvelope;
 
+    /**
+     * @param index the spatial index of the drawables, e.g. a
+     *              {@link org.oscim.utils.PackedRTree} for many static drawables.
+     */
     public VectorLayer(Map map, SpatialIndex<Drawable> index) {
-        this(map);
+        super(map);
+        mDrawables = index;
+        mConverter = new JtsConverter(Tile.SIZE / UNSCALE_COORD);
     }
 
     public VectorLayer(Map map) {
-        super(map);
-        mConverter = new JtsConverter(Tile.SIZE / UNSCALE_COORD);
+        this(map, new QuadTree<Drawable>(1 << 30, 18));
     }
 
     private static Box bbox(Geometry geometry, Style style) {
@@ -126,6 +153,7 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
      */
     public void add(Drawable drawable) {
         mDrawables.insert(bbox(drawable.getGeometry(), drawable.getStyle()), drawable);
+        mDirty = true;
     }
 
     /**
@@ -137,6 +165,7 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
      */
     public synchronized void add(Geometry geometry, Style style) {
         mDrawables.insert(bbox(geometry, style), new GeometryWithStyle(geometry, style));
+        mDirty = true;
     }
 
     /**
@@ -146,6 +175,8 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
      */
     public synchronized void remove(Drawable drawable) {
         mDrawables.remove(bbox(drawable.getGeometry(), drawable.getStyle()), drawable);
+        mCache.remove(drawable);
+        mDirty = true;
     }
 
     /**
@@ -172,15 +203,48 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
         }
 
         mDrawables.remove(bbox, toRemove);
+        mCache.remove(toRemove);
+        mDirty = true;
         //mMap.render();
     }
 
+    /**
+     * Rebuild the buckets on the next update, e.g. after drawables were
+     * modified.
+     */
+    @Override
+    public void update() {
+        mDirty = true;
+        super.update();
+    }
+
+    @Override
+    public void onMapEvent(Event e, MapPosition pos) {
+        if (e == Map.CLEAR_EVENT)
+            mDirty = true;
+        super.onMapEvent(e, pos);
+    }
+
+    @Override
+    protected boolean isUpdateNeeded(Task t, Box bbox) {
+        if (mDirty || t.position.scale != mBucketsScale || Double.isNaN(bbox.xmin))
+            return true;
+
+        /* keep the buckets while they cover the viewport */
+        return longitudeToX(bbox.xmin) < mBucketsBox.xmin
+                || longitudeToX(bbox.xmax) > mBucketsBox.xmax
+                || latitudeToY(bbox.ymax) < mBucketsBox.ymin
+                || latitudeToY(bbox.ymin) > mBucketsBox.ymax;
+    }
+
     @Override
     protected void processFeatures(Task t, Box bbox) {
         //log.debug("bbox {}", bbox);
         if (Double.isNaN(bbox.xmin))
             return;
 
+        mDirty = false;
+
         //    mEnvelope = new GeomBuilder()
         //        .point(bbox.xmin, bbox.ymin)
         //        .point(bbox.xmin, bbox.ymax)
@@ -195,6 +259,23 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
 
         mConverter.setPosition(t.position.x, t.position.y, t.position.scale);
 
+        /* extend the viewport by PAN_BUFFER, within the clip region */
+        double xmin = longitudeToX(bbox.xmin);
+        double xmax = longitudeToX(bbox.xmax);
+        double ymin = latitudeToY(bbox.ymax);
+        double ymax = latitudeToY(bbox.ymin);
+        double dx = (xmax - xmin) * PAN_BUFFER;
+        double dy = (ymax - ymin) * PAN_BUFFER;
+        double clip = MAX_CLIP * UNSCALE_COORD / (t.position.scale * Tile.SIZE);
+
+        mBucketsBox.xmin = Math.max(xmin - dx, t.position.x - clip);
+        mBucketsBox.xmax = Math.min(xmax + dx, t.position.x + clip);
+        mBucketsBox.ymin = Math.max(ymin - dy, t.position.y - clip);
+        mBucketsBox.ymax = Math.min(ymax + dy, t.position.y + clip);
+        mBucketsScale = t.position.scale;
+
+        bbox = new Box(toLongitude(mBucketsBox.xmin), toLatitude(mBucketsBox.ymax),
+                toLongitude(mBucketsBox.xmax), toLatitude(mBucketsBox.ymin));
         bbox.scale(1E6);
 
         int level = 0;
@@ -221,15 +302,36 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
     protected void draw(Task task, int level, Drawable d, Style style) {
         Geometry geom = d.getGeometry();
 
-        if (d instanceof LineDrawable) {
-            drawLine(task, level, geom, style);
-        } else if (d instanceof PointDrawable) {
+        if (d instanceof PointDrawable) {
             drawPoint(task, level, geom, style);
-        } else {
-            drawPolygon(task, level, geom, style);
+            return;
+        }
+
+        mDrawable = d;
+        try {
+            if (d instanceof LineDrawable)
+                drawLine(task, level, geom, style);
+            else
+                drawPolygon(task, level, geom, style);
+        } finally {
+            mDrawable = null;
         }
     }
 
+    /**
+     * @return the cached projection of the geometry when it is the one of
+     * the drawable being drawn, otherwise null.
+     */
+    private ProjectedGeometry getProjected(Task t, Geometry geometry, Style style,
+                                           boolean polygon) {
+        Drawable d = mDrawable;
+        if (d == null || d.getGeometry() != geometry || d.getStyle() != style)
+            return null;
+
+        /* projected and simplified geometries are cached per zoom level */
+        return mCache.get(d, t.position.zoomLevel, polygon);
+    }
+
     protected void drawPoint(Task t, int level, Geometry points, Style style) {
 
         MeshBucket mesh = t.buckets.getMeshBucket(level);
@@ -256,7 +358,43 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
     }
 
     protected void drawLine(Task t, int level, Geometry line, Style style) {
+        ProjectedGeometry projected = getProjected(t, line, style, false);
+        if (projected != null) {
+            drawLine(t, level, projected, style);
+            return;
+        }
+
+        LineBucket ll = getLineBucket(t, level, style);
+
+        if (style.generalization != Style.GENERALIZATION_NONE) {
+            line = DouglasPeuckerSimplifier.simplify(line, mMinX * style.generalization);
+        }
+
+        //line = line.intersection(mEnvelope);
+
+        for (int i = 0; i < line.getNumGeometries(); i++) {
+            mConverter.transformLineString(mGeom.clear(), (LineString) line.getGeometryN(i));
+            if (!mClipper.clip(mGeom))
+                continue;
+
+            ll.addLine(mGeom);
+        }
+    }
+
+    protected void drawLine(Task t, int level, ProjectedGeometry line, Style style) {
+        LineBucket ll = getLineBucket(t, level, style);
+
+        double scale = t.position.scale * Tile.SIZE / UNSCALE_COORD;
+        for (int i = 0; i < line.getNumParts(); i++) {
+            line.transform(mGeom.clear(), i, t.position.x, t.position.y, scale);
+            if (!mClipper.clip(mGeom))
+                continue;
 
+            ll.addLine(mGeom);
+        }
+    }
+
+    private LineBucket getLineBucket(Task t, int level, Style style) {
         LineBucket ll;
         if (style.stipple == 0 && style.texture == null)
             ll = t.buckets.getLineBucket(level);
@@ -284,33 +422,18 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
         if (!style.fixed && style.strokeIncrease > 1)
             ll.scale = (float) Math.pow(style.strokeIncrease, Math.max(t.position.getZoom() - STROKE_MIN_ZOOM, 0));
 
-        if (style.generalization != Style.GENERALIZATION_NONE) {
-            line = DouglasPeuckerSimplifier.simplify(line, mMinX * style.generalization);
-        }
-
-        //line = line.intersection(mEnvelope);
-
-        for (int i = 0; i < line.getNumGeometries(); i++) {
-            mConverter.transformLineString(mGeom.clear(), (LineString) line.getGeometryN(i));
-            if (!mClipper.clip(mGeom))
-                continue;
-
-            ll.addLine(mGeom);
-        }
+        return ll;
     }
 
     protected void drawPolygon(Task t, int level, Geometry polygon, Style style) {
-
-        MeshBucket mesh = t.buckets.getMeshBucket(level);
-        if (mesh.area == null) {
-            mesh.area = new AreaStyle(Color.fade(style.fillColor,
-                    style.fillAlpha));
+        ProjectedGeometry projected = getProjected(t, polygon, style, true);
+        if (projected != null) {
+            drawPolygon(t, level, projected, style);
+            return;
         }
 
-        LineBucket ll = t.buckets.getLineBucket(level + 1);
-        if (ll.line == null) {
-            ll.line = new LineStyle(2, style.strokeColor, style.strokeWidth);
-        }
+        MeshBucket mesh = getMeshBucket(t, level, style);
+        LineBucket ll = getOutlineBucket(t, level, style);
 
         if (style.generalization != Style.GENERALIZATION_NONE) {
             polygon = DouglasPeuckerSimplifier.simplify(polygon, mMinX * style.generalization);
@@ -332,6 +455,42 @@ public class VectorLayer extends AbstractVectorLayer<Drawable> implements Gestur
         }
     }
 
+    protected void drawPolygon(Task t, int level, ProjectedGeometry polygon, Style style) {
+        MeshBucket mesh = getMeshBucket(t, level, style);
+        LineBucket ll = getOutlineBucket(t, level, style);
+
+        double scale = t.position.scale * Tile.SIZE / UNSCALE_COORD;
+        for (int i = 0; i < polygon.getNumParts(); i++) {
+            polygon.transform(mGeom.clear(), i, t.position.x, t.position.y, scale);
+
+            if (mGeom.getNumPoints() < 3)
+                continue;
+
+            if (!mClipper.clip(mGeom))
+                continue;
+
+            mesh.addMesh(mGeom);
+            ll.addLine(mGeom);
+        }
+    }
+
+    private MeshBucket getMeshBucket(Task t, int level, Style style) {
+        MeshBucket mesh = t.buckets.getMeshBucket(level);
+        if (mesh.area == null) {
+            mesh.area = new AreaStyle(Color.fade(style.fillColor,
+                    style.fillAlpha));
+        }
+        return mesh;
+    }
+
+    private LineBucket getOutlineBucket(Task t, int level, Style style) {
+        LineBucket ll = t.buckets.getLineBucket(level + 1);
+        if (ll.line == null) {
+            ll.line = new LineStyle(2, style.strokeColor, style.strokeWidth);
+        }
+        return ll;
+    }
+
     protected void addCircle(GeometryBuffer g, MapPosition pos,
                              double px, double py, Style style) {
 
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.test;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+
+import org.oscim.core.GeometryBuffer;
+import org.oscim.layers.tile.buildings.S3DBUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the roof mesh calculation of {@link S3DBUtils} on building
+ * footprints with the typical shapes of OSM buildings: rectangles, L-, T- and
+ * U-shapes and outlines with collinear or slightly skewed points, rotated
+ * and in both orientations.
+ */
+public class S3DBRoofBenchmark {
+
+    private static final int NUM_FOOTPRINTS = 20000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        new SharedLibraryLoader().load("vtm-jni");
+
+        List<float[]> footprints = createFootprints(new Random(42));
+
+        for (int r = 0; r < ROUNDS; r++) {
+            long time = System.nanoTime();
+            int indices = 0;
+            for (float[] footprint : footprints) {
+                indices += ridge(footprint, false, true);
+                indices += ridge(footprint, true, true);
+                indices += ridge(footprint, false, false);
+                indices += skillion(footprint);
+            }
+            time = System.nanoTime() - time;
+            System.out.println("round " + r + ": " + time / 1000000 + "ms, "
+                    + footprints.size() * 4 + " roofs, " + indices + " indices");
+        }
+    }
+
+    private static int ridge(float[] footprint, boolean across, boolean gabled) {
+        GeometryBuffer element = polygon(footprint);
+        GeometryBuffer specialParts = gabled ? new GeometryBuffer(element) : null;
+        if (!S3DBUtils.calcRidgeMesh(element, 10, 30, across, gabled, specialParts))
+            return 0;
+        return element.index.length;
+    }
+
+    private static int skillion(float[] footprint) {
+        GeometryBuffer element = polygon(footprint);
+        if (!S3DBUtils.calcSkillionMesh(element, 10, 30, 45, new GeometryBuffer(element)))
+            return 0;
+        return element.index.length;
+    }
+
+    private static GeometryBuffer polygon(float[] footprint) {
+        GeometryBuffer element = new GeometryBuffer(footprint.length / 2, 2);
+        element.startPolygon();
+        for (int i = 0; i < footprint.length; i += 2)
+            element.addPoint(footprint[i], footprint[i + 1]);
+
+        /* like BuildingLayer */
+        if (element.isClockwise() < 0)
+            element.reverse();
+        return element;
+    }
+
+    private static List<float[]> createFootprints(Random random) {
+        List<float[]> footprints = new ArrayList<>();
+        for (int i = 0; i < NUM_FOOTPRINTS; i++) {
+            float w = 10 + random.nextFloat() * 60;
+            float h = 10 + random.nextFloat() * 40;
+            float a = w * (0.3f + random.nextFloat() * 0.4f);
+            float c = h * (0.3f + random.nextFloat() * 0.4f);
+
+            float[] p;
+            switch (i % 5) {
+                case 0:
+                    p = new float[]{0, 0, w, 0, w, h, 0, h};
+                    break;
+                case 1:
+                    p = new float[]{0, 0, w, 0, w, c, a, c, a, h, 0, h};
+                    break;
+                case 2:
+                    p = new float[]{0, 0, w, 0, w, c, (w + a) / 2, c, (w + a) / 2, h,
+                            (w - a) / 2, h, (w - a) / 2, c, 0, c};
+                    break;
+                case 3:
+                    p = new float[]{0, 0, w, 0, w, h, w - a / 2, h, w - a / 2, c,
+                            a / 2, c, a / 2, h, 0, h};
+                    break;
+                default:
+                    p = new float[]{0, 0, w / 2, 0, w, 0, w, h / 2, w, h, 0, h};
+                    break;
+            }
+            footprints.add(transform(p, random));
+        }
+        return footprints;
+    }
+
+    private static float[] transform(float[] p, Random random) {
+        double angle = random.nextDouble() * Math.PI * 2;
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+        float dx = random.nextFloat() * 4000;
+        float dy = random.nextFloat() * 4000;
+        boolean reverse = random.nextBoolean();
+
+        float[] out = new float[p.length];
+        for (int i = 0; i < p.length; i += 2) {
+            float x = p[i] + (random.nextFloat() - 0.5f) * 0.5f;
+            float y = p[i + 1] + (random.nextFloat() - 0.5f) * 0.5f;
+            int o = reverse ? p.length - 2 - i : i;
+            out[o] = x * cos - y * sin + dx;
+            out[o + 1] = x * sin + y * cos + dy;
+        }
+        return out;
+    }
+}
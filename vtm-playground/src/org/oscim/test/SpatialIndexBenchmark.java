@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.test;
+
+import org.oscim.core.Box;
+import org.oscim.utils.PackedRTree;
+import org.oscim.utils.QuadTree;
+import org.oscim.utils.RTree;
+import org.oscim.utils.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares loading and searching of {@link RTree}, {@link QuadTree} and
+ * {@link PackedRTree}, with the random boxes of RTreeTest and QuadTreeTest:
+ * 10000 x 10000 extents, boxes up to 500 wide.
+ * <p/>
+ * Arguments: number of items, default 100000.
+ */
+public class SpatialIndexBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int QUERIES = 10000;
+
+    public static void main(String[] args) {
+        int numItems = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Random random = new Random((long) (Math.PI * 10000000));
+        List<Box> boxes = new ArrayList<>(numItems);
+        List<Integer> items = new ArrayList<>(numItems);
+        for (int i = 0; i < numItems; i++) {
+            Box box = new Box();
+            box.xmin = (int) (random.nextDouble() * 10000 - 5000);
+            box.ymin = (int) (random.nextDouble() * 10000 - 5000);
+            box.xmax = (int) (box.xmin + random.nextDouble() * 500);
+            box.ymax = (int) (box.ymin + random.nextDouble() * 500);
+            boxes.add(box);
+            items.add(i);
+        }
+
+        /* viewport like queries */
+        List<Box> queries = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            double x = random.nextDouble() * 10000 - 5000;
+            double y = random.nextDouble() * 10000 - 5000;
+            queries.add(new Box(x, y, x + 300, y + 200));
+        }
+
+        for (int r = 0; r < ROUNDS; r++) {
+            System.out.println("round " + r);
+
+            long time = System.nanoTime();
+            RTree<Integer> rtree = new RTree<>();
+            for (int i = 0; i < numItems; i++)
+                rtree.insert(boxes.get(i), items.get(i));
+            run("RTree", rtree, time, queries);
+
+            time = System.nanoTime();
+            QuadTree<Integer> quadTree = new QuadTree<>(1 << 14, 12);
+            for (int i = 0; i < numItems; i++)
+                quadTree.insert(boxes.get(i), items.get(i));
+            run("QuadTree", quadTree, time, queries);
+
+            time = System.nanoTime();
+            PackedRTree<Integer> packed = new PackedRTree<>(numItems);
+            packed.load(boxes, items);
+            run("PackedRTree", packed, time, queries);
+
+            time = System.nanoTime();
+            List<Integer> nearest = new ArrayList<>();
+            for (Box q : queries) {
+                nearest.clear();
+                packed.searchNearest(q.xmin, q.ymin, 10, Double.MAX_VALUE, nearest);
+            }
+            System.out.println(String.format("  PackedRTree 10-nearest %.1fms",
+                    (System.nanoTime() - time) / 1e6));
+        }
+    }
+
+    private static void run(String name, SpatialIndex<Integer> index, long start, List<Box> queries) {
+        long loaded = System.nanoTime();
+
+        List<Integer> results = new ArrayList<>();
+        int found = 0;
+        for (Box q : queries) {
+            results.clear();
+            index.search(q, results);
+            found += results.size();
+        }
+        long searched = System.nanoTime();
+
+        System.out.println(String.format("  %-12s load %6.1fms, search %6.1fms, found %d",
+                name, (loaded - start) / 1e6, (searched - loaded) / 1e6, found));
+    }
+}
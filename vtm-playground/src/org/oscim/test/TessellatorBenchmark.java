@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.test;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.renderer.bucket.VertexData;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.source.mvt.MvtTileDecoder;
+import org.oscim.utils.EarClipTessellator;
+import org.oscim.utils.ITessellator;
+import org.oscim.utils.JniTessellator;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares {@link JniTessellator} and {@link EarClipTessellator} on the
+ * polygons of vector tiles and on generated polygons: building outlines with
+ * courtyards and jagged landuse areas with many points and holes, in both
+ * orientations.
+ * <p/>
+ * Arguments: paths of Mapbox vector tiles, default is the test tile of
+ * vtm-tests.
+ */
+public class TessellatorBenchmark {
+
+    private static final int NUM_POLYGONS = 20000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        new SharedLibraryLoader().load("vtm-jni");
+
+        if (args.length == 0)
+            args = new String[]{"../vtm-tests/resources/mvt-test.pbf"};
+
+        List<GeometryBuffer> polygons = new ArrayList<>();
+        for (String path : args)
+            decode(path, polygons);
+        createPolygons(new Random(42), polygons);
+
+        int points = 0;
+        for (GeometryBuffer polygon : polygons)
+            points += polygon.pointNextPos >> 1;
+        System.out.println(polygons.size() + " polygons, " + points + " points");
+
+        ITessellator jni = new JniTessellator();
+        ITessellator earClip = new EarClipTessellator();
+
+        compare(polygons, jni, earClip);
+
+        for (int r = 0; r < ROUNDS; r++) {
+            System.out.println("round " + r
+                    + ": jni " + run(polygons, jni)
+                    + ", ear clipping " + run(polygons, earClip));
+        }
+    }
+
+    private static void decode(String path, final List<GeometryBuffer> polygons) throws Exception {
+        InputStream is = new FileInputStream(path);
+        try {
+            new MvtTileDecoder().decode(new Tile(0, 0, (byte) 0), new ITileDataSink() {
+                @Override
+                public void process(MapElement element) {
+                    if (element.isPoly())
+                        polygons.add(new GeometryBuffer(element));
+                }
+
+                @Override
+                public void setTileImage(Bitmap bitmap) {
+                }
+
+                @Override
+                public void completed(QueryResult result) {
+                }
+            }, is);
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void createPolygons(Random random, List<GeometryBuffer> polygons) {
+        for (int i = 0; i < NUM_POLYGONS; i++) {
+            boolean ccw = random.nextBoolean();
+            GeometryBuffer polygon = new GeometryBuffer(16, 4);
+            polygon.startPolygon();
+            if (i % 10 == 0) {
+                /* landuse */
+                addRing(random, polygon, 200, 200, 180, 50 + random.nextInt(400), 0.4, ccw);
+                int holes = random.nextInt(4);
+                for (int h = 0; h < holes; h++) {
+                    polygon.startHole();
+                    addRing(random, polygon, 120 + h * 60, 200, 20, 5 + random.nextInt(30), 0.3, !ccw);
+                }
+            } else {
+                /* building */
+                addRing(random, polygon, 20, 20, 15, 4 + random.nextInt(12), 0.5, ccw);
+                if (random.nextInt(8) == 0) {
+                    polygon.startHole();
+                    addRing(random, polygon, 20, 20, 4, 4, 0, !ccw);
+                }
+            }
+            polygons.add(polygon);
+        }
+    }
+
+    private static void addRing(Random random, GeometryBuffer polygon, float x, float y,
+                                float radius, int points, double jag, boolean ccw) {
+        for (int i = 0; i < points; i++) {
+            double angle = 2 * Math.PI * i / points * (ccw ? 1 : -1);
+            double r = radius * (1 - jag * random.nextDouble());
+            polygon.addPoint((float) Math.round(x + r * Math.cos(angle)),
+                    (float) Math.round(y + r * Math.sin(angle)));
+        }
+    }
+
+    private static int numRings(GeometryBuffer polygon) {
+        int numRings = 0;
+        while (numRings < polygon.index.length && polygon.index[numRings] >= 0)
+            numRings++;
+        return numRings;
+    }
+
+    private static String run(List<GeometryBuffer> polygons, ITessellator tessellator) {
+        long time = System.nanoTime();
+        int indices = 0;
+        VertexData tris = new VertexData();
+        for (GeometryBuffer polygon : polygons) {
+            indices += tessellator.tessellate(polygon.points, polygon.index, 0, numRings(polygon), tris);
+            tris.dispose();
+        }
+        time = System.nanoTime() - time;
+        return time / 1000 + "us (" + indices + " indices)";
+    }
+
+    /**
+     * Compare the area covered by the triangles.
+     */
+    private static void compare(List<GeometryBuffer> polygons, ITessellator a, ITessellator b) {
+        int failedA = 0, failedB = 0, different = 0;
+        for (GeometryBuffer polygon : polygons) {
+            double areaA = area(polygon, a);
+            double areaB = area(polygon, b);
+            if (Double.isNaN(areaA))
+                failedA++;
+            if (Double.isNaN(areaB))
+                failedB++;
+            if (Double.isNaN(areaA) || Double.isNaN(areaB))
+                continue;
+            if (Math.abs(areaA - areaB) > 1e-3 * Math.max(1, Math.abs(areaA)))
+                different++;
+        }
+        System.out.println("failed: jni " + failedA + ", ear clipping " + failedB
+                + ", different area: " + different);
+    }
+
+    /**
+     * @return the signed area of the triangles or NaN if tessellation failed.
+     */
+    private static double area(GeometryBuffer polygon, ITessellator tessellator) {
+        VertexData tris = new VertexData();
+        int numRings = numRings(polygon);
+        int n = tessellator.tessellate(polygon.points, polygon.index, 0, numRings, tris);
+        short[] ids = tris.toArray();
+        tris.dispose();
+        if (n == 0)
+            return Double.NaN;
+
+        /* points of tessellated rings */
+        float[] p = new float[polygon.pointNextPos];
+        int size = 0;
+        for (int i = 0, pos = 0; i < numRings; pos += polygon.index[i++]) {
+            if (polygon.index[i] < 6)
+                continue;
+            System.arraycopy(polygon.points, pos, p, size, polygon.index[i]);
+            size += polygon.index[i];
+        }
+
+        double area = 0;
+        for (int i = 0; i < n; i += 3) {
+            int v0 = ids[i] * 2, v1 = ids[i + 1] * 2, v2 = ids[i + 2] * 2;
+            area += ((double) p[v1] - p[v0]) * ((double) p[v2 + 1] - p[v0 + 1])
+                    - ((double) p[v1 + 1] - p[v0 + 1]) * ((double) p[v2] - p[v0]);
+        }
+        return area / 2;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.test;
+
+import org.oscim.awt.AwtGraphics;
+import org.oscim.renderer.bucket.TextBucket;
+import org.oscim.renderer.bucket.TextItem;
+import org.oscim.theme.styles.TextStyle;
+
+import java.util.Random;
+
+/**
+ * Compares grouping the labels of a dense POI tile with
+ * {@link TextBucket#addText(TextItem)} against the former walk through the
+ * label list, and checks that both give the same order.
+ * <p/>
+ * Arguments: number of labels, default 5000.
+ */
+public class TextBucketBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int STYLES = 12;
+
+    public static void main(String[] args) {
+        AwtGraphics.init();
+
+        int numLabels = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+        TextStyle[] styles = new TextStyle[STYLES];
+        for (int i = 0; i < STYLES; i++) {
+            styles[i] = TextStyle.builder()
+                    .fontSize(12 + i)
+                    .color(0xff000000)
+                    .isCaption(i % 2 == 0)
+                    .build();
+        }
+
+        /* new string instances, about a third repeated like street names */
+        Random random = new Random(42);
+        TextStyle[] itemStyles = new TextStyle[numLabels];
+        String[] itemLabels = new String[numLabels];
+        for (int i = 0; i < numLabels; i++) {
+            itemStyles[i] = styles[random.nextInt(STYLES)];
+            itemLabels[i] = new String("Label " + random.nextInt(numLabels * 2 / 3));
+        }
+
+        for (int r = 0; r < ROUNDS; r++) {
+            System.out.println("round " + r);
+
+            long time = System.nanoTime();
+            TextItem linear = null;
+            for (int i = 0; i < numLabels; i++)
+                linear = addTextLinear(linear, newItem(i, itemLabels[i], itemStyles[i]));
+            System.out.println(String.format("  list walk  %6.1fms", (System.nanoTime() - time) / 1e6));
+
+            TextBucket bucket = new TextBucket();
+            time = System.nanoTime();
+            for (int i = 0; i < numLabels; i++)
+                bucket.addText(newItem(i, itemLabels[i], itemStyles[i]));
+            System.out.println(String.format("  addText    %6.1fms", (System.nanoTime() - time) / 1e6));
+
+            TextItem a = linear;
+            TextItem b = bucket.labels;
+            for (; a != null && b != null; a = a.next, b = b.next) {
+                if (a.x != b.x || a.text != b.text || !a.label.equals(b.label))
+                    throw new IllegalStateException("different order at label " + (int) a.x);
+            }
+            if (a != b)
+                throw new IllegalStateException("different number of labels");
+        }
+    }
+
+    private static TextItem newItem(int i, String label, TextStyle text) {
+        TextItem item = new TextItem();
+        item.set(i, 0, label, text);
+        return item;
+    }
+
+    /**
+     * The former TextBucket.addText().
+     */
+    private static TextItem addTextLinear(TextItem labels, TextItem item) {
+        for (TextItem it = labels; it != null; it = it.next) {
+            if (item.text == it.text) {
+                while (it.next != null
+                        && item.text == it.next.text
+                        && item.label != it.label
+                        && !item.label.equals(it.label))
+                    it = it.next;
+
+                if (item.label != it.label && item.label.equals(it.label))
+                    item.label = it.label;
+
+                item.next = it.next;
+                it.next = item;
+                return labels;
+            }
+        }
+        item.next = labels;
+        return item;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.test;
+
+import org.oscim.awt.AwtGraphics;
+import org.oscim.backend.AssetAdapter;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.ThemeLoader;
+import org.oscim.theme.VtmThemes;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.utils.Parameters;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares theme matching with and without {@link org.oscim.theme.rule.RuleIndex}
+ * on the bundled themes. Each element gets a unique name, so that every
+ * match misses the matching cache and walks the rules.
+ */
+public class ThemeMatchingBenchmark {
+
+    private static final String[][] TAGS = {
+            {"highway", "motorway", "trunk", "primary", "secondary", "tertiary", "residential",
+                    "service", "footway", "path", "track", "cycleway", "steps", "motorway_link"},
+            {"building", "yes", "house", "apartments", "commercial"},
+            {"landuse", "residential", "forest", "farmland", "grass", "industrial", "retail"},
+            {"natural", "water", "wood", "scrub", "coastline", "peak"},
+            {"waterway", "river", "stream", "canal", "riverbank"},
+            {"amenity", "parking", "school", "restaurant", "place_of_worship", "hospital"},
+            {"leisure", "park", "pitch", "garden", "playground"},
+            {"railway", "rail", "tram", "subway", "station"},
+            {"boundary", "administrative"},
+            {"admin_level", "2", "4", "6", "8"},
+            {"place", "city", "town", "village", "suburb"},
+            {"tunnel", "yes"},
+            {"bridge", "yes"},
+            {"oneway", "yes"},
+            {"layer", "-1", "1", "2"},
+            {"area", "yes"},
+            {"kind", "building", "water", "park"},
+            {"class", "road", "path", "water"},
+    };
+
+    private static final GeometryType[] TYPES = {
+            GeometryType.POINT, GeometryType.LINE, GeometryType.POLY};
+
+    private static final int NUM_ELEMENTS = 50000;
+
+    public static void main(String[] args) {
+        AwtGraphics.init();
+        AssetAdapter.init(new AssetAdapter() {
+            @Override
+            public InputStream openFileAsStream(String name) {
+                return ThemeMatchingBenchmark.class.getResourceAsStream("/assets/" + name);
+            }
+        });
+
+        for (VtmThemes theme : VtmThemes.values()) {
+            IRenderTheme t = ThemeLoader.load(theme);
+
+            /* warm up both paths */
+            run(t, "w0", false, null);
+            run(t, "w1", true, null);
+
+            RenderStyle[][] expected = new RenderStyle[NUM_ELEMENTS][];
+            RenderStyle[][] actual = new RenderStyle[NUM_ELEMENTS][];
+            long linear = run(t, "a", false, expected);
+            long indexed = run(t, "b", true, actual);
+
+            int diff = 0;
+            for (int i = 0; i < NUM_ELEMENTS; i++) {
+                if (!Arrays.equals(expected[i], actual[i]))
+                    diff++;
+            }
+            System.out.println(theme + ": linear " + linear / 1000000 + "ms, indexed "
+                    + indexed / 1000000 + "ms, different results: " + diff);
+        }
+        Parameters.THEME_RULE_INDEX = true;
+    }
+
+    private static long run(IRenderTheme t, String prefix, boolean index, RenderStyle[][] results) {
+        Parameters.THEME_RULE_INDEX = index;
+        Random random = new Random(42);
+        TagSet tags = new TagSet();
+
+        long time = 0;
+        for (int i = 0; i < NUM_ELEMENTS; i++) {
+            tags.clear();
+            int numTags = 1 + random.nextInt(3);
+            for (int j = 0; j < numTags; j++) {
+                String[] kv = TAGS[random.nextInt(TAGS.length)];
+                tags.add(new Tag(kv[0], kv[1 + random.nextInt(kv.length - 1)]));
+            }
+            tags.add(new Tag(Tag.KEY_NAME, prefix + i, false));
+
+            GeometryType type = TYPES[random.nextInt(TYPES.length)];
+            int zoom = 8 + random.nextInt(11);
+
+            long start = System.nanoTime();
+            RenderStyle[] styles = t.matchElement(type, tags, zoom);
+            time += System.nanoTime() - start;
+
+            if (results != null)
+                results[i] = styles;
+        }
+        return time;
+    }
+}
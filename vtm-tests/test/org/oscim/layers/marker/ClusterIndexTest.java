@@ -0,0 +1,117 @@
+package org.oscim.layers.marker;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.Tile;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ClusterIndexTest {
+
+    private static final int N = 20000;
+    private static final double RADIUS = 64;
+
+    private final double[] mX = new double[N];
+    private final double[] mY = new double[N];
+    private final boolean[] mClusterable = new boolean[N];
+
+    private ClusterIndex createIndex() {
+        Random random = new Random(42);
+        for (int i = 0; i < N; i++) {
+            /* dense area around the center */
+            mX[i] = 0.5 + random.nextGaussian() * 0.01;
+            mY[i] = 0.5 + random.nextGaussian() * 0.01;
+            mClusterable[i] = i % 100 != 0;
+        }
+        return new ClusterIndex(mX, mY, mClusterable, N, RADIUS);
+    }
+
+    @Test
+    public void shouldKeepAllPoints() {
+        ClusterIndex index = createIndex();
+
+        int prevSize = 0;
+        for (int z = 0; z <= ClusterIndex.MAX_ZOOM + 1; z++) {
+            ClusterIndex.Level level = index.getLevel(z);
+            Assert.assertTrue(level.size >= prevSize);
+            prevSize = level.size;
+
+            int sum = 0;
+            boolean[] seen = new boolean[N];
+            for (int i = 0; i < level.size; i++) {
+                sum += level.counts[i];
+                int id = level.ids[i];
+                Assert.assertFalse(seen[id]);
+                seen[id] = true;
+
+                /* non-clusterable points stay single and in place */
+                if (!mClusterable[id]) {
+                    Assert.assertEquals(1, level.counts[i]);
+                    Assert.assertEquals(mX[id], level.x[i], 0);
+                    Assert.assertEquals(mY[id], level.y[i], 0);
+                }
+            }
+            Assert.assertEquals(N, sum);
+        }
+        Assert.assertEquals(N, index.getLevel(ClusterIndex.MAX_ZOOM + 1).size);
+        Assert.assertSame(index.getLevel(ClusterIndex.MAX_ZOOM + 1), index.getLevel(100));
+
+        /* everything clusterable ends in a few clusters at low zoom */
+        Assert.assertTrue(index.getLevel(2).size < N / 100 + 10);
+    }
+
+    @Test
+    public void shouldClusterByRadius() {
+        /* two points 100 px apart at zoom 10, a third one joining them at zoom 0 */
+        double d = 100.0 / (Tile.SIZE << 10);
+        double[] x = {0.5, 0.5 + d, 0.42};
+        double[] y = {0.5, 0.5, 0.47};
+        ClusterIndex index = new ClusterIndex(x, y, new boolean[]{true, true, true}, 3, RADIUS);
+
+        Assert.assertEquals(3, index.getLevel(10).size);
+
+        ClusterIndex.Level level = index.getLevel(9);
+        Assert.assertEquals(2, level.size);
+        for (int i = 0; i < level.size; i++) {
+            if (level.counts[i] == 2) {
+                Assert.assertEquals(0.5 + d / 2, level.x[i], 1e-12);
+                Assert.assertEquals(0.5, level.y[i], 1e-12);
+            } else {
+                Assert.assertEquals(2, level.ids[i]);
+            }
+        }
+        Assert.assertEquals(1, index.getLevel(0).size);
+        Assert.assertEquals(3, index.getLevel(0).counts[0]);
+    }
+
+    @Test
+    public void shouldFindInRange() {
+        ClusterIndex index = createIndex();
+        PointIndex.Found found = new PointIndex.Found();
+        Random random = new Random(1);
+
+        for (int z : new int[]{6, 10, 14, ClusterIndex.MAX_ZOOM + 1}) {
+            ClusterIndex.Level level = index.getLevel(z);
+            for (int q = 0; q < 50; q++) {
+                double x1 = 0.48 + random.nextDouble() * 0.03;
+                double y1 = 0.48 + random.nextDouble() * 0.03;
+                double x2 = x1 + random.nextDouble() * 0.01;
+                double y2 = y1 + random.nextDouble() * 0.01;
+
+                level.range(x1, y1, x2, y2, found);
+                int[] result = Arrays.copyOf(found.items, found.size);
+                Arrays.sort(result);
+
+                int n = 0;
+                for (int i = 0; i < level.size; i++) {
+                    if (level.x[i] >= x1 && level.x[i] <= x2 && level.y[i] >= y1 && level.y[i] <= y2) {
+                        Assert.assertTrue(n < result.length);
+                        Assert.assertEquals(i, result[n++]);
+                    }
+                }
+                Assert.assertEquals(n, result.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.oscim.layers.marker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class DrawOrderTest {
+
+    private static final int N = 5000;
+
+    private final Random mRandom = new Random(7);
+    private final float[] mPosY = new float[N];
+    private final float[] mPosX = new float[N];
+
+    private final int[] mIds = new int[N];
+    private final float[] mDy = new float[N];
+
+    public DrawOrderTest() {
+        for (int i = 0; i < N; i++) {
+            mPosX[i] = mRandom.nextInt(1000);
+            /* some equal values */
+            mPosY[i] = mRandom.nextInt(1000);
+        }
+    }
+
+    /**
+     * Select the markers within [y1, y2] in random order.
+     */
+    private int visible(float y1, float y2, float sin, float cos) {
+        int n = 0;
+        for (int i = 0; i < N; i++) {
+            float dy = sin * mPosX[i] + cos * mPosY[i];
+            if (mPosY[i] < y1 || mPosY[i] > y2)
+                continue;
+            mIds[n] = i;
+            mDy[n++] = dy;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = mRandom.nextInt(i + 1);
+            int id = mIds[i];
+            float dy = mDy[i];
+            mIds[i] = mIds[j];
+            mDy[i] = mDy[j];
+            mIds[j] = id;
+            mDy[j] = dy;
+        }
+        return n;
+    }
+
+    private void assertOrder(int[] order, int n) {
+        for (int i = 1; i < n; i++) {
+            int a = order[i - 1];
+            int b = order[i];
+            Assert.assertTrue(mDy[a] > mDy[b] || (mDy[a] == mDy[b] && mIds[a] < mIds[b]));
+        }
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Assert.assertFalse(seen[order[i]]);
+            seen[order[i]] = true;
+        }
+    }
+
+    @Test
+    public void shouldSortIncrementally() {
+        DrawOrder drawOrder = new DrawOrder();
+        for (int y = 0; y < 600; y += 50) {
+            int n = visible(y, y + 400, 0, 1);
+            assertOrder(drawOrder.sort(mIds, mDy, n, N), n);
+        }
+    }
+
+    @Test
+    public void shouldSortRotated() {
+        DrawOrder drawOrder = new DrawOrder();
+        for (int angle = 0; angle < 360; angle += 30) {
+            double rad = Math.toRadians(angle);
+            int n = visible(100, 900, (float) Math.sin(rad), (float) Math.cos(rad));
+            assertOrder(drawOrder.sort(mIds, mDy, n, N), n);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.oscim.layers.tile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.MapPosition;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class JobQueueTest {
+
+    private static MapTile newJob(int x, int y, int z) {
+        MapTile t = new MapTile(x, y, z);
+        t.setState(MapTile.State.LOADING);
+        return t;
+    }
+
+    @Test
+    public void shouldPollByDistance() {
+        Random random = new Random(42);
+        JobQueue queue = new JobQueue();
+        MapTile[] tiles = new MapTile[500];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = newJob(i, i, 10);
+            tiles[i].distance = random.nextFloat();
+        }
+        queue.setJobs(tiles);
+
+        /* remove some jobs from the middle of the heap */
+        for (int i = 0; i < tiles.length; i += 7) {
+            Assert.assertTrue(queue.remove(tiles[i]));
+            Assert.assertTrue(tiles[i].state(MapTile.State.NONE));
+            Assert.assertFalse(queue.remove(tiles[i]));
+        }
+
+        float prev = -1;
+        int cnt = 0;
+        MapTile t;
+        while ((t = queue.poll()) != null) {
+            Assert.assertTrue(t.distance >= prev);
+            Assert.assertTrue(t.state(MapTile.State.LOADING));
+            prev = t.distance;
+            cnt++;
+        }
+        Assert.assertEquals(tiles.length - (tiles.length + 6) / 7, cnt);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldPeekNearestJobs() {
+        Random random = new Random(7);
+        JobQueue queue = new JobQueue();
+        MapTile[] tiles = new MapTile[200];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = newJob(i, i, 10);
+            tiles[i].distance = random.nextFloat();
+        }
+        queue.setJobs(tiles);
+
+        MapTile[] peeked = new MapTile[8];
+        Assert.assertEquals(8, queue.peek(peeked));
+        Assert.assertEquals(tiles.length, queue.size());
+
+        for (MapTile t : peeked)
+            Assert.assertSame(queue.poll(), t);
+
+        Assert.assertEquals(0, new JobQueue().peek(peeked));
+    }
+
+    @Test
+    public void shouldKeepRequestedJobs() {
+        JobQueue queue = new JobQueue();
+        MapPosition pos = new MapPosition();
+        pos.x = 0.5;
+        pos.y = 0.5;
+        pos.setZoomLevel(4);
+
+        MapTile a = newJob(7, 7, 4);
+        MapTile b = newJob(8, 8, 4);
+        MapTile c = newJob(0, 0, 4);
+        ArrayList<MapTile> jobs = new ArrayList<>();
+        jobs.add(a);
+        jobs.add(b);
+        jobs.add(c);
+        a.jobSerial = b.jobSerial = c.jobSerial = 1;
+        queue.update(jobs, 1, pos);
+        Assert.assertEquals(3, queue.size());
+
+        /* next update only requests 'a' and a new tile 'd' */
+        MapTile d = newJob(9, 9, 4);
+        jobs.clear();
+        jobs.add(d);
+        a.jobSerial = d.jobSerial = 2;
+        queue.update(jobs, 2, pos);
+
+        Assert.assertEquals(2, queue.size());
+        Assert.assertTrue(b.state(MapTile.State.NONE));
+        Assert.assertTrue(c.state(MapTile.State.NONE));
+        Assert.assertTrue(a.state(MapTile.State.LOADING));
+
+        MapTile first = queue.poll();
+        MapTile second = queue.poll();
+        Assert.assertTrue(first.distance <= second.distance);
+        Assert.assertNull(queue.poll());
+    }
+}
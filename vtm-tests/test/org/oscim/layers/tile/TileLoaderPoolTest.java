@@ -0,0 +1,184 @@
+package org.oscim.layers.tile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TileLoaderPoolTest {
+
+    private TileLoaderPool mPool;
+
+    static class CountingLoader extends TileLoader {
+        final AtomicInteger jobs = new AtomicInteger();
+        final AtomicInteger loaded = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        volatile CountDownLatch block;
+
+        CountingLoader(int jobs) {
+            super(null);
+            this.jobs.set(jobs);
+        }
+
+        @Override
+        float getJobDistance() {
+            return jobs.get() > 0 ? 0 : Float.MAX_VALUE;
+        }
+
+        @Override
+        protected void doWork() {
+            if (jobs.getAndDecrement() <= 0) {
+                jobs.incrementAndGet();
+                return;
+            }
+            if (Thread.currentThread().isInterrupted())
+                interrupted.incrementAndGet();
+
+            CountDownLatch latch = block;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            loaded.incrementAndGet();
+        }
+
+        @Override
+        protected boolean loadTile(MapTile tile) {
+            return false;
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    private static void awaitLoaded(CountingLoader loader, int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (loader.loaded.get() < count && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        Assert.assertEquals(count, loader.loaded.get());
+    }
+
+    private CountingLoader newLoader(TileLoaderPool pool, int jobs) {
+        TileLoaderPool.setDefault(pool);
+        try {
+            return new CountingLoader(jobs);
+        } finally {
+            TileLoaderPool.setDefault(null);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (mPool != null)
+            mPool.shutdown();
+    }
+
+    @Test
+    public void shouldRunRegisteredLoaders() throws InterruptedException {
+        mPool = new TileLoaderPool(2);
+        CountingLoader a = newLoader(mPool, 20);
+        CountingLoader b = newLoader(mPool, 30);
+
+        a.start();
+        b.start();
+        a.start();
+        Assert.assertEquals(2, mPool.getLoaderCount());
+
+        awaitLoaded(a, 20);
+        awaitLoaded(b, 30);
+        Assert.assertFalse(a.isAlive());
+
+        a.finish();
+        Assert.assertEquals(1, mPool.getLoaderCount());
+
+        /* not run after finish */
+        a.jobs.set(5);
+        b.jobs.set(5);
+        mPool.notifyWork();
+        awaitLoaded(b, 35);
+        Assert.assertEquals(20, a.loaded.get());
+    }
+
+    @Test
+    public void shouldNotRunPausedLoaders() throws InterruptedException {
+        mPool = new TileLoaderPool(1);
+        CountingLoader loader = newLoader(mPool, 1);
+        loader.start();
+        awaitLoaded(loader, 1);
+
+        loader.pause();
+        Assert.assertTrue(loader.isCanceled());
+        loader.awaitPausing();
+        Assert.assertTrue(loader.isPausing());
+
+        loader.jobs.set(5);
+        loader.go();
+        Thread.sleep(100);
+        Assert.assertEquals(1, loader.loaded.get());
+
+        loader.proceed();
+        awaitLoaded(loader, 6);
+    }
+
+    @Test
+    public void shouldInterruptBlockingJobOnPause() throws InterruptedException {
+        mPool = new TileLoaderPool(1);
+        CountingLoader loader = newLoader(mPool, 1);
+        loader.block = new CountDownLatch(1);
+        loader.start();
+
+        /* wait until the job is running */
+        long end = System.currentTimeMillis() + 5000;
+        while (loader.jobs.get() > 0 && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+
+        long start = System.currentTimeMillis();
+        loader.pause();
+        loader.awaitPausing();
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertTrue(loader.isPausing());
+        Assert.assertEquals(1, loader.loaded.get());
+        Assert.assertEquals(1, loader.interrupted.get());
+
+        /* the worker keeps running without the interrupt */
+        loader.block = null;
+        loader.jobs.set(5);
+        loader.proceed();
+        awaitLoaded(loader, 6);
+        Assert.assertEquals(1, loader.interrupted.get());
+    }
+
+    @Test
+    public void shouldFallBackWithoutVirtualThreads() throws InterruptedException {
+        boolean supported;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            supported = true;
+        } catch (NoSuchMethodException e) {
+            supported = false;
+        }
+        Thread t = TileLoaderPool.newVirtualThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        Assert.assertEquals(supported, t != null);
+
+        mPool = new TileLoaderPool(2, true);
+        CountingLoader loader = newLoader(mPool, 10);
+        loader.start();
+        awaitLoaded(loader, 10);
+    }
+}
@@ -0,0 +1,141 @@
+package org.oscim.layers.tile.buildings;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.renderer.bucket.ExtrusionBucket;
+import org.oscim.renderer.bucket.ExtrusionBuckets;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+public class BuildingCacheTest {
+
+    private static final float[] COLORS = new float[16];
+    private static final Object SOURCE = new Object();
+
+    private static ExtrusionBuckets buckets(MapTile tile) {
+        GeometryBuffer g = new GeometryBuffer(16, 2);
+        g.startPolygon();
+        g.addPoint(10, 10);
+        g.addPoint(100, 10);
+        g.addPoint(100, 100);
+        g.addPoint(10, 100);
+
+        ExtrusionBuckets ebs = new ExtrusionBuckets(tile);
+        ebs.addPolyElement(g, tile.getGroundScale(), COLORS, 1000, 0);
+        ebs.prepare();
+        return ebs;
+    }
+
+    private static short[][] compile(ExtrusionBucket b) {
+        ShortBuffer vbo = ShortBuffer.allocate(1024);
+        ShortBuffer ibo = ShortBuffer.allocate(1024);
+        b.compile(vbo, ibo);
+        return new short[][]{
+                Arrays.copyOf(vbo.array(), vbo.position()),
+                Arrays.copyOf(ibo.array(), ibo.position())};
+    }
+
+    @Test
+    public void shouldRestoreBuckets() {
+        MapTile tile = new MapTile(70000, 42000, 17);
+        Object theme = new Object();
+        BuildingCache cache = new BuildingCache(1 << 20);
+
+        Assert.assertNull(cache.get(tile, theme, SOURCE));
+        ExtrusionBuckets ebs = buckets(tile);
+        cache.put(tile, cache.getGeneration(), ebs);
+        Assert.assertEquals(1, cache.getTileCount());
+
+        ExtrusionBucket restored = cache.get(tile, theme, SOURCE);
+        Assert.assertNotNull(restored);
+        Assert.assertNull(restored.next());
+        Assert.assertSame(COLORS, restored.getColors());
+
+        short[][] expected = compile(ebs.buckets());
+        short[][] actual = compile(restored);
+        Assert.assertTrue(expected[0].length > 0);
+        Assert.assertArrayEquals(expected[0], actual[0]);
+        Assert.assertArrayEquals(expected[1], actual[1]);
+        Assert.assertArrayEquals(ebs.buckets().idx, restored.idx);
+
+        /* restored twice */
+        Assert.assertNotSame(restored, cache.get(tile, theme, SOURCE));
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldClearOnThemeChange() {
+        MapTile tile = new MapTile(70000, 42000, 17);
+        Object theme = new Object();
+        BuildingCache cache = new BuildingCache(1 << 20);
+
+        cache.get(tile, theme, SOURCE);
+        int generation = cache.getGeneration();
+        cache.put(tile, generation, buckets(tile));
+        Assert.assertNull(cache.get(tile, new Object(), SOURCE));
+        Assert.assertEquals(0, cache.getSize());
+
+        /* loaded with previous theme */
+        cache.put(tile, generation, buckets(tile));
+        Assert.assertEquals(0, cache.getTileCount());
+    }
+
+    @Test
+    public void shouldClearOnSourceChange() {
+        MapTile tile = new MapTile(70000, 42000, 17);
+        Object theme = new Object();
+        BuildingCache cache = new BuildingCache(1 << 20);
+
+        cache.get(tile, theme, SOURCE);
+        cache.put(tile, cache.getGeneration(), buckets(tile));
+        Assert.assertNotNull(cache.get(tile, theme, SOURCE));
+        Assert.assertNull(cache.get(tile, theme, new Object()));
+        Assert.assertEquals(0, cache.getTileCount());
+    }
+
+    @Test
+    public void shouldDropLoadsStartedBeforeClear() {
+        MapTile tile = new MapTile(70000, 42000, 17);
+        Object theme = new Object();
+        BuildingCache cache = new BuildingCache(1 << 20);
+
+        Assert.assertNull(cache.get(tile, theme, SOURCE));
+        int generation = cache.getGeneration();
+
+        /* e.g. style changed while the tile was loading */
+        cache.clear();
+        cache.put(tile, generation, buckets(tile));
+        Assert.assertEquals(0, cache.getTileCount());
+
+        cache.put(tile, cache.getGeneration(), buckets(tile));
+        Assert.assertEquals(1, cache.getTileCount());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        Object theme = new Object();
+        MapTile t1 = new MapTile(70000, 42000, 17);
+        MapTile t2 = new MapTile(70001, 42000, 17);
+        MapTile t3 = new MapTile(70002, 42000, 17);
+
+        BuildingCache probe = new BuildingCache(1 << 20);
+        probe.get(t1, theme, SOURCE);
+        probe.put(t1, probe.getGeneration(), buckets(t1));
+        long size = probe.getSize();
+
+        BuildingCache cache = new BuildingCache(size * 2);
+        cache.get(t1, theme, SOURCE);
+        cache.put(t1, cache.getGeneration(), buckets(t1));
+        cache.put(t2, cache.getGeneration(), buckets(t2));
+        Assert.assertNotNull(cache.get(t1, theme, SOURCE));
+        cache.put(t3, cache.getGeneration(), buckets(t3));
+
+        Assert.assertEquals(2, cache.getTileCount());
+        Assert.assertNotNull(cache.get(t1, theme, SOURCE));
+        Assert.assertNull(cache.get(t2, theme, SOURCE));
+    }
+}
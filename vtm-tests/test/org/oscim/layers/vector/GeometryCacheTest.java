@@ -0,0 +1,76 @@
+package org.oscim.layers.vector;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.oscim.layers.vector.geometries.LineDrawable;
+import org.oscim.layers.vector.geometries.PolygonDrawable;
+import org.oscim.layers.vector.geometries.Style;
+
+public class GeometryCacheTest {
+
+    private static double[] zigzag(int n) {
+        double[] lonLat = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            lonLat[i * 2] = i * 0.001;
+            lonLat[i * 2 + 1] = (i % 2) * 0.0001;
+        }
+        return lonLat;
+    }
+
+    @Test
+    public void shouldShareLevelsWithoutGeneralization() {
+        GeometryCache cache = new GeometryCache();
+        LineDrawable line = new LineDrawable(zigzag(100), Style.defaultStyle());
+
+        ProjectedGeometry g = cache.get(line, 5, false);
+        Assert.assertSame(g, cache.get(line, 18, false));
+        Assert.assertEquals(200, g.points.length);
+        Assert.assertEquals(1, cache.size());
+
+        cache.remove(line);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNotSame(g, cache.get(line, 5, false));
+    }
+
+    @Test
+    public void shouldSimplifyPerZoomLevel() {
+        GeometryCache cache = new GeometryCache();
+        Style style = Style.builder().generalization(Style.GENERALIZATION_HIGH).build();
+        LineDrawable line = new LineDrawable(zigzag(100), style);
+
+        ProjectedGeometry low = cache.get(line, 5, false);
+        Assert.assertSame(low, cache.get(line, 5, false));
+
+        ProjectedGeometry high = cache.get(line, GeometryCache.MAX_ZOOM + 3, false);
+        Assert.assertNotSame(low, high);
+        Assert.assertTrue(low.points.length < high.points.length);
+        Assert.assertEquals(200, high.points.length);
+
+        /* higher levels are simplified like MAX_ZOOM */
+        Assert.assertSame(high, cache.get(line, GeometryCache.MAX_ZOOM, false));
+
+        /* levels far from the last used one are dropped */
+        Assert.assertNotSame(low, cache.get(line, 5, false));
+    }
+
+    @Test
+    public void shouldCachePolygons() {
+        GeometryCache cache = new GeometryCache();
+        PolygonDrawable polygon = new PolygonDrawable(new GeometryFactory().createPolygon(
+                new Coordinate[]{
+                        new Coordinate(0, 0), new Coordinate(1, 0),
+                        new Coordinate(1, 1), new Coordinate(0, 0)}),
+                Style.defaultStyle());
+
+        ProjectedGeometry g = cache.get(polygon, 10, true);
+        Assert.assertTrue(g.polygon);
+        Assert.assertEquals(6, g.points.length);
+        Assert.assertSame(g, cache.get(polygon, 10, true));
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNotSame(g, cache.get(polygon, 10, true));
+    }
+}
@@ -0,0 +1,70 @@
+package org.oscim.layers.vector;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.oscim.core.GeometryBuffer;
+
+import static org.oscim.core.MercatorProjection.latitudeToY;
+import static org.oscim.core.MercatorProjection.longitudeToX;
+
+public class ProjectedGeometryTest {
+
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    private static LinearRing ring(double... lonLat) {
+        Coordinate[] c = new Coordinate[lonLat.length / 2];
+        for (int i = 0; i < c.length; i++)
+            c[i] = new Coordinate(lonLat[i * 2], lonLat[i * 2 + 1]);
+        return FACTORY.createLinearRing(c);
+    }
+
+    @Test
+    public void shouldProjectLines() {
+        Geometry lines = FACTORY.createMultiLineString(new org.locationtech.jts.geom.LineString[]{
+                FACTORY.createLineString(new Coordinate[]{
+                        new Coordinate(10, 50), new Coordinate(11, 51), new Coordinate(12, 50)}),
+                FACTORY.createLineString(new Coordinate[]{
+                        new Coordinate(-5, -5), new Coordinate(5, 5)})});
+
+        ProjectedGeometry projected = new ProjectedGeometry(lines, false);
+        Assert.assertEquals(2, projected.getNumParts());
+
+        double x = longitudeToX(10);
+        double y = latitudeToY(50);
+        GeometryBuffer g = new GeometryBuffer(8, 2);
+        projected.transform(g, 0, x, y, 1000);
+        Assert.assertEquals(GeometryBuffer.GeometryType.LINE, g.type);
+        Assert.assertEquals(3, g.getNumPoints());
+        Assert.assertEquals(0, g.getPointX(0), 1e-3);
+        Assert.assertEquals(0, g.getPointY(0), 1e-3);
+        Assert.assertEquals((longitudeToX(12) - x) * 1000, g.getPointX(2), 1e-3);
+        Assert.assertEquals((latitudeToY(51) - y) * 1000, g.getPointY(1), 1e-3);
+
+        projected.transform(g.clear(), 1, x, y, 1000);
+        Assert.assertEquals(2, g.getNumPoints());
+        Assert.assertEquals((longitudeToX(-5) - x) * 1000, g.getPointX(0), 1e-3);
+    }
+
+    @Test
+    public void shouldProjectPolygonsWithoutClosingPoints() {
+        Polygon polygon = FACTORY.createPolygon(
+                ring(0, 0, 10, 0, 10, 10, 0, 10, 0, 0),
+                new LinearRing[]{ring(2, 2, 2, 4, 4, 4, 2, 2)});
+
+        ProjectedGeometry projected = new ProjectedGeometry(polygon, true);
+        Assert.assertEquals(1, projected.getNumParts());
+
+        GeometryBuffer g = new GeometryBuffer(8, 4);
+        projected.transform(g, 0, 0, 0, 1);
+        Assert.assertEquals(GeometryBuffer.GeometryType.POLY, g.type);
+        Assert.assertEquals(8, g.index[0]);
+        Assert.assertEquals(6, g.index[1]);
+        Assert.assertEquals(longitudeToX(10), g.getPointX(1), 1e-6);
+        Assert.assertEquals(latitudeToY(4), g.getPointY(5), 1e-6);
+    }
+}
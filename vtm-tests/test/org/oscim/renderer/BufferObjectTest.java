@@ -0,0 +1,24 @@
+package org.oscim.renderer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferObjectTest {
+
+    @Test
+    public void shouldReuseNextSizeClass() {
+        Assert.assertEquals(0, BufferObject.sizeClass(0));
+
+        for (int size = 1; size < (1 << 20); size += 7) {
+            int c = BufferObject.sizeClass(size);
+
+            /* any size of the next class can load 'size' with bufferSubData */
+            int min = (1 << (c - 1)) + 1;
+            int max = 1 << c;
+            Assert.assertEquals(c + 1, BufferObject.sizeClass(min));
+            Assert.assertEquals(c + 1, BufferObject.sizeClass(max));
+            Assert.assertTrue(min > size && max < size * 4);
+        }
+        Assert.assertEquals(32, BufferObject.sizeClass(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,49 @@
+package org.oscim.renderer.bucket;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.utils.EarClipTessellator;
+import org.oscim.utils.ITessellator;
+import org.oscim.utils.Tessellator;
+
+public class MeshBucketTest {
+
+    private static GeometryBuffer circle(int numPoints) {
+        GeometryBuffer g = new GeometryBuffer(numPoints, 2);
+        g.startPolygon();
+        for (int i = 0; i < numPoints; i++) {
+            double a = 2 * Math.PI * i / numPoints;
+            g.addPoint((float) (10000 * Math.cos(a)), (float) (10000 * Math.sin(a)));
+        }
+        return g;
+    }
+
+    @Test
+    public void shouldNotExceedShortIndices() {
+        ITessellator tessellator = Tessellator.getTessellator();
+        Tessellator.setTessellator(new EarClipTessellator());
+        try {
+            MeshBucket bucket = new MeshBucket(0);
+            bucket.addMesh(circle(30000));
+            bucket.addMesh(circle(30000));
+            Assert.assertEquals(60000, bucket.numVertices);
+
+            /* would overflow the indices */
+            bucket.addMesh(circle(10000));
+            Assert.assertEquals(60000, bucket.numVertices);
+
+            bucket.addMesh(circle(5000));
+            Assert.assertEquals(65000, bucket.numVertices);
+
+            short[] ids = bucket.indiceItems.toArray();
+            Assert.assertEquals(3 * (65000 - 3 * 2), ids.length);
+            for (short id : ids)
+                Assert.assertTrue((id & 0xffff) < 65000);
+
+            bucket.clear();
+        } finally {
+            Tessellator.setTessellator(tessellator);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.oscim.tiling;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.layers.tile.MapTile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OverzoomTileDataSourceTest {
+
+    static class CountingDataSource implements ITileDataSource {
+        int queries;
+
+        @Override
+        public void query(MapTile tile, ITileDataSink sink) {
+            queries++;
+            MapElement e = new MapElement();
+            e.tags.add(new Tag("highway", "primary"));
+            e.startLine();
+            e.addPoint(-10, 100);
+            e.addPoint(500, 120);
+            e.setLabelPosition(200, 110);
+            sink.process(e);
+
+            e.clear();
+            e.tags.clear();
+            e.labelPosition = null;
+            e.tags.add(new Tag("natural", "water"));
+            e.startPolygon();
+            e.addPoint(10, 10);
+            e.addPoint(250, 10);
+            e.addPoint(250, 250);
+            e.addPoint(10, 250);
+            sink.process(e);
+
+            sink.completed(QueryResult.SUCCESS);
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    static class CollectingSink implements ITileDataSink {
+        final List<String> elements = new ArrayList<>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(element.toString() + element.labelPosition);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    @Test
+    public void shouldReuseDecodedParent() {
+        OverzoomTileCache cache = new OverzoomTileCache(4);
+        CountingDataSource source = new CountingDataSource();
+        OverzoomTileDataSource cached = new OverzoomTileDataSource(source, 16, cache);
+        OverzoomTileDataSource uncached = new OverzoomTileDataSource(new CountingDataSource(), 16);
+
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 4; y++) {
+                MapTile tile = new MapTile(x, y, 18);
+
+                CollectingSink expected = new CollectingSink();
+                uncached.query(tile, expected);
+
+                CollectingSink actual = new CollectingSink();
+                cached.query(tile, actual);
+
+                Assert.assertEquals(expected.elements, actual.elements);
+                Assert.assertEquals(QueryResult.SUCCESS, actual.result);
+            }
+        }
+
+        /* 16 tiles at z18 share one parent at z16 */
+        Assert.assertEquals(1, source.queries);
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(15, cache.getHitCount());
+    }
+}
@@ -0,0 +1,190 @@
+package org.oscim.tiling.cache;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+public class DiskTileCacheTest {
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("tilecache", "");
+        Assert.assertTrue(mDir.delete());
+        Assert.assertTrue(mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        mDir.delete();
+    }
+
+    private static byte[] data(int i, int length) {
+        byte[] data = new byte[length];
+        new Random(i).nextBytes(data);
+        return data;
+    }
+
+    private static Tile tile(int i) {
+        return new Tile(i, i / 3, (byte) 14);
+    }
+
+    private static void write(DiskTileCache cache, int i, int length) throws IOException {
+        TileWriter writer = cache.writeTile(tile(i));
+        writer.getOutputStream().write(data(i, length));
+        writer.complete(true);
+        cache.flush();
+    }
+
+    private static byte[] read(DiskTileCache cache, int i) throws IOException {
+        TileReader reader = cache.getTile(tile(i));
+        if (reader == null)
+            return null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream is = reader.getInputStream();
+        byte[] buf = new byte[1000];
+        for (int n; (n = is.read(buf)) > 0; )
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void shouldReadTilesAfterReopen() throws IOException {
+        DiskTileCache cache = new DiskTileCache(mDir, 1 << 20, 64 * 1024);
+        for (int i = 0; i < 50; i++)
+            write(cache, i, 1000 + i * 100);
+
+        TileWriter failed = cache.writeTile(tile(50));
+        failed.getOutputStream().write(1);
+        failed.complete(false);
+        cache.flush();
+
+        for (int i = 0; i < 50; i++)
+            Assert.assertArrayEquals(data(i, 1000 + i * 100), read(cache, i));
+        Assert.assertNull(read(cache, 50));
+        cache.dispose();
+
+        cache = new DiskTileCache(mDir, 1 << 20, 64 * 1024);
+        for (int i = 0; i < 50; i++)
+            Assert.assertArrayEquals(data(i, 1000 + i * 100), read(cache, i));
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldEvictOldestTiles() throws IOException {
+        int segmentSize = 64 * 1024;
+        DiskTileCache cache = new DiskTileCache(mDir, 4 * segmentSize, segmentSize);
+        for (int i = 0; i < 200; i++) {
+            write(cache, i, 4000);
+            /* keep tile 0 */
+            Assert.assertNotNull(read(cache, 0));
+        }
+        Assert.assertNull(read(cache, 1));
+        Assert.assertArrayEquals(data(199, 4000), read(cache, 199));
+
+        int segments = 0;
+        for (String name : mDir.list()) {
+            if (name.endsWith(PackSegment.SUFFIX))
+                segments++;
+        }
+        Assert.assertTrue(segments <= 5);
+
+        cache.setCacheSize(segmentSize);
+        cache.flush();
+        Assert.assertArrayEquals(data(0, 4000), read(cache, 0));
+        Assert.assertArrayEquals(data(199, 4000), read(cache, 199));
+        Assert.assertNull(read(cache, 150));
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldGrowIndexForSmallTiles() throws IOException {
+        DiskTileCache cache = new DiskTileCache(mDir, 1 << 20, 64 * 1024);
+        for (int i = 0; i < 5000; i++)
+            write(cache, i, 100);
+        for (int i = 0; i < 5000; i++)
+            Assert.assertArrayEquals(data(i, 100), read(cache, i));
+        cache.dispose();
+
+        cache = new DiskTileCache(mDir, 1 << 20, 64 * 1024);
+        for (int i = 0; i < 5000; i++)
+            Assert.assertArrayEquals(data(i, 100), read(cache, i));
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldGrowIndexForLargerCacheSize() throws IOException {
+        File index = new File(mDir, DiskTileCache.INDEX_FILE);
+        DiskTileCache cache = new DiskTileCache(mDir, 1 << 20, 64 * 1024);
+        for (int i = 0; i < 20; i++)
+            write(cache, i, 2000);
+        cache.dispose();
+        Assert.assertEquals(PackIndex.HEADER_SIZE + 4096L * PackIndex.SLOT_SIZE, index.length());
+
+        cache = new DiskTileCache(mDir, 64 << 20, 64 * 1024);
+        cache.flush();
+        Assert.assertEquals(PackIndex.HEADER_SIZE + 16384L * PackIndex.SLOT_SIZE, index.length());
+        for (int i = 0; i < 20; i++)
+            Assert.assertArrayEquals(data(i, 2000), read(cache, i));
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldRecoverAfterCrash() throws IOException {
+        DiskTileCache cache = new DiskTileCache(mDir, 1 << 20, 64 * 1024);
+        for (int i = 0; i < 20; i++)
+            write(cache, i, 2000);
+        cache.dispose();
+
+        /* not closed and a damaged record */
+        RandomAccessFile index = new RandomAccessFile(new File(mDir, DiskTileCache.INDEX_FILE), "rw");
+        index.seek(PackIndex.CLEAN);
+        index.writeInt(0);
+        index.close();
+
+        RandomAccessFile pack = new RandomAccessFile(PackSegment.getFile(mDir, 0), "rw");
+        int offset = PackSegment.HEADER_SIZE + 5 * (PackSegment.RECORD_HEADER_SIZE + 2000);
+        pack.seek(offset + PackSegment.RECORD_HEADER_SIZE + 100);
+        pack.writeByte(~data(5, 2000)[100]);
+        pack.close();
+
+        cache = new DiskTileCache(mDir, 1 << 20, 64 * 1024);
+        for (int i = 0; i < 20; i++) {
+            if (i == 5)
+                Assert.assertNull(read(cache, i));
+            else
+                Assert.assertArrayEquals(data(i, 2000), read(cache, i));
+        }
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldRejectSecondInstance() throws IOException {
+        DiskTileCache cache = new DiskTileCache(mDir, 1 << 20);
+        try {
+            new DiskTileCache(mDir, 1 << 20);
+            Assert.fail();
+        } catch (IOException e) {
+            /* expected */
+        } finally {
+            cache.dispose();
+        }
+    }
+}
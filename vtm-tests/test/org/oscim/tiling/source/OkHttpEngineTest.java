@@ -2,12 +2,14 @@ package org.oscim.tiling.source;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.oscim.core.Tile;
+import org.oscim.tiling.ITilePrefetcher;
 import org.oscim.tiling.source.oscimap4.OSciMap4TileSource;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
@@ -23,6 +25,9 @@ public class OkHttpEngineTest {
     private OkHttpEngine engine;
     private MockWebServer server;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setUp() throws Exception {
         MockResponse mockResponse = new MockResponse();
@@ -90,9 +95,79 @@ public class OkHttpEngineTest {
         assertThat(engine.requestCompleted(false)).isFalse();
     }
 
+    @Test
+    public void create_shouldShareClient() throws Exception {
+        server.enqueue(new MockResponse().setBody("SECOND"));
+        OkHttpEngine.OkHttpFactory factory = new OkHttpEngine.OkHttpFactory();
+        OSciMap4TileSource tileSource = new OSciMap4TileSource(server.url("/tiles/vtm").toString());
+
+        HttpEngine first = factory.create(tileSource);
+        first.sendRequest(new Tile(1, 2, (byte) 3));
+        new BufferedReader(new InputStreamReader(first.read())).readLine();
+        first.requestCompleted(true);
+
+        HttpEngine second = factory.create(tileSource);
+        second.sendRequest(new Tile(2, 2, (byte) 3));
+        new BufferedReader(new InputStreamReader(second.read())).readLine();
+        second.requestCompleted(true);
+
+        /* the connection of the first engine is reused */
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    public void sendRequest_shouldUsePrefetchedResponse() throws Exception {
+        OkHttpEngine.OkHttpFactory factory =
+                new OkHttpEngine.OkHttpFactory(new OkHttpClient.Builder(), 4);
+        HttpEngine engine = factory.create(new OSciMap4TileSource(server.url("/tiles/vtm").toString()));
+        assertThat(engine).isInstanceOf(ITilePrefetcher.class);
+
+        ((ITilePrefetcher) engine).prefetch(new Tile(1, 2, (byte) 3));
+        ((ITilePrefetcher) engine).prefetch(new Tile(1, 2, (byte) 3));
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getPath()).isEqualTo("/tiles/vtm/3/1/2.vtm");
+
+        engine.sendRequest(new Tile(1, 2, (byte) 3));
+        String response = new BufferedReader(new InputStreamReader(engine.read())).readLine();
+        assertThat(response).isEqualTo("TEST RESPONSE");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void close_shouldCancelPrefetchedCalls() throws Exception {
+        server.enqueue(new MockResponse().setBody("SECOND"));
+        OkHttpEngine.OkHttpFactory factory =
+                new OkHttpEngine.OkHttpFactory(new OkHttpClient.Builder(), 4);
+        HttpEngine engine = factory.create(new OSciMap4TileSource(server.url("/tiles/vtm").toString()));
+
+        ((ITilePrefetcher) engine).prefetch(new Tile(1, 2, (byte) 3));
+        server.takeRequest();
+        factory.close();
+        ((ITilePrefetcher) engine).prefetch(new Tile(2, 2, (byte) 3));
+
+        /* the request is sent again */
+        engine.sendRequest(new Tile(1, 2, (byte) 3));
+        assertThat(engine.read()).isNotNull();
+        assertThat(server.takeRequest().getPath()).isEqualTo("/tiles/vtm/3/1/2.vtm");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void getPrefetcher_shouldRequirePrefetchingEngine() throws Exception {
+        OSciMap4TileSource tileSource = new OSciMap4TileSource(server.url("/tiles/vtm").toString());
+        UrlTileDataSource dataSource = new UrlTileDataSource(tileSource, null, engine);
+        assertThat(dataSource.getPrefetcher()).isNull();
+
+        HttpEngine prefetching = new OkHttpEngine.OkHttpFactory(new OkHttpClient.Builder(), 4)
+                .create(tileSource);
+        dataSource = new UrlTileDataSource(tileSource, null, prefetching);
+        assertThat((Object) dataSource.getPrefetcher()).isSameAs(prefetching);
+    }
+
     @Test
     public void create_shouldUseTileSourceCache() throws Exception {
-        Cache cache = new Cache(new File("tmp"), 1024);
+        Cache cache = new Cache(folder.newFolder(), 1024);
         OSciMap4TileSource tileSource =
                 new OSciMap4TileSource(server.url("/tiles/vtm").toString());
         OkHttpClient.Builder builder = new OkHttpClient.Builder().cache(cache);
@@ -0,0 +1,59 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BlockCacheTest {
+
+    private static BlockCache.Block createBlock(int numPoints) {
+        MapElement e = new MapElement();
+        e.tags.add(new Tag("highway", "primary"));
+        e.startLine();
+        for (int i = 0; i < numPoints; i++)
+            e.addPoint(i, i);
+        e.setLabelPosition(1, 2);
+
+        List<BlockCache.Element> ways = new ArrayList<>();
+        ways.add(BlockCache.Element.way(e, (byte) 3, 0x8000));
+        return new BlockCache.Block(Collections.<BlockCache.Element>emptyList(), ways);
+    }
+
+    @Test
+    public void shouldRestoreElements() {
+        MapElement e = new MapElement();
+        createBlock(10).ways[0].get(e);
+
+        Assert.assertEquals(10, e.getNumPoints());
+        Assert.assertEquals(9f, e.getPointX(9), 0);
+        Assert.assertEquals("primary", e.tags.getValue("highway"));
+        Assert.assertEquals(2f, e.labelPosition.y, 0);
+        Assert.assertTrue(e.isLine());
+    }
+
+    @Test
+    public void shouldEvictByBytes() {
+        BlockCache.Block block = createBlock(100);
+        BlockCache cache = new BlockCache(block.bytes * 2);
+
+        cache.put(1, 1, 10, block);
+        cache.put(1, 2, 10, block);
+        Assert.assertSame(block, cache.get(1, 1, 10));
+
+        /* evicts block 2, which was used least recently */
+        cache.put(1, 3, 10, block);
+        Assert.assertEquals(2, cache.getBlockCount());
+        Assert.assertNull(cache.get(1, 2, 10));
+        Assert.assertNotNull(cache.get(1, 3, 10));
+        Assert.assertNull(cache.get(1, 3, 11));
+
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(block.bytes * 2, cache.getSize());
+    }
+}
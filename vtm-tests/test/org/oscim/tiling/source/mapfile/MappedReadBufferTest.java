@@ -0,0 +1,112 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+public class MappedReadBufferTest {
+
+    private static final int OFFSET = 17;
+    private static final int COUNT = 1000;
+
+    private static void writeUnsigned(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeSigned(ByteArrayOutputStream out, int value) {
+        int sign = value < 0 ? 0x40 : 0;
+        value = Math.abs(value);
+        while ((value & ~0x3f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value | sign);
+    }
+
+    private static File createFile(Random random) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < OFFSET; i++)
+            out.write(0xff);
+
+        for (int i = 0; i < COUNT; i++) {
+            int shift = random.nextInt(30);
+            writeUnsigned(out, random.nextInt(1 << shift) + (1 << shift));
+            writeSigned(out, random.nextInt(1 << shift) - (1 << (shift - 1 < 0 ? 0 : shift - 1)));
+            out.write(random.nextInt());
+            byte[] b = new byte[14];
+            random.nextBytes(b);
+            out.write(b, 0, b.length);
+            byte[] s = ("näme" + i).getBytes("UTF-8");
+            writeUnsigned(out, s.length);
+            out.write(s, 0, s.length);
+        }
+        File file = File.createTempFile("mapped", ".bin");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(out.toByteArray());
+        fos.close();
+        return file;
+    }
+
+    @Test
+    public void shouldDecodeLikeReadBuffer() throws IOException {
+        File file = createFile(new Random(42));
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        int length = (int) raf.length() - OFFSET;
+
+        ReadBuffer expected = new ReadBuffer(raf);
+        Assert.assertTrue(expected.readFromFile(OFFSET, length));
+
+        MappedReadBuffer actual = new MappedReadBuffer(new MappedFile(raf));
+        Assert.assertTrue(actual.readFromFile(OFFSET, length));
+        Assert.assertFalse(actual.readFromFile(OFFSET, length + 1));
+        Assert.assertTrue(actual.readFromFile(OFFSET, length));
+
+        for (int i = 0; i < COUNT; i++) {
+            Assert.assertEquals(expected.readUnsignedInt(), actual.readUnsignedInt());
+            Assert.assertEquals(expected.readSignedInt(), actual.readSignedInt());
+            Assert.assertEquals(expected.readByte(), actual.readByte());
+            Assert.assertEquals(expected.readShort(), actual.readShort());
+            Assert.assertEquals(expected.readInt(), actual.readInt());
+            Assert.assertEquals(expected.readLong(), actual.readLong());
+            Assert.assertEquals(expected.readUTF8EncodedString(), actual.readUTF8EncodedString());
+            Assert.assertEquals(expected.getBufferPosition(), actual.getBufferPosition());
+        }
+        Assert.assertEquals(length, actual.getBufferPosition());
+        raf.close();
+    }
+
+    @Test
+    public void shouldReadFromFilePosition() throws IOException {
+        File file = createFile(new Random(7));
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        ReadBuffer expected = new ReadBuffer(raf);
+        MappedReadBuffer actual = new MappedReadBuffer(new MappedFile(raf));
+
+        /* starts at the beginning of the file */
+        Assert.assertTrue(expected.readFromFile(OFFSET));
+        Assert.assertTrue(actual.readFromFile(OFFSET));
+        Assert.assertTrue(actual.readFromFile(OFFSET, 100));
+        Assert.assertTrue(expected.readFromFile(100));
+
+        /* continues after the previous block */
+        Assert.assertTrue(actual.readFromFile(100));
+        Assert.assertTrue(expected.readFromFile(100));
+        for (int i = 0; i < 25; i++)
+            Assert.assertEquals(expected.readInt(), actual.readInt());
+
+        Assert.assertFalse(actual.readFromFile((int) raf.length()));
+        raf.close();
+    }
+}
@@ -0,0 +1,34 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.Tag;
+
+public class TagTableTest {
+
+    @Test
+    public void shouldReuseTags() throws Exception {
+        TagTable table = new TagTable(Tag.KEY_NAME, 16) {
+            @Override
+            String decodeValue(String value) {
+                return value.toUpperCase();
+            }
+        };
+        byte[] data = "xxStraßeyyStraße".getBytes("UTF-8");
+        int length = "Straße".getBytes("UTF-8").length;
+
+        Tag t1 = table.get(data, 2, length);
+        Tag t2 = table.get(data, 4 + length, length);
+        Assert.assertSame(t1, t2);
+        Assert.assertEquals(Tag.KEY_NAME, t1.key);
+        Assert.assertEquals("STRASSE", t1.value);
+        Assert.assertEquals(1, table.getHitCount());
+        Assert.assertEquals(1, table.getMissCount());
+
+        Tag t3 = table.get(data, 0, length);
+        Assert.assertEquals("XXSTRA", t3.value.substring(0, 6));
+
+        table.clear();
+        Assert.assertNotSame(t1, table.get(data, 2, length));
+    }
+}
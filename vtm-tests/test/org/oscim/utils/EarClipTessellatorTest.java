@@ -0,0 +1,106 @@
+package org.oscim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.renderer.bucket.VertexData;
+
+public class EarClipTessellatorTest {
+
+    private final EarClipTessellator mTessellator = new EarClipTessellator();
+
+    private static double area(float[] points, short[] ids, boolean positive) {
+        double area = 0;
+        for (int i = 0; i < ids.length; i += 3) {
+            int a = ids[i] * 2, b = ids[i + 1] * 2, c = ids[i + 2] * 2;
+            double t = (points[b] - points[a]) * (points[c + 1] - points[a + 1])
+                    - (points[b + 1] - points[a + 1]) * (points[c] - points[a]);
+            Assert.assertEquals(positive, t > 0);
+            area += t / 2;
+        }
+        return Math.abs(area);
+    }
+
+    private short[] tessellate(float[] points, int[] index, int numRings) {
+        VertexData tris = new VertexData();
+        int n = mTessellator.tessellate(points, index, 0, numRings, tris);
+        short[] ids = tris.toArray();
+        tris.dispose();
+        Assert.assertEquals(n, ids.length);
+        return ids;
+    }
+
+    @Test
+    public void shouldKeepOrientation() {
+        float[] ccw = {0, 0, 10, 0, 10, 10, 0, 10};
+        short[] ids = tessellate(ccw, new int[]{8, -1}, 1);
+        Assert.assertEquals(6, ids.length);
+        Assert.assertEquals(100, area(ccw, ids, true), 1e-6);
+
+        float[] cw = {0, 0, 0, 10, 10, 10, 10, 0};
+        ids = tessellate(cw, new int[]{8, -1}, 1);
+        Assert.assertEquals(6, ids.length);
+        Assert.assertEquals(100, area(cw, ids, false), 1e-6);
+    }
+
+    @Test
+    public void shouldTessellateConcaveWithHole() {
+        float[] points = {
+                0, 0, 20, 0, 20, 20, 10, 10, 0, 20,
+                2, 2, 2, 6, 6, 6, 6, 2};
+        short[] ids = tessellate(points, new int[]{10, 8, -1}, 2);
+        Assert.assertEquals(300 - 16, area(points, ids, true), 1e-6);
+    }
+
+    @Test
+    public void shouldIgnoreInnerRingWithSameOrientation() {
+        float[] points = {
+                0, 0, 10, 0, 10, 10, 0, 10,
+                2, 2, 8, 2, 8, 8, 2, 8};
+        short[] ids = tessellate(points, new int[]{8, 8, -1}, 2);
+        Assert.assertEquals(100, area(points, ids, true), 1e-6);
+    }
+
+    @Test
+    public void shouldCountOnlyTessellatedRings() {
+        /* first ring is skipped, second polygon after 0 */
+        float[] points = {
+                1, 1, 2, 2,
+                0, 0, 10, 0, 10, 10, 0, 10,
+                20, 0, 30, 0, 30, 10};
+        short[] ids = tessellate(points, new int[]{4, 8, 0, 6, -1}, 4);
+        Assert.assertEquals(9, ids.length);
+
+        float[] tessellated = new float[points.length - 4];
+        System.arraycopy(points, 4, tessellated, 0, tessellated.length);
+        Assert.assertEquals(150, area(tessellated, ids, true), 1e-6);
+    }
+
+    @Test
+    public void shouldTessellateGeometryBuffer() {
+        ITessellator tessellator = Tessellator.getTessellator();
+        Tessellator.setTessellator(mTessellator);
+        try {
+            GeometryBuffer g = new GeometryBuffer(8, 2);
+            g.startPolygon();
+            g.addPoint(0, 0);
+            g.addPoint(10, 0);
+            g.addPoint(10, 10);
+            g.addPoint(5, 2);
+            g.addPoint(0, 10);
+
+            GeometryBuffer mesh = new GeometryBuffer(8, 2);
+            Assert.assertEquals(9, Tessellator.tessellate(g, mesh));
+            Assert.assertEquals(9, mesh.index.length);
+
+            /* extrusion: two vertices per point, one ring with odd number of points */
+            VertexData tris = new VertexData();
+            Assert.assertEquals(9, Tessellator.tessellate(g.points, 0, 10, g.index, 0, 1, 1, tris));
+            for (short id : tris.toArray())
+                Assert.assertTrue(id % 2 == 1 && id <= 9);
+            tris.dispose();
+        } finally {
+            Tessellator.setTessellator(tessellator);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.oscim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.Box;
+import org.oscim.utils.SpatialIndex.SearchCb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class PackedRTreeTest {
+    static final Random rand = new Random((long) (Math.PI * 10000000));
+
+    public class Item {
+        final int val;
+        final Box bbox;
+
+        Item(Box bbox, int val) {
+            this.val = val;
+            this.bbox = new Box(bbox);
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(val) + ' ' + bbox;
+        }
+    }
+
+    ArrayList<Item> fillRandomTree(SpatialIndex<Item> q, int numItems) {
+        Box box = new Box();
+        ArrayList<Item> items = new ArrayList<Item>(numItems + 16);
+
+        for (int i = 0; i < numItems; i++) {
+            box.xmin = (int) (rand.nextDouble() * 10000 - 5000);
+            box.ymin = (int) (rand.nextDouble() * 10000 - 5000);
+            box.xmax = (int) (box.xmin + rand.nextDouble() * 500);
+            box.ymax = (int) (box.ymin + rand.nextDouble() * 500);
+
+            Item it = new Item(box, i);
+            q.insert(box, it);
+
+            items.add(it);
+        }
+        return items;
+    }
+
+    private static HashSet<Item> bruteForce(List<Item> items, Box bbox) {
+        HashSet<Item> result = new HashSet<Item>();
+        for (Item it : items) {
+            if (it.bbox.overlap(bbox))
+                result.add(it);
+        }
+        return result;
+    }
+
+    @Test
+    public void shouldFindOverlapping() {
+        PackedRTree<Item> q = new PackedRTree<Item>();
+        List<Item> items = fillRandomTree(q, 10000);
+        Assert.assertEquals(10000, q.size());
+
+        List<Item> results = new ArrayList<Item>();
+        for (int i = 0; i < 1000; i++) {
+            Item it = items.get(i);
+            results.clear();
+            q.search(it.bbox, results);
+            Assert.assertEquals(bruteForce(items, it.bbox), new HashSet<Item>(results));
+        }
+    }
+
+    @Test
+    public void shouldStopSearch() {
+        PackedRTree<Item> q = new PackedRTree<Item>();
+        List<Item> items = fillRandomTree(q, 1000);
+
+        final int[] matched = {0};
+        for (Item it : items) {
+            boolean finished = q.search(it.bbox, new SearchCb<Item>() {
+                @Override
+                public boolean call(Item item, Object context) {
+                    if (context == item) {
+                        matched[0]++;
+                        return false;
+                    }
+                    return true;
+                }
+            }, it);
+            Assert.assertFalse(finished);
+        }
+        Assert.assertEquals(1000, matched[0]);
+    }
+
+    @Test
+    public void shouldRebuildOnChanges() {
+        PackedRTree<Item> q = new PackedRTree<Item>();
+        List<Item> items = fillRandomTree(q, 1000);
+        Box all = new Box(-10000, -10000, 10000, 10000);
+        Assert.assertEquals(1000, q.search(all, new ArrayList<Item>()).size());
+
+        for (int i = 0; i < 500; i++)
+            Assert.assertTrue(q.remove(items.get(i).bbox, items.get(i)));
+        Assert.assertFalse(q.remove(items.get(0).bbox, items.get(0)));
+
+        List<Item> rest = items.subList(500, 1000);
+        Assert.assertEquals(new HashSet<Item>(rest),
+                new HashSet<Item>(q.search(all, new ArrayList<Item>())));
+
+        Box box = items.get(600).bbox;
+        Assert.assertEquals(bruteForce(rest, box),
+                new HashSet<Item>(q.search(box, new ArrayList<Item>())));
+
+        q.clear();
+        Assert.assertEquals(0, q.size());
+        Assert.assertTrue(q.search(all, new ArrayList<Item>()).isEmpty());
+
+        Item it = new Item(new Box(0, 0, 1, 1), 1);
+        q.insert(it.bbox, it);
+        Assert.assertEquals(1, q.search(all, new ArrayList<Item>()).size());
+        Assert.assertTrue(q.search(new Box(2, 2, 3, 3), new ArrayList<Item>()).isEmpty());
+    }
+
+    @Test
+    public void shouldFindNearest() {
+        PackedRTree<Item> q = new PackedRTree<Item>();
+        List<Item> items = fillRandomTree(q, 5000);
+
+        for (int i = 0; i < 100; i++) {
+            final double x = rand.nextDouble() * 12000 - 6000;
+            final double y = rand.nextDouble() * 12000 - 6000;
+
+            List<Item> nearest = q.searchNearest(x, y, 10, Double.MAX_VALUE, null);
+            Assert.assertEquals(10, nearest.size());
+
+            List<Item> sorted = new ArrayList<Item>(items);
+            Collections.sort(sorted, new Comparator<Item>() {
+                @Override
+                public int compare(Item a, Item b) {
+                    return Double.compare(distance(a.bbox, x, y), distance(b.bbox, x, y));
+                }
+            });
+            for (int j = 0; j < 10; j++)
+                Assert.assertEquals(distance(sorted.get(j).bbox, x, y),
+                        distance(nearest.get(j).bbox, x, y), 1e-9);
+
+            double max = distance(sorted.get(3).bbox, x, y) + 1e-6;
+            List<Item> within = q.searchNearest(x, y, 10, max, null);
+            for (Item it : within)
+                Assert.assertTrue(distance(it.bbox, x, y) <= max);
+            Assert.assertTrue(within.size() >= 4);
+        }
+    }
+
+    private static double distance(Box b, double x, double y) {
+        double dx = Math.max(Math.max(b.xmin - x, 0), x - b.xmax);
+        double dy = Math.max(Math.max(b.ymin - y, 0), y - b.ymax);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
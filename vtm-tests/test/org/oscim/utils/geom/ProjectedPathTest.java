@@ -0,0 +1,85 @@
+package org.oscim.utils.geom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ProjectedPathTest {
+
+    private static final int N = ProjectedPath.BLOCK_SIZE;
+
+    private static ProjectedPath randomPath(int size, float[] points) {
+        Random random = new Random(42);
+        ProjectedPath path = new ProjectedPath();
+        float x = 0, y = 0;
+        for (int i = 0; i < size; i++) {
+            x += random.nextInt(20) - 5;
+            y += random.nextInt(20) - 10;
+            points[i * 2] = x;
+            points[i * 2 + 1] = y;
+            path.add(x, y);
+        }
+        return path;
+    }
+
+    @Test
+    public void shouldSimplifyLikeDouglasPeucker() {
+        float[] points = new float[(N + 1) * 2];
+        ProjectedPath path = randomPath(N + 1, points);
+
+        SimplifyDP simplifyDP = new SimplifyDP();
+        for (float sqTolerance : new float[]{0.5f, 4, 25, 200}) {
+            float[] expected = points.clone();
+            int end = simplifyDP.simplify(expected, 0, expected.length, 0, sqTolerance);
+
+            int pos = 0;
+            for (int i = 0; i < path.size(); i++) {
+                if (path.getTolerance(i) <= sqTolerance)
+                    continue;
+                Assert.assertEquals(expected[pos++], path.getX(i), 0);
+                Assert.assertEquals(expected[pos++], path.getY(i), 0);
+            }
+            Assert.assertEquals(end, pos);
+        }
+    }
+
+    @Test
+    public void shouldKeepBlockEndsAndLastBlock() {
+        int size = N * 2 + 10;
+        ProjectedPath path = randomPath(size, new float[size * 2]);
+
+        Assert.assertEquals(3, path.getBlockCount());
+        Assert.assertEquals(N, path.getBlockEnd(0));
+        Assert.assertEquals(N, path.getBlockStart(1));
+        Assert.assertEquals(size - 1, path.getBlockEnd(2));
+
+        Assert.assertEquals(Float.MAX_VALUE, path.getTolerance(0), 0);
+        Assert.assertEquals(Float.MAX_VALUE, path.getTolerance(N), 0);
+        Assert.assertEquals(Float.MAX_VALUE, path.getTolerance(N * 2), 0);
+        for (int i = N * 2; i < size; i++)
+            Assert.assertEquals(Float.MAX_VALUE, path.getTolerance(i), 0);
+    }
+
+    @Test
+    public void shouldCullBlocks() {
+        ProjectedPath path = new ProjectedPath();
+        for (int i = 0; i <= N * 2; i++)
+            path.add(i, 0);
+
+        Assert.assertTrue(path.intersects(0, -1, -1, 0, 1));
+        Assert.assertFalse(path.intersects(1, -1, -1, 0, 1));
+        Assert.assertTrue(path.intersects(0, N, 0, N, 0));
+        Assert.assertTrue(path.intersects(1, N, 0, N, 0));
+        Assert.assertFalse(path.intersects(0, N + 1, -1, N * 3, 1));
+        Assert.assertFalse(path.intersects(1, 0, 1, N * 3, 2));
+
+        path.clear();
+        Assert.assertEquals(0, path.getBlockCount());
+        path.add(0, 0);
+        Assert.assertEquals(0, path.getBlockCount());
+        path.add(1, 1);
+        Assert.assertEquals(1, path.getBlockCount());
+        Assert.assertFalse(path.intersects(0, 2, 2, 3, 3));
+    }
+}
@@ -21,6 +21,7 @@ import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.MapElement;
 import org.oscim.renderer.MapRenderer;
 import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITilePrefetcher;
 import org.oscim.tiling.QueryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +45,13 @@ public abstract class TileLoader implements ITileDataSink {
 
     protected abstract boolean loadTile(MapTile tile);
 
+    /**
+     * Tiles are not prefetched.
+     */
+    protected ITilePrefetcher getPrefetcher() {
+        return null;
+    }
+
     boolean isInterrupted;
 
     public void finish() {
@@ -16,6 +16,16 @@ import org.slf4j.LoggerFactory;
 public class Tessellator {
     static final Logger log = LoggerFactory.getLogger(Tessellator.class);
 
+    /**
+     * The JavaScript tessellator is used on the web.
+     */
+    public static ITessellator getTessellator() {
+        return null;
+    }
+
+    public static void setTessellator(ITessellator tessellator) {
+    }
+
     public static int tessellate(GeometryBuffer geom, float scale,
                                  VertexData outPoints, VertexData outTris, int vertexOffset) {
 
@@ -57,7 +57,8 @@ public class MapElement extends GeometryBuffer {
     public MapElement(MapElement element) {
         super(element);
         this.tags.set(element.tags.asArray());
-        this.labelPosition = element.labelPosition;
+        if (element.labelPosition != null)
+            this.labelPosition = new PointF(element.labelPosition.x, element.labelPosition.y);
         this.setLayer(element.layer);
     }
 
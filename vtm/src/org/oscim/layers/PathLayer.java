@@ -5,7 +5,7 @@
  * Copyright 2016 Bezzu
  * Copyright 2016 Pedinel
  * Copyright 2017 Andrey Novikov
- * Copyright 2018 Gustl22
+ * Copyright 2018-2019 Gustl22
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -44,6 +44,7 @@ import org.oscim.utils.FastMath;
 import org.oscim.utils.GeoPointUtils;
 import org.oscim.utils.async.SimpleWorker;
 import org.oscim.utils.geom.LineClipper;
+import org.oscim.utils.geom.ProjectedPath;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -56,10 +57,20 @@ public class PathLayer extends Layer implements GestureListener {
 
     private static final int STROKE_MIN_ZOOM = 12;
 
+    /**
+     * Maximum distance in pixels of skipped points to the simplified line.
+     */
+    public static float SIMPLIFY_TOLERANCE = 0.5f;
+
     /**
      * Stores points, converted to the map projection.
      */
     protected final ArrayList<GeoPoint> mPoints;
+
+    /**
+     * Set to project all points again, otherwise only appended points are
+     * projected.
+     */
     protected boolean mUpdatePoints;
 
     private final Point mPoint1 = new Point();
@@ -99,42 +110,50 @@ public class PathLayer extends Layer implements GestureListener {
 
         synchronized (mPoints) {
             mPoints.clear();
+            mUpdatePoints = true;
         }
-        updatePoints();
+        mWorker.submit(10);
     }
 
     public void setPoints(Collection<? extends GeoPoint> pts) {
         synchronized (mPoints) {
             mPoints.clear();
             mPoints.addAll(pts);
+            mUpdatePoints = true;
         }
-        updatePoints();
+        mWorker.submit(10);
     }
 
     public void addPoint(GeoPoint pt) {
         synchronized (mPoints) {
             mPoints.add(pt);
         }
-        updatePoints();
+        mWorker.submit(10);
     }
 
     public void addPoint(int latitudeE6, int longitudeE6) {
         synchronized (mPoints) {
             mPoints.add(new GeoPoint(latitudeE6, longitudeE6));
         }
-        updatePoints();
+        mWorker.submit(10);
     }
 
     public void addPoints(Collection<? extends GeoPoint> pts) {
         synchronized (mPoints) {
             mPoints.addAll(pts);
         }
-        updatePoints();
+        mWorker.submit(10);
     }
 
-    private void updatePoints() {
+    /**
+     * Project all points again, e.g. after they were modified via
+     * {@link #getPoints()}. Added points are projected incrementally.
+     */
+    public void updatePoints() {
+        synchronized (mPoints) {
+            mUpdatePoints = true;
+        }
         mWorker.submit(10);
-        mUpdatePoints = true;
     }
 
     public List<GeoPoint> getPoints() {
@@ -275,54 +294,48 @@ public class PathLayer extends Layer implements GestureListener {
         private static final int MIN_DIST = 3;
 
         // pre-projected points
-        private double[] mPreprojected = new double[2];
+        private final ProjectedPath mPreprojected = new ProjectedPath();
+        private boolean mGeomPath;
 
         // projected points
         private float[] mPPoints;
         private final LineClipper mClipper;
-        private int mNumPoints;
 
         @Override
         public boolean doWork(Task task) {
 
-            int size = mNumPoints;
-
-            if (mUpdatePoints) {
-                synchronized (mPoints) {
-                    mUpdatePoints = false;
-                    mNumPoints = size = mPoints.size();
-
-                    ArrayList<GeoPoint> geopoints = mPoints;
-                    double[] points = mPreprojected;
-
-                    if (size * 2 >= points.length) {
-                        points = mPreprojected = new double[size * 2];
-                        mPPoints = new float[size * 2];
-                    }
+            ProjectedPath path = mPreprojected;
 
-                    for (int i = 0; i < size; i++)
-                        MercatorProjection.project(geopoints.get(i), points, i);
-                }
-
-            } else if (mGeom != null) {
+            if (mGeom != null) {
                 GeometryBuffer geom = mGeom;
                 mGeom = null;
-                size = geom.index[0];
-
-                double[] points = mPreprojected;
-
-                if (size > points.length) {
-                    points = mPreprojected = new double[size * 2];
-                    mPPoints = new float[size * 2];
-                }
+                int size = geom.index[0];
 
+                path.clear();
                 for (int i = 0; i < size; i += 2)
-                    MercatorProjection.project(geom.points[i + 1],
-                            geom.points[i], points,
-                            i >> 1);
-                mNumPoints = size = size >> 1;
-
+                    path.add(MercatorProjection.longitudeToX(geom.points[i]),
+                            MercatorProjection.latitudeToY(geom.points[i + 1]));
+                mGeomPath = true;
+            } else {
+                synchronized (mPoints) {
+                    int size = mPoints.size();
+                    /* only project appended points */
+                    if (mUpdatePoints || (mGeomPath ? size > 0 : size < path.size())) {
+                        mUpdatePoints = false;
+                        mGeomPath = false;
+                        path.clear();
+                    }
+                    if (!mGeomPath) {
+                        for (int i = path.size(); i < size; i++) {
+                            GeoPoint p = mPoints.get(i);
+                            path.add(MercatorProjection.longitudeToX(p.getLongitude()),
+                                    MercatorProjection.latitudeToY(p.getLatitude()));
+                        }
+                    }
+                }
             }
+
+            int size = path.size();
             if (size == 0) {
                 if (task.buckets.get() != null) {
                     task.buckets.clear();
@@ -352,83 +365,112 @@ public class PathLayer extends Layer implements GestureListener {
             double my = task.position.y;
             double scale = Tile.SIZE * task.position.scale;
 
+            /* skip points which are closer than SIMPLIFY_TOLERANCE pixels
+             * to the simplified line */
+            double tolerance = SIMPLIFY_TOLERANCE / scale;
+            float sqTolerance = (float) (tolerance * tolerance);
+
+            /* skip blocks outside of the clip region */
+            double clip = MAX_CLIP / scale;
+
             // flip around dateline
             int flip = 0;
             int maxx = Tile.SIZE << (zoomlevel - 1);
 
-            int x = (int) ((mPreprojected[0] - mx) * scale);
-            int y = (int) ((mPreprojected[1] - my) * scale);
-
-            if (x > maxx) {
-                x -= (maxx * 2);
-                flip = -1;
-            } else if (x < -maxx) {
-                x += (maxx * 2);
-                flip = 1;
-            }
-
-            mClipper.clipStart(x, y);
+            if (size * 2 > mPPoints.length)
+                mPPoints = new float[size * 2];
 
             float[] projected = mPPoints;
-            int i = addPoint(projected, 0, x, y);
+            int i = 0;
 
-            float prevX = x;
-            float prevY = y;
+            float prevX = 0;
+            float prevY = 0;
 
             float[] segment = null;
+            boolean start = true;
 
-            for (int j = 2; j < size * 2; j += 2) {
-                x = (int) ((mPreprojected[j + 0] - mx) * scale);
-                y = (int) ((mPreprojected[j + 1] - my) * scale);
-
-                int flipDirection = 0;
-                if (x > maxx) {
-                    x -= maxx * 2;
-                    flipDirection = -1;
-                } else if (x < -maxx) {
-                    x += maxx * 2;
-                    flipDirection = 1;
-                }
+            double[] points = path.getPoints();
 
-                if (flip != flipDirection) {
-                    flip = flipDirection;
+            for (int b = 0, n = path.getBlockCount(); b < n; b++) {
+                if (!isVisible(path, b, mx, my, clip)) {
                     if (i > 2)
                         ll.addLine(projected, i, false);
-
-                    mClipper.clipStart(x, y);
-                    i = addPoint(projected, 0, x, y);
+                    i = 0;
+                    start = true;
                     continue;
                 }
 
-                int clip = mClipper.clipNext(x, y);
-                if (clip != LineClipper.INSIDE) {
-                    if (i > 2)
-                        ll.addLine(projected, i, false);
+                int last = path.getBlockEnd(b);
+                int j = path.getBlockStart(b);
+                if (!start)
+                    j++;
+
+                for (; j <= last; j++) {
+                    if (path.getTolerance(j) <= sqTolerance)
+                        continue;
+
+                    int x = (int) ((points[j * 2 + 0] - mx) * scale);
+                    int y = (int) ((points[j * 2 + 1] - my) * scale);
+
+                    int flipDirection = 0;
+                    if (x > maxx) {
+                        x -= maxx * 2;
+                        flipDirection = -1;
+                    } else if (x < -maxx) {
+                        x += maxx * 2;
+                        flipDirection = 1;
+                    }
 
-                    if (clip == LineClipper.INTERSECTION) {
-                        /* add line segment */
-                        segment = mClipper.getLine(segment, 0);
-                        ll.addLine(segment, 4, false);
-                        // the prev point is the real point not the clipped point
-                        //prevX = mClipper.outX2;
-                        //prevY = mClipper.outY2;
+                    if (start) {
+                        start = false;
+                        flip = flipDirection;
+                        mClipper.clipStart(x, y);
+                        i = addPoint(projected, 0, x, y);
                         prevX = x;
                         prevY = y;
+                        continue;
                     }
-                    i = 0;
-                    // if the end point is inside, add it
-                    if (mClipper.getPrevOutcode() == LineClipper.INSIDE) {
-                        projected[i++] = prevX;
-                        projected[i++] = prevY;
+
+                    if (flip != flipDirection) {
+                        flip = flipDirection;
+                        if (i > 2)
+                            ll.addLine(projected, i, false);
+
+                        mClipper.clipStart(x, y);
+                        i = addPoint(projected, 0, x, y);
+                        continue;
+                    }
+
+                    int clipCode = mClipper.clipNext(x, y);
+                    if (clipCode != LineClipper.INSIDE) {
+                        if (i > 2)
+                            ll.addLine(projected, i, false);
+
+                        if (clipCode == LineClipper.INTERSECTION) {
+                            /* add line segment */
+                            segment = mClipper.getLine(segment, 0);
+                            ll.addLine(segment, 4, false);
+                            // the prev point is the real point not the clipped point
+                            //prevX = mClipper.outX2;
+                            //prevY = mClipper.outY2;
+                            prevX = x;
+                            prevY = y;
+                        }
+                        i = 0;
+                        // if the end point is inside, add it
+                        if (mClipper.getPrevOutcode() == LineClipper.INSIDE) {
+                            projected[i++] = prevX;
+                            projected[i++] = prevY;
+                        }
+                        continue;
                     }
-                    continue;
-                }
 
-                float dx = x - prevX;
-                float dy = y - prevY;
-                if ((i == 0) || FastMath.absMaxCmp(dx, dy, MIN_DIST)) {
-                    projected[i++] = prevX = x;
-                    projected[i++] = prevY = y;
+                    float dx = x - prevX;
+                    float dy = y - prevY;
+                    if ((i == 0) || FastMath.absMaxCmp(dx, dy, MIN_DIST)) {
+                        projected[i++] = prevX = x;
+                        projected[i++] = prevY = y;
+                    }
                 }
             }
             if (i > 2)
@@ -440,6 +482,19 @@ public class PathLayer extends Layer implements GestureListener {
             return true;
         }
 
+        /**
+         * @return true if block b may intersect the clip region around mx, my,
+         * also when wrapped around the dateline.
+         */
+        private boolean isVisible(ProjectedPath path, int b, double mx, double my, double clip) {
+            if (clip >= 0.5)
+                return path.intersects(b, 0, my - clip, 1, my + clip);
+
+            return path.intersects(b, mx - clip, my - clip, mx + clip, my + clip)
+                    || path.intersects(b, mx - clip - 1, my - clip, mx + clip - 1, my + clip)
+                    || path.intersects(b, mx - clip + 1, my - clip, mx + clip + 1, my + clip);
+        }
+
         @Override
         public void cleanup(Task task) {
             task.buckets.clear();
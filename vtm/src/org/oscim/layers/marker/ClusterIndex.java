@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import org.oscim.core.Tile;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical clustering of points for all zoom levels, like supercluster.
+ * <p/>
+ * The clusters of a zoom level are created from the clusters of the next
+ * higher zoom level: each cluster absorbs the unvisited clusters within the
+ * radius, the new cluster is placed at their weighted center. Every level is
+ * stored in a static KD-tree, so the clusters in view are found in
+ * O(log n + k). Levels without new clusters share the arrays of the higher
+ * level.
+ */
+class ClusterIndex {
+
+    static final int MAX_ZOOM = 22;
+
+    /* levels[z] for zoom z, levels[MAX_ZOOM + 1] holds the points */
+    private final Level[] mLevels = new Level[MAX_ZOOM + 2];
+
+    /**
+     * @param x           map x of the points
+     * @param y           map y of the points
+     * @param clusterable false for points which must not be clustered
+     * @param n           the number of points
+     * @param radius      the cluster radius in pixels
+     */
+    ClusterIndex(double[] x, double[] y, boolean[] clusterable, int n, double radius) {
+        int[] ids = new int[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+            counts[i] = 1;
+        }
+        Level level = new Level(Arrays.copyOf(x, n), Arrays.copyOf(y, n), ids, counts, n);
+        mLevels[MAX_ZOOM + 1] = level;
+
+        boolean[] visited = new boolean[n];
+        PointIndex.Found found = new PointIndex.Found();
+
+        for (int z = MAX_ZOOM; z >= 0; z--) {
+            double r = radius / ((long) Tile.SIZE << z);
+            mLevels[z] = level = cluster(level, clusterable, r, visited, found);
+        }
+    }
+
+    private static Level cluster(Level prev, boolean[] clusterable, double r,
+                                 boolean[] visited, PointIndex.Found found) {
+        int n = prev.size;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        int[] ids = new int[n];
+        int[] counts = new int[n];
+        int size = 0;
+
+        Arrays.fill(visited, 0, n, false);
+
+        for (int i = 0; i < n; i++) {
+            if (visited[i])
+                continue;
+            visited[i] = true;
+
+            int count = prev.counts[i];
+            double wx = prev.x[i] * count;
+            double wy = prev.y[i] * count;
+
+            if (clusterable[prev.ids[i]]) {
+                prev.within(prev.x[i], prev.y[i], r, found);
+                for (int k = 0; k < found.size; k++) {
+                    int j = found.items[k];
+                    if (visited[j] || !clusterable[prev.ids[j]])
+                        continue;
+                    visited[j] = true;
+                    int c = prev.counts[j];
+                    wx += prev.x[j] * c;
+                    wy += prev.y[j] * c;
+                    count += c;
+                }
+            }
+
+            x[size] = wx / count;
+            y[size] = wy / count;
+            ids[size] = prev.ids[i];
+            counts[size] = count;
+            size++;
+        }
+
+        /* nothing clustered */
+        if (size == n)
+            return prev;
+
+        return new Level(x, y, ids, counts, size);
+    }
+
+    /**
+     * @return the clusters of the zoom level. Zoom levels above
+     * {@link #MAX_ZOOM} return the unclustered points.
+     */
+    Level getLevel(int zoomLevel) {
+        return mLevels[Math.max(0, Math.min(zoomLevel, MAX_ZOOM + 1))];
+    }
+
+    /**
+     * The clusters of a zoom level, sorted as KD-tree.
+     */
+    static final class Level extends PointIndex {
+        /* the number of points in the cluster */
+        final int[] counts;
+
+        Level(double[] x, double[] y, int[] ids, int[] counts, int size) {
+            super(x, y, ids, size);
+            this.counts = counts;
+            sort();
+        }
+
+        @Override
+        void swap(int i, int j) {
+            super.swap(i, j);
+            int t = counts[i];
+            counts[i] = counts[j];
+            counts[j] = t;
+        }
+    }
+}
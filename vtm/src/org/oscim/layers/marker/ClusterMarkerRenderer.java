@@ -5,6 +5,7 @@
  * Copyright 2017-2018 devemux86
  * Copyright 2017 nebular
  * Copyright 2017 Wolfgang Schramm
+ * Copyright 2019 Gustl22
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -26,12 +27,12 @@ import org.oscim.core.MercatorProjection;
 import org.oscim.core.PointF;
 import org.oscim.core.Tile;
 import org.oscim.layers.marker.utils.ScreenUtils;
-import org.oscim.layers.marker.utils.SparseIntArray;
 import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.bucket.SymbolItem;
-import org.oscim.utils.FastMath;
 import org.oscim.utils.geom.GeometryUtils;
 
+import java.util.Arrays;
+
 /**
  * An extension to the MarkerRenderer with item clustering support.
  */
@@ -71,20 +72,21 @@ public class ClusterMarkerRenderer extends MarkerRenderer {
     protected int mStyleBackground = CLUSTER_COLORBACK, mStyleForeground = CLUSTER_COLORTEXT;
 
     /**
-     * Discrete scale step, used to trigger reclustering on significant scale change
+     * The clusters of all zoom levels, built on populate().
      */
-    private int mScalePow = 0;
+    private ClusterIndex mIndex;
 
     /**
-     * Map scale to cluster the marker
+     * Incremented on populate() to drop the results of outdated builds
      */
-    private double mClusterScale = 0;
+    private int mPopulateCount;
+
+    private final PointIndex.Found mFound = new PointIndex.Found();
 
     /**
-     * We use a flat Sparse array to calculate the clusters. The sparse array models a 2D map where every (x,y) denotes
-     * a grid slot, ie. 64x64dp. For efficiency I use a linear sparsearray with ARRindex = SLOTypos * max_x + SLOTxpos"
+     * The visible clusters and items of the last update
      */
-    private SparseIntArray mGridMap = new SparseIntArray(200); // initial space for 200 markers, that's not a lot of memory, and in most cases will avoid resizing the array
+    private InternalItem.Clustered[] mVisible = new InternalItem.Clustered[0];
 
     /**
      * Whether to enable clustering or disable the functionality
@@ -125,112 +127,60 @@ public class ClusterMarkerRenderer extends MarkerRenderer {
         mStyleForeground = foregroundColor;
     }
 
-    @Override
-    protected void populate(int size) {
-        repopulateCluster(size, mClusterScale);
-    }
-
     /**
-     * Repopulates item list clustering close markers. This is triggered from update() when
-     * a significant change in scale has happened.
+     * Creates the items and builds the cluster index of all zoom levels in
+     * the background, so zooming and panning only query the index.
      *
-     * @param size  Item list size
-     * @param scale current map scale
+     * @param size Item list size
      */
-    private void repopulateCluster(int size, double scale) {
-        /* the grid slot size in px. increase to group more aggressively. currently set to marker size */
-        final int GRIDSIZE = ScreenUtils.getPixels(MAP_GRID_SIZE_DP);
-
-		/* the factor to map into Grid Coordinates (discrete squares of GRIDSIZE x GRIDSIZE) */
-        final double factor = (scale / GRIDSIZE);
-
-        InternalItem.Clustered[] tmp = new InternalItem.Clustered[size];
-
-        // clear grid map to count items that share the same "grid slot"
-        mGridMap.clear();
+    @Override
+    protected void populate(int size) {
+        final InternalItem.Clustered[] tmp = new InternalItem.Clustered[size];
+        final double[] px = new double[size];
+        final double[] py = new double[size];
+        final boolean[] clusterable = new boolean[size];
 
         for (int i = 0; i < size; i++) {
             InternalItem.Clustered it = tmp[i] = new InternalItem.Clustered();
 
             it.item = mMarkerLayer.createItem(i);
 
-			/* pre-project points */
+            /* pre-project points */
             MercatorProjection.project(it.item.getPoint(), mMapPoint);
-            it.px = mMapPoint.x;
-            it.py = mMapPoint.y;
+            px[i] = it.px = mMapPoint.x;
+            py[i] = it.py = mMapPoint.y;
 
             // items can be declared non-clusterable
-            if (!(it.item instanceof MarkerItem.NonClusterable)) {
-
-                final int
-                        absposx = (int) (it.px * factor),             // absolute item X position in the grid
-                        absposy = (int) (it.py * factor),             // absolute item Y position
-                        maxcols = (int) factor,                       // Grid number of columns
-                        itemGridIndex = absposx + absposy * maxcols;  // Index in the sparsearray map
-
-                // we store in the linear sparsearray the index of the marker,
-                // ie, index = y * maxcols + x; array[index} = markerIndex
-
-                // Lets check if there's already an item in the grid slot
-                final int storedIndexInGridSlot = mGridMap.get(itemGridIndex, -1);
-
-                if (storedIndexInGridSlot == -1) {
-                    // no item at that grid position. The grid slot is free so let's
-                    // store this item "i" (we identify every item by its InternalItem index)
-
-                    mGridMap.put(itemGridIndex, i);
-                    //Log.v(TAG, "UNclustered item at " + itemGridIndex);
-                } else {
-                    // at that grid position there's already a marker index
-                    // mark this item as clustered out, so it will be skipped in the update() call
+            clusterable[i] = mClusteringEnabled && !(it.item instanceof MarkerItem.NonClusterable);
+        }
 
-                    it.clusteredOut = true;
+        final int populateCount;
+        synchronized (this) {
+            populateCount = ++mPopulateCount;
+        }
 
-                    // and increment the count on its "parent" that will from now on act as a cluster
-                    tmp[storedIndexInGridSlot].clusterSize++;
+        /* the cluster radius in px. increase to group more aggressively. currently set to marker size */
+        final int radius = ScreenUtils.getPixels(MAP_GRID_SIZE_DP);
 
-                    //Log.v(TAG, "Clustered item at " + itemGridIndex + ", \'parent\' size " + (tmp[storedIndexInGridSlot].clusterSize));
+        mMarkerLayer.map().addTask(new Runnable() {
+            @Override
+            public void run() {
+                ClusterIndex index = new ClusterIndex(px, py, clusterable, tmp.length, radius);
+
+                synchronized (ClusterMarkerRenderer.this) {
+                    if (populateCount != mPopulateCount)
+                        return;
+                    mIndex = index;
+                    mItems = tmp;
+                    mUpdate = true;
                 }
+                mMarkerLayer.map().render();
             }
-        }
-
-        /* All ready for update. */
-        synchronized (this) {
-            mUpdate = true;
-            mItems = tmp;
-        }
+        });
     }
 
     @Override
     public synchronized void update(GLViewport v) {
-        final double scale = Tile.SIZE * v.pos.scale;
-
-        if (mClusteringEnabled) {
-            /*
-              Clustering check: If clustering is enabled and there's been a significant scale change
-              trigger repopulation and return. After repopulation, this will be called again
-             */
-
-            // (int) log of scale gives us adequate steps to trigger clustering
-            int scalePow = FastMath.log2((int) scale);
-
-            if (scalePow != mScalePow) {
-                mScalePow = scalePow;
-                mClusterScale = scale;
-
-                // post repopulation to the main thread
-                mMarkerLayer.map().post(new Runnable() {
-                    @Override
-                    public void run() {
-                        repopulateCluster(mItems.length, scale);
-                    }
-                });
-
-                // and get out of here
-                return;
-            }
-        }
-
         if (!v.changed() && !mUpdate)
             return;
 
@@ -238,17 +188,14 @@ public class ClusterMarkerRenderer extends MarkerRenderer {
 
         double mx = v.pos.x;
         double my = v.pos.y;
-
-        //int changesInvisible = 0;
-        //int changedVisible = 0;
-        int numVisible = 0;
+        final double scale = Tile.SIZE * v.pos.scale;
 
         // Increase view to show items that are partially visible
         mMarkerLayer.map().viewport().getMapExtents(mBox, Tile.SIZE / 2);
 
-        long flip = (long) (Tile.SIZE * v.pos.scale) >> 1;
+        long flip = (long) scale >> 1;
 
-        if (mItems == null) {
+        if (mIndex == null) {
             if (buckets.get() != null) {
                 buckets.clear();
                 compile();
@@ -256,53 +203,32 @@ public class ClusterMarkerRenderer extends MarkerRenderer {
             return;
         }
 
-        double angle = Math.toRadians(v.pos.bearing);
-        float cos = (float) Math.cos(angle);
-        float sin = (float) Math.sin(angle);
-
-		/* check visibility */
-        for (InternalItem itm : mItems) {
-            InternalItem.Clustered it = (InternalItem.Clustered) itm;
-
-            it.changes = false;
-            it.x = (float) ((it.px - mx) * scale);
-            it.y = (float) ((it.py - my) * scale);
-
-            if (it.x > flip)
-                it.x -= (flip << 1);
-            else if (it.x < -flip)
-                it.x += (flip << 1);
-
-            if ((it.clusteredOut) || (!GeometryUtils.pointInPoly(it.x, it.y, mBox, 8, 0))) {
-                // either properly invisible, or clustered out. Items marked as clustered out mean there's another item
-                // on the same-ish position that will be promoted to cluster marker, so this particular item is considered
-                // invisible
-
-                if (it.visible && (!it.clusteredOut)) {
-                    // it was previously visible, but now it won't
-                    it.changes = true;
-                    // changes to invible
-                    //changesInvisible++;
-                }
-                continue;
-            }
-
-            // item IS definitely visible
-            it.dy = sin * it.x + cos * it.y;
-
-            if (!it.visible) {
-                it.visible = true;
-                //changedVisible++;
-            }
-            numVisible++;
+        /* the clusters of the current zoom level within the view extents */
+        ClusterIndex.Level level = mIndex.getLevel(v.pos.zoomLevel);
+        float minX = mBox[0], minY = mBox[1], maxX = mBox[0], maxY = mBox[1];
+        for (int i = 2; i < 8; i += 2) {
+            minX = Math.min(minX, mBox[i]);
+            maxX = Math.max(maxX, mBox[i]);
+            minY = Math.min(minY, mBox[i + 1]);
+            maxY = Math.max(maxY, mBox[i + 1]);
         }
+        double x1 = mx + minX / scale;
+        double x2 = mx + maxX / scale;
+        double y1 = my + minY / scale;
+        double y2 = my + maxY / scale;
 
-        //log.debug(numVisible + " " + changedVisible + " " + changesInvisible);
+        int numVisible = 0;
+        if (x2 - x1 >= 1) {
+            numVisible = addVisible(level, 0, y1, 1, y2, 0, v, numVisible);
+        } else {
+            numVisible = addVisible(level, x1, y1, x2, y2, 0, v, numVisible);
+            /* around the dateline */
+            if (x1 < 0)
+                numVisible = addVisible(level, x1 + 1, y1, 1, y2, flip, v, numVisible);
+            if (x2 > 1)
+                numVisible = addVisible(level, 0, y1, x2 - 1, y2, flip, v, numVisible);
+        }
 
-		/* only update when zoomlevel changed, new items are visible
-         * or more than 10 of the current items became invisible */
-        //if ((numVisible == 0) && (changedVisible == 0 && changesInvisible < 10))
-        //	return;
         buckets.clear();
 
         if (numVisible == 0) {
@@ -313,21 +239,11 @@ public class ClusterMarkerRenderer extends MarkerRenderer {
         mMapPosition.copy(v.pos);
         mMapPosition.bearing = -mMapPosition.bearing;
 
-        // why do we sort ? z-index?
-        sort(mItems, 0, mItems.length);
-        //log.debug(Arrays.toString(mItems));
-
-        for (InternalItem itm : mItems) {
-            InternalItem.Clustered it = (InternalItem.Clustered) itm;
+        // sort by screen y for z-order
+        sort(mVisible, 0, numVisible);
 
-            // skip invisible AND clustered-out
-            if ((!it.visible) || (it.clusteredOut))
-                continue;
-
-            if (it.changes) {
-                it.visible = false;
-                continue;
-            }
+        for (int i = 0; i < numVisible; i++) {
+            InternalItem.Clustered it = mVisible[i];
 
             SymbolItem s = SymbolItem.pool.get();
 
@@ -362,6 +278,59 @@ public class ClusterMarkerRenderer extends MarkerRenderer {
         compile();
     }
 
+    /**
+     * Add the clusters of level within the box to mVisible.
+     *
+     * @param flip the dateline flip of the map in px, 0 inside of the world
+     * @return the new number of visible items
+     */
+    private int addVisible(ClusterIndex.Level level, double x1, double y1, double x2, double y2,
+                           long flip, GLViewport v, int numVisible) {
+        level.range(x1, y1, x2, y2, mFound);
+        if (mFound.size == 0)
+            return numVisible;
+
+        double mx = v.pos.x;
+        double my = v.pos.y;
+        double scale = Tile.SIZE * v.pos.scale;
+
+        double angle = Math.toRadians(v.pos.bearing);
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+
+        if (numVisible + mFound.size > mVisible.length) {
+            int length = mVisible.length;
+            mVisible = Arrays.copyOf(mVisible, numVisible + mFound.size);
+            for (int i = length; i < mVisible.length; i++)
+                mVisible[i] = new InternalItem.Clustered();
+        }
+
+        for (int k = 0; k < mFound.size; k++) {
+            int c = mFound.items[k];
+
+            float x = (float) ((level.x[c] - mx) * scale);
+            float y = (float) ((level.y[c] - my) * scale);
+
+            if (x > flip && flip > 0)
+                x -= (flip << 1);
+            else if (x < -flip && flip > 0)
+                x += (flip << 1);
+
+            if (!GeometryUtils.pointInPoly(x, y, mBox, 8, 0))
+                continue;
+
+            InternalItem.Clustered it = mVisible[numVisible++];
+            it.item = mItems[level.ids[c]].item;
+            it.px = level.x[c];
+            it.py = level.y[c];
+            it.x = x;
+            it.y = y;
+            it.dy = sin * x + cos * y;
+            it.visible = true;
+            it.clusterSize = level.counts[c] - 1;
+        }
+        return numVisible;
+    }
 
     /**
      * Gets a bitmap for a given cluster size
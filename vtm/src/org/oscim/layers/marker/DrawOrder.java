@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import java.util.Arrays;
+
+/**
+ * Incremental z-order of the visible markers: higher screen y first, equal y
+ * by id. The order of the previous frame is kept, as long as the map is not
+ * rotated the markers which stay visible keep their relative order. Only the
+ * markers which became visible are sorted and merged in, which is O(n) plus
+ * O(k log k) for k new markers instead of O(n log n).
+ */
+class DrawOrder {
+
+    /* ids in the order of the last frame */
+    private int[] mOrder = new int[0];
+    private int mSize;
+
+    /* slot + 1 of the visible ids, 0 for invisible ones */
+    private int[] mSlots = new int[0];
+
+    private long[] mKeys = new long[0];
+    private long[] mNew = new long[0];
+    private int[] mSurvivors = new int[0];
+    private boolean[] mSeen = new boolean[0];
+    private int[] mResult = new int[0];
+
+    /**
+     * @param ids    the ids of the visible markers
+     * @param dy     the rotated screen y of the visible markers
+     * @param n      the number of visible markers
+     * @param numIds upper bound of the ids
+     * @return the positions in ids in draw order, valid up to n.
+     */
+    int[] sort(int[] ids, float[] dy, int n, int numIds) {
+        if (mSlots.length < numIds)
+            mSlots = new int[numIds];
+        if (mKeys.length < n) {
+            mKeys = new long[n];
+            mNew = new long[n];
+            mSurvivors = new int[n];
+            mSeen = new boolean[n];
+            mResult = new int[n];
+        }
+
+        long[] keys = mKeys;
+        for (int s = 0; s < n; s++) {
+            mSlots[ids[s]] = s + 1;
+            keys[s] = key(dy[s], ids[s]);
+            mSeen[s] = false;
+        }
+
+        /* markers visible in both frames, in their previous order */
+        int numSurvivors = 0;
+        boolean sorted = true;
+        for (int k = 0; k < mSize; k++) {
+            int id = mOrder[k];
+            if (id >= numIds)
+                continue;
+            int s = mSlots[id] - 1;
+            if (s < 0 || mSeen[s])
+                continue;
+            mSeen[s] = true;
+            if (numSurvivors > 0 && keys[mSurvivors[numSurvivors - 1]] > keys[s])
+                sorted = false;
+            mSurvivors[numSurvivors++] = s;
+        }
+
+        int[] result = mResult;
+        if (!sorted) {
+            /* rotated or wrapped around the dateline: sort all */
+            long[] all = mNew;
+            System.arraycopy(keys, 0, all, 0, n);
+            Arrays.sort(all, 0, n);
+            for (int i = 0; i < n; i++)
+                result[i] = mSlots[(int) all[i]] - 1;
+        } else {
+            int numNew = 0;
+            for (int s = 0; s < n; s++) {
+                if (!mSeen[s])
+                    mNew[numNew++] = keys[s];
+            }
+            Arrays.sort(mNew, 0, numNew);
+
+            /* merge */
+            int i = 0, j = 0, r = 0;
+            while (i < numSurvivors && j < numNew) {
+                if (keys[mSurvivors[i]] < mNew[j])
+                    result[r++] = mSurvivors[i++];
+                else
+                    result[r++] = mSlots[(int) mNew[j++]] - 1;
+            }
+            while (i < numSurvivors)
+                result[r++] = mSurvivors[i++];
+            while (j < numNew)
+                result[r++] = mSlots[(int) mNew[j++]] - 1;
+        }
+
+        if (mOrder.length < n)
+            mOrder = new int[n];
+        for (int i = 0; i < n; i++)
+            mOrder[i] = ids[result[i]];
+        mSize = n;
+
+        for (int s = 0; s < n; s++)
+            mSlots[ids[s]] = 0;
+
+        return result;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return a key ordering by dy descending, then id ascending.
+     */
+    private static long key(float dy, int id) {
+        /* -0f + 0f == 0f */
+        int bits = Float.floatToIntBits(-dy + 0f);
+        if (bits < 0)
+            bits ^= 0x7fffffff;
+        return ((long) bits << 32) | id;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import org.oscim.core.GeoPoint;
+import org.oscim.core.MercatorProjection;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage of markers in parallel primitive arrays: the projected
+ * position, the symbol id and flags of a marker. Symbols are shared through a
+ * symbol table, so a marker needs no objects at all.
+ * <p/>
+ * Markers are addressed by their index, which is stable until
+ * {@link #clear()}. {@link Item} is a lightweight view of a marker for the
+ * {@link MarkerInterface} API.
+ */
+public class MarkerStore {
+
+    /**
+     * Marker is not drawn.
+     */
+    public static final int FLAG_HIDDEN = 1;
+
+    /**
+     * Symbol id of markers drawn with the default symbol of the layer.
+     */
+    public static final int DEFAULT_SYMBOL = -1;
+
+    private double[] mX;
+    private double[] mY;
+    private int[] mSymbols;
+    private byte[] mFlags;
+    private int mSize;
+
+    private MarkerSymbol[] mSymbolTable = new MarkerSymbol[4];
+    private int mNumSymbols;
+
+    /* incremented when positions change, i.e. the spatial index is outdated */
+    private int mPositionVersion;
+
+    public MarkerStore() {
+        this(64);
+    }
+
+    public MarkerStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mX = new double[capacity];
+        mY = new double[capacity];
+        mSymbols = new int[capacity];
+        mFlags = new byte[capacity];
+    }
+
+    /**
+     * Add a symbol to the symbol table.
+     *
+     * @return the symbol id
+     */
+    public synchronized int addSymbol(MarkerSymbol symbol) {
+        if (mNumSymbols == mSymbolTable.length)
+            mSymbolTable = Arrays.copyOf(mSymbolTable, mNumSymbols * 2);
+        mSymbolTable[mNumSymbols] = symbol;
+        return mNumSymbols++;
+    }
+
+    /**
+     * @return the symbol for the id, null for {@link #DEFAULT_SYMBOL}.
+     */
+    public synchronized MarkerSymbol getSymbol(int symbol) {
+        if (symbol == DEFAULT_SYMBOL)
+            return null;
+        return mSymbolTable[symbol];
+    }
+
+    public int add(GeoPoint point, int symbol) {
+        return add(point.getLatitude(), point.getLongitude(), symbol);
+    }
+
+    /**
+     * @return the index of the new marker
+     */
+    public synchronized int add(double latitude, double longitude, int symbol) {
+        checkSymbol(symbol);
+        if (mSize == mX.length) {
+            int capacity = mSize + (mSize >> 1) + 1;
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+            mSymbols = Arrays.copyOf(mSymbols, capacity);
+            mFlags = Arrays.copyOf(mFlags, capacity);
+        }
+        mX[mSize] = MercatorProjection.longitudeToX(longitude);
+        mY[mSize] = MercatorProjection.latitudeToY(latitude);
+        mSymbols[mSize] = symbol;
+        mFlags[mSize] = 0;
+        mPositionVersion++;
+        return mSize++;
+    }
+
+    public synchronized void setPoint(int i, double latitude, double longitude) {
+        checkIndex(i);
+        mX[i] = MercatorProjection.longitudeToX(longitude);
+        mY[i] = MercatorProjection.latitudeToY(latitude);
+        mPositionVersion++;
+    }
+
+    public synchronized GeoPoint getPoint(int i) {
+        checkIndex(i);
+        return new GeoPoint(MercatorProjection.toLatitude(mY[i]),
+                MercatorProjection.toLongitude(mX[i]));
+    }
+
+    public synchronized void setSymbol(int i, int symbol) {
+        checkIndex(i);
+        checkSymbol(symbol);
+        mSymbols[i] = symbol;
+    }
+
+    public synchronized int getSymbolId(int i) {
+        checkIndex(i);
+        return mSymbols[i];
+    }
+
+    public synchronized void setFlags(int i, int flags) {
+        checkIndex(i);
+        mFlags[i] = (byte) flags;
+    }
+
+    public synchronized int getFlags(int i) {
+        checkIndex(i);
+        return mFlags[i];
+    }
+
+    /**
+     * @return the view of marker i.
+     */
+    public Item getItem(int i) {
+        checkIndex(i);
+        return new Item(this, i);
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Remove all markers, the symbol table is kept.
+     */
+    public synchronized void clear() {
+        mSize = 0;
+        mPositionVersion++;
+    }
+
+    /* unsynchronized accessors for the renderer, which holds the lock */
+
+    double getX(int i) {
+        return mX[i];
+    }
+
+    double getY(int i) {
+        return mY[i];
+    }
+
+    int symbolId(int i) {
+        return mSymbols[i];
+    }
+
+    int flags(int i) {
+        return mFlags[i];
+    }
+
+    MarkerSymbol symbol(int id) {
+        return id == DEFAULT_SYMBOL ? null : mSymbolTable[id];
+    }
+
+    synchronized int getPositionVersion() {
+        return mPositionVersion;
+    }
+
+    /**
+     * @return a spatial index of the current positions, or null when empty.
+     */
+    PointIndex createIndex() {
+        double[] x;
+        double[] y;
+        int n;
+        synchronized (this) {
+            n = mSize;
+            if (n == 0)
+                return null;
+            x = Arrays.copyOf(mX, n);
+            y = Arrays.copyOf(mY, n);
+        }
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++)
+            ids[i] = i;
+
+        PointIndex index = new PointIndex(x, y, ids, n);
+        index.sort();
+        return index;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= mSize)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + mSize);
+    }
+
+    private void checkSymbol(int symbol) {
+        if (symbol != DEFAULT_SYMBOL && (symbol < 0 || symbol >= mNumSymbols))
+            throw new IllegalArgumentException("Unknown symbol: " + symbol);
+    }
+
+    /**
+     * A marker of a {@link MarkerStore}. Reads and writes go through to the
+     * store, the view holds no copy of the marker.
+     */
+    public static class Item implements MarkerInterface {
+        private final MarkerStore mStore;
+        private final int mIndex;
+
+        Item(MarkerStore store, int index) {
+            mStore = store;
+            mIndex = index;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        @Override
+        public MarkerSymbol getMarker() {
+            return mStore.getSymbol(mStore.getSymbolId(mIndex));
+        }
+
+        public void setMarker(int symbol) {
+            mStore.setSymbol(mIndex, symbol);
+        }
+
+        @Override
+        public GeoPoint getPoint() {
+            return mStore.getPoint(mIndex);
+        }
+
+        public void setPoint(GeoPoint point) {
+            mStore.setPoint(mIndex, point.getLatitude(), point.getLongitude());
+        }
+
+        public boolean isHidden() {
+            return (mStore.getFlags(mIndex) & FLAG_HIDDEN) != 0;
+        }
+
+        public void setHidden(boolean hidden) {
+            synchronized (mStore) {
+                int flags = mStore.getFlags(mIndex);
+                mStore.setFlags(mIndex, hidden ? flags | FLAG_HIDDEN : flags & ~FLAG_HIDDEN);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Item))
+                return false;
+            Item other = (Item) o;
+            return mStore == other.mStore && mIndex == other.mIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return mIndex;
+        }
+    }
+}
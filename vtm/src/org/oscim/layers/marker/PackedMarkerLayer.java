@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.core.Point;
+import org.oscim.event.Gesture;
+import org.oscim.event.GestureListener;
+import org.oscim.event.MotionEvent;
+import org.oscim.layers.Layer;
+import org.oscim.map.Map;
+import org.oscim.map.Viewport;
+
+/**
+ * A marker layer for large numbers of mostly static markers, e.g. POIs.
+ * <p/>
+ * Unlike {@link ItemizedLayer} the markers are kept in a {@link MarkerStore}
+ * without an object per marker. Call {@link #update()} after changing the
+ * store.
+ */
+public class PackedMarkerLayer extends Layer implements GestureListener {
+
+    protected final MarkerStore mStore;
+    protected final PackedMarkerRenderer mMarkerRenderer;
+    protected ItemizedLayer.OnItemGestureListener<MarkerStore.Item> mOnItemGestureListener;
+
+    private final Point mTmpPoint = new Point();
+
+    public PackedMarkerLayer(Map map, MarkerSymbol defaultSymbol) {
+        this(map, new MarkerStore(), defaultSymbol, null);
+    }
+
+    public PackedMarkerLayer(Map map, MarkerStore store, MarkerSymbol defaultSymbol,
+                             ItemizedLayer.OnItemGestureListener<MarkerStore.Item> listener) {
+        super(map);
+        mStore = store;
+        mOnItemGestureListener = listener;
+        mMarkerRenderer = new PackedMarkerRenderer(this, defaultSymbol);
+        mRenderer = mMarkerRenderer;
+    }
+
+    public MarkerStore getStore() {
+        return mStore;
+    }
+
+    public void setOnItemGestureListener(ItemizedLayer.OnItemGestureListener<MarkerStore.Item> listener) {
+        mOnItemGestureListener = listener;
+    }
+
+    /**
+     * Redraw the markers after the store was changed.
+     */
+    public void update() {
+        mMarkerRenderer.update();
+        mMap.render();
+    }
+
+    @Override
+    public boolean onGesture(Gesture g, MotionEvent e) {
+        if (mOnItemGestureListener == null)
+            return false;
+
+        boolean tap = g instanceof Gesture.Tap;
+        if (!tap && !(g instanceof Gesture.LongPress))
+            return false;
+
+        int index = getItemAt(e);
+        if (index < 0)
+            return false;
+
+        MarkerStore.Item item = mStore.getItem(index);
+        boolean handled = tap ? mOnItemGestureListener.onItemSingleTapUp(index, item)
+                : mOnItemGestureListener.onItemLongPress(index, item);
+        if (handled)
+            update();
+        return handled;
+    }
+
+    /**
+     * @return the index of the topmost drawn marker at the event, or the
+     * nearest one within the touch slop, -1 if none.
+     */
+    protected int getItemAt(MotionEvent event) {
+        int[] drawn = mMarkerRenderer.getDrawn();
+        if (drawn.length == 0)
+            return -1;
+
+        float eventX = event.getX() - mMap.getWidth() / 2;
+        float eventY = event.getY() - mMap.getHeight() / 2;
+        Viewport viewport = mMap.viewport();
+
+        // squared dist: 20x20 px on baseline mdpi (160dpi)
+        double dist = (20 * CanvasAdapter.getScale()) * (20 * CanvasAdapter.getScale());
+        int nearest = -1;
+
+        synchronized (mStore) {
+            int size = mStore.size();
+            /* topmost markers are drawn last */
+            for (int i = drawn.length - 1; i >= 0; i--) {
+                int id = drawn[i];
+                if (id >= size)
+                    continue;
+
+                viewport.toScreenPoint(mStore.getX(id), mStore.getY(id), true, mTmpPoint);
+                float dx = (float) (eventX - mTmpPoint.x);
+                float dy = (float) (eventY - mTmpPoint.y);
+
+                MarkerSymbol symbol = mStore.symbol(mStore.symbolId(id));
+                if (symbol == null)
+                    symbol = mMarkerRenderer.mDefaultMarker;
+                if (symbol.isInside(dx, dy))
+                    return id;
+
+                double d = dx * dx + dy * dy;
+                if (d < dist) {
+                    dist = d;
+                    nearest = id;
+                }
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import org.oscim.core.Tile;
+import org.oscim.renderer.BucketRenderer;
+import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.bucket.SymbolBucket;
+import org.oscim.renderer.bucket.SymbolItem;
+import org.oscim.utils.geom.GeometryUtils;
+
+import java.util.Arrays;
+
+/**
+ * Renders the markers of a {@link MarkerStore}.
+ * <p/>
+ * The markers are not copied into objects: a KD-tree of the positions is
+ * built in the background whenever positions changed, each update only
+ * visits the markers within the view and sorts them incrementally with
+ * {@link DrawOrder}.
+ */
+public class PackedMarkerRenderer extends BucketRenderer {
+
+    protected final PackedMarkerLayer mMarkerLayer;
+    protected final MarkerStore mStore;
+    protected final MarkerSymbol mDefaultMarker;
+
+    protected final SymbolBucket mSymbolLayer = new SymbolBucket();
+    protected final float[] mBox = new float[8];
+
+    /**
+     * flag to force update of markers
+     */
+    protected boolean mUpdate;
+
+    private PointIndex mIndex;
+    private int mIndexVersion = -1;
+    private boolean mIndexPending;
+
+    private final PointIndex.Found mFound = new PointIndex.Found();
+    private final DrawOrder mDrawOrder = new DrawOrder();
+
+    /* the visible markers of the last update */
+    private int[] mIds = new int[64];
+    private float[] mX = new float[64];
+    private float[] mY = new float[64];
+    private float[] mDy = new float[64];
+    private int mNumVisible;
+
+    /* the drawn markers of the last update, in draw order */
+    private int[] mDrawn = new int[0];
+    private int mNumDrawn;
+
+    public PackedMarkerRenderer(PackedMarkerLayer markerLayer, MarkerSymbol defaultSymbol) {
+        mMarkerLayer = markerLayer;
+        mStore = markerLayer.getStore();
+        mDefaultMarker = defaultSymbol;
+    }
+
+    @Override
+    public synchronized void update(GLViewport v) {
+        if (!v.changed() && !mUpdate)
+            return;
+
+        mUpdate = false;
+
+        if (mStore.getPositionVersion() != mIndexVersion)
+            updateIndex();
+
+        buckets.clear();
+        mNumDrawn = 0;
+
+        if (mIndex == null) {
+            mDrawOrder.clear();
+            compile();
+            return;
+        }
+
+        double mx = v.pos.x;
+        double my = v.pos.y;
+        double scale = Tile.SIZE * v.pos.scale;
+
+        // Increase view to show items that are partially visible
+        mMarkerLayer.map().viewport().getMapExtents(mBox, Tile.SIZE / 2);
+
+        long flip = (long) scale >> 1;
+
+        float minX = mBox[0], minY = mBox[1], maxX = mBox[0], maxY = mBox[1];
+        for (int i = 2; i < 8; i += 2) {
+            minX = Math.min(minX, mBox[i]);
+            maxX = Math.max(maxX, mBox[i]);
+            minY = Math.min(minY, mBox[i + 1]);
+            maxY = Math.max(maxY, mBox[i + 1]);
+        }
+        double x1 = mx + minX / scale;
+        double x2 = mx + maxX / scale;
+        double y1 = my + minY / scale;
+        double y2 = my + maxY / scale;
+
+        double angle = Math.toRadians(v.pos.bearing);
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+
+        synchronized (mStore) {
+            int size = mStore.size();
+            mNumVisible = 0;
+            if (x2 - x1 >= 1) {
+                addVisible(0, y1, 1, y2, 0, v, sin, cos, size);
+            } else {
+                addVisible(x1, y1, x2, y2, 0, v, sin, cos, size);
+                /* around the dateline */
+                if (x1 < 0)
+                    addVisible(x1 + 1, y1, 1, y2, flip, v, sin, cos, size);
+                if (x2 > 1)
+                    addVisible(0, y1, x2 - 1, y2, flip, v, sin, cos, size);
+            }
+
+            if (mNumVisible == 0) {
+                mDrawOrder.clear();
+                compile();
+                return;
+            }
+
+            /* keep position for current state */
+            mMapPosition.copy(v.pos);
+            mMapPosition.bearing = -mMapPosition.bearing;
+
+            int[] order = mDrawOrder.sort(mIds, mDy, mNumVisible, size);
+
+            if (mDrawn.length < mNumVisible)
+                mDrawn = new int[mIds.length];
+
+            for (int i = 0; i < mNumVisible; i++) {
+                int s = order[i];
+                int id = mIds[s];
+                mDrawn[mNumDrawn++] = id;
+
+                MarkerSymbol marker = mStore.symbol(mStore.symbolId(id));
+                if (marker == null)
+                    marker = mDefaultMarker;
+
+                SymbolItem item = SymbolItem.pool.get();
+                if (marker.isBitmap())
+                    item.set(mX[s], mY[s], marker.getBitmap(), marker.rotation, marker.isBillboard());
+                else
+                    item.set(mX[s], mY[s], marker.getTextureRegion(), marker.rotation, marker.isBillboard());
+                item.offset = marker.getHotspot();
+                mSymbolLayer.pushSymbol(item);
+            }
+        }
+
+        buckets.set(mSymbolLayer);
+        buckets.prepare();
+
+        compile();
+    }
+
+    /**
+     * Add the markers within the box to the visible markers.
+     *
+     * @param flip the dateline flip of the map in px, 0 inside of the world
+     */
+    private void addVisible(double x1, double y1, double x2, double y2, long flip,
+                            GLViewport v, float sin, float cos, int size) {
+        mIndex.range(x1, y1, x2, y2, mFound);
+        if (mFound.size == 0)
+            return;
+
+        double mx = v.pos.x;
+        double my = v.pos.y;
+        double scale = Tile.SIZE * v.pos.scale;
+
+        int n = mNumVisible + mFound.size;
+        if (n > mIds.length) {
+            n = Math.max(n, mIds.length * 2);
+            mIds = Arrays.copyOf(mIds, n);
+            mX = Arrays.copyOf(mX, n);
+            mY = Arrays.copyOf(mY, n);
+            mDy = Arrays.copyOf(mDy, n);
+        }
+
+        for (int k = 0; k < mFound.size; k++) {
+            int id = mIndex.ids[mFound.items[k]];
+            /* removed since the index was built */
+            if (id >= size)
+                continue;
+            if ((mStore.flags(id) & MarkerStore.FLAG_HIDDEN) != 0)
+                continue;
+
+            /* positions may have changed since the index was built */
+            float x = (float) ((mStore.getX(id) - mx) * scale);
+            float y = (float) ((mStore.getY(id) - my) * scale);
+
+            if (x > flip && flip > 0)
+                x -= (flip << 1);
+            else if (x < -flip && flip > 0)
+                x += (flip << 1);
+
+            if (!GeometryUtils.pointInPoly(x, y, mBox, 8, 0))
+                continue;
+
+            int s = mNumVisible++;
+            mIds[s] = id;
+            mX[s] = x;
+            mY[s] = y;
+            mDy[s] = sin * x + cos * y;
+        }
+    }
+
+    /**
+     * Build the index of the current positions in the background. Until it
+     * is ready the previous index is used.
+     */
+    private void updateIndex() {
+        if (mIndexPending)
+            return;
+        mIndexPending = true;
+
+        mMarkerLayer.map().addTask(new Runnable() {
+            @Override
+            public void run() {
+                int version = mStore.getPositionVersion();
+                PointIndex index = mStore.createIndex();
+                synchronized (PackedMarkerRenderer.this) {
+                    mIndex = index;
+                    mIndexVersion = version;
+                    mIndexPending = false;
+                    mUpdate = true;
+                }
+                mMarkerLayer.map().render();
+            }
+        });
+    }
+
+    /**
+     * @return the indices of the markers drawn in the last update, in draw
+     * order.
+     */
+    synchronized int[] getDrawn() {
+        return Arrays.copyOf(mDrawn, mNumDrawn);
+    }
+
+    public void update() {
+        mUpdate = true;
+    }
+}
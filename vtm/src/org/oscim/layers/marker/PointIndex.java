@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import java.util.Arrays;
+
+/**
+ * A static KD-tree of points, the coordinates are sorted in place.
+ * <p/>
+ * Subclasses with more per point data must swap it in {@link #swap(int, int)}
+ * and call {@link #sort()} when their data is set.
+ */
+class PointIndex {
+
+    /* KD-tree leaf size */
+    private static final int NODE_SIZE = 64;
+
+    final double[] x;
+    final double[] y;
+    final int[] ids;
+    final int size;
+
+    PointIndex(double[] x, double[] y, int[] ids, int size) {
+        this.x = x;
+        this.y = y;
+        this.ids = ids;
+        this.size = size;
+    }
+
+    /**
+     * Build the tree, must be called once before searching.
+     */
+    final void sort() {
+        sort(0, size - 1, 0);
+    }
+
+    private void sort(int left, int right, int axis) {
+        if (right - left <= NODE_SIZE)
+            return;
+
+        int m = (left + right) >> 1;
+        select(m, left, right, axis);
+
+        sort(left, m - 1, 1 - axis);
+        sort(m + 1, right, 1 - axis);
+    }
+
+    /**
+     * Floyd-Rivest selection: the k-th smallest element by axis at k.
+     */
+    private void select(int k, int left, int right, int axis) {
+        double[] c = axis == 0 ? x : y;
+        while (right > left) {
+            if (right - left > 600) {
+                int n = right - left + 1;
+                int m = k - left + 1;
+                double z = Math.log(n);
+                double s = 0.5 * Math.exp(2 * z / 3);
+                double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * (m - n / 2 < 0 ? -1 : 1);
+                int newLeft = (int) Math.max(left, Math.floor(k - m * s / n + sd));
+                int newRight = (int) Math.min(right, Math.floor(k + (n - m) * s / n + sd));
+                select(k, newLeft, newRight, axis);
+            }
+
+            double t = c[k];
+            int i = left;
+            int j = right;
+
+            swap(left, k);
+            if (c[right] > t)
+                swap(left, right);
+
+            while (i < j) {
+                swap(i, j);
+                i++;
+                j--;
+                while (c[i] < t)
+                    i++;
+                while (c[j] > t)
+                    j--;
+            }
+
+            if (c[left] == t) {
+                swap(left, j);
+            } else {
+                j++;
+                swap(j, right);
+            }
+
+            if (j <= k)
+                left = j + 1;
+            if (k <= j)
+                right = j - 1;
+        }
+    }
+
+    void swap(int i, int j) {
+        double d = x[i];
+        x[i] = x[j];
+        x[j] = d;
+        d = y[i];
+        y[i] = y[j];
+        y[j] = d;
+        int t = ids[i];
+        ids[i] = ids[j];
+        ids[j] = t;
+    }
+
+    /**
+     * Set result to the positions of the points in the box to result.
+     */
+    void range(double minX, double minY, double maxX, double maxY, Found result) {
+        result.size = 0;
+        if (size == 0)
+            return;
+
+        int[] stack = new int[64];
+        int sp = 0;
+        stack[sp++] = 0;
+        stack[sp++] = size - 1;
+        stack[sp++] = 0;
+
+        while (sp > 0) {
+            int axis = stack[--sp];
+            int right = stack[--sp];
+            int left = stack[--sp];
+
+            if (right - left <= NODE_SIZE) {
+                for (int i = left; i <= right; i++) {
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY)
+                        result.add(i);
+                }
+                continue;
+            }
+
+            int m = (left + right) >> 1;
+            double mx = x[m];
+            double my = y[m];
+            if (mx >= minX && mx <= maxX && my >= minY && my <= maxY)
+                result.add(m);
+
+            double v = axis == 0 ? mx : my;
+            if (sp + 6 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+
+            if ((axis == 0 ? minX : minY) <= v) {
+                stack[sp++] = left;
+                stack[sp++] = m - 1;
+                stack[sp++] = 1 - axis;
+            }
+            if ((axis == 0 ? maxX : maxY) >= v) {
+                stack[sp++] = m + 1;
+                stack[sp++] = right;
+                stack[sp++] = 1 - axis;
+            }
+        }
+    }
+
+    /**
+     * Set result to the positions of the points within distance r.
+     */
+    void within(double px, double py, double r, Found result) {
+        range(px - r, py - r, px + r, py + r, result);
+        double sqr = r * r;
+        int n = 0;
+        for (int k = 0; k < result.size; k++) {
+            int i = result.items[k];
+            double dx = x[i] - px;
+            double dy = y[i] - py;
+            if (dx * dx + dy * dy <= sqr)
+                result.items[n++] = i;
+        }
+        result.size = n;
+    }
+
+    /**
+     * Positions of points found in a {@link PointIndex}.
+     */
+    static final class Found {
+        int[] items = new int[16];
+        int size;
+
+        void add(int i) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = i;
+        }
+    }
+}
@@ -16,81 +16,252 @@
  */
 package org.oscim.layers.tile;
 
+import org.oscim.core.MapPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import static org.oscim.layers.tile.MapTile.State.CANCEL;
 import static org.oscim.layers.tile.MapTile.State.LOADING;
 import static org.oscim.layers.tile.MapTile.State.NONE;
 
 /**
  * A JobQueue keeps the list of pending jobs for a MapView and prioritizes them.
+ * <p/>
+ * Jobs are kept in a binary min-heap ordered by {@link MapTile#distance}, each
+ * MapTile knows its position in the heap. So jobs can be added, removed and
+ * re-keyed on map position changes without rebuilding the whole queue, and
+ * TileLoaders hold the lock only for O(log n) on poll().
  */
 public class JobQueue {
 
     static final Logger log = LoggerFactory.getLogger(JobQueue.class);
 
-    private int mCurrentJob = 0;
-    private MapTile[] mJobs;
+    private MapTile[] mJobs = new MapTile[64];
+    private int mSize;
 
     /**
+     * Replace all jobs of this queue.
+     *
      * @param tiles the jobs to be added to this queue.
      */
     public synchronized void setJobs(MapTile[] tiles) {
-        mJobs = tiles;
-        mCurrentJob = 0;
+        clear();
+        for (MapTile t : tiles) {
+            if (t.jobIndex < 0)
+                append(t);
+        }
+        heapify();
     }
 
     /**
-     * Removes all jobs from this queue.
+     * Update the queue incrementally for a new map position: Queued jobs
+     * which were not requested by the current update (i.e. their
+     * {@link MapTile#jobSerial} differs from 'serial') are removed and reset
+     * to state NONE, new jobs are added and all jobs are re-keyed by their
+     * distance to 'pos'.
+     * Jobs that were already taken by a TileLoader are not affected.
+     *
+     * @param jobs   the new jobs, tiles must be in state LOADING.
+     * @param serial the serial of the current update.
+     * @param pos    the current map position.
      */
-    public synchronized void clear() {
-        if (mJobs == null) {
-            mCurrentJob = 0;
-            return;
-        }
+    synchronized void update(ArrayList<MapTile> jobs, int serial, MapPosition pos) {
         MapTile[] tiles = mJobs;
 
-        for (int i = mCurrentJob, n = mJobs.length; i < n; i++) {
+        /* drop jobs that are no longer requested */
+        int size = 0;
+        for (int i = 0; i < mSize; i++) {
             MapTile t = tiles[i];
-            if (t.state(LOADING | CANCEL)) {
-                t.setState(NONE);
+            if (t.jobSerial == serial) {
+                t.jobIndex = size;
+                tiles[size++] = t;
             } else {
-                log.error("Wrong tile in queue {} {}", t, t.state());
+                reset(t);
             }
-            tiles[i] = null;
         }
-        mCurrentJob = 0;
-        mJobs = null;
+        Arrays.fill(tiles, size, mSize, null);
+        mSize = size;
+
+        for (int i = 0, n = jobs.size(); i < n; i++) {
+            MapTile t = jobs.get(i);
+            if (t.jobIndex < 0)
+                append(t);
+        }
+
+        TileManager.updateDistances(mJobs, mSize, pos);
+        heapify();
+    }
+
+    /**
+     * Add a job to this queue.
+     *
+     * @param tile the tile to be loaded, must be in state LOADING.
+     */
+    public synchronized void add(MapTile tile) {
+        if (tile.jobIndex >= 0)
+            return;
+        append(tile);
+        siftUp(tile.jobIndex);
+    }
+
+    /**
+     * Remove a job from this queue and reset its state to NONE.
+     *
+     * @return true if the tile was queued, false otherwise.
+     */
+    public synchronized boolean remove(MapTile tile) {
+        int idx = tile.jobIndex;
+        if (idx < 0 || idx >= mSize || mJobs[idx] != tile)
+            return false;
+
+        MapTile last = mJobs[--mSize];
+        mJobs[mSize] = null;
+        if (idx < mSize) {
+            mJobs[idx] = last;
+            last.jobIndex = idx;
+            siftDown(idx);
+            siftUp(last.jobIndex);
+        }
+        reset(tile);
+        return true;
+    }
+
+    /**
+     * Removes all jobs from this queue.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mSize; i++) {
+            reset(mJobs[i]);
+            mJobs[i] = null;
+        }
+        mSize = 0;
     }
 
     /**
      * @return true if this queue contains no jobs, false otherwise.
      */
     public synchronized boolean isEmpty() {
-        return (mJobs == null);
+        return mSize == 0;
+    }
+
+    /**
+     * @return the number of queued jobs.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the distance of the most important job or Float.MAX_VALUE, if empty.
+     */
+    public synchronized float peekDistance() {
+        if (mSize == 0)
+            return Float.MAX_VALUE;
+        return mJobs[0].distance;
+    }
+
+    /**
+     * Get the most important jobs without removing them from this queue.
+     *
+     * @param tiles receives the jobs, sorted by distance.
+     * @return the number of jobs.
+     */
+    public synchronized int peek(MapTile[] tiles) {
+        int n = 0;
+        for (int i = 0; i < mSize; i++) {
+            MapTile t = mJobs[i];
+            int j;
+            if (n < tiles.length)
+                j = n++;
+            else if (n > 0 && t.distance < tiles[n - 1].distance)
+                j = n - 1;
+            else
+                continue;
+
+            /* insertion sort */
+            for (; j > 0 && tiles[j - 1].distance > t.distance; j--)
+                tiles[j] = tiles[j - 1];
+            tiles[j] = t;
+        }
+        return n;
     }
 
     /**
      * @return the most important job from this queue or null, if empty.
      */
     public synchronized MapTile poll() {
-        if (mJobs == null)
+        if (mSize == 0)
             return null;
 
-        if (mCurrentJob == 0) {
-            int len = mJobs.length;
-            if (len > 1)
-                TileDistanceSort.sort(mJobs, 0, len);
+        MapTile t = mJobs[0];
+        t.jobIndex = -1;
+
+        MapTile last = mJobs[--mSize];
+        mJobs[mSize] = null;
+        if (mSize > 0) {
+            mJobs[0] = last;
+            last.jobIndex = 0;
+            siftDown(0);
         }
+        return t;
+    }
 
-        MapTile t = mJobs[mCurrentJob];
-        mJobs[mCurrentJob] = null;
+    private void reset(MapTile t) {
+        t.jobIndex = -1;
+        if (t.state(LOADING | CANCEL)) {
+            t.setState(NONE);
+        } else if (!t.state(MapTile.State.DEADBEEF)) {
+            log.error("Wrong tile in queue {} {}", t, t.state());
+        }
+    }
 
-        if (++mCurrentJob == mJobs.length)
-            mJobs = null;
+    private void append(MapTile t) {
+        if (mSize == mJobs.length)
+            mJobs = Arrays.copyOf(mJobs, mSize * 2);
+        t.jobIndex = mSize;
+        mJobs[mSize++] = t;
+    }
 
-        return t;
+    private void heapify() {
+        for (int i = (mSize >> 1) - 1; i >= 0; i--)
+            siftDown(i);
+    }
 
+    private void siftUp(int idx) {
+        MapTile[] tiles = mJobs;
+        MapTile t = tiles[idx];
+        while (idx > 0) {
+            int parent = (idx - 1) >> 1;
+            MapTile p = tiles[parent];
+            if (p.distance <= t.distance)
+                break;
+            tiles[idx] = p;
+            p.jobIndex = idx;
+            idx = parent;
+        }
+        tiles[idx] = t;
+        t.jobIndex = idx;
+    }
+
+    private void siftDown(int idx) {
+        MapTile[] tiles = mJobs;
+        MapTile t = tiles[idx];
+        int half = mSize >> 1;
+        while (idx < half) {
+            int c = (idx << 1) + 1;
+            MapTile child = tiles[c];
+            if (c + 1 < mSize && tiles[c + 1].distance < child.distance)
+                child = tiles[++c];
+            if (t.distance <= child.distance)
+                break;
+            tiles[idx] = child;
+            child.jobIndex = idx;
+            idx = c;
+        }
+        tiles[idx] = t;
+        t.jobIndex = idx;
     }
 }
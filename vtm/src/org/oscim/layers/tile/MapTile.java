@@ -117,6 +117,16 @@ public class MapTile extends Tile {
      */
     public float distance;
 
+    /**
+     * Position in {@link JobQueue}, -1 when not queued. Guarded by JobQueue.
+     */
+    int jobIndex = -1;
+
+    /**
+     * Serial of the last TileManager update which requested this tile.
+     */
+    int jobSerial;
+
     /**
      * Tile is in view region. Set by TileRenderer.
      */
@@ -19,6 +19,7 @@ package org.oscim.layers.tile;
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.MapElement;
 import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITilePrefetcher;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.PausableThread;
 import org.slf4j.Logger;
@@ -33,28 +34,137 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
 
     private static int id;
 
+    /**
+     * Number of queued jobs passed to the prefetcher of the data source.
+     */
+    static final int PREFETCH_JOBS = 8;
+
     private final String THREAD_NAME;
     private final TileManager mTileManager;
 
+    /**
+     * shared pool running this loader, null when running its own thread
+     */
+    private final TileLoaderPool mPool;
+
+    /**
+     * loader is executed by a pool worker, guarded by the pool
+     */
+    boolean mPoolRunning;
+
+    /**
+     * worker thread executing this loader, guarded by this loader
+     */
+    Thread mPoolThread;
+
     /**
      * currently processed tile
      */
     protected MapTile mTile;
 
+    private MapTile[] mPrefetchJobs;
+
     public TileLoader(TileManager tileManager) {
         super();
         mTileManager = tileManager;
+        mPool = TileLoaderPool.getDefault();
         THREAD_NAME = "TileLoader" + (id++);
     }
 
     protected abstract boolean loadTile(MapTile tile);
 
+    /**
+     * @return the prefetcher of the data source when it prefetches tiles,
+     * null otherwise.
+     */
+    protected ITilePrefetcher getPrefetcher() {
+        return null;
+    }
+
+    @Override
+    public void start() {
+        if (mPool != null)
+            mPool.register(this);
+        else
+            super.start();
+    }
+
     public void go() {
+        if (mPool != null) {
+            mPool.notifyWork();
+            return;
+        }
         synchronized (this) {
             notify();
         }
     }
 
+    @Override
+    public void finish() {
+        if (mPool != null)
+            mPool.unregister(this);
+        else
+            super.finish();
+    }
+
+    @Override
+    public void proceed() {
+        super.proceed();
+        if (mPool != null)
+            mPool.notifyWork();
+    }
+
+    @Override
+    public boolean isPausing() {
+        if (mPool != null)
+            return isCanceled() && !isPoolRunning();
+        return super.isPausing();
+    }
+
+    @Override
+    public void awaitPausing() {
+        if (mPool != null)
+            mPool.awaitIdle(this);
+        else
+            super.awaitPausing();
+    }
+
+    /**
+     * Interrupts the pool worker executing this loader, e.g. on
+     * {@link #pause()}, as this thread is not started then.
+     */
+    @Override
+    public void interrupt() {
+        if (mPool == null) {
+            super.interrupt();
+            return;
+        }
+        synchronized (this) {
+            if (mPoolThread != null)
+                mPoolThread.interrupt();
+        }
+    }
+
+    private boolean isPoolRunning() {
+        synchronized (mPool) {
+            return mPoolRunning;
+        }
+    }
+
+    /**
+     * @return the distance of the next tile job of this loader.
+     */
+    float getJobDistance() {
+        return mTileManager.getTileJobDistance();
+    }
+
+    /**
+     * Called by {@link TileLoaderPool} to load the next tile job.
+     */
+    void runJob() {
+        doWork();
+    }
+
     @Override
     protected void doWork() {
         mTile = mTileManager.getTileJob();
@@ -62,6 +172,8 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
         if (mTile == null)
             return;
 
+        prefetch();
+
         try {
             loadTile(mTile);
         } catch (Exception e) {
@@ -70,6 +182,25 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
         }
     }
 
+    /**
+     * Pass the next queued jobs to the prefetcher, which may request them
+     * while this loader is busy.
+     */
+    private void prefetch() {
+        ITilePrefetcher prefetcher = getPrefetcher();
+        if (prefetcher == null)
+            return;
+
+        if (mPrefetchJobs == null)
+            mPrefetchJobs = new MapTile[PREFETCH_JOBS];
+
+        int n = mTileManager.getTileJobs(mPrefetchJobs);
+        for (int i = 0; i < n; i++) {
+            prefetcher.prefetch(mPrefetchJobs[i]);
+            mPrefetchJobs[i] = null;
+        }
+    }
+
     @Override
     protected String getThreadName() {
         return THREAD_NAME;
@@ -97,7 +228,8 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
     public void completed(QueryResult result) {
         boolean ok = (result == SUCCESS);
 
-        if (ok && (isCanceled() || isInterrupted()))
+        /* loaders run by a pool have no thread of their own */
+        if (ok && (isCanceled() || (mPool == null && isInterrupted())))
             result = QueryResult.FAILED;
 
         mTileManager.jobCompleted(mTile, result);
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+/**
+ * A pool of worker threads shared by the {@link TileLoader}s of all TileLayers.
+ * <p/>
+ * By default each TileLayer runs its own loader threads. When a default pool
+ * is set via {@link #setDefault(TileLoaderPool)} before TileLayers are created,
+ * their TileLoaders do not start threads but are executed by the pool.
+ * <p/>
+ * A TileLoader is run by at most one worker at a time, so the number of
+ * loaders of a layer caps its concurrency. Idle workers pick the loader whose
+ * next tile job is closest to the map center.
+ */
+public class TileLoaderPool {
+
+    static final Logger log = LoggerFactory.getLogger(TileLoaderPool.class);
+
+    private static TileLoaderPool sDefault;
+
+    /**
+     * Set the pool used by TileLoaders created afterwards, null to let each
+     * TileLoader run its own thread (default).
+     */
+    public static synchronized void setDefault(TileLoaderPool pool) {
+        sDefault = pool;
+    }
+
+    public static synchronized TileLoaderPool getDefault() {
+        return sDefault;
+    }
+
+    private final ArrayList<TileLoader> mLoaders = new ArrayList<>();
+    private final Thread[] mWorkers;
+
+    /**
+     * round-robin start for loaders with equal priority
+     */
+    private int mNext;
+    private boolean mRunning = true;
+
+    /**
+     * @param numThreads the number of worker threads.
+     */
+    public TileLoaderPool(int numThreads) {
+        this(numThreads, false);
+    }
+
+    /**
+     * @param numThreads     the number of worker threads.
+     * @param virtualThreads use virtual threads when supported by the JVM.
+     */
+    public TileLoaderPool(int numThreads, boolean virtualThreads) {
+        mWorkers = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            Worker worker = new Worker();
+            Thread t = virtualThreads ? newVirtualThread(worker) : null;
+            if (t == null) {
+                t = new Thread(worker);
+                t.setDaemon(true);
+                t.setPriority((Thread.NORM_PRIORITY + Thread.MIN_PRIORITY) / 2);
+            }
+            t.setName("TileLoaderPool" + i);
+            mWorkers[i] = t;
+            t.start();
+        }
+    }
+
+    /**
+     * @return a virtual thread or null when not supported (Java 21+).
+     */
+    static Thread newVirtualThread(Runnable runnable) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method unstarted = ofVirtual.getReturnType().getMethod("unstarted", Runnable.class);
+            return (Thread) unstarted.invoke(builder, runnable);
+        } catch (Exception e) {
+            log.debug("virtual threads not supported: {}", e.toString());
+            return null;
+        }
+    }
+
+    synchronized void register(TileLoader loader) {
+        if (!mLoaders.contains(loader))
+            mLoaders.add(loader);
+        notifyAll();
+    }
+
+    synchronized void unregister(TileLoader loader) {
+        mLoaders.remove(loader);
+        notifyAll();
+    }
+
+    /**
+     * Wake up workers, e.g. when new jobs are available.
+     */
+    public synchronized void notifyWork() {
+        notifyAll();
+    }
+
+    /**
+     * Wait until the loader is not executed by a worker.
+     */
+    synchronized void awaitIdle(TileLoader loader) {
+        while (loader.mPoolRunning) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop all worker threads. Registered loaders are not run anymore.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            mRunning = false;
+            notifyAll();
+        }
+        for (Thread t : mWorkers)
+            t.interrupt();
+    }
+
+    public synchronized int getLoaderCount() {
+        return mLoaders.size();
+    }
+
+    /**
+     * @return the idle loader with the most important job or null.
+     */
+    private TileLoader nextLoader() {
+        int n = mLoaders.size();
+        if (n == 0)
+            return null;
+
+        TileLoader best = null;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            TileLoader l = mLoaders.get((mNext + i) % n);
+            if (l.mPoolRunning || l.isCanceled())
+                continue;
+
+            float d = l.getJobDistance();
+            if (d < bestDistance) {
+                best = l;
+                bestDistance = d;
+            }
+        }
+        if (best != null)
+            mNext = (mLoaders.indexOf(best) + 1) % n;
+
+        return best;
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                TileLoader loader = null;
+                synchronized (TileLoaderPool.this) {
+                    while (mRunning && (loader = nextLoader()) == null) {
+                        try {
+                            TileLoaderPool.this.wait();
+                        } catch (InterruptedException e) {
+                            /* check mRunning */
+                        }
+                    }
+                    if (!mRunning)
+                        return;
+
+                    loader.mPoolRunning = true;
+                }
+                try {
+                    boolean canceled;
+                    synchronized (loader) {
+                        /* paused after it was picked */
+                        canceled = loader.isCanceled();
+                        if (!canceled)
+                            loader.mPoolThread = Thread.currentThread();
+                    }
+                    if (!canceled)
+                        loader.runJob();
+                } finally {
+                    synchronized (loader) {
+                        loader.mPoolThread = null;
+                    }
+                    /* clear the interrupt of TileLoader.pause() */
+                    Thread.interrupted();
+
+                    synchronized (TileLoaderPool.this) {
+                        loader.mPoolRunning = false;
+                        TileLoaderPool.this.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
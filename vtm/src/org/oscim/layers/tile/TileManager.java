@@ -112,6 +112,11 @@ public class TileManager {
      */
     private int mUpdateSerial;
 
+    /**
+     * counter to mark tiles requested by the current update
+     */
+    private int mJobSerial;
+
     /**
      * lock for TileSets while updating MapTile locks - still needed?
      */
@@ -200,6 +205,8 @@ public class TileManager {
     }
 
     public void init() {
+        jobQueue.clear();
+
         if (mCurrentTiles != null)
             mCurrentTiles.releaseTiles();
 
@@ -251,15 +258,8 @@ public class TileManager {
             mPrevZoomlevel = pos.zoomLevel;
             init();
         }
-        /* clear JobQueue and set tiles to state == NONE.
-         * one could also append new tiles and sort in JobQueue
-         * but this has the nice side-effect that MapWorkers dont
-         * start with old jobs while new jobs are calculated, which
-         * should increase the chance that they are free when new
-         * jobs come in. */
-        jobQueue.clear();
-
         if (pos.zoomLevel < mMinZoom) {
+            jobQueue.clear();
             if (mCurrentTiles.cnt > 0 && pos.zoomLevel < mMinZoom - 4) {
                 synchronized (mTilelock) {
                     mCurrentTiles.releaseTiles();
@@ -301,8 +301,10 @@ public class TileManager {
                 if (z <= tileZoom && z > match)
                     match = z;
             }
-            if (match == 0)
+            if (match == 0) {
+                jobQueue.clear();
                 return false;
+            }
 
             tileZoom = match;
         }
@@ -313,6 +315,7 @@ public class TileManager {
         /* scan visible tiles. callback function calls 'addTile'
          * which updates mNewTiles */
         mNewTiles.cnt = 0;
+        mJobSerial++;
 
         // Retrieve tiles needed for layers to multiple rendering
         for (int i = 0; i < mZoomLimits.size(); i++) {
@@ -366,18 +369,16 @@ public class TileManager {
             mMap.render();
         }
 
-        /* Add tile jobs to queue */
-        if (mJobs.isEmpty())
-            return false;
-
-        MapTile[] jobs = new MapTile[mJobs.size()];
-        jobs = mJobs.toArray(jobs);
-        updateDistances(jobs, jobs.length, pos);
-
-        /* sets tiles to state == LOADING */
-        jobQueue.setJobs(jobs);
+        /* Update JobQueue: jobs no longer requested are set to state
+         * NONE, new jobs are added and all are re-keyed by distance.
+         * Jobs already taken by TileLoaders keep going. */
+        boolean newJobs = !mJobs.isEmpty();
+        jobQueue.update(mJobs, mJobSerial, pos);
         mJobs.clear();
 
+        if (!newJobs)
+            return false;
+
         if (mCacheReduce < mCacheLimit / 2) {
             if (BufferObject.isMaxFill()) {
                 mCacheReduce += 10;
@@ -411,6 +412,22 @@ public class TileManager {
         return jobQueue.poll();
     }
 
+    /**
+     * Get the next tile jobs without taking them, e.g. to prefetch them.
+     *
+     * @return the number of jobs.
+     */
+    public int getTileJobs(MapTile[] tiles) {
+        return jobQueue.peek(tiles);
+    }
+
+    /**
+     * @return the distance of the next tile job or Float.MAX_VALUE if none.
+     */
+    float getTileJobDistance() {
+        return jobQueue.peekDistance();
+    }
+
     /**
      * Retrieve a TileSet of current tiles. Tiles remain locked in cache until
      * the set is unlocked by either passing it again to this function or to
@@ -451,6 +468,7 @@ public class TileManager {
             tile.setState(LOADING);
             mJobs.add(tile);
         }
+        tile.jobSerial = mJobSerial;
 
         if (mLoadParent && (zoomLevel > mMinZoom) && (mZoomTable == null)) {
             /* prefetch parent */
@@ -466,6 +484,7 @@ public class TileManager {
                 p.setState(LOADING);
                 mJobs.add(p);
             }
+            p.jobSerial = mJobSerial;
         }
         return tile;
     }
@@ -660,7 +679,7 @@ public class TileManager {
         }
     }
 
-    private static void updateDistances(MapTile[] tiles, int size, MapPosition pos) {
+    static void updateDistances(MapTile[] tiles, int size, MapPosition pos) {
         /* TODO there is probably a better quad-tree distance function */
         int zoom = 20;
         long x = (long) (pos.x * (1 << zoom));
@@ -23,6 +23,7 @@ import org.oscim.layers.tile.TileLoader;
 import org.oscim.renderer.bucket.BitmapBucket;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.ITilePrefetcher;
 import org.oscim.tiling.TileSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,13 @@ public class BitmapTileLoader extends TileLoader {
         mLayer = tileLayer;
     }
 
+    @Override
+    protected ITilePrefetcher getPrefetcher() {
+        if (mTileDataSource instanceof ITilePrefetcher.Source)
+            return ((ITilePrefetcher.Source) mTileDataSource).getPrefetcher();
+        return null;
+    }
+
     @Override
     protected boolean loadTile(MapTile tile) {
         try {
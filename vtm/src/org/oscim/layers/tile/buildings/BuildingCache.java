@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.buildings;
+
+import org.oscim.core.Tile;
+import org.oscim.renderer.bucket.ExtrusionBucket;
+import org.oscim.renderer.bucket.ExtrusionBuckets;
+import org.oscim.utils.pool.Inlist;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A cache of the finished extrusion buckets of tiles, shared by the tile
+ * loaders of a {@link BuildingLayer}.
+ * <p/>
+ * A tile which is reloaded, e.g. after it was evicted from the tile cache,
+ * restores its buckets from the cache instead of processing its buildings
+ * again. The cache only holds data created with the same render theme and
+ * tile source, it is cleared when either changes. Each clear starts a new
+ * generation, buckets of loads started before are not stored. Tiles are
+ * evicted in LRU order when the byte budget is exceeded.
+ */
+public class BuildingCache {
+
+    private final LinkedHashMap<Key, Entry> mTiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Key mKey = new Key();
+    private final long mMaxBytes;
+
+    private Object mTheme;
+    private Object mSource;
+    private int mGeneration;
+
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param maxBytes the approximate maximum size of the cached buckets in bytes.
+     */
+    public BuildingCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @param theme  the current render theme.
+     * @param source the current tile source.
+     * @return the restored buckets of the tile or null if not cached.
+     */
+    ExtrusionBucket get(Tile tile, Object theme, Object source) {
+        Entry entry;
+        synchronized (this) {
+            if (theme != mTheme || source != mSource) {
+                clear();
+                mTheme = theme;
+                mSource = source;
+            }
+            entry = mTiles.get(mKey.set(tile));
+            if (entry == null) {
+                mMisses++;
+                return null;
+            }
+            mHits++;
+        }
+
+        ExtrusionBucket buckets = null;
+        for (ExtrusionBucket.Data data : entry.buckets)
+            buckets = Inlist.appendItem(buckets, new ExtrusionBucket(data));
+        return buckets;
+    }
+
+    /**
+     * @return the current generation, to be passed to
+     * {@link #put(Tile, int, ExtrusionBuckets)} for data loaded from now on.
+     */
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Store a copy of the prepared buckets of the tile.
+     *
+     * @param generation the generation when loading the tile started.
+     */
+    void put(Tile tile, int generation, ExtrusionBuckets ebs) {
+        if (mMaxBytes <= 0)
+            return;
+
+        Entry entry = new Entry(ebs);
+        if (entry.bytes > mMaxBytes)
+            return;
+
+        synchronized (this) {
+            /* cleared while loading */
+            if (generation != mGeneration)
+                return;
+
+            Entry old = mTiles.put(new Key().set(tile), entry);
+            if (old != null)
+                mBytes -= old.bytes;
+            mBytes += entry.bytes;
+
+            Iterator<Entry> it = mTiles.values().iterator();
+            while (mBytes > mMaxBytes && it.hasNext()) {
+                mBytes -= it.next().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all tiles, buckets of loads which are in progress are not stored.
+     */
+    public synchronized void clear() {
+        mTiles.clear();
+        mBytes = 0;
+        mGeneration++;
+    }
+
+    /**
+     * @return the approximate size of the cached buckets in bytes.
+     */
+    public synchronized long getSize() {
+        return mBytes;
+    }
+
+    public long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized int getTileCount() {
+        return mTiles.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized void resetStats() {
+        mHits = 0;
+        mMisses = 0;
+    }
+
+    private static final class Key {
+        int x;
+        int y;
+        int zoom;
+
+        Key set(Tile tile) {
+            x = tile.tileX;
+            y = tile.tileY;
+            zoom = tile.zoomLevel;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return x == other.x && y == other.y && zoom == other.zoom;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + x;
+            result = 31 * result + y;
+            return 31 * result + zoom;
+        }
+    }
+
+    private static final class Entry {
+        final List<ExtrusionBucket.Data> buckets = new ArrayList<>();
+        final long bytes;
+
+        Entry(ExtrusionBuckets ebs) {
+            long bytes = 64;
+            for (ExtrusionBucket b = ebs.buckets(); b != null; b = b.next()) {
+                ExtrusionBucket.Data data = b.getData();
+                buckets.add(data);
+                bytes += data.getBytes();
+            }
+            this.bytes = bytes;
+        }
+    }
+}
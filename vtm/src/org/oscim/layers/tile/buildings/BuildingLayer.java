@@ -22,7 +22,9 @@ package org.oscim.layers.tile.buildings;
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.Platform;
 import org.oscim.core.MapElement;
+import org.oscim.core.MapPosition;
 import org.oscim.core.Tag;
+import org.oscim.event.Event;
 import org.oscim.layers.Layer;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.ZoomLimiter;
@@ -32,6 +34,7 @@ import org.oscim.map.Map;
 import org.oscim.renderer.ExtrusionRenderer;
 import org.oscim.renderer.OffscreenRenderer;
 import org.oscim.renderer.OffscreenRenderer.Mode;
+import org.oscim.renderer.bucket.ExtrusionBucket;
 import org.oscim.renderer.bucket.ExtrusionBuckets;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.renderer.light.ShadowRenderer;
@@ -41,7 +44,8 @@ import org.oscim.utils.geom.GeometryUtils;
 
 import java.util.*;
 
-public class BuildingLayer extends Layer implements TileLoaderThemeHook, ZoomLimiter.IZoomLimiter {
+public class BuildingLayer extends Layer implements Map.UpdateListener, TileLoaderThemeHook,
+        ZoomLimiter.IZoomLimiter {
 
     protected static final int BUILDING_LEVEL_HEIGHT = 280; // cm
 
@@ -65,11 +69,20 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook, ZoomLim
      */
     public static boolean TRANSLUCENT = true;
 
+    /**
+     * Approximate size of the cache of finished tile buckets in bytes, 0 to disable.
+     * Applies to layers created afterwards.
+     */
+    public static long CACHE_SIZE = 16 * 1024 * 1024;
+
     private static final Object BUILDING_DATA = BuildingLayer.class.getName();
+    private static final Object CACHE_DATA = BuildingCache.class.getName();
 
     // Can be replaced with Multimap in Java 8
     protected java.util.Map<Integer, List<BuildingElement>> mBuildings = new HashMap<>();
 
+    protected final BuildingCache mCache = new BuildingCache(CACHE_SIZE);
+
     protected final ExtrusionRenderer mExtrusionRenderer;
 
     private final ZoomLimiter mZoomLimiter;
@@ -86,6 +99,23 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook, ZoomLim
         }
     }
 
+    /**
+     * The result of the cache lookup of a loading tile.
+     */
+    static final class CacheLookup extends MapTile.TileData {
+        final int generation;
+        final boolean hit;
+
+        CacheLookup(int generation, boolean hit) {
+            this.generation = generation;
+            this.hit = hit;
+        }
+
+        @Override
+        protected void dispose() {
+        }
+    }
+
     public BuildingLayer(Map map, VectorTileLayer tileLayer) {
         this(map, tileLayer, false, false);
     }
@@ -146,6 +176,10 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook, ZoomLim
         if (tile.zoomLevel > mZoomLimiter.getZoomLimit())
             return false;
 
+        // Buckets are restored from cache on completion
+        if (lookupCache(tile))
+            return true;
+
         ExtrusionStyle extrusion = (ExtrusionStyle) style.current();
 
         // Filter all building elements
@@ -171,6 +205,24 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook, ZoomLim
         return true;
     }
 
+    /**
+     * Look up the finished buckets of the tile in the cache, once per tile load.
+     *
+     * @return true if the buckets of the tile were restored from the cache
+     */
+    private boolean lookupCache(MapTile tile) {
+        CacheLookup lookup = (CacheLookup) tile.getData(CACHE_DATA);
+        if (lookup == null) {
+            ExtrusionBucket buckets = mCache.get(tile, mTileLayer.getTheme(),
+                    mTileLayer.getTileSource());
+            if (buckets != null)
+                get(tile).resetBuckets(buckets);
+            lookup = new CacheLookup(mCache.getGeneration(), buckets != null);
+            tile.addData(CACHE_DATA, lookup);
+        }
+        return lookup.hit;
+    }
+
     /**
      * Process map element.
      *
@@ -265,6 +317,20 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook, ZoomLim
         return ebs;
     }
 
+    @Override
+    public void onMapEvent(Event event, MapPosition mapPosition) {
+        /* map data may have changed */
+        if (event == Map.CLEAR_EVENT)
+            mCache.clear();
+    }
+
+    /**
+     * @return the cache of finished tile buckets
+     */
+    public BuildingCache getCache() {
+        return mCache;
+    }
+
     /**
      * Get the ExtrusionRenderer for customization.
      */
@@ -317,11 +383,19 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook, ZoomLim
 
     @Override
     public void complete(MapTile tile, boolean success) {
+        CacheLookup lookup = (CacheLookup) tile.removeData(CACHE_DATA);
         if (success) {
+            if (lookup != null && lookup.hit)
+                return;
             processElements(tile);
-            get(tile).prepare();
-        } else
+            ExtrusionBuckets ebs = get(tile);
+            ebs.prepare();
+            if (lookup != null)
+                mCache.put(tile, lookup.generation, ebs);
+        } else {
+            mBuildings.remove(tile.hashCode());
             get(tile).resetBuckets(null);
+        }
     }
 
     //    private int multi;
@@ -78,6 +78,7 @@ public class S3DBLayer extends BuildingLayer {
      */
     public void setColored(boolean colored) {
         mColored = colored;
+        mCache.clear();
     }
 
     public boolean isTransparent() {
@@ -90,6 +91,7 @@ public class S3DBLayer extends BuildingLayer {
      */
     public void setTransparent(boolean transparent) {
         mTransparent = transparent;
+        mCache.clear();
     }
 
     @Override
@@ -39,23 +39,142 @@ public final class S3DBUtils {
     private static final boolean IMPROVE_RIDGE_CALCULATION = false;
     private static final int SNAP_THRESHOLD = 70; // Threshold for ridge snap calculation (maybe should depend on map scale)
 
+    private static final float[] Z_VECTOR = new float[]{0, 0, 1};
+
+    /**
+     * Reusable buffers for the roof calculations, one per loader thread.
+     */
+    private static final ThreadLocal<RoofBuffers> ROOF_BUFFERS = new ThreadLocal<RoofBuffers>() {
+        @Override
+        protected RoofBuffers initialValue() {
+            return new RoofBuffers();
+        }
+    };
+
+    /**
+     * Primitive buffers for roof calculations, by index of the ground points.
+     */
+    private static final class RoofBuffers {
+        float[][] points = new float[0][];
+        float[][] normVectors = new float[0][];
+        float[] lengths = new float[0];
+        byte[] simpleAngles = new byte[0];
+        float[][] bisections = new float[0][];
+        float[][] intersections = new float[0][];
+        float[][] intersectionBuffers = new float[0][];
+
+        /* ridge points may be null while present */
+        float[][] ridgePoints = new float[0][];
+        boolean[] hasRidgePoint = new boolean[0];
+        float[][] ridgeLines = new float[0][];
+        boolean[] gablePoints = new boolean[0];
+        boolean[] skipFace = new boolean[0];
+        int[] ridgeIndex = new int[0];
+        int[] faceIndex = new int[0];
+
+        int[] meshIndex = new int[64];
+        int meshIndexSize;
+        int[] meshPartIndex = new int[64];
+        int meshPartIndexSize;
+
+        /* split of simple gabled roofs */
+        float[] splitPoints1 = new float[0];
+        float[] splitPoints2 = new float[0];
+        int[] splitIntersections1 = new int[4];
+        int[] splitIntersections2 = new int[4];
+
+        /**
+         * Load the polygon points with height z and reset the ridge state.
+         *
+         * @return the points as x, y, z
+         */
+        float[][] loadPoints(float[] coords, int pointPos, int size, float z) {
+            if (points.length < size) {
+                int capacity = Math.max(size, points.length * 2);
+                points = new float[capacity][3];
+                normVectors = new float[capacity][3];
+                lengths = new float[capacity];
+                simpleAngles = new byte[capacity];
+                bisections = new float[capacity][2];
+                intersections = new float[capacity][];
+                intersectionBuffers = new float[capacity][2];
+                ridgePoints = new float[capacity][];
+                hasRidgePoint = new boolean[capacity];
+                ridgeLines = new float[capacity][];
+                gablePoints = new boolean[capacity];
+                skipFace = new boolean[capacity];
+                ridgeIndex = new int[capacity];
+                faceIndex = new int[capacity];
+                splitPoints1 = new float[2 * (capacity + 4)];
+                splitPoints2 = new float[2 * (capacity + 4)];
+            }
+            for (int k = 0; k < size; k++, pointPos += 2) {
+                float[] p = points[k];
+                p[0] = coords[pointPos];
+                p[1] = coords[pointPos + 1];
+                p[2] = z;
+
+                intersections[k] = null;
+                ridgePoints[k] = null;
+                hasRidgePoint[k] = false;
+                ridgeLines[k] = null;
+                gablePoints[k] = false;
+                skipFace[k] = false;
+            }
+            return points;
+        }
+
+        void putRidgePoint(int k, float[] point) {
+            ridgePoints[k] = point;
+            hasRidgePoint[k] = true;
+        }
+
+        void removeRidgePoint(int k) {
+            ridgePoints[k] = null;
+            hasRidgePoint[k] = false;
+        }
+
+        void addMeshIndex(int i) {
+            if (meshIndexSize == meshIndex.length)
+                meshIndex = Arrays.copyOf(meshIndex, meshIndexSize * 2);
+            meshIndex[meshIndexSize++] = i;
+        }
+
+        void addMeshIndex(int i0, int i1, int i2) {
+            addMeshIndex(i0);
+            addMeshIndex(i1);
+            addMeshIndex(i2);
+        }
+
+        void addMeshPartIndex(int i0, int i1, int i2) {
+            if (meshPartIndexSize + 3 > meshPartIndex.length)
+                meshPartIndex = Arrays.copyOf(meshPartIndex, meshPartIndex.length * 2);
+            meshPartIndex[meshPartIndexSize++] = i0;
+            meshPartIndex[meshPartIndexSize++] = i1;
+            meshPartIndex[meshPartIndexSize++] = i2;
+        }
+    }
+
     /**
      * Adds point to ridgePoints and snaps it to a point which is in radius of SNAP_THRESHOLD.
      */
-    private static void addSnapRidgePoint(int id, float[] point, TreeMap<Integer, float[]> ridgePoints) {
+    private static void addSnapRidgePoint(int id, float[] point, RoofBuffers b, int size) {
         // Simplify ridgePoints
         if (point == null) return;
-        for (float[] ridPoint : ridgePoints.values()) {
+        for (int k = 0; k < size; k++) {
+            if (!b.hasRidgePoint[k])
+                continue;
+            float[] ridPoint = b.ridgePoints[k];
             if (ridPoint == null) {
                 log.debug("Ridge point not found!");
                 continue;
             }
             if (GeometryUtils.distance2D(ridPoint, point) < SNAP_THRESHOLD) {
-                ridgePoints.put(id, ridPoint);
+                b.putRidgePoint(id, ridPoint);
                 return;
             }
         }
-        ridgePoints.put(id, point);
+        b.putRidgePoint(id, point);
     }
 
     /**
@@ -186,25 +305,18 @@ public final class S3DBUtils {
         if (Tessellator.tessellate(element, element) == 0) return false;
 
         float[] points = element.points;
-        List<float[]> point3Fs = new ArrayList<>();
+        int numPoints = points.length / 2;
 
-        // Calculate center and load points
-        for (int pointPos = 0; pointPos < points.length; pointPos += 2) {
-            float x = points[pointPos];
-            float y = points[pointPos + 1];
-            point3Fs.add(new float[]{x, y, maxHeight});
-        }
-
-        points = new float[3 * point3Fs.size()];
-        for (int i = 0; i < point3Fs.size(); i++) {
+        // Load points with height
+        float[] meshPoints = new float[3 * numPoints];
+        for (int i = 0, pointPos = 0; i < numPoints; i++, pointPos += 2) {
             int pPos = 3 * i;
-            float[] point3D = point3Fs.get(i);
-            points[pPos + 0] = point3D[0];
-            points[pPos + 1] = point3D[1];
-            points[pPos + 2] = point3D[2];
+            meshPoints[pPos + 0] = points[pointPos];
+            meshPoints[pPos + 1] = points[pointPos + 1];
+            meshPoints[pPos + 2] = maxHeight;
         }
 
-        element.points = points;
+        element.points = meshPoints;
         element.pointNextPos = element.points.length;
         element.type = GeometryBuffer.GeometryType.TRIS;
         return true;
@@ -231,39 +343,35 @@ public final class S3DBUtils {
             int numPoints = index[i] / 2;
             if (numPoints < 0) continue;
 
-            List<float[]> point3Fs = new ArrayList<>();
-
-            // load points
+            // Load points, each at min and max height
+            int size = numPoints * 2;
+            float[] meshPoints = new float[size * 3];
             for (int j = 0; j < numPoints; j++, pointPos += 2) {
                 float x = points[pointPos];
                 float y = points[pointPos + 1];
 
-                point3Fs.add(new float[]{x, y, minHeight});
-                point3Fs.add(new float[]{x, y, maxHeight});
+                int pos = 6 * j;
+                meshPoints[pos + 0] = x;
+                meshPoints[pos + 1] = y;
+                meshPoints[pos + 2] = minHeight;
+                meshPoints[pos + 3] = x;
+                meshPoints[pos + 4] = y;
+                meshPoints[pos + 5] = maxHeight;
             }
 
             // Write index: index gives the first point of triangle mesh (divided 3)
             int[] meshIndex = new int[numPoints * 6]; // 3 vertices and each side needs 2 triangles
-            for (int j = 0; j < point3Fs.size(); j = j + 2) {
+            for (int j = 0; j < size; j = j + 2) {
                 int pos = 3 * j; // triangle mesh
                 meshIndex[pos + 2] = j;
-                meshIndex[pos + 1] = (j + 1) % point3Fs.size();
-                meshIndex[pos + 0] = (j + 3) % point3Fs.size();
+                meshIndex[pos + 1] = (j + 1) % size;
+                meshIndex[pos + 0] = (j + 3) % size;
 
-                meshIndex[pos + 5] = (j + 3) % point3Fs.size();
-                meshIndex[pos + 4] = (j + 2) % point3Fs.size();
+                meshIndex[pos + 5] = (j + 3) % size;
+                meshIndex[pos + 4] = (j + 2) % size;
                 meshIndex[pos + 3] = (j);
             }
 
-            // Write points
-            float[] meshPoints = new float[point3Fs.size() * 3];
-            for (int j = 0; j < point3Fs.size(); j++) {
-                int pos = 3 * j;
-                meshPoints[pos + 0] = point3Fs.get(j)[0];
-                meshPoints[pos + 1] = point3Fs.get(j)[1];
-                meshPoints[pos + 2] = point3Fs.get(j)[2];
-            }
-
             // Init points and indices or add more polygons (e.g. inner rings)
             if (element.points == null) {
                 element.points = meshPoints;
@@ -321,30 +429,27 @@ public final class S3DBUtils {
             // Init top of roof (attention with pointPos)
             GeometryUtils.center(points, pointPos, numPoints << 1, topPoint);
 
-            List<float[]> point3Fs = new ArrayList<>();
-            // Load points
-            for (int j = 0; j < (numPoints * 2); j += 2, pointPos += 2)
-                point3Fs.add(new float[]{points[pointPos], points[pointPos + 1], minHeight});
-
             // Write index: index gives the first point of triangle mesh (divided 3)
             int[] meshIndex = new int[numPoints * 3];
-            for (int j = 0; j < point3Fs.size(); j++) {
+            for (int j = 0; j < numPoints; j++) {
                 int pos = 3 * j; // triangle mesh
                 meshIndex[pos + 0] = j;
-                meshIndex[pos + 1] = (j + 1) % point3Fs.size();
-                meshIndex[pos + 2] = point3Fs.size();
+                meshIndex[pos + 1] = (j + 1) % numPoints;
+                meshIndex[pos + 2] = numPoints;
             }
 
-            // Write points
-            point3Fs.add(topPoint);
-            float[] meshPoints = new float[point3Fs.size() * 3];
-            for (int j = 0; j < point3Fs.size(); j++) {
+            // Write points and top point
+            float[] meshPoints = new float[(numPoints + 1) * 3];
+            for (int j = 0; j < numPoints; j++, pointPos += 2) {
                 int pos = 3 * j;
-                float[] point3D = point3Fs.get(j);
-                meshPoints[pos + 0] = point3D[0];
-                meshPoints[pos + 1] = point3D[1];
-                meshPoints[pos + 2] = point3D[2];
+                meshPoints[pos + 0] = points[pointPos];
+                meshPoints[pos + 1] = points[pointPos + 1];
+                meshPoints[pos + 2] = minHeight;
             }
+            int pos = 3 * numPoints;
+            meshPoints[pos + 0] = topPoint[0];
+            meshPoints[pos + 1] = topPoint[1];
+            meshPoints[pos + 2] = topPoint[2];
 
             element.points = meshPoints;
             element.index = meshIndex;
@@ -385,60 +490,57 @@ public final class S3DBUtils {
                 return true;
             }
 
-            List<float[]> point3Fs = new ArrayList<>();
-
-            // Calculate center and load points
-            for (int j = 0; j < (numPoints * 2); j += 2, pointPos += 2) {
-                float x = points[pointPos];
-                float y = points[pointPos + 1];
-
-                point3Fs.add(new float[]{x, y, minHeight});
-            }
+            RoofBuffers b = ROOF_BUFFERS.get();
+            int groundSize = numPoints;
+            float[][] point3Fs = b.loadPoints(points, pointPos, groundSize, minHeight);
+            pointPos += groundSize * 2;
 
             // Calc vectors
-            int groundSize = point3Fs.size();
-
-            List<Float> lengths = new ArrayList<>();
-            List<float[]> normVectors = GeometryUtils.normalizedVectors2D(point3Fs, lengths);
+            float[][] normVectors = b.normVectors;
+            float[] lengths = b.lengths;
+            normalizedVectors2D(point3Fs, groundSize, normVectors, lengths);
 
-            List<Byte> simpleAngles = getSimpleAngles(normVectors);
+            byte[] simpleAngles = b.simpleAngles;
+            getSimpleAngles(normVectors, groundSize, simpleAngles);
 
-            Integer indexStart = getIndexStart(simpleAngles, lengths, orientationAcross);
+            int indexStart = getIndexStart(simpleAngles, lengths, groundSize, orientationAcross);
 
             int countConcavAngles = 0;
-            for (Byte simpleAngle : simpleAngles) {
-                if (simpleAngle < -1)
+            for (int k = 0; k < groundSize; k++) {
+                if (simpleAngles[k] < -1)
                     countConcavAngles++;
             }
 
             // Calc different mesh, if roof has no nearly right angle
-            if (indexStart == null) {
+            if (indexStart < 0) {
                 if (isGabled)
                     return calcSimpleGabledMesh(element, minHeight, maxHeight, orientationAcross, specialParts);
                 else
                     return calcPyramidalMesh(element, minHeight, maxHeight);
             }
 
-            List<float[]> bisections = getBisections(normVectors);
-            List<float[]> intersections = new ArrayList<>();
+            float[][] bisections = b.bisections;
+            getBisections(normVectors, groundSize, bisections);
+            float[][] intersections = b.intersections;
 
             // Calc intersection of bisection
             for (int k = 0; k < groundSize; k++) {
-                int nextTurn = getIndexNextTurn(k, simpleAngles);
-                float[] pA = point3Fs.get(nextTurn);
-                float[] pB = point3Fs.get(k);
-                intersections.add(GeometryUtils.intersectionLines2D(pA, bisections.get(nextTurn), pB, bisections.get(k)));
+                int nextTurn = getIndexNextTurn(k, simpleAngles, groundSize);
+                float[] pA = point3Fs[nextTurn];
+                float[] pB = point3Fs[k];
+                intersections[k] = GeometryUtils.intersectionLines2D(pA, bisections[nextTurn], pB, bisections[k], b.intersectionBuffers[k]);
             }
 
-            // Calc ridge points
-            TreeMap<Integer, float[]> ridgePoints = new TreeMap<>();
-            TreeMap<Integer, float[]> ridgeLines = new TreeMap<>();
-            HashSet<Integer> gablePoints = new HashSet<>(); // Only used if gabled
-            Integer currentRidgeInd = null;
+            // Calc ridge points, indexed by ground point (only used if gabled)
+            float[][] ridgePoints = b.ridgePoints;
+            boolean[] hasRidgePoint = b.hasRidgePoint;
+            float[][] ridgeLines = b.ridgeLines;
+            boolean[] gablePoints = b.gablePoints;
+            int currentRidgeInd = -1;
             boolean isOdd = false;
             for (int k = 0; k < groundSize; k++) {
                 int shift = (k + indexStart) % groundSize;
-                byte direction = simpleAngles.get(shift);
+                byte direction = simpleAngles[shift];
                 if (direction == 0) {
                     continue; // direction is similar to last one
                 } else if (direction < 0) {
@@ -447,98 +549,98 @@ public final class S3DBUtils {
                     float[] positionRidgeB = null;
 
                     // Check two previous corners
-                    Integer indexPrevious = getIndexPreviousConvexTurn(shift, simpleAngles);
-                    Integer indexPrevious2 = getIndexPreviousConvexTurn(indexPrevious == null ? shift - 1 : indexPrevious, simpleAngles);
+                    int indexPrevious = getIndexPreviousConvexTurn(shift, simpleAngles, groundSize);
+                    int indexPrevious2 = getIndexPreviousConvexTurn(indexPrevious < 0 ? shift - 1 : indexPrevious, simpleAngles, groundSize);
 
-                    if (indexPrevious != null && indexPrevious2 != null) {
+                    if (indexPrevious >= 0 && indexPrevious2 >= 0) {
                         // Write two previous
-                        if (!ridgeLines.containsKey(indexPrevious2)) {
-                            ridgeLines.put(indexPrevious2, normVectors.get(indexPrevious));
+                        if (ridgeLines[indexPrevious2] == null) {
+                            ridgeLines[indexPrevious2] = normVectors[indexPrevious];
                         }
 
-                        positionRidgeA = intersections.get(indexPrevious2);
+                        positionRidgeA = intersections[indexPrevious2];
                         currentRidgeInd = indexPrevious2;
                         if (isGabled) {
-                            positionRidgeA = GeometryUtils.intersectionLines2D(positionRidgeA, ridgeLines.get(indexPrevious2), point3Fs.get(indexPrevious2), normVectors.get(indexPrevious2));
-                            gablePoints.add(indexPrevious2);
+                            positionRidgeA = GeometryUtils.intersectionLines2D(positionRidgeA, ridgeLines[indexPrevious2], point3Fs[indexPrevious2], normVectors[indexPrevious2]);
+                            gablePoints[indexPrevious2] = true;
                         }
-                        ridgePoints.put(indexPrevious2, positionRidgeA);
+                        b.putRidgePoint(indexPrevious2, positionRidgeA);
 
                         // Remove previous ridge, if exists
-                        gablePoints.remove(indexPrevious);
-                        ridgePoints.remove(indexPrevious);
-                        ridgeLines.remove(indexPrevious);
+                        gablePoints[indexPrevious] = false;
+                        b.removeRidgePoint(indexPrevious);
+                        ridgeLines[indexPrevious] = null;
                     }
 
                     // Check two next corners
-                    Integer indexNext = getIndexNextConvexTurn(shift, simpleAngles);
-                    Integer indexNext2 = getIndexNextConvexTurn(indexNext == null ? shift + 1 : indexNext, simpleAngles);
+                    int indexNext = getIndexNextConvexTurn(shift, simpleAngles, groundSize);
+                    int indexNext2 = getIndexNextConvexTurn(indexNext < 0 ? shift + 1 : indexNext, simpleAngles, groundSize);
 
-                    if (indexNext != null && indexNext2 != null) {
-                        if (ridgePoints.get(indexNext) == null) {
+                    if (indexNext >= 0 && indexNext2 >= 0) {
+                        if (ridgePoints[indexNext] == null) {
                             // Write both next
-                            if (!ridgeLines.containsKey(indexNext)) {
-                                ridgeLines.put(indexNext, normVectors.get(indexNext2));
+                            if (ridgeLines[indexNext] == null) {
+                                ridgeLines[indexNext] = normVectors[indexNext2];
                             }
-                            positionRidgeB = intersections.get(indexNext);
+                            positionRidgeB = intersections[indexNext];
 
                             if (isGabled) {
-                                positionRidgeB = GeometryUtils.intersectionLines2D(positionRidgeB, ridgeLines.get(indexNext), point3Fs.get(indexNext), normVectors.get(indexNext));
-                                gablePoints.add(indexNext);
+                                positionRidgeB = GeometryUtils.intersectionLines2D(positionRidgeB, ridgeLines[indexNext], point3Fs[indexNext], normVectors[indexNext]);
+                                gablePoints[indexNext] = true;
                             }
-                            ridgePoints.put(indexNext, positionRidgeB);
+                            b.putRidgePoint(indexNext, positionRidgeB);
                         } else {
-                            positionRidgeB = ridgePoints.get(indexNext);
+                            positionRidgeB = ridgePoints[indexNext];
                         }
                     }
 
                     // Handle multiple concaves
                     if (positionRidgeA == null || positionRidgeB == null) {
-                        if (positionRidgeA == null && positionRidgeB == null && currentRidgeInd != null) {
-                            positionRidgeA = ridgePoints.get(currentRidgeInd);
+                        if (positionRidgeA == null && positionRidgeB == null && currentRidgeInd >= 0) {
+                            positionRidgeA = ridgePoints[currentRidgeInd];
                         }
                         if (positionRidgeA != null && positionRidgeB == null) { // Next index is concave
-                            positionRidgeA = GeometryUtils.intersectionLines2D(positionRidgeA, ridgeLines.get(currentRidgeInd), point3Fs.get(shift), bisections.get(shift));
+                            positionRidgeA = GeometryUtils.intersectionLines2D(positionRidgeA, ridgeLines[currentRidgeInd], point3Fs[shift], bisections[shift]);
                             currentRidgeInd = shift;
-                            addSnapRidgePoint(shift, positionRidgeA, ridgePoints);
-                            ridgeLines.put(shift, normVectors.get(shift)); // Add ridgeLine, if concave
+                            addSnapRidgePoint(shift, positionRidgeA, b, groundSize);
+                            ridgeLines[shift] = normVectors[shift]; // Add ridgeLine, if concave
                             isOdd = false;
                             continue;
                         } else if (positionRidgeA == null && positionRidgeB != null) { // Previous index is concave
-                            positionRidgeA = GeometryUtils.intersectionLines2D(positionRidgeB, ridgeLines.get(indexNext), point3Fs.get(shift), bisections.get(shift));
-                            addSnapRidgePoint(shift, positionRidgeA, ridgePoints);
-                            currentRidgeInd = null;
+                            positionRidgeA = GeometryUtils.intersectionLines2D(positionRidgeB, ridgeLines[indexNext], point3Fs[shift], bisections[shift]);
+                            addSnapRidgePoint(shift, positionRidgeA, b, groundSize);
+                            currentRidgeInd = -1;
                             isOdd = false;
                             continue;
                         } else {
                             log.debug("Should never happen, because positionRidge wouldn't be null then");
-                            currentRidgeInd = null;
+                            currentRidgeInd = -1;
                             continue;
                         }
                     }
 
                     // Calc actual concave
-                    if (currentRidgeInd == null || indexNext == null || ridgeLines.get(currentRidgeInd) == null || ridgeLines.get(indexNext) == null) {
+                    if (currentRidgeInd < 0 || indexNext < 0 || ridgeLines[currentRidgeInd] == null || ridgeLines[indexNext] == null) {
                         log.debug("Concave shape not calculated correctly: " + element.toString());
-                        currentRidgeInd = null;
+                        currentRidgeInd = -1;
                         continue;
                     }
 
-                    float[] intersection = GeometryUtils.intersectionLines2D(positionRidgeA, ridgeLines.get(currentRidgeInd), positionRidgeB, ridgeLines.get(indexNext));
-                    addSnapRidgePoint(shift, intersection, ridgePoints);
+                    float[] intersection = GeometryUtils.intersectionLines2D(positionRidgeA, ridgeLines[currentRidgeInd], positionRidgeB, ridgeLines[indexNext]);
+                    addSnapRidgePoint(shift, intersection, b, groundSize);
 
                     // Set opposite ridge, if only one concave corner
                     if (countConcavAngles == 1) {
-                        Integer opposite = getIndexNextConvexTurn(indexNext2, simpleAngles);
-                        if (opposite != null) {
+                        int opposite = getIndexNextConvexTurn(indexNext2, simpleAngles, groundSize);
+                        if (opposite >= 0) {
                             if (isGabled)
-                                gablePoints.remove(opposite);
-                            ridgePoints.put(opposite, intersection);
+                                gablePoints[opposite] = false;
+                            b.putRidgePoint(opposite, intersection);
                         }
                     }
 
                     // Reset ridges
-                    currentRidgeInd = null;
+                    currentRidgeInd = -1;
                     isOdd = false;
                     continue;
                 }
@@ -547,75 +649,81 @@ public final class S3DBUtils {
                     isOdd = false;
                     continue;
                 }
-                if (simpleAngles.get(shift) > 1) {
+                if (simpleAngles[shift] > 1) {
                     isOdd = true;
                 }
-                if (ridgePoints.containsKey(shift) && ridgeLines.containsKey(shift)) {
+                if (hasRidgePoint[shift] && ridgeLines[shift] != null) {
                     currentRidgeInd = shift;
                     continue;
                 }
-                if (currentRidgeInd != null) {
+                if (currentRidgeInd >= 0) {
                     float[] intersection;
                     // If is gabled, then use the normal line as intersection instead of bisection, but if the angle is not right, this is usually not a gable point
                     if (isGabled && direction > 1) {
-                        if (ridgePoints.get(currentRidgeInd) == null) {
+                        if (ridgePoints[currentRidgeInd] == null) {
                             log.debug("Gabled intersection calc failed");
-                            currentRidgeInd = null;
+                            currentRidgeInd = -1;
                             continue;
                         }
-                        intersection = GeometryUtils.intersectionLines2D(ridgePoints.get(currentRidgeInd), ridgeLines.get(currentRidgeInd), point3Fs.get(shift), normVectors.get(shift));
+                        intersection = GeometryUtils.intersectionLines2D(ridgePoints[currentRidgeInd], ridgeLines[currentRidgeInd], point3Fs[shift], normVectors[shift]);
                         if (intersection == null) {
                             log.debug("Gabled intersection calc failed");
-                            currentRidgeInd = null;
+                            currentRidgeInd = -1;
                             continue;
                         }
-                        gablePoints.add(shift);
-                        ridgePoints.put(shift, intersection);
+                        gablePoints[shift] = true;
+                        b.putRidgePoint(shift, intersection);
                     } else {
-                        intersection = GeometryUtils.intersectionLines2D(ridgePoints.get(currentRidgeInd), ridgeLines.get(currentRidgeInd), point3Fs.get(shift), bisections.get(shift));
-                        addSnapRidgePoint(shift, intersection, ridgePoints);
+                        intersection = GeometryUtils.intersectionLines2D(ridgePoints[currentRidgeInd], ridgeLines[currentRidgeInd], point3Fs[shift], bisections[shift]);
+                        addSnapRidgePoint(shift, intersection, b, groundSize);
                     }
                     if (isOdd) {
-                        currentRidgeInd = null;
+                        currentRidgeInd = -1;
                     } else {
-                        ridgeLines.put(shift, normVectors.get(shift));
+                        ridgeLines[shift] = normVectors[shift];
                         currentRidgeInd = shift;
                     }
                 } else {
-                    Integer indexNext = getIndexNextConvexTurn(shift, simpleAngles);
-                    if (indexNext == null) continue;
-                    if (!ridgeLines.containsKey(shift)) {
-                        ridgeLines.put(shift, normVectors.get(indexNext));
+                    int indexNext = getIndexNextConvexTurn(shift, simpleAngles, groundSize);
+                    if (indexNext < 0) continue;
+                    if (ridgeLines[shift] == null) {
+                        ridgeLines[shift] = normVectors[indexNext];
                     }
                     currentRidgeInd = shift;
 
-                    float[] ridgePos = intersections.get(shift);
+                    float[] ridgePos = intersections[shift];
                     if (isGabled) {
-                        ridgePos = GeometryUtils.intersectionLines2D(ridgePos, ridgeLines.get(currentRidgeInd), point3Fs.get(shift), normVectors.get(shift));
-                        gablePoints.add(shift);
+                        ridgePos = GeometryUtils.intersectionLines2D(ridgePos, ridgeLines[currentRidgeInd], point3Fs[shift], normVectors[shift]);
+                        gablePoints[shift] = true;
                     }
-                    addSnapRidgePoint(shift, ridgePos, ridgePoints);
+                    addSnapRidgePoint(shift, ridgePos, b, groundSize);
                 }
             }
 
-            if (ridgePoints.isEmpty()) {
+            int ridgePointSize = 0;
+            for (int k = 0; k < groundSize; k++) {
+                if (hasRidgePoint[k])
+                    ridgePointSize++;
+            }
+            if (ridgePointSize == 0) {
                 calcPyramidalMesh(element, minHeight, maxHeight);
                 return true;
             }
 
-            Iterator<Map.Entry<Integer, float[]>> ridgeIt = ridgePoints.entrySet().iterator();
-            while (ridgeIt.hasNext()) {
-                Map.Entry<Integer, float[]> ridgeEntry = ridgeIt.next();
-                Integer key = ridgeEntry.getKey();
-                if (ridgeEntry.getValue() == null) {
+            for (int key = 0; key < groundSize; key++) {
+                if (!hasRidgePoint[key])
+                    continue;
+                float[] ridgePoint = ridgePoints[key];
+                if (ridgePoint == null) {
                     log.debug("Ridge calculation failed at point " + key);
-                    ridgeIt.remove();
+                    b.removeRidgePoint(key);
+                    ridgePointSize--;
                     continue;
                 }
 
                 // Only remove ridgePoint at concave corners
-                if (!isGabled || simpleAngles.get(key) < 0) {
-                    boolean isIn = GeometryUtils.pointInPoly(ridgeEntry.getValue()[0], ridgeEntry.getValue()[1], points, points.length, 0);
+                if (!isGabled || simpleAngles[key] < 0) {
+                    boolean isIn = GeometryUtils.pointInPoly(ridgePoint[0], ridgePoint[1], points, points.length, 0);
                     if (!isIn) {
                         // FIXME can improve shapes with concaves that intersect each other and remove shapes which have ridgepoints outside the outline
                         if (!IMPROVE_RIDGE_CALCULATION) {
@@ -627,46 +735,45 @@ public final class S3DBUtils {
                 }
             }
 
+            // Position of each ridge point in the mesh, after the ground points
+            int[] ridgeIndex = b.ridgeIndex;
+            for (int k = 0, l = 0; k < groundSize; k++) {
+                ridgeIndex[k] = l;
+                if (hasRidgePoint[k])
+                    l++;
+            }
+
             // Allocate the indices to the points
-            int ridgePointSize = ridgePoints.size();
             float[] meshPoints = new float[(groundSize + ridgePointSize) * 3]; //(ridgePoints * 3 = 6)
-            List<Integer> meshVarIndex = new ArrayList<>();
+            b.meshIndexSize = 0;
 
             // Add special building parts
-            List<Integer> meshPartVarIndex = null;
-            if (isGabled && specialParts != null) {
-                meshPartVarIndex = new ArrayList<>();
-            }
+            boolean hasMeshParts = isGabled && specialParts != null;
+            b.meshPartIndexSize = 0;
 
             for (int k = 0; k < groundSize; k++) {
                 // Add first face
-                float[] p = point3Fs.get(k);
+                float[] p = point3Fs[k];
                 int ridgePointIndex1 = k;
-                while (!ridgePoints.containsKey(ridgePointIndex1)) {
+                while (!hasRidgePoint[ridgePointIndex1]) {
                     ridgePointIndex1 = (ridgePointIndex1 + groundSize - 1) % groundSize; // Decrease ridgePointIndex
                 }
-                int ridgeIndex1 = ridgePoints.headMap(ridgePointIndex1).size(); // set ridgeIndex to shift in ridgePoints
-                if (meshPartVarIndex != null && gablePoints.contains(ridgePointIndex1) && getIndexNextTurn(ridgePointIndex1, simpleAngles).equals(getIndexNextTurn(k, simpleAngles))) {
-                    meshPartVarIndex.add(k);
-                    meshPartVarIndex.add((k + 1) % groundSize);
-                    meshPartVarIndex.add(ridgeIndex1 + groundSize);
+                int ridgeIndex1 = ridgeIndex[ridgePointIndex1]; // set ridgeIndex to shift in ridgePoints
+                if (hasMeshParts && gablePoints[ridgePointIndex1] && getIndexNextTurn(ridgePointIndex1, simpleAngles, groundSize) == getIndexNextTurn(k, simpleAngles, groundSize)) {
+                    b.addMeshPartIndex(k, (k + 1) % groundSize, ridgeIndex1 + groundSize);
                 } else {
-                    meshVarIndex.add(k);
-                    meshVarIndex.add((k + 1) % groundSize);
-                    meshVarIndex.add(ridgeIndex1 + groundSize);
+                    b.addMeshIndex(k, (k + 1) % groundSize, ridgeIndex1 + groundSize);
                 }
 
                 // Add second face, if necessary
                 int ridgePointIndex2 = (k + 1) % groundSize;
-                while (!ridgePoints.containsKey(ridgePointIndex2)) {
+                while (!hasRidgePoint[ridgePointIndex2]) {
                     ridgePointIndex2 = (ridgePointIndex2 + groundSize - 1) % groundSize; // Decrease ridgePointIndex
                 }
 
                 if (ridgePointIndex2 != ridgePointIndex1) {
-                    int ridgeIndex2 = ridgePoints.headMap(ridgePointIndex2).size(); // Set ridgeIndex to position in ridgePoints
-                    meshVarIndex.add(ridgeIndex1 + groundSize);
-                    meshVarIndex.add((k + 1) % groundSize);
-                    meshVarIndex.add(ridgeIndex2 + groundSize);
+                    int ridgeIndex2 = ridgeIndex[ridgePointIndex2]; // Set ridgeIndex to position in ridgePoints
+                    b.addMeshIndex(ridgeIndex1 + groundSize, (k + 1) % groundSize, ridgeIndex2 + groundSize);
                 }
 
                 // Write points
@@ -677,22 +784,28 @@ public final class S3DBUtils {
 
             // Tessellate top, if necessary (can be used to improve wrong rendered roofs)
             if (ridgePointSize > 2) {
-                HashSet<Integer> ridgeSkipFaceIndex = new HashSet<>();
+                boolean[] ridgeSkipFace = b.skipFace;
+                int skipFaceSize = 0;
                 boolean isTessellateAble = true;
                 for (int k = 0; k < groundSize; k++) {
-                    if (!isTessellateAble || ridgePoints.get(k) == null) continue;
-                    Integer middle = null;
+                    if (!isTessellateAble || ridgePoints[k] == null) continue;
+                    int middle = -1;
                     for (int m = k + 1; m <= k + groundSize; m++) {
                         int secIndex = m % groundSize;
-                        if (ridgePoints.get(secIndex) == null) continue;
-                        if (middle == null) {
+                        if (ridgePoints[secIndex] == null) continue;
+                        if (middle < 0) {
                             middle = secIndex;
                         } else {
-                            float isClockwise = GeometryUtils.isTrisClockwise(ridgePoints.get(k), ridgePoints.get(middle), ridgePoints.get(secIndex));
+                            float isClockwise = GeometryUtils.isTrisClockwise(ridgePoints[k], ridgePoints[middle], ridgePoints[secIndex]);
                             if (Math.abs(isClockwise) < 0.001) {
-                                ridgeSkipFaceIndex.add(middle);
-                                if (Arrays.equals(ridgePoints.get(k), ridgePoints.get(secIndex)))
-                                    ridgeSkipFaceIndex.add(k);
+                                if (!ridgeSkipFace[middle]) {
+                                    ridgeSkipFace[middle] = true;
+                                    skipFaceSize++;
+                                }
+                                if (Arrays.equals(ridgePoints[k], ridgePoints[secIndex]) && !ridgeSkipFace[k]) {
+                                    ridgeSkipFace[k] = true;
+                                    skipFaceSize++;
+                                }
                             }
                             if (isClockwise > 0 && IMPROVE_RIDGE_CALCULATION) {
                                 // TODO Improve handling of counter clockwise faces and support multiple faces
@@ -704,17 +817,17 @@ public final class S3DBUtils {
                         }
                     }
                 }
-                int faceLength = ridgePointSize - ridgeSkipFaceIndex.size();
+                int faceLength = ridgePointSize - skipFaceSize;
                 if (isTessellateAble && faceLength > 0) {
                     float[] gbPoints = new float[2 * faceLength];
                     int k = 0;
-                    List<Integer> faceIndex = new ArrayList<>(); // Store used indices
+                    int[] faceIndex = b.faceIndex; // Store used indices
                     for (int m = 0; m < groundSize; m++) {
-                        float[] point = ridgePoints.get(m);
-                        if (ridgeSkipFaceIndex.contains(m) || point == null) {
+                        float[] point = ridgePoints[m];
+                        if (ridgeSkipFace[m] || point == null) {
                             continue;
                         }
-                        faceIndex.add(m);
+                        faceIndex[k] = m;
                         gbPoints[2 * k] = point[0];
                         gbPoints[2 * k + 1] = point[1];
                         k++;
@@ -723,7 +836,7 @@ public final class S3DBUtils {
                     if (Tessellator.tessellate(buffer, buffer) != 0) {
                         for (int ind : buffer.index) {
                             // Get position in ridgePoints, considering skipped points
-                            meshVarIndex.add(ridgePoints.headMap(faceIndex.get(ind)).size() + groundSize);
+                            b.addMeshIndex(ridgeIndex[faceIndex[ind]] + groundSize);
                         }
                     } else {
                         // TODO Improve wrong or not tessellated faces
@@ -736,34 +849,24 @@ public final class S3DBUtils {
                 }
             }
 
-
-            // Replace in Java 8 / min API 24
-            int[] meshIndex = new int[meshVarIndex.size()]; // new int[(groundSize + ridgePointSize) * 3]; // 3 vertices per point + 6 vertices for left and right roof
-            for (int k = 0; k < meshIndex.length; k++)
-                meshIndex[k] = meshVarIndex.get(k);
+            int[] meshIndex = Arrays.copyOf(b.meshIndex, b.meshIndexSize);
 
             for (int k = 0, l = 0; k < groundSize; k++) {
                 // Add ridge points
-                float[] tmp = ridgePoints.get(k);
+                float[] tmp = ridgePoints[k];
                 if (tmp != null) {
-                    float[] p = new float[]{tmp[0], tmp[1], maxHeight};
                     int ppos = 3 * (l + groundSize);
-                    meshPoints[ppos + 0] = p[0];
-                    meshPoints[ppos + 1] = p[1];
-                    meshPoints[ppos + 2] = p[2];
+                    meshPoints[ppos + 0] = tmp[0];
+                    meshPoints[ppos + 1] = tmp[1];
+                    meshPoints[ppos + 2] = maxHeight;
                     l++;
                 }
             }
 
             // Add special parts e.g. for gabled roofs
-            if (specialParts != null && meshPartVarIndex != null) {
-                // Replace in Java 8 / min API 24
-                int[] meshPartsIndex = new int[meshPartVarIndex.size()];
-                for (int k = 0; k < meshPartsIndex.length; k++)
-                    meshPartsIndex[k] = meshPartVarIndex.get(k);
-
+            if (hasMeshParts) {
                 specialParts.points = meshPoints;
-                specialParts.index = meshPartsIndex;
+                specialParts.index = Arrays.copyOf(b.meshPartIndex, b.meshPartIndexSize);
                 specialParts.pointNextPos = meshPoints.length;
                 specialParts.type = GeometryBuffer.GeometryType.TRIS;
             }
@@ -801,37 +904,33 @@ public final class S3DBUtils {
                 return true;
             }
 
-            List<float[]> point3Fs = new ArrayList<>();
-
-            // Calculate center and load points
-            for (int j = 0; j < (numPoints * 2); j += 2, pointPos += 2) {
-                float x = points[pointPos];
-                float y = points[pointPos + 1];
-
-                point3Fs.add(new float[]{x, y, minHeight});
-            }
+            RoofBuffers b = ROOF_BUFFERS.get();
+            int groundSize = numPoints;
+            float[][] point3Fs = b.loadPoints(points, pointPos, groundSize, minHeight);
+            pointPos += groundSize * 2;
 
             // Calc vectors
-            int groundSize = point3Fs.size();
+            float[][] normVectors = b.normVectors;
+            float[] lengths = b.lengths;
+            normalizedVectors2D(point3Fs, groundSize, normVectors, lengths);
 
-            List<Float> lengths = new ArrayList<>();
-            List<float[]> normVectors = GeometryUtils.normalizedVectors2D(point3Fs, lengths);
+            byte[] simpleAngles = b.simpleAngles;
+            getSimpleAngles(normVectors, groundSize, simpleAngles);
 
-            List<Byte> simpleAngles = getSimpleAngles(normVectors);
-
-            int indexStart = getIndicesLongestSide(simpleAngles, lengths, null)[0];
+            int indexStart = getIndicesLongestSide(simpleAngles, lengths, groundSize, -1)[0];
             if (orientationAcross) {
-                Integer tmp = getIndexPreviousConvexTurn(indexStart, simpleAngles);
-                if (tmp == null) {
-                    tmp = getIndexNextTurn(indexStart, simpleAngles);
+                int tmp = getIndexPreviousConvexTurn(indexStart, simpleAngles, groundSize);
+                if (tmp < 0) {
+                    tmp = getIndexNextTurn(indexStart, simpleAngles, groundSize);
                 }
                 indexStart = tmp;
             }
-            float[] vL = normVectors.get(indexStart);
-            float[] pL = point3Fs.get(indexStart);
+            float[] vL = normVectors[indexStart];
+            float[] pL = point3Fs[indexStart];
             float[] splitLinePoint = null;
             float maxDist = 0;
-            for (float[] point : point3Fs) {
+            for (int k = 0; k < groundSize; k++) {
+                float[] point = point3Fs[k];
                 float curDist = GeometryUtils.distancePointLine2D(point, pL, vL);
                 if (curDist > maxDist) {
                     maxDist = curDist;
@@ -849,49 +948,58 @@ public final class S3DBUtils {
             splitLinePoint = GeometryUtils.sumVec(pL, normL);
             float degreeNormL = (float) Math.atan2(normL[0], -normL[1]) * MathUtils.radiansToDegrees;
 
-            // Split polygon
+            // Split polygon, the points of both parts as x, y
             int sideChange = 0;
-            List<float[]> elementPoints1 = new ArrayList<>();
-            List<float[]> elementPoints2 = new ArrayList<>();
+            float[] elementPoints1 = b.splitPoints1;
+            float[] elementPoints2 = b.splitPoints2;
+            int size1 = 0, size2 = 0;
             float[] secSplitPoint = GeometryUtils.sumVec(splitLinePoint, vL);
-            float sideLastPoint = Math.signum(GeometryUtils.isTrisClockwise(splitLinePoint, secSplitPoint, point3Fs.get(groundSize - 1)));
+            float sideLastPoint = Math.signum(GeometryUtils.isTrisClockwise(splitLinePoint, secSplitPoint, point3Fs[groundSize - 1]));
             degreeNormL = sideLastPoint > 0 ? degreeNormL : (degreeNormL + 180f) % 360; // Correct angle
-            List<Integer> intersection1 = new ArrayList<>(), intersection2 = new ArrayList<>();
+            int[] intersection1 = b.splitIntersections1, intersection2 = b.splitIntersections2;
+            int intersectionSize = 0;
             for (int k = 0; k < groundSize; k++) {
                 // If point is not on the same side as the previous point, the split line intersect and can calc split point
-                float sideCurPoint = Math.signum(GeometryUtils.isTrisClockwise(splitLinePoint, secSplitPoint, point3Fs.get(k)));
+                float sideCurPoint = Math.signum(GeometryUtils.isTrisClockwise(splitLinePoint, secSplitPoint, point3Fs[k]));
                 if (sideCurPoint != sideLastPoint) {
                     if (sideChange > 2 && !IMPROVE_RIDGE_CALCULATION)
                         return calcFlatMesh(element, minHeight); // TODO Improve multiple side changes
                     int indexPrev = (k + groundSize - 1) % groundSize;
-                    float[] intersection = GeometryUtils.intersectionLines2D(splitLinePoint, vL, point3Fs.get(indexPrev), normVectors.get(indexPrev));
-                    elementPoints1.add(intersection);
-                    elementPoints2.add(intersection);
-                    intersection1.add(elementPoints1.size() - 1);
-                    intersection2.add(elementPoints2.size() - 1);
+                    float[] intersection = GeometryUtils.intersectionLines2D(splitLinePoint, vL, point3Fs[indexPrev], normVectors[indexPrev]);
+                    if (intersection == null)
+                        return false;
+                    if (intersectionSize == intersection1.length) {
+                        intersection1 = b.splitIntersections1 = Arrays.copyOf(intersection1, intersectionSize * 2);
+                        intersection2 = b.splitIntersections2 = Arrays.copyOf(intersection2, intersectionSize * 2);
+                    }
+                    intersection1[intersectionSize] = size1;
+                    intersection2[intersectionSize] = size2;
+                    intersectionSize++;
+                    elementPoints1[2 * size1] = elementPoints2[2 * size2] = intersection[0];
+                    elementPoints1[2 * size1 + 1] = elementPoints2[2 * size2 + 1] = intersection[1];
+                    size1++;
+                    size2++;
                     sideChange++;
                 }
                 if (sideChange % 2 == 0) {
-                    elementPoints1.add(point3Fs.get(k));
+                    elementPoints1[2 * size1] = point3Fs[k][0];
+                    elementPoints1[2 * size1 + 1] = point3Fs[k][1];
+                    size1++;
                 } else {
-                    elementPoints2.add(point3Fs.get(k));
+                    elementPoints2[2 * size2] = point3Fs[k][0];
+                    elementPoints2[2 * size2 + 1] = point3Fs[k][1];
+                    size2++;
                 }
                 sideLastPoint = sideCurPoint;
             }
 
-            GeometryBuffer geoEle1 = new GeometryBuffer(elementPoints1.size(), 1);
-            for (int k = 0; k < elementPoints1.size(); k++) {
-                geoEle1.points[2 * k] = elementPoints1.get(k)[0];
-                geoEle1.points[2 * k + 1] = elementPoints1.get(k)[1];
-            }
+            GeometryBuffer geoEle1 = new GeometryBuffer(size1, 1);
+            System.arraycopy(elementPoints1, 0, geoEle1.points, 0, 2 * size1);
             geoEle1.index[0] = geoEle1.points.length;
             geoEle1.pointNextPos = geoEle1.points.length;
 
-            GeometryBuffer geoEle2 = new GeometryBuffer(elementPoints2.size(), 1);
-            for (int k = 0; k < elementPoints2.size(); k++) {
-                geoEle2.points[2 * k] = elementPoints2.get(k)[0];
-                geoEle2.points[2 * k + 1] = elementPoints2.get(k)[1];
-            }
+            GeometryBuffer geoEle2 = new GeometryBuffer(size2, 1);
+            System.arraycopy(elementPoints2, 0, geoEle2.points, 0, 2 * size2);
             geoEle2.index[0] = geoEle2.points.length;
             geoEle2.pointNextPos = geoEle2.points.length;
 
@@ -904,11 +1012,13 @@ public final class S3DBUtils {
             }
 
             // Adapt gable intersections to max height
-            for (Integer integer : intersection1) {
+            for (int k = 0; k < intersectionSize; k++) {
+                int integer = intersection1[k];
                 geoEle1.points[integer * 3 + 2] = maxHeight;
                 specialParts1.points[6 * integer + 5] = maxHeight;
             }
-            for (Integer integer : intersection2) {
+            for (int k = 0; k < intersectionSize; k++) {
+                int integer = intersection2[k];
                 geoEle2.points[integer * 3 + 2] = maxHeight;
                 specialParts2.points[6 * integer + 5] = maxHeight;
             }
@@ -942,13 +1052,8 @@ public final class S3DBUtils {
             int numPoints = index[i] / 2;
             if (numPoints < 0) continue;
 
-            List<float[]> point3Fs = new ArrayList<>();
-            for (int j = 0; j < (numPoints * 2); j += 2, pointPos += 2) {
-                float x = points[pointPos];
-                float y = points[pointPos + 1];
-
-                point3Fs.add(new float[]{x, y, minHeight});
-            }
+            float[][] point3Fs = ROOF_BUFFERS.get().loadPoints(points, pointPos, numPoints, minHeight);
+            pointPos += numPoints * 2;
 
             boolean hasOutlines = calcOutlines(specialParts, minHeight, maxHeight);
 
@@ -966,8 +1071,8 @@ public final class S3DBUtils {
                 vRidge[1] = (float) -Math.cos(roofDegree);
                 vRidge = GeometryUtils.scale(vRidge, 100000000); // Use very large value, so the distances are nearly parallel
 
-                for (int k = 0; k < point3Fs.size(); k++) {
-                    float[] point = point3Fs.get(k);
+                for (int k = 0; k < numPoints; k++) {
+                    float[] point = point3Fs[k];
                     float vx = vRidge[0] - point[0];
                     float vy = vRidge[1] - point[1];
                     float currentDiff = (float) Math.sqrt(vx * vx + vy * vy);
@@ -996,7 +1101,7 @@ public final class S3DBUtils {
                 }
                 if (min1 == max1) return false;
 
-                float[] normal, zVector = new float[]{0, 0, 1}; // height intersection
+                float[] normal;
                 min1[2] = minHeight;
                 max1[2] = maxHeight;
 
@@ -1010,8 +1115,8 @@ public final class S3DBUtils {
                 }
 
                 // Calc intersection points of ground points with plane
-                for (int k = 0; k < point3Fs.size(); k++) {
-                    float[] intersection = GeometryUtils.intersectionLinePlane(point3Fs.get(k), zVector, min1, normal);
+                for (int k = 0; k < numPoints; k++) {
+                    float[] intersection = GeometryUtils.intersectionLinePlane(point3Fs[k], Z_VECTOR, min1, normal);
                     if (intersection == null) return false;
                     intersection[2] = intersection[2] > (2 * maxHeight) ? maxHeight : (intersection[2] < minHeight ? minHeight : intersection[2]);
                     element.points[3 * k + 2] = intersection[2];
@@ -1028,25 +1133,51 @@ public final class S3DBUtils {
     }
 
     /**
-     * @return the bisections of vectors
+     * Calculates the bisections of normalized vectors.
      */
-    private static List<float[]> getBisections(List<float[]> normVectors) {
-        int size = normVectors.size();
-        List<float[]> bisections = new ArrayList<>();
+    private static void getBisections(float[][] normVectors, int size, float[][] outBisections) {
         // Calc bisections
         for (int k = 0; k < size; k++) {
-            float[] vBC = normVectors.get((k + size - 1) % size);
-            float[] vBA = normVectors.get(k);
+            float[] vBC = normVectors[(k + size - 1) % size];
+            float[] vBA = normVectors[k];
+
+            // Change direction of vBC to get correct angle
+            float[] bisection = outBisections[k];
+            bisection[0] = -vBC[0] + vBA[0];
+            bisection[1] = -vBC[1] + vBA[1];
+            if (bisection[0] == 0 && bisection[1] == 0) {
+                // 90 degree to vBC
+                bisection[0] = -vBC[1];
+                bisection[1] = vBC[0];
+            }
+        }
+    }
+
+    /**
+     * Calculates the normalized direction vectors of a polygon.
+     *
+     * @param points      the points of the polygon
+     * @param size        the number of points
+     * @param outVectors  the normalized direction vectors
+     * @param outLengths  the lengths of the vectors
+     */
+    private static void normalizedVectors2D(float[][] points, int size, float[][] outVectors, float[] outLengths) {
+        for (int i = 0; i < size; i++) {
+            float[] pA = points[i];
+            float[] pB = points[(i + 1) % size];
 
-            // Change direction to get correct angle
-            vBC = Arrays.copyOf(vBC, vBC.length);
-            vBC[0] = -vBC[0];
-            vBC[1] = -vBC[1];
+            float[] vBA = outVectors[i];
+            vBA[0] = pB[0] - pA[0];
+            vBA[1] = pB[1] - pA[1];
+            vBA[2] = pB[2] - pA[2];
 
-            // Calc bisection
-            bisections.add(GeometryUtils.bisectionNorm2D(vBC, vBA));
+            // Get length of AB
+            float length = (float) Math.sqrt(vBA[0] * vBA[0] + vBA[1] * vBA[1]);
+            outLengths[i] = length;
+
+            vBA[0] /= length; // Normalize vector
+            vBA[1] /= length;
         }
-        return bisections;
     }
 
     /**
@@ -1075,84 +1206,83 @@ public final class S3DBUtils {
     }
 
     /**
-     * @return the index of convex turn after specified index or null, if it's concave.
+     * @return the index of convex turn after specified index or -1, if it's concave.
      */
-    private static Integer getIndexNextConvexTurn(int index, List<Byte> simpleAngles) {
-        for (int i = index + 1; i < simpleAngles.size() + index; i++) {
-            int iMod = i % simpleAngles.size();
-            if (simpleAngles.get(iMod) > 0) {
+    private static int getIndexNextConvexTurn(int index, byte[] simpleAngles, int size) {
+        for (int i = index + 1; i < size + index; i++) {
+            int iMod = i % size;
+            if (simpleAngles[iMod] > 0) {
                 return iMod;
-            } else if (simpleAngles.get(iMod) < 0) {
-                return null;
+            } else if (simpleAngles[iMod] < 0) {
+                return -1;
             }
         }
-        return (index + 1) % simpleAngles.size();
+        return (index + 1) % size;
     }
 
     /**
      * @return the index of next turn after specified index
      */
-    private static Integer getIndexNextTurn(int index, List<Byte> simpleAngles) {
-        for (int i = index + 1; i < simpleAngles.size() + index; i++) {
-            int iMod = i % simpleAngles.size();
-            if (simpleAngles.get(iMod) != 0) {
+    private static int getIndexNextTurn(int index, byte[] simpleAngles, int size) {
+        for (int i = index + 1; i < size + index; i++) {
+            int iMod = i % size;
+            if (simpleAngles[iMod] != 0) {
                 return iMod;
             }
         }
-        return (index + 1) % simpleAngles.size();
+        return (index + 1) % size;
     }
 
     /**
-     * @return the index of previous convex turn at specified index
+     * @return the index of previous convex turn at specified index or -1, if it's concave.
      */
-    private static Integer getIndexPreviousConvexTurn(int index, List<Byte> simpleAngles) {
-        for (int i = simpleAngles.size() + index - 1; i >= 0; i--) {
-            int iMod = i % simpleAngles.size();
-            if (simpleAngles.get(iMod) > 0) {
+    private static int getIndexPreviousConvexTurn(int index, byte[] simpleAngles, int size) {
+        for (int i = size + index - 1; i >= 0; i--) {
+            int iMod = i % size;
+            if (simpleAngles[iMod] > 0) {
                 return iMod;
-            } else if (simpleAngles.get(iMod) < 0) {
-                return null;
+            } else if (simpleAngles[iMod] < 0) {
+                return -1;
             }
         }
-        return (simpleAngles.size() + index - 1) % simpleAngles.size();
+        return (size + index - 1) % size;
     }
 
     /**
-     * @return the best index to begin a calculation
+     * @return the best index to begin a calculation or -1
      */
-    private static Integer getIndexStart(List<Byte> simpleAngles, List<Float> lengths, boolean directionAcross) {
-        int size = simpleAngles.size();
-        Integer indexStart = null;
-        Integer concaveStart = null;
+    private static int getIndexStart(byte[] simpleAngles, float[] lengths, int size, boolean directionAcross) {
+        int indexStart = -1;
+        int concaveStart = -1;
         for (int i = 0; i < size; i++) {
-            if (indexStart != null && concaveStart != null) break;
-            if (indexStart == null && simpleAngles.get(i) > 1) {
+            if (indexStart >= 0 && concaveStart >= 0) break;
+            if (indexStart < 0 && simpleAngles[i] > 1) {
                 // Use first angle as start index;
                 indexStart = i;
-            } else if (concaveStart == null && simpleAngles.get(i) < -1) {
+            } else if (concaveStart < 0 && simpleAngles[i] < -1) {
                 // A real concave corner
                 concaveStart = i;
             }
         }
 
-        if (indexStart == null) {
-            return null;
+        if (indexStart < 0) {
+            return -1;
         }
 
-        if (concaveStart != null) {
+        if (concaveStart >= 0) {
             // look for next convex shape (point)
             for (int i = concaveStart; i < size + indexStart; i++) {
-                if (simpleAngles.get(i % size) < 0) {
+                if (simpleAngles[i % size] < 0) {
                     return i % size;
                 }
             }
         }
 
         // Calculate longest side with right angle next to it.
-        int[] iLongSide = getIndicesLongestSide(simpleAngles, lengths, indexStart);
-        if (simpleAngles.get(iLongSide[1]) < 2) {
+        int[] iLongSide = getIndicesLongestSide(simpleAngles, lengths, size, indexStart);
+        if (simpleAngles[iLongSide[1]] < 2) {
             // If angle is not good to start a ridge use previous
-            indexStart = getIndexPreviousConvexTurn(iLongSide[0], simpleAngles);
+            indexStart = getIndexPreviousConvexTurn(iLongSide[0], simpleAngles, size);
         } else {
             indexStart = iLongSide[1]; // Get side next to longest one
         }
@@ -1166,15 +1296,14 @@ public final class S3DBUtils {
     }
 
     /**
-     * @param indexStart the start index, if already calculated (can be null)
+     * @param indexStart the start index, if already calculated (can be -1)
      * @return int[0] = start index, int[1] = end index
      */
-    private static int[] getIndicesLongestSide(List<Byte> simpleAngles, List<Float> lengths, Integer indexStart) {
+    private static int[] getIndicesLongestSide(byte[] simpleAngles, float[] lengths, int size, int indexStart) {
         int[] iLongSide = new int[2];
-        int size = simpleAngles.size();
-        if (indexStart == null) {
+        if (indexStart < 0) {
             for (int i = 0; i < size; i++) {
-                if (simpleAngles.get(i) > 0) {
+                if (simpleAngles[i] > 0) {
                     // Use first convex angle as start index;
                     indexStart = i;
                     break;
@@ -1191,12 +1320,12 @@ public final class S3DBUtils {
                 loopSize -= size;
             }
 
-            if (simpleAngles.get(i) != 0) {
+            if (simpleAngles[i] != 0) {
                 // Right angle
-                currentLength = lengths.get(i);
+                currentLength = lengths[i];
                 indexCurrentSide = i;
             } else {
-                currentLength += lengths.get(i);
+                currentLength += lengths[i];
             }
 
             if (currentLength > longestSideLength) {
@@ -1294,7 +1423,8 @@ public final class S3DBUtils {
 
     /**
      * @param normVectors the normalized vectors
-     * @return a list of simple angles:
+     * @param size        the number of vectors
+     * @param outAngles   the simple angles:
      * 0           straight
      * (+/-) 1     (convex/concave) obtuse angle
      * (+/-) 2     (convex/concave) right angle (or acute angle)
@@ -1303,16 +1433,13 @@ public final class S3DBUtils {
      * convex: turns right
      * concave: turns left
      */
-    private static List<Byte> getSimpleAngles(List<float[]> normVectors) {
-        int size = normVectors.size();
-        // List<Float> angles = new ArrayList<>();
-        List<Byte> simpAngls = new ArrayList<>();
+    private static void getSimpleAngles(float[][] normVectors, int size, byte[] outAngles) {
         float tmpAnlgeSum = 0;
         float threshold = MathUtils.PI / 12;
         for (int k = 0; k < size; k++) {
             // Check angle between next and this vector
-            float[] v2 = normVectors.get(k);
-            float[] v1 = normVectors.get((k - 1 + size) % size);
+            float[] v2 = normVectors[k];
+            float[] v1 = normVectors[(k - 1 + size) % size];
             float val = v1[0] * v2[0] + v1[1] * v2[1];
             float angle = (float) Math.acos(Math.abs(val) > 1 ? Math.signum(val) : val);
             // angles.add(angle);
@@ -1336,10 +1463,8 @@ public final class S3DBUtils {
                 tmpAnlgeSum = 0;
             }
 
-            simpAngls.add(simpAngle);
+            outAngles[k] = simpAngle;
         }
-
-        return simpAngls;
     }
 
     private static GeometryBuffer initCircleMesh(float[][] circleShape, int numSections) {
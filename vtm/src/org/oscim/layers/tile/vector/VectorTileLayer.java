@@ -104,6 +104,13 @@ public class VectorTileLayer extends TileLayer {
         return true;
     }
 
+    /**
+     * @return the {@link TileSource} used by {@link TileLoader}.
+     */
+    public TileSource getTileSource() {
+        return mTileSource;
+    }
+
     /**
      * Set {@link IRenderTheme} used by {@link TileLoader}
      */
@@ -41,6 +41,7 @@ import org.oscim.theme.styles.RenderStyle;
 import org.oscim.theme.styles.SymbolStyle;
 import org.oscim.theme.styles.TextStyle;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.ITilePrefetcher;
 import org.oscim.tiling.QueryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -104,6 +105,13 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
             mTileDataSource.cancel();
     }
 
+    @Override
+    protected ITilePrefetcher getPrefetcher() {
+        if (mTileDataSource instanceof ITilePrefetcher.Source)
+            return ((ITilePrefetcher.Source) mTileDataSource).getPrefetcher();
+        return null;
+    }
+
     @Override
     public boolean loadTile(MapTile tile) {
 
@@ -34,6 +34,11 @@ final class Label extends TextItem {
     public int active;
     public OBB2D bbox;
 
+    /* LabelGrid cells and insertion order */
+    int cellX1, cellY1, cellX2, cellY2;
+    int seq;
+    int mark;
+
     public Label clone(TextItem ti) {
         this.label = ti.label;
         this.text = ti.text;
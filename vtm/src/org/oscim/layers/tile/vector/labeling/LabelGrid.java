@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector.labeling;
+
+import java.util.Arrays;
+
+/**
+ * Uniform screen-space grid of the placed labels, to find the labels which
+ * may collide with a candidate without testing all placed labels.
+ * <p/>
+ * A label is added to all cells touched by the bounding box of its OBB2D
+ * and, for way labels, of its line segment. Query results are ordered by
+ * descending insertion, i.e. like the list of placed labels.
+ */
+final class LabelGrid {
+
+    static final int CELL_SIZE = 128;
+
+    private Label[][] mCells = new Label[0][];
+    private int[] mCounts = new int[0];
+
+    /**
+     * cells per side, offset of the grid origin to the view center
+     */
+    private int mSize;
+    private float mOffset;
+
+    private int mSeq;
+    private int mMark;
+
+    private Label[] mResult = new Label[32];
+    private int mResultCnt;
+
+    /* bounds of the current label */
+    private float mMinX, mMinY, mMaxX, mMaxY;
+
+    /**
+     * Remove all labels and cover the area within 'radius' of the view center.
+     * Labels outside are kept in the border cells.
+     */
+    void init(float radius) {
+        clear();
+
+        int size = Math.max(1, (int) Math.ceil(2 * radius / CELL_SIZE));
+        if (size * size > mCells.length) {
+            mCells = new Label[size * size][];
+            mCounts = new int[size * size];
+        }
+        mSize = size;
+        mOffset = radius;
+    }
+
+    void clear() {
+        for (int i = 0, n = mSize * mSize; i < n; i++) {
+            if (mCounts[i] > 0)
+                Arrays.fill(mCells[i], 0, mCounts[i], null);
+            mCounts[i] = 0;
+        }
+        Arrays.fill(mResult, 0, mResultCnt, null);
+        mResultCnt = 0;
+        mSeq = 0;
+    }
+
+    private int cell(float v) {
+        int c = (int) ((v + mOffset) / CELL_SIZE);
+        if (c < 0)
+            return 0;
+        if (c >= mSize)
+            return mSize - 1;
+        return c;
+    }
+
+    private void setBounds(Label l) {
+        float[] v = l.bbox.vec;
+        float minX = v[0], maxX = v[0];
+        float minY = v[1], maxY = v[1];
+        for (int i = 2; i < 8; i += 2) {
+            minX = Math.min(minX, v[i]);
+            maxX = Math.max(maxX, v[i]);
+            minY = Math.min(minY, v[i + 1]);
+            maxY = Math.max(maxY, v[i + 1]);
+        }
+        if (!l.text.caption) {
+            minX = Math.min(minX, Math.min(l.x1, l.x2));
+            maxX = Math.max(maxX, Math.max(l.x1, l.x2));
+            minY = Math.min(minY, Math.min(l.y1, l.y2));
+            maxY = Math.max(maxY, Math.max(l.y1, l.y2));
+        }
+        mMinX = minX;
+        mMinY = minY;
+        mMaxX = maxX;
+        mMaxY = maxY;
+    }
+
+    void add(Label l) {
+        setBounds(l);
+        l.cellX1 = cell(mMinX);
+        l.cellY1 = cell(mMinY);
+        l.cellX2 = cell(mMaxX);
+        l.cellY2 = cell(mMaxY);
+        l.seq = ++mSeq;
+
+        for (int y = l.cellY1; y <= l.cellY2; y++) {
+            for (int x = l.cellX1; x <= l.cellX2; x++) {
+                int c = y * mSize + x;
+                Label[] cell = mCells[c];
+                int cnt = mCounts[c];
+                if (cell == null)
+                    cell = mCells[c] = new Label[8];
+                else if (cnt == cell.length)
+                    cell = mCells[c] = Arrays.copyOf(cell, cnt * 2);
+                cell[cnt] = l;
+                mCounts[c] = cnt + 1;
+            }
+        }
+    }
+
+    void remove(Label l) {
+        for (int y = l.cellY1; y <= l.cellY2; y++) {
+            for (int x = l.cellX1; x <= l.cellX2; x++) {
+                int c = y * mSize + x;
+                Label[] cell = mCells[c];
+                int last = mCounts[c] - 1;
+                for (int i = last; i >= 0; i--) {
+                    if (cell[i] == l) {
+                        cell[i] = cell[last];
+                        cell[last] = null;
+                        mCounts[c] = last;
+                        break;
+                    }
+                }
+            }
+        }
+        l.seq = 0;
+    }
+
+    /**
+     * @return whether the label was removed by {@link #remove(Label)}.
+     */
+    static boolean isRemoved(Label l) {
+        return l.seq == 0;
+    }
+
+    /**
+     * Find the labels whose bounds intersect the bounds of 'l' extended by
+     * 'add'. Use {@link #get(int)} to iterate the result.
+     *
+     * @return the number of labels found.
+     */
+    int query(Label l, float add) {
+        Arrays.fill(mResult, 0, mResultCnt, null);
+        mResultCnt = 0;
+
+        int mark = ++mMark;
+        setBounds(l);
+        int cx1 = cell(mMinX - add);
+        int cy1 = cell(mMinY - add);
+        int cx2 = cell(mMaxX + add);
+        int cy2 = cell(mMaxY + add);
+
+        for (int y = cy1; y <= cy2; y++) {
+            for (int x = cx1; x <= cx2; x++) {
+                int c = y * mSize + x;
+                Label[] cell = mCells[c];
+                for (int i = 0, n = mCounts[c]; i < n; i++) {
+                    Label o = cell[i];
+                    if (o.mark == mark)
+                        continue;
+                    o.mark = mark;
+                    insert(o);
+                }
+            }
+        }
+        return mResultCnt;
+    }
+
+    /**
+     * insert sorted by descending sequence number
+     */
+    private void insert(Label o) {
+        if (mResultCnt == mResult.length)
+            mResult = Arrays.copyOf(mResult, mResultCnt * 2);
+
+        int i = mResultCnt++;
+        while (i > 0 && mResult[i - 1].seq < o.seq) {
+            mResult[i] = mResult[i - 1];
+            i--;
+        }
+        mResult[i] = o;
+    }
+
+    Label get(int i) {
+        return mResult[i];
+    }
+}
@@ -31,6 +31,7 @@ import org.oscim.renderer.bucket.SymbolItem;
 import org.oscim.renderer.bucket.TextItem;
 import org.oscim.theme.styles.TextStyle;
 import org.oscim.utils.FastMath;
+import org.oscim.utils.Parameters;
 import org.oscim.utils.geom.OBB2D;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,6 +68,12 @@ public class LabelPlacement {
      */
     private Label mLabels;
 
+    /**
+     * collision index of current labels, removed labels stay
+     * in mLabels until the placement is done
+     */
+    private final LabelGrid mGrid = new LabelGrid();
+
     private float mSquareRadius;
 
     /**
@@ -78,6 +85,17 @@ public class LabelPlacement {
     /* Zoom level of current tiles (initial value doesn't matter) */
     private Integer mZoom = Viewport.MIN_ZOOM_LEVEL;
 
+    /* state of last update for incremental placement */
+    private boolean mIncremental;
+    private int mLastZoom = -1;
+    private double mLastX, mLastY, mLastScale;
+    private float mLastBearing, mLastSquareRadius;
+    private float mShiftX, mShiftY;
+
+    /* label data of tiles processed in the last and current update */
+    private Set<LabelTileData> mPrevTileData = new HashSet<>();
+    private Set<LabelTileData> mTileData = new HashSet<>();
+
     public LabelPlacement(Map map, TileRenderer tileRenderer, ZoomLimiter zoomLimiter) {
         mMap = map;
         mTileRenderer = tileRenderer;
@@ -85,27 +103,46 @@ public class LabelPlacement {
     }
 
     /**
-     * remove Label l from mLabels and return l.next
+     * remove Label l from the collision index, it is
+     * released from mLabels by releaseRemoved()
      */
-    private Label removeLabel(Label l) {
-        Label ret = (Label) l.next;
-        mLabels = (Label) mPool.release(mLabels, l);
-        return ret;
+    private void removeLabel(Label l) {
+        mGrid.remove(l);
+    }
+
+    /**
+     * release labels removed while placing labels
+     */
+    private void releaseRemoved() {
+        Label prev = null;
+        for (Label l = mLabels; l != null; ) {
+            if (!LabelGrid.isRemoved(l)) {
+                prev = l;
+                l = (Label) l.next;
+                continue;
+            }
+            l = mPool.releaseAndGetNext(l);
+            if (prev == null)
+                mLabels = l;
+            else
+                prev.next = l;
+        }
     }
 
     public void addLabel(Label l) {
         l.next = mLabels;
         mLabels = l;
+        mGrid.add(l);
     }
 
     private byte checkOverlap(Label l) {
 
-        for (Label o = mLabels; o != null; ) {
+        for (int i = 0, n = mGrid.query(l, 100); i < n; i++) {
+            Label o = mGrid.get(i);
+
             //check bounding box
-            if (!Label.bboxOverlaps(l, o, 100)) {
-                o = (Label) o.next;
+            if (!Label.bboxOverlaps(l, o, 100))
                 continue;
-            }
 
             if (Label.shareText(l, o)) {
                 // keep the label that was active earlier
@@ -114,7 +151,7 @@ public class LabelPlacement {
 
                 // keep the label with longer segment
                 if (o.length < l.length) {
-                    o = removeLabel(o);
+                    removeLabel(o);
                     continue;
                 }
                 // keep other
@@ -128,13 +165,12 @@ public class LabelPlacement {
                         && (o.text.priority > l.text.priority
                         || o.length < l.length)) {
 
-                    o = removeLabel(o);
+                    removeLabel(o);
                     continue;
                 }
                 // keep other
                 return 1;
             }
-            o = (Label) o.next;
         }
         return 0;
     }
@@ -148,6 +184,26 @@ public class LabelPlacement {
         return true;
     }
 
+    /**
+     * @return whether the label was visible in the last update,
+     * i.e. it was already placed or rejected.
+     */
+    private boolean wayWasVisible(Label ti) {
+        float x = ti.x - mShiftX;
+        float y = ti.y - mShiftY;
+        if (x * x + y * y < mSquareRadius)
+            return true;
+
+        x = ti.x1 - mShiftX;
+        y = ti.y1 - mShiftY;
+        if (x * x + y * y < mSquareRadius)
+            return true;
+
+        x = ti.x2 - mShiftX;
+        y = ti.y2 - mShiftY;
+        return x * x + y * y < mSquareRadius;
+    }
+
     private boolean wayIsVisible(Label ti) {
         // rough filter
         float dist = ti.x * ti.x + ti.y * ti.y;
@@ -201,6 +257,9 @@ public class LabelPlacement {
         if (ld == null)
             return l;
 
+        boolean known = mIncremental && mPrevTileData.contains(ld);
+        mTileData.add(ld);
+
         for (TextItem ti : ld.labels) {
             if (ti.text.caption)
                 continue;
@@ -221,6 +280,10 @@ public class LabelPlacement {
             if (!wayIsVisible(l))
                 continue;
 
+            /* only labels of known tiles that entered the view */
+            if (known && wayWasVisible(l))
+                continue;
+
             byte overlaps = -1;
 
             if (l.bbox == null)
@@ -258,6 +321,9 @@ public class LabelPlacement {
         if (ld == null)
             return l;
 
+        boolean known = mIncremental && mPrevTileData.contains(ld);
+        mTileData.add(ld);
+
         O:
         for (TextItem ti : ld.labels) {
             if (!ti.text.caption)
@@ -273,6 +339,9 @@ public class LabelPlacement {
             if (!isVisible(l.x, l.y))
                 continue;
 
+            if (known && isVisible(l.x - mShiftX, l.y - mShiftY))
+                continue;
+
             if (l.bbox == null)
                 l.bbox = new OBB2D();
 
@@ -281,15 +350,15 @@ public class LabelPlacement {
                     l.text.fontHeight + MIN_CAPTION_DIST,
                     l.text.dy);
 
-            for (Label o = mLabels; o != null; ) {
+            for (int i = 0, n = mGrid.query(l, 0); i < n; i++) {
+                Label o = mGrid.get(i);
                 if (l.bbox.overlaps(o.bbox)) {
                     if (l.text.priority < o.text.priority) {
-                        o = removeLabel(o);
+                        removeLabel(o);
                         continue;
                     }
                     continue O;
                 }
-                o = (Label) o.next;
             }
 
             addLabel(l);
@@ -303,6 +372,34 @@ public class LabelPlacement {
         return l;
     }
 
+    /**
+     * Move the labels of the last update by the view translation and
+     * keep the visible ones, without checking for collisions.
+     */
+    private void translateLabels(Label labels) {
+        for (Label l = labels; l != null; ) {
+            l.x += mShiftX;
+            l.y += mShiftY;
+            l.x1 += mShiftX;
+            l.y1 += mShiftY;
+            l.x2 += mShiftX;
+            l.y2 += mShiftY;
+
+            boolean visible = l.text.caption ? isVisible(l.x, l.y) : wayIsVisible(l);
+            if (!visible) {
+                l = mPool.releaseAndGetNext(l);
+                continue;
+            }
+            l.bbox.translate(mShiftX, mShiftY);
+
+            Label ll = l;
+            l = (Label) l.next;
+
+            ll.next = null;
+            addLabel(ll);
+        }
+    }
+
     boolean updateLabels(LabelTask work) {
 
         /* get current tiles */
@@ -356,6 +453,30 @@ public class LabelPlacement {
         int mh = (mMap.getHeight() + Tile.SIZE) / 2;
         mSquareRadius = mw * mw + mh * mh;
 
+        /* labels are visible within the radius, plus one label */
+        float radius = (float) Math.sqrt(mSquareRadius);
+        mGrid.init(radius + Tile.SIZE);
+
+        /* only the view position changed: keep the placement and check
+         * labels entering the view and labels of new tiles. the world must
+         * be large enough to not flip labels around the date-line. */
+        mIncremental = Parameters.INCREMENTAL_LABELS
+                && zoom == mLastZoom
+                && pos.scale == mLastScale
+                && pos.bearing == mLastBearing
+                && mSquareRadius == mLastSquareRadius
+                && Tile.SIZE * pos.scale > 8 * radius;
+
+        mShiftX = (float) ((mLastX - pos.x) * Tile.SIZE * pos.scale);
+        mShiftY = (float) ((mLastY - pos.y) * Tile.SIZE * pos.scale);
+
+        mLastZoom = zoom;
+        mLastX = pos.x;
+        mLastY = pos.y;
+        mLastScale = pos.scale;
+        mLastBearing = pos.bearing;
+        mLastSquareRadius = mSquareRadius;
+
         /* scale of tiles zoom-level relative to current position */
         double scale = pos.scale / (1 << zoom);
 
@@ -379,6 +500,11 @@ public class LabelPlacement {
         mLabels = null;
         Label l = null;
 
+        if (mIncremental) {
+            translateLabels(prevLabels);
+            prevLabels = null;
+        }
+
         /* add currently active labels first */
         for (l = prevLabels; l != null; ) {
 
@@ -462,6 +588,13 @@ public class LabelPlacement {
             l = addNodeLabels(t, l, dx, dy, scale, cos, sin);
         }
 
+        releaseRemoved();
+
+        Set<LabelTileData> tileData = mPrevTileData;
+        mPrevTileData = mTileData;
+        mTileData = tileData;
+        mTileData.clear();
+
         for (Label ti = mLabels; ti != null; ti = (Label) ti.next) {
             /* add caption symbols */
             if (ti.text.caption) {
@@ -542,6 +675,9 @@ public class LabelPlacement {
     }
 
     public void cleanup() {
+        mGrid.clear();
+        mPrevTileData.clear();
+        mLastZoom = -1;
         mLabels = (Label) mPool.releaseAll(mLabels);
         mTileSet.releaseTiles();
     }
@@ -1,9 +1,11 @@
 package org.oscim.layers.tile.vector.labeling;
 
 import org.oscim.core.MapPosition;
+import org.oscim.renderer.bucket.SdfTextBucket;
 import org.oscim.renderer.bucket.SymbolBucket;
 import org.oscim.renderer.bucket.TextBucket;
 import org.oscim.renderer.bucket.TextureBucket;
+import org.oscim.utils.Parameters;
 
 final class LabelTask {
 
@@ -17,7 +19,7 @@ final class LabelTask {
         pos = new MapPosition();
 
         symbolLayer = new SymbolBucket();
-        textLayer = new TextBucket();
+        textLayer = Parameters.SDF_TEXT ? new SdfTextBucket() : new TextBucket();
 
         layers = symbolLayer;
         symbolLayer.next = textLayer;
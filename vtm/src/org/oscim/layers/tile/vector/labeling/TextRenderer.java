@@ -35,6 +35,7 @@ import org.oscim.renderer.BucketRenderer;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.bucket.RenderBucket;
+import org.oscim.renderer.bucket.SdfTextBucket;
 import org.oscim.renderer.bucket.TextureBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,8 +84,12 @@ class TextRenderer extends BucketRenderer {
 
         setMatrix(v, false);
 
-        for (RenderBucket l = buckets.get(); l != null; )
-            l = TextureBucket.Renderer.draw(l, v, scale);
+        for (RenderBucket l = buckets.get(); l != null; ) {
+            if (l instanceof SdfTextBucket)
+                l = SdfTextBucket.Renderer.draw(l, v, scale);
+            else
+                l = TextureBucket.Renderer.draw(l, v, scale);
+        }
     }
 
 }
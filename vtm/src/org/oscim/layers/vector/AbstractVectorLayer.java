@@ -1,6 +1,6 @@
 /*
  * Copyright 2014 Hannes Janetzek
- * Copyright 2018 Gustl22
+ * Copyright 2018-2019 Gustl22
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -40,7 +40,7 @@ public abstract class AbstractVectorLayer<T> extends Layer implements UpdateList
     protected static final double UNSCALE_COORD = 4;
 
     // limit coords to maximum resolution of GL.Short
-    private static final int MAX_CLIP = (int) (Short.MAX_VALUE / MapRenderer.COORD_SCALE);
+    protected static final int MAX_CLIP = (int) (Short.MAX_VALUE / MapRenderer.COORD_SCALE);
 
     protected final GeometryBuffer mGeom = new GeometryBuffer(128, 4);
     protected final TileClipper mClipper = new TileClipper(-MAX_CLIP, -MAX_CLIP, MAX_CLIP, MAX_CLIP);
@@ -80,6 +80,18 @@ public abstract class AbstractVectorLayer<T> extends Layer implements UpdateList
 
     protected abstract void processFeatures(Task t, Box b);
 
+    /**
+     * Called on the worker thread before {@link #processFeatures(Task, Box)}.
+     *
+     * @param t the task with the current map position
+     * @param b the viewport bounding box in degrees
+     * @return false to keep the current buckets, e.g. when they still cover
+     * the viewport and are only translated by the renderer.
+     */
+    protected boolean isUpdateNeeded(Task t, Box b) {
+        return true;
+    }
+
     protected static class Task {
         public final RenderBuckets buckets = new RenderBuckets();
         public final MapPosition position = new MapPosition();
@@ -123,6 +135,9 @@ public abstract class AbstractVectorLayer<T> extends Layer implements UpdateList
 
             bbox.map2mercator();
 
+            if (!isUpdateNeeded(t, bbox))
+                return false;
+
             //    double xmin = bbox.xmin;
             //    double xmax = bbox.xmax;
             //    Box lbox = null;
@@ -18,12 +18,14 @@
 package org.oscim.renderer;
 
 import org.oscim.backend.GL;
+import org.oscim.backend.GL30;
 import org.oscim.backend.GLAdapter;
 import org.oscim.utils.pool.Inlist;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.Buffer;
+import java.nio.IntBuffer;
 
 import javax.annotation.CheckReturnValue;
 
@@ -32,7 +34,27 @@ import static org.oscim.backend.GLAdapter.gl;
 public final class BufferObject extends Inlist<BufferObject> {
     static final Logger log = LoggerFactory.getLogger(BufferObject.class);
     private static final int MB = 1024 * 1024;
-    private static final int LIMIT_BUFFERS = 16 * MB;
+
+    /**
+     * Use {@link #setLimit(int)} with this value to size the memory budget
+     * from the viewport and the available GPU memory (default).
+     */
+    public static final int LIMIT_ADAPTIVE = 0;
+
+    /**
+     * Bounds of the adaptive memory budget.
+     */
+    public static int LIMIT_MIN = 16 * MB;
+    public static int LIMIT_MAX = 64 * MB;
+
+    /**
+     * Adaptive memory budget per pixel of the viewport.
+     */
+    public static int LIMIT_BYTES_PER_PIXEL = 32;
+
+    /* GL_NVX_gpu_memory_info, GL_ATI_meminfo */
+    private static final int GPU_MEMORY_INFO_CURRENT_AVAILABLE_VIDMEM_NVX = 0x9049;
+    private static final int VBO_FREE_MEMORY_ATI = 0x87FB;
 
     /**
      * GL identifier
@@ -72,8 +94,10 @@ public final class BufferObject extends Inlist<BufferObject> {
         if (!GLAdapter.NO_BUFFER_SUB_DATA && !clear &&
                 (size > newSize) && (size < newSize * 4)) {
             gl.bufferSubData(target, 0, newSize, buf);
+            mReusedBytes += newSize;
         } else {
             mBufferMemoryUsage += newSize - size;
+            mAllocatedBytes += newSize;
             size = newSize;
             //GL.bufferData(target, size, buf, GL20.DYNAMIC_DRAW);
             gl.bufferData(target, size, buf, GL.STATIC_DRAW);
@@ -92,19 +116,135 @@ public final class BufferObject extends Inlist<BufferObject> {
     // bytes currently loaded in VBOs
     private static int mBufferMemoryUsage;
 
+    // memory budget, adaptive when mLimitRequested is LIMIT_ADAPTIVE
+    private static int mLimit = LIMIT_MIN;
+    private static int mLimitRequested = LIMIT_ADAPTIVE;
+
+    // telemetry
+    private static int mPooledBytes;
+    private static long mAllocatedBytes;
+    private static long mReusedBytes;
+    private static long mFreedBytes;
+
+    /**
+     * Set the memory budget of buffer objects. When exceeded, pooled
+     * buffers are freed and TileManagers reduce their cache.
+     *
+     * @param bytes the budget in bytes or {@link #LIMIT_ADAPTIVE}.
+     */
+    public static synchronized void setLimit(int bytes) {
+        mLimitRequested = bytes;
+        if (bytes != LIMIT_ADAPTIVE)
+            mLimit = bytes;
+    }
+
+    /**
+     * @return the current memory budget in bytes.
+     */
+    public static synchronized int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * Update the adaptive memory budget for the viewport size.
+     * Note: only call from GL-Thread
+     */
+    static synchronized void updateLimit(int width, int height) {
+        if (mLimitRequested != LIMIT_ADAPTIVE)
+            return;
+
+        long max = LIMIT_MAX;
+        long availableMemory = getAvailableMemory();
+        if (availableMemory > 0)
+            max = Math.max(max, availableMemory / 8);
+
+        long limit = (long) width * height * LIMIT_BYTES_PER_PIXEL;
+        mLimit = (int) Math.max(LIMIT_MIN, Math.min(max, limit));
+        log.debug("buffer limit: {}MB", mLimit / MB);
+    }
+
+    /**
+     * @return the GPU memory in bytes which is free or used by buffer
+     * objects, if reported by the driver, else -1.
+     */
+    private static long getAvailableMemory() {
+        int pname;
+        if (hasExtension("GL_NVX_gpu_memory_info"))
+            pname = GPU_MEMORY_INFO_CURRENT_AVAILABLE_VIDMEM_NVX;
+        else if (hasExtension("GL_ATI_meminfo"))
+            pname = VBO_FREE_MEMORY_ATI;
+        else
+            return -1;
+
+        /* values in KB, ATI returns 4 values */
+        IntBuffer buf = MapRenderer.getIntBuffer(4);
+        buf.position(0);
+        buf.limit(4);
+        gl.getIntegerv(pname, buf);
+        long kb = buf.get(0);
+        if (kb <= 0)
+            return -1;
+
+        /* memory of our buffers is available to us */
+        return kb * 1024 + mBufferMemoryUsage;
+    }
+
+    private static boolean hasExtension(String name) {
+        /* GL_EXTENSIONS is invalid for glGetString in core profiles */
+        if (GLAdapter.isGL30()) {
+            IntBuffer buf = MapRenderer.getIntBuffer(1);
+            buf.position(0);
+            buf.limit(1);
+            gl.getIntegerv(GL30.NUM_EXTENSIONS, buf);
+            int n = buf.get(0);
+            for (int i = 0; i < n; i++) {
+                if (name.equals(GLAdapter.gl30.getStringi(GL.EXTENSIONS, i)))
+                    return true;
+            }
+            return false;
+        }
+        String extensions = gl.getString(GL.EXTENSIONS);
+        return extensions != null && extensions.contains(name);
+    }
+
     public static void checkBufferUsage(boolean force) {
         // try to clear some unused vbo when exceding limit
-        if (mBufferMemoryUsage < LIMIT_BUFFERS)
+        if (mBufferMemoryUsage < mLimit && !force)
             return;
 
         log.debug("use: " + mBufferMemoryUsage / MB + "MB");
-        mBufferMemoryUsage -= BufferObject.limitUsage(MB);
+        /* free pooled buffers below the limit, at least 1MB */
+        int reduce = Math.max(MB, mBufferMemoryUsage - mLimit + MB);
+        mBufferMemoryUsage -= BufferObject.limitUsage(reduce);
         log.debug("now: " + mBufferMemoryUsage / MB + "MB");
     }
 
-    private static final BufferObject pool[] = new BufferObject[2];
+    /**
+     * Pooled buffers by target and size class, see {@link #sizeClass(int)}.
+     */
+    private static final int NUM_CLASSES = 33;
+    private static final BufferObject pool[][] = new BufferObject[2][NUM_CLASSES];
     private static final int counter[] = new int[2];
 
+    /**
+     * @return 0 for unallocated buffers, otherwise k for sizes in (2^(k-2), 2^(k-1)].
+     */
+    static int sizeClass(int size) {
+        if (size <= 0)
+            return 0;
+        return 33 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private static BufferObject poll(int t, int c) {
+        BufferObject bo = pool[t][c];
+        if (bo != null) {
+            pool[t][c] = bo.next;
+            bo.next = null;
+            mPooledBytes -= bo.size;
+        }
+        return bo;
+    }
+
     /**
      * @param target can be GL20.ARRAY_BUFFER or GL20.ELEMENT_ARRAY_BUFFER
      * @param size   requested size in bytes. optional - can be 0.
@@ -113,42 +253,40 @@ public final class BufferObject extends Inlist<BufferObject> {
 
         int t = (target == GL.ARRAY_BUFFER) ? 0 : 1;
 
-        if (pool[t] == null) {
-            if (counter[t] != 0)
-                throw new IllegalStateException("lost objects: " + counter[t]);
-
+        if (counter[t] == 0) {
             createBuffers(target, 10);
             counter[t] += 10;
         }
         counter[t]--;
 
         if (size != 0) {
-            /* find the item with minimal size greater 'size' bytes. */
-            BufferObject bo = pool[t];
-            /* actually points to BufferObject before min */
-            BufferObject min = null;
-            BufferObject prev = null;
+            int c = sizeClass(size);
 
-            for (; bo != null; bo = bo.next) {
+            /* find the item with minimal size greater 'size' bytes
+             * in the size class of 'size' */
+            BufferObject prev = null;
+            for (BufferObject bo = pool[t][c]; bo != null; prev = bo, bo = bo.next) {
                 if (bo.size > size) {
-                    if (min == null || min.next.size > bo.size)
-                        min = prev;
+                    if (prev == null)
+                        return poll(t, c);
+                    prev.next = bo.next;
+                    bo.next = null;
+                    mPooledBytes -= bo.size;
+                    return bo;
                 }
-                prev = bo;
-            }
-
-            if (min != null && min != pool[t]) {
-                bo = min.next;
-                min.next = bo.next;
-                bo.next = null;
-                return bo;
             }
+            /* items of the next size class are larger than 'size' and
+             * less than four times 'size', i.e. their memory is reused */
+            if (c + 1 < NUM_CLASSES && pool[t][c + 1] != null)
+                return poll(t, c + 1);
         }
 
-        BufferObject bo = pool[t];
-        pool[t] = pool[t].next;
-        bo.next = null;
-        return bo;
+        /* prefer unallocated items, then the smallest allocated */
+        for (int c = 0; c < NUM_CLASSES; c++) {
+            if (pool[t][c] != null)
+                return poll(t, c);
+        }
+        throw new IllegalStateException("lost objects: " + counter[t]);
     }
 
     @CheckReturnValue
@@ -156,14 +294,13 @@ public final class BufferObject extends Inlist<BufferObject> {
         if (bo == null)
             return null;
 
-        // if (counter > 200) {
-        // log.debug("should clear some buffers " + counter);
-        // }
         int t = (bo.target == GL.ARRAY_BUFFER) ? 0 : 1;
+        int c = sizeClass(bo.size);
 
-        bo.next = pool[t];
-        pool[t] = bo;
+        bo.next = pool[t][c];
+        pool[t][c] = bo;
         counter[t]++;
+        mPooledBytes += bo.size;
 
         return null;
     }
@@ -171,34 +308,25 @@ public final class BufferObject extends Inlist<BufferObject> {
     // Note: only call from GL-Thread
     static synchronized int limitUsage(int reduce) {
 
-        int vboIds[] = new int[10];
+        int vboIds[] = new int[16];
         int freed = 0;
 
+        /* free largest pooled buffers first */
         for (int t = 0; t < 2; t++) {
-
             int removed = 0;
-            BufferObject prev = pool[t];
-
-            if (prev == null) {
-                log.debug("nothing to free");
-                continue;
-            }
 
-            for (BufferObject bo = pool[t].next; bo != null; ) {
-                if (bo.size > 0) {
+            for (int c = NUM_CLASSES - 1; c > 0 && freed < reduce; c--) {
+                while (pool[t][c] != null && freed < reduce) {
+                    BufferObject bo = poll(t, c);
                     freed += bo.size;
                     bo.size = 0;
 
+                    if (removed == vboIds.length) {
+                        int[] tmp = new int[removed * 2];
+                        System.arraycopy(vboIds, 0, tmp, 0, removed);
+                        vboIds = tmp;
+                    }
                     vboIds[removed++] = bo.id;
-                    prev.next = bo.next;
-                    bo = bo.next;
-
-                    if (removed == 10 || reduce < freed)
-                        break;
-
-                } else {
-                    prev = bo;
-                    bo = bo.next;
                 }
             }
 
@@ -206,9 +334,11 @@ public final class BufferObject extends Inlist<BufferObject> {
                 GLUtils.glDeleteBuffers(removed, vboIds);
                 counter[t] -= removed;
             }
-
         }
+        if (freed == 0)
+            log.debug("nothing to free");
 
+        mFreedBytes += freed;
         return freed;
     }
 
@@ -219,18 +349,20 @@ public final class BufferObject extends Inlist<BufferObject> {
 
         for (int i = 0; i < num; i++) {
             BufferObject bo = new BufferObject(target, mVboIds[i]);
-            bo.next = pool[t];
-            pool[t] = bo;
+            bo.next = pool[t][0];
+            pool[t][0] = bo;
         }
     }
 
     static synchronized void clear() {
         mBufferMemoryUsage = 0;
+        mPooledBytes = 0;
 
-        pool[0] = null;
-        pool[1] = null;
-        counter[0] = 0;
-        counter[1] = 0;
+        for (int t = 0; t < 2; t++) {
+            for (int c = 0; c < NUM_CLASSES; c++)
+                pool[t][c] = null;
+            counter[t] = 0;
+        }
     }
 
     static synchronized void init(int num) {
@@ -239,6 +371,47 @@ public final class BufferObject extends Inlist<BufferObject> {
     }
 
     public static boolean isMaxFill() {
-        return mBufferMemoryUsage > LIMIT_BUFFERS;
+        return mBufferMemoryUsage > mLimit;
+    }
+
+    /**
+     * @return the bytes currently allocated in buffer objects.
+     */
+    public static int getMemoryUsage() {
+        return mBufferMemoryUsage;
+    }
+
+    /**
+     * @return the bytes allocated in unused, pooled buffer objects.
+     */
+    public static synchronized int getPooledBytes() {
+        return mPooledBytes;
+    }
+
+    /**
+     * @return the total bytes loaded with bufferData, i.e. newly allocated.
+     */
+    public static synchronized long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * @return the total bytes loaded with bufferSubData into allocated memory.
+     */
+    public static synchronized long getReusedBytes() {
+        return mReusedBytes;
+    }
+
+    /**
+     * @return the total bytes freed by deleting pooled buffer objects.
+     */
+    public static synchronized long getFreedBytes() {
+        return mFreedBytes;
+    }
+
+    public static synchronized void resetStats() {
+        mAllocatedBytes = 0;
+        mReusedBytes = 0;
+        mFreedBytes = 0;
     }
 }
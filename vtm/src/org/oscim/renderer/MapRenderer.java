@@ -174,6 +174,8 @@ public class MapRenderer {
 
         GLState.viewport(width, height);
 
+        BufferObject.updateLimit(width, height);
+
         //GL.scissor(0, 0, width, height);
         //GL.enable(GL20.SCISSOR_TEST);
 
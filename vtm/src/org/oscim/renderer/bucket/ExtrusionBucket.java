@@ -115,6 +115,85 @@ public class ExtrusionBucket extends RenderBucket {
         }
     }
 
+    /**
+     * ExtrusionLayer restored from the data of a prepared bucket.
+     *
+     * @see #getData()
+     */
+    public ExtrusionBucket(Data data) {
+        super(RenderBucket.EXTRUSION, true, false);
+        this.level = data.level;
+        this.colors = data.colors;
+        this.color = data.color;
+
+        mGroundResolution = data.groundResolution;
+
+        mIndices = new VertexData[5];
+        for (int i = 0; i <= IND_MESH; i++) {
+            if (data.indices[i] == null)
+                continue;
+            mIndices[i] = new VertexData();
+            mIndices[i].add(data.indices[i]);
+        }
+        vertexItems.add(data.vertices);
+
+        numVertices = data.numVertices;
+        numIndices = data.numIndices;
+    }
+
+    /**
+     * The vertex and index data of a prepared bucket, immutable.
+     */
+    public static final class Data {
+        final int level;
+        final float[] colors;
+        final int color;
+        final float groundResolution;
+        final int numVertices;
+        final int numIndices;
+        final short[] vertices;
+        final short[][] indices;
+
+        Data(ExtrusionBucket b) {
+            level = b.level;
+            colors = b.colors;
+            color = b.color;
+            groundResolution = b.mGroundResolution;
+            numVertices = b.numVertices;
+            numIndices = b.numIndices;
+            vertices = b.vertexItems.toArray();
+            indices = new short[b.mIndices.length][];
+            for (int i = 0; i < indices.length; i++) {
+                if (b.mIndices[i] != null)
+                    indices[i] = b.mIndices[i].toArray();
+            }
+        }
+
+        /**
+         * @return the approximate size in bytes.
+         */
+        public long getBytes() {
+            long bytes = 64 + vertices.length * 2;
+            for (short[] index : indices) {
+                if (index != null)
+                    bytes += index.length * 2;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Copy the vertex and index data. Must be called after
+     * {@link #prepare()} and before {@link #compile(ShortBuffer, ShortBuffer)}.
+     *
+     * @return the data to restore the bucket with {@link #ExtrusionBucket(Data)}.
+     */
+    public Data getData() {
+        if (mIndices == null)
+            throw new IllegalStateException("bucket is compiled");
+        return new Data(this);
+    }
+
     static Pool<Vertex> vertexPool = new Pool<Vertex>() {
         @Override
         protected Vertex createItem() {
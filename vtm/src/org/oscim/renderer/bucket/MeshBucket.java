@@ -29,7 +29,9 @@ import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.bucket.VertexData.Chunk;
 import org.oscim.theme.styles.AreaStyle;
 import org.oscim.utils.ColorUtil;
+import org.oscim.utils.JniTessellator;
 import org.oscim.utils.TessJNI;
+import org.oscim.utils.Tessellator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +42,11 @@ public class MeshBucket extends RenderBucket {
     static final Logger log = LoggerFactory.getLogger(MeshBucket.class);
     static final boolean dbgRender = false;
 
+    /**
+     * Maximum number of vertices addressable by the (unsigned) short indices
+     */
+    private static final int MAX_VERTICES = 1 << 16;
+
     public AreaStyle area;
     public float heightOffset;
 
@@ -53,6 +60,18 @@ public class MeshBucket extends RenderBucket {
     }
 
     public void addMesh(GeometryBuffer geom) {
+        if (!(Tessellator.getTessellator() instanceof JniTessellator)) {
+            /* tessellate each polygon on its own, the vertices of the
+             * bucket must be addressable by short indices */
+            if (numVertices + (geom.pointNextPos >> 1) > MAX_VERTICES) {
+                log.debug("skip mesh, too many vertices {}", numVertices);
+                return;
+            }
+            numIndices += Tessellator.tessellate(geom, COORD_SCALE, vertexItems, indiceItems, numVertices);
+            numVertices = vertexItems.countSize() >> 1;
+            return;
+        }
+
         numPoints += geom.pointNextPos;
         if (tess == null)
             tess = new TessJNI(8);
@@ -63,7 +82,7 @@ public class MeshBucket extends RenderBucket {
     public void addConvexMesh(GeometryBuffer geom) {
         short start = (short) numVertices;
 
-        if (numVertices >= (1 << 16)) {
+        if (numVertices + (geom.index[0] >> 1) > MAX_VERTICES) {
             return;
         }
 
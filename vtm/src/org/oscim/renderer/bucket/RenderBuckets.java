@@ -449,9 +449,13 @@ public class RenderBuckets extends TileData {
         LineTexBucket.Renderer.init();
         PolygonBucket.Renderer.init();
         TextureBucket.Renderer.init();
+        SdfTextBucket.Renderer.init();
         BitmapBucket.Renderer.init();
         MeshBucket.Renderer.init();
         HairLineBucket.Renderer.init();
         CircleBucket.Renderer.init();
+
+        /* cached label textures of a previous GL context */
+        TextTextureCache.onSurfaceCreated();
     }
 }
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.GL;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.backend.canvas.Color;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.backend.canvas.Paint.FontFamily;
+import org.oscim.backend.canvas.Paint.FontStyle;
+import org.oscim.renderer.GLState;
+import org.oscim.renderer.GLUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.oscim.backend.GLAdapter.gl;
+
+/**
+ * Signed distance fields of glyphs, rasterized once per font with the
+ * {@link CanvasAdapter} backend at {@link #BASE_SIZE} and packed into alpha
+ * texture pages. Labels of any size, halo and rotation are drawn from the
+ * same glyphs.
+ * <p/>
+ * The alpha value is 0.5 at the outline of a glyph and changes by
+ * 0.5 / {@link #SPREAD} per pixel of the base size, increasing inwards.
+ * <p/>
+ * When {@link #MAX_PAGES} are in use, the least recently used page which is
+ * not referenced by any bucket is cleared and its glyphs are rasterized again
+ * when needed.
+ * <p/>
+ * All methods must be called while holding the lock of the atlas.
+ */
+final class SdfGlyphAtlas {
+    static final Logger log = LoggerFactory.getLogger(SdfGlyphAtlas.class);
+
+    /**
+     * Font size of the glyphs in the atlas.
+     */
+    static final int BASE_SIZE = 32;
+
+    /**
+     * Maximum distance from the outline in pixels of the base size.
+     */
+    static final int SPREAD = 6;
+
+    static final int PAGE_SIZE = 1024;
+
+    /**
+     * Number of pages which are kept, more are only created while all pages
+     * are referenced.
+     */
+    static final int MAX_PAGES = 4;
+
+    private static final double INF = 1e20;
+
+    private static SdfGlyphAtlas sInstance;
+
+    static synchronized SdfGlyphAtlas get() {
+        if (sInstance == null)
+            sInstance = new SdfGlyphAtlas();
+        return sInstance;
+    }
+
+    private final HashMap<String, Font> mFonts = new HashMap<>();
+    private final ArrayList<Page> mPages = new ArrayList<>();
+    private final Canvas mCanvas = CanvasAdapter.newCanvas();
+    private Bitmap mBitmap;
+    private boolean mSupported = true;
+
+    private Page mCurPage;
+    private int mStamp;
+
+    /* scratch arrays of the distance transform */
+    private double[] mOuter = new double[0];
+    private double[] mInner = new double[0];
+    private double[] mF = new double[0];
+    private double[] mD = new double[0];
+    private double[] mZ = new double[0];
+    private int[] mV = new int[0];
+
+    private ByteBuffer mBuffer;
+
+    static final class Font {
+        final Paint paint;
+        final float fontHeight;
+        final float fontDescent;
+        final HashMap<Integer, Glyph> glyphs = new HashMap<>();
+
+        Font(FontFamily family, FontStyle style) {
+            paint = CanvasAdapter.newPaint();
+            paint.setTypeface(family, style);
+            paint.setTextSize(BASE_SIZE);
+            paint.setColor(Color.WHITE);
+            paint.setStyle(Paint.Style.FILL);
+            fontHeight = paint.getFontHeight();
+            fontDescent = paint.getFontDescent();
+        }
+    }
+
+    /**
+     * A glyph cell: the advance plus {@link #SPREAD} on each side wide and
+     * the font height plus {@link #SPREAD} on each side high, all in pixels
+     * of the base size. Glyphs without outline have no cell (w == 0).
+     */
+    static final class Glyph {
+        Font font;
+        int codePoint;
+        int page;
+        int x, y, w, h;
+        float advance;
+    }
+
+    static final class Page {
+        final byte[] data = new byte[PAGE_SIZE * PAGE_SIZE];
+        final int index;
+        int textureId = -1;
+        boolean dirty;
+
+        /* number of buckets using the page */
+        int refs;
+        /* stamp of the last label update using the page */
+        int used;
+
+        final ArrayList<Glyph> glyphs = new ArrayList<>();
+
+        Page(int index) {
+            this.index = index;
+        }
+
+        /* position of the next glyph */
+        int x, y, rowHeight;
+    }
+
+    /**
+     * Start a label update: pages used from now on are not evicted until the
+     * next one.
+     */
+    void begin() {
+        mStamp++;
+    }
+
+    /**
+     * The page can not be evicted until {@link #release(int)}.
+     */
+    void acquire(int page) {
+        mPages.get(page).refs++;
+    }
+
+    void release(int page) {
+        mPages.get(page).refs--;
+    }
+
+    int getNumPages() {
+        return mPages.size();
+    }
+
+    /**
+     * @return false when the backend can not read back bitmaps.
+     */
+    boolean isSupported() {
+        return mSupported;
+    }
+
+    Font getFont(FontFamily family, FontStyle style) {
+        String key = family.name() + style.name();
+        Font font = mFonts.get(key);
+        if (font == null) {
+            font = new Font(family, style);
+            mFonts.put(key, font);
+        }
+        return font;
+    }
+
+    /**
+     * @return the glyph of the code point, rasterized if it is new.
+     */
+    Glyph getGlyph(Font font, int codePoint) {
+        Glyph g = font.glyphs.get(codePoint);
+        if (g != null) {
+            if (g.w > 0)
+                mPages.get(g.page).used = mStamp;
+            return g;
+        }
+
+        g = new Glyph();
+        g.font = font;
+        g.codePoint = codePoint;
+        String s = new String(Character.toChars(codePoint));
+        g.advance = font.paint.measureText(s);
+        font.glyphs.put(codePoint, g);
+
+        if (Character.isWhitespace(codePoint) || g.advance <= 0)
+            return g;
+
+        int w = (int) Math.ceil(g.advance) + 2 * SPREAD;
+        int h = (int) Math.ceil(font.fontHeight) + 2 * SPREAD;
+        if (w > PAGE_SIZE || h > PAGE_SIZE)
+            return g;
+
+        int[] pixels = draw(font, s, w, h);
+        if (pixels == null) {
+            mSupported = false;
+            return g;
+        }
+
+        Page page = place(g, w, h);
+        int stride = mBitmap.getWidth();
+        computeSdf(pixels, stride, w, h, page.data, g.x + g.y * PAGE_SIZE, PAGE_SIZE);
+        page.dirty = true;
+        page.used = mStamp;
+        page.glyphs.add(g);
+        return g;
+    }
+
+    private int[] draw(Font font, String s, int w, int h) {
+        if (mBitmap == null || mBitmap.getWidth() < w || mBitmap.getHeight() < h) {
+            int bw = Math.max(w, mBitmap == null ? 0 : mBitmap.getWidth());
+            int bh = Math.max(h, mBitmap == null ? 0 : mBitmap.getHeight());
+            if (mBitmap != null)
+                mBitmap.recycle();
+            mBitmap = CanvasAdapter.newBitmap(bw, bh, 0);
+        }
+        mBitmap.eraseColor(Color.TRANSPARENT);
+        mCanvas.setBitmap(mBitmap);
+        mCanvas.drawText(s, SPREAD, SPREAD + font.fontHeight - font.fontDescent, font.paint);
+        return mBitmap.getPixels();
+    }
+
+    private Page place(Glyph g, int w, int h) {
+        Page page = mCurPage;
+        if (page != null && page.x + w > PAGE_SIZE) {
+            page.x = 0;
+            page.y += page.rowHeight;
+            page.rowHeight = 0;
+        }
+        if (page == null || page.y + h > PAGE_SIZE) {
+            page = null;
+            if (mPages.size() >= MAX_PAGES) {
+                /* least recently used page without references */
+                for (Page p : mPages) {
+                    if (p.refs > 0 || p.used == mStamp)
+                        continue;
+                    if (page == null || p.used - page.used < 0)
+                        page = p;
+                }
+            }
+            if (page != null) {
+                evict(page);
+            } else {
+                page = new Page(mPages.size());
+                mPages.add(page);
+            }
+            mCurPage = page;
+        }
+        g.page = page.index;
+        g.x = page.x;
+        g.y = page.y;
+        g.w = w;
+        g.h = h;
+        page.x += w;
+        page.rowHeight = Math.max(page.rowHeight, h);
+        return page;
+    }
+
+    private void evict(Page page) {
+        for (Glyph g : page.glyphs)
+            g.font.glyphs.remove(g.codePoint);
+        page.glyphs.clear();
+        page.x = page.y = page.rowHeight = 0;
+        Arrays.fill(page.data, (byte) 0);
+        page.dirty = true;
+    }
+
+    /**
+     * Compute the signed distance field from the alpha of the ARGB pixels,
+     * using the coverage for sub-pixel distances at the outline.
+     */
+    private void computeSdf(int[] pixels, int stride, int w, int h,
+                            byte[] out, int offset, int outStride) {
+        int n = w * h;
+        if (mOuter.length < n) {
+            mOuter = new double[n];
+            mInner = new double[n];
+        }
+        int m = Math.max(w, h);
+        if (mF.length < m) {
+            mF = new double[m];
+            mD = new double[m];
+            mZ = new double[m + 1];
+            mV = new int[m];
+        }
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double a = (pixels[x + y * stride] >>> 24) / 255.0;
+                int i = x + y * w;
+                if (a >= 1) {
+                    mOuter[i] = 0;
+                    mInner[i] = INF;
+                } else if (a <= 0) {
+                    mOuter[i] = INF;
+                    mInner[i] = 0;
+                } else {
+                    double d = Math.max(0, 0.5 - a);
+                    mOuter[i] = d * d;
+                    d = Math.max(0, a - 0.5);
+                    mInner[i] = d * d;
+                }
+            }
+        }
+        edt(mOuter, w, h);
+        edt(mInner, w, h);
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = x + y * w;
+                double d = Math.sqrt(mOuter[i]) - Math.sqrt(mInner[i]);
+                int v = (int) Math.round(255 * (0.5 - d / (2 * SPREAD)));
+                out[offset + x + y * outStride] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+    }
+
+    /**
+     * 2D squared euclidean distance transform by Felzenszwalb and
+     * Huttenlocher: 1D transforms of the columns, then of the rows.
+     */
+    private void edt(double[] grid, int w, int h) {
+        for (int x = 0; x < w; x++)
+            edt1d(grid, x, w, h);
+        for (int y = 0; y < h; y++)
+            edt1d(grid, y * w, 1, w);
+    }
+
+    private void edt1d(double[] grid, int offset, int step, int n) {
+        double[] f = mF;
+        double[] d = mD;
+        double[] z = mZ;
+        int[] v = mV;
+
+        for (int i = 0; i < n; i++)
+            f[i] = grid[offset + i * step];
+
+        int k = 0;
+        v[0] = 0;
+        z[0] = -INF;
+        z[1] = INF;
+        for (int q = 1; q < n; q++) {
+            double s;
+            do {
+                int r = v[k];
+                s = (f[q] - f[r] + q * q - r * r) / (2 * q - 2 * r);
+            } while (s <= z[k] && --k > -1);
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = INF;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q)
+                k++;
+            int r = v[k];
+            d[q] = f[r] + (q - r) * (q - r);
+        }
+        for (int i = 0; i < n; i++)
+            grid[offset + i * step] = d[i];
+    }
+
+    /**
+     * Upload changed pages.
+     * [on GL-Thread]
+     */
+    void upload() {
+        for (Page page : mPages) {
+            if (!page.dirty)
+                continue;
+            page.dirty = false;
+
+            if (page.textureId < 0) {
+                page.textureId = GLUtils.loadTexture(page.data, PAGE_SIZE, PAGE_SIZE, GL.ALPHA,
+                        GL.LINEAR, GL.LINEAR, GL.CLAMP_TO_EDGE, GL.CLAMP_TO_EDGE);
+                continue;
+            }
+            if (mBuffer == null)
+                mBuffer = ByteBuffer.allocateDirect(PAGE_SIZE * PAGE_SIZE).order(ByteOrder.nativeOrder());
+            mBuffer.clear();
+            mBuffer.put(page.data);
+            mBuffer.flip();
+
+            GLState.bindTex2D(page.textureId);
+            gl.texSubImage2D(GL.TEXTURE_2D, 0, 0, 0, PAGE_SIZE, PAGE_SIZE,
+                    GL.ALPHA, GL.UNSIGNED_BYTE, mBuffer);
+        }
+    }
+
+    /**
+     * @return the texture of the page, valid after {@link #upload()}.
+     */
+    int getTextureId(int page) {
+        return mPages.get(page).textureId;
+    }
+
+    /**
+     * Textures were lost with the GL context, upload all pages again.
+     */
+    void invalidateTextures() {
+        for (Page page : mPages) {
+            page.textureId = -1;
+            page.dirty = true;
+        }
+    }
+
+    static synchronized void onSurfaceCreated() {
+        if (sInstance != null) {
+            synchronized (sInstance) {
+                sInstance.invalidateTextures();
+            }
+        }
+    }
+}
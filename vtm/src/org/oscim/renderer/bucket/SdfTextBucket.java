@@ -0,0 +1,342 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.oscim.backend.GL;
+import org.oscim.renderer.GLShader;
+import org.oscim.renderer.GLState;
+import org.oscim.renderer.GLUtils;
+import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.MapRenderer;
+import org.oscim.theme.styles.TextStyle;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+import static org.oscim.backend.GLAdapter.gl;
+import static org.oscim.renderer.MapRenderer.COORD_SCALE;
+import static org.oscim.renderer.MapRenderer.MAX_INDICES;
+import static org.oscim.renderer.bucket.SdfGlyphAtlas.PAGE_SIZE;
+import static org.oscim.renderer.bucket.SdfGlyphAtlas.SPREAD;
+
+/**
+ * Draws labels as quads of signed distance field glyphs from the
+ * {@link SdfGlyphAtlas}, the halo is drawn by the shader. Labels are not
+ * rasterized per string, size and style.
+ * <p/>
+ * Falls back to {@link TextBucket} when the backend can not create the
+ * glyphs, i.e. has no {@link org.oscim.backend.canvas.Bitmap#getPixels()}.
+ */
+public class SdfTextBucket extends TextBucket {
+
+    /**
+     * Vertices of one style and atlas page.
+     */
+    static final class Run {
+        TextStyle text;
+        int page;
+        int offset;
+        int indices;
+        /* label size relative to the atlas glyphs */
+        float scale;
+    }
+
+    private final ArrayList<Run> mRuns = new ArrayList<>();
+    private boolean mSdf;
+
+    /* the atlas pages used by this bucket */
+    private final ArrayList<Integer> mPages = new ArrayList<>();
+
+    @Override
+    public void prepare() {
+        SdfGlyphAtlas atlas = SdfGlyphAtlas.get();
+        synchronized (atlas) {
+            releasePages(atlas);
+            mRuns.clear();
+            atlas.begin();
+
+            /* rasterize new glyphs and collect the runs */
+            for (TextItem it = labels; it != null && atlas.isSupported(); it = nextLabel(it)) {
+                SdfGlyphAtlas.Font font = atlas.getFont(it.text.fontFamily, it.text.fontStyle);
+                String label = it.label;
+                for (int i = 0; i < label.length(); ) {
+                    int cp = label.codePointAt(i);
+                    i += Character.charCount(cp);
+                    SdfGlyphAtlas.Glyph g = atlas.getGlyph(font, cp);
+                    if (g.w > 0)
+                        getRun(it.text, g.page, font);
+                }
+            }
+
+            mSdf = atlas.isSupported();
+            if (mSdf) {
+                int numIndices = 0;
+                for (Run r : mRuns) {
+                    r.offset = numIndices;
+                    for (TextItem it = labels; it != null; it = nextLabel(it)) {
+                        if (it.text == r.text)
+                            numIndices = addGlyphs(atlas, r, it, numIndices);
+                    }
+                    r.indices = numIndices - r.offset;
+
+                    if (!mPages.contains(r.page)) {
+                        atlas.acquire(r.page);
+                        mPages.add(r.page);
+                    }
+                }
+                return;
+            }
+            mRuns.clear();
+        }
+        super.prepare();
+    }
+
+    private void releasePages(SdfGlyphAtlas atlas) {
+        for (int page : mPages)
+            atlas.release(page);
+        mPages.clear();
+    }
+
+    private Run getRun(TextStyle text, int page, SdfGlyphAtlas.Font font) {
+        for (Run r : mRuns) {
+            if (r.text == text && r.page == page)
+                return r;
+        }
+        Run r = new Run();
+        r.text = text;
+        r.page = page;
+        r.scale = text.fontHeight / font.fontHeight;
+        mRuns.add(r);
+        return r;
+    }
+
+    /**
+     * Add the glyphs of the run's page for the label and the following
+     * labels with the same string.
+     */
+    private int addGlyphs(SdfGlyphAtlas atlas, Run r, TextItem label, int numIndices) {
+        SdfGlyphAtlas.Font font = atlas.getFont(r.text.fontFamily, r.text.fontStyle);
+        float s = r.scale;
+
+        float width = 0;
+        String str = label.label;
+        for (int i = 0; i < str.length(); ) {
+            int cp = str.codePointAt(i);
+            i += Character.charCount(cp);
+            width += atlas.getGlyph(font, cp).advance * s;
+        }
+
+        /* same box as the rasterized label */
+        float height = (int) (r.text.fontHeight) + 0.5f;
+        float baseline = height / 2 - r.text.fontDescent;
+        float top = baseline - (SPREAD + font.fontHeight - font.fontDescent) * s;
+
+        for (TextItem it = label; it != null; it = it.next) {
+            float pen = -width / 2;
+            for (int i = 0; i < str.length(); ) {
+                int cp = str.codePointAt(i);
+                i += Character.charCount(cp);
+                SdfGlyphAtlas.Glyph g = atlas.getGlyph(font, cp);
+                if (g.w > 0 && g.page == r.page) {
+                    float left = pen - SPREAD * s;
+                    addGlyph(it, left, top, left + g.w * s, top + g.h * s, g);
+
+                    numIndices += TextureBucket.INDICES_PER_SPRITE;
+                    numVertices += 4;
+                }
+                pen += g.advance * s;
+            }
+            if (it.next == null || it.next.text != it.text || it.next.label != it.label)
+                break;
+        }
+        return numIndices;
+    }
+
+    /**
+     * Add a glyph quad, the box is relative to the label center with y
+     * pointing down.
+     */
+    private void addGlyph(TextItem it, float x1, float y1, float x2, float y2,
+                          SdfGlyphAtlas.Glyph g) {
+        short u1 = (short) (COORD_SCALE * g.x);
+        short v1 = (short) (COORD_SCALE * g.y);
+        short u2 = (short) (COORD_SCALE * (g.x + g.w));
+        short v2 = (short) (COORD_SCALE * (g.y + g.h));
+
+        /* left-bottom, left-top, right-bottom, right-top */
+        float lbx, lby, ltx, lty, rbx, rby, rtx, rty;
+        if (it.text.caption) {
+            float dy = it.text.dy;
+            lbx = ltx = x1;
+            rbx = rtx = x2;
+            lby = rby = dy + y2;
+            lty = rty = dy + y1;
+        } else {
+            float vx = it.x1 - it.x2;
+            float vy = it.y1 - it.y2;
+            float a = (float) Math.sqrt(vx * vx + vy * vy);
+            vx = vx / a;
+            vy = vy / a;
+            /* along the way to the left, up is against the normal */
+            float ux = -vy;
+            float uy = vx;
+            lbx = -vx * x1 - ux * y2;
+            lby = -vy * x1 - uy * y2;
+            ltx = -vx * x1 - ux * y1;
+            lty = -vy * x1 - uy * y1;
+            rbx = -vx * x2 - ux * y2;
+            rby = -vy * x2 - uy * y2;
+            rtx = -vx * x2 - ux * y1;
+            rty = -vy * x2 - uy * y1;
+        }
+
+        int tmp = (int) (COORD_SCALE * it.x) & LBIT_MASK;
+        short tx = (short) (tmp | (it.text.caption ? 1 : 0));
+        short ty = (short) (COORD_SCALE * it.y);
+
+        vertexItems.add(tx, ty, (short) (COORD_SCALE * lbx), (short) (COORD_SCALE * lby), u1, v2);
+        vertexItems.add(tx, ty, (short) (COORD_SCALE * ltx), (short) (COORD_SCALE * lty), u1, v1);
+        vertexItems.add(tx, ty, (short) (COORD_SCALE * rbx), (short) (COORD_SCALE * rby), u2, v2);
+        vertexItems.add(tx, ty, (short) (COORD_SCALE * rtx), (short) (COORD_SCALE * rty), u2, v1);
+    }
+
+    @Override
+    protected void compile(ShortBuffer vboData, ShortBuffer iboData) {
+        if (mSdf) {
+            SdfGlyphAtlas atlas = SdfGlyphAtlas.get();
+            synchronized (atlas) {
+                atlas.upload();
+            }
+        }
+        super.compile(vboData, iboData);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        mRuns.clear();
+        mSdf = false;
+        if (!mPages.isEmpty()) {
+            SdfGlyphAtlas atlas = SdfGlyphAtlas.get();
+            synchronized (atlas) {
+                releasePages(atlas);
+            }
+        }
+    }
+
+    static class Shader extends GLShader {
+        int uMV, uProj, uScale, uCoordScale, uTexSize, uFill, uStroke, uHalo, uSmooth,
+                aPos, aTexCoord;
+
+        Shader() {
+            if (!create("text_sdf"))
+                return;
+
+            uMV = getUniform("u_mv");
+            uProj = getUniform("u_proj");
+            uScale = getUniform("u_scale");
+            uCoordScale = getUniform("u_coord_scale");
+            uTexSize = getUniform("u_div");
+            uFill = getUniform("u_fill");
+            uStroke = getUniform("u_stroke");
+            uHalo = getUniform("u_halo");
+            uSmooth = getUniform("u_smooth");
+            aPos = getAttrib("vertex");
+            aTexCoord = getAttrib("tex_coord");
+        }
+
+        @Override
+        public boolean useProgram() {
+            if (super.useProgram()) {
+                GLState.enableVertexArrays(aPos, aTexCoord);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    static Shader shader;
+
+    public static final class Renderer {
+
+        static void init() {
+            shader = new Shader();
+            SdfGlyphAtlas.onSurfaceCreated();
+        }
+
+        public static RenderBucket draw(RenderBucket b, GLViewport v, float scale) {
+            SdfTextBucket tb = (SdfTextBucket) b;
+            if (!tb.mSdf)
+                return TextureBucket.Renderer.draw(b, v, scale);
+
+            GLState.test(false, false);
+            GLState.blend(true);
+
+            shader.useProgram();
+
+            gl.uniform1f(shader.uScale, tb.fixed ? 1 / scale : 1);
+            gl.uniform1f(shader.uCoordScale, COORD_SCALE);
+            gl.uniform2f(shader.uTexSize,
+                    1f / (PAGE_SIZE * COORD_SCALE),
+                    1f / (PAGE_SIZE * COORD_SCALE));
+
+            v.proj.setAsUniform(shader.uProj);
+            v.mvp.setAsUniform(shader.uMV);
+
+            MapRenderer.bindQuadIndicesVBO();
+
+            SdfGlyphAtlas atlas = SdfGlyphAtlas.get();
+            for (Run r : tb.mRuns) {
+                int textureId;
+                synchronized (atlas) {
+                    textureId = atlas.getTextureId(r.page);
+                }
+                GLState.bindTex2D(textureId);
+
+                /* distance values per screen pixel */
+                float px = 1f / (2 * SPREAD * r.scale);
+                gl.uniform1f(shader.uSmooth, Math.min(0.5f, 0.7f * px));
+
+                TextStyle text = r.text;
+                GLUtils.setColor(shader.uFill, text.paint.getColor(), 1);
+                if (text.stroke != null) {
+                    float halo = 0.5f - text.stroke.getStrokeWidth() / 2 * px;
+                    gl.uniform1f(shader.uHalo, Math.max(halo, 0));
+                    GLUtils.setColor(shader.uStroke, text.stroke.getColor(), 1);
+                } else {
+                    gl.uniform1f(shader.uHalo, 0.5f);
+                    gl.uniform4f(shader.uStroke, 0, 0, 0, 0);
+                }
+
+                /* draw up to maxVertices in each iteration */
+                for (int i = 0; i < r.indices; i += MAX_INDICES) {
+                    int off = (r.offset + i) * RenderBuckets.SHORT_BYTES * 4 + tb.vertexOffset;
+
+                    int numIndices = r.indices - i;
+                    if (numIndices > MAX_INDICES)
+                        numIndices = MAX_INDICES;
+
+                    gl.vertexAttribPointer(shader.aPos, 4, GL.SHORT,
+                            false, RenderBuckets.SHORT_BYTES * 6, off);
+                    gl.vertexAttribPointer(shader.aTexCoord, 2, GL.SHORT,
+                            false, RenderBuckets.SHORT_BYTES * 6, off + RenderBuckets.SHORT_BYTES * 4);
+                    gl.drawElements(GL.TRIANGLES, numIndices, GL.UNSIGNED_SHORT, 0);
+                }
+            }
+
+            return b.next;
+        }
+    }
+}
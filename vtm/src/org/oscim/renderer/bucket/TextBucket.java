@@ -1,5 +1,6 @@
 /*
  * Copyright 2012 Hannes Janetzek
+ * Copyright 2019 Gustl22
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -18,9 +19,15 @@ package org.oscim.renderer.bucket;
 
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.canvas.Canvas;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.utils.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
 import static org.oscim.renderer.MapRenderer.COORD_SCALE;
 
 public class TextBucket extends TextureBucket {
@@ -34,12 +41,27 @@ public class TextBucket extends TextureBucket {
     public TextItem labels;
     protected final Canvas mCanvas;
 
+    /**
+     * The cached label textures used by this bucket, see {@link Parameters#TEXT_CACHE}.
+     */
+    private final ArrayList<TextTextureCache.Page> mPages = new ArrayList<>();
+    private TextTextureCache mCache;
+
+    /**
+     * Index of the labels for {@link #addText(TextItem)}.
+     */
+    private final HashMap<TextStyle, Group> mGroups = new HashMap<>();
+    /* head of the labels when the groups were updated */
+    private TextItem mGroupsHead;
+
     public TextItem getLabels() {
         return labels;
     }
 
     public void setLabels(TextItem labels) {
         this.labels = labels;
+        mGroups.clear();
+        mGroupsHead = null;
     }
 
     public TextBucket() {
@@ -49,40 +71,78 @@ public class TextBucket extends TextureBucket {
         level = -1;
     }
 
+    /**
+     * Labels of one style: the last item of the style and the first item of
+     * each string, see {@link #addText(TextItem)}.
+     */
+    static final class Group {
+        TextItem last;
+        final HashMap<String, TextItem> first = new HashMap<>();
+    }
+
+    /**
+     * Add the item after the first item with the same style and string, or
+     * at the end of the items with the same style. Labels of a style and
+     * equal strings are consecutive, prepare() depends on it.
+     */
     public void addText(TextItem item) {
-        TextItem it = labels;
-
-        for (; it != null; it = it.next) {
-
-            if (item.text == it.text) {
-                while (it.next != null
-                        /* break if next item uses different text style */
-                        && item.text == it.next.text
-                        /* check same string instance */
-                        && item.label != it.label
-                        /* check same string */
-                        && !item.label.equals(it.label))
-                    it = it.next;
+        /* labels were set or changed directly */
+        if (labels != mGroupsHead)
+            updateGroups();
+
+        Group group = mGroups.get(item.text);
+        if (group == null) {
+            group = new Group();
+            mGroups.put(item.text, group);
+
+            item.next = labels;
+            labels = item;
+            group.last = item;
+            group.first.put(item.label, item);
+            mGroupsHead = labels;
+            return;
+        }
 
-                /* unify duplicate string
-                 * // Note: this is required for 'packing test' in prepare to
-                 * work! */
-                if (item.label != it.label && item.label.equals(it.label))
-                    item.label = it.label;
+        TextItem it = group.first.get(item.label);
+        if (it != null) {
+            /* unify duplicate string
+             * // Note: this is required for 'packing test' in prepare to
+             * work! */
+            item.label = it.label;
+        } else {
+            it = group.last;
+            group.first.put(item.label, item);
+        }
 
-                /* insert after text of same type and/or before same string */
-                item.next = it.next;
-                it.next = item;
-                return;
+        /* insert after text of same type and/or before same string */
+        item.next = it.next;
+        it.next = item;
+        if (group.last == it)
+            group.last = item;
+    }
+
+    private void updateGroups() {
+        mGroups.clear();
+        for (TextItem it = labels; it != null; it = it.next) {
+            Group group = mGroups.get(it.text);
+            if (group == null) {
+                group = new Group();
+                mGroups.put(it.text, group);
             }
+            group.last = it;
+            if (!group.first.containsKey(it.label))
+                group.first.put(it.label, it);
         }
-
-        item.next = labels;
-        labels = item;
+        mGroupsHead = labels;
     }
 
     @Override
     public void prepare() {
+        if (Parameters.TEXT_CACHE) {
+            prepareCached();
+            return;
+        }
+
         int numIndices = 0;
         int offsetIndices = 0;
 
@@ -158,6 +218,98 @@ public class TextBucket extends TextureBucket {
         t.indices = (numIndices - offsetIndices);
     }
 
+    /**
+     * Like {@link #prepare()}, but take the label textures from the
+     * {@link TextTextureCache} and only draw strings which are not cached.
+     */
+    private void prepareCached() {
+        TextTextureCache cache = TextTextureCache.get();
+
+        synchronized (cache) {
+            releasePages();
+            mCache = cache;
+            cache.begin();
+
+            /* find the pages of all labels first, the vertices of each
+             * texture must be contiguous */
+            ArrayList<TextTextureCache.Entry> entries = new ArrayList<>();
+            for (TextItem it = labels; it != null; it = nextLabel(it)) {
+                float width = it.width + 2 * mFontPadX;
+                float height = (int) (it.text.fontHeight) + 0.5f;
+
+                if (height > TEXTURE_HEIGHT)
+                    height = TEXTURE_HEIGHT;
+                if (width > TEXTURE_WIDTH)
+                    width = TEXTURE_WIDTH;
+
+                TextTextureCache.Entry e = cache.get(it.text, it.label, width, height);
+                entries.add(e);
+                if (!mPages.contains(e.page))
+                    mPages.add(e.page);
+            }
+
+            int numIndices = 0;
+            TextureItem last = null;
+            for (TextTextureCache.Page page : mPages) {
+                TextureItem t = cache.acquire(page);
+                t.offset = numIndices;
+                if (last == null)
+                    textures = t;
+                else
+                    last.next = t;
+                last = t;
+
+                int i = 0;
+                for (TextItem it = labels; it != null; it = nextLabel(it)) {
+                    TextTextureCache.Entry e = entries.get(i++);
+                    if (e.page != page)
+                        continue;
+
+                    for (TextItem l = it; l != null; l = l.next) {
+                        addItem(l, e.width, e.height, e.x, e.y);
+
+                        /* six indices to draw the four vertices */
+                        numIndices += TextureBucket.INDICES_PER_SPRITE;
+                        numVertices += 4;
+
+                        if (l.next == null || l.next.text != l.text || l.next.label != l.label)
+                            break;
+                    }
+                }
+                t.indices = numIndices - t.offset;
+            }
+        }
+    }
+
+    /**
+     * @return the next label with a different string or style.
+     */
+    static TextItem nextLabel(TextItem it) {
+        while (it.next != null && it.next.text == it.text && it.next.label == it.label)
+            it = it.next;
+        return it.next;
+    }
+
+    private void releasePages() {
+        if (mCache == null)
+            return;
+        for (TextTextureCache.Page page : mPages)
+            mCache.release(page);
+        mPages.clear();
+    }
+
+    @Override
+    protected void compile(ShortBuffer vboData, ShortBuffer iboData) {
+        if (mCache == null) {
+            super.compile(vboData, iboData);
+            return;
+        }
+        /* the label update may draw into the pages meanwhile */
+        synchronized (mCache) {
+            super.compile(vboData, iboData);
+        }
+    }
+
     protected void addItem(TextItem it,
                            float width, float height, float x, float y) {
         /* texture coordinates */
@@ -217,11 +369,21 @@ public class TextBucket extends TextureBucket {
 
     @Override
     public void clear() {
-        super.clear();
+        if (mCache != null) {
+            synchronized (mCache) {
+                super.clear();
+                releasePages();
+                mCache = null;
+            }
+        } else {
+            super.clear();
+        }
         clearLabels();
     }
 
     public void clearLabels() {
         labels = TextItem.pool.releaseAll(labels);
+        mGroups.clear();
+        mGroupsHead = null;
     }
 }
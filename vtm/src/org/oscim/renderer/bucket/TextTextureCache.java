@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.backend.canvas.Color;
+import org.oscim.theme.styles.TextStyle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.oscim.renderer.bucket.TextureBucket.TEXTURE_HEIGHT;
+import static org.oscim.renderer.bucket.TextureBucket.TEXTURE_WIDTH;
+
+/**
+ * Label strings rasterized into texture pages which are kept across label
+ * updates, so {@link TextBucket#prepare()} only draws strings which are not
+ * cached yet.
+ * <p/>
+ * Pages are filled row by row. When {@link #MAX_PAGES} are in use, the least
+ * recently used page which is not referenced by any bucket is cleared and
+ * filled again.
+ * <p/>
+ * All methods must be called while holding the lock of the cache.
+ */
+final class TextTextureCache {
+
+    /**
+     * Number of pages which are kept, more are only created while all pages
+     * are referenced.
+     */
+    static final int MAX_PAGES = 8;
+
+    private static TextTextureCache sInstance;
+
+    static synchronized TextTextureCache get() {
+        if (sInstance == null)
+            sInstance = new TextTextureCache();
+        return sInstance;
+    }
+
+    private final HashMap<Key, Entry> mEntries = new HashMap<>();
+    private final ArrayList<Page> mPages = new ArrayList<>();
+    private final Key mKey = new Key();
+    private final Canvas mCanvas = CanvasAdapter.newCanvas();
+
+    private Page mCurPage;
+    private int mStamp;
+
+    static final class Page {
+        final TextureItem texture;
+
+        /* number of buckets using the page */
+        int refs;
+        /* stamp of the last label update using the page */
+        int used;
+
+        /* position of the next string */
+        int x, y, rowHeight;
+
+        final ArrayList<Key> keys = new ArrayList<>();
+
+        Page() {
+            texture = new TextureItem(CanvasAdapter.newBitmap(TEXTURE_WIDTH, TEXTURE_HEIGHT, 0));
+            texture.bitmap.eraseColor(Color.TRANSPARENT);
+        }
+    }
+
+    static final class Entry {
+        Page page;
+        float x, y, width, height;
+    }
+
+    static final class Key {
+        TextStyle text;
+        String label;
+
+        @Override
+        public boolean equals(Object o) {
+            Key other = (Key) o;
+            return text == other.text && label.equals(other.label);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(text) * 31 + label.hashCode();
+        }
+    }
+
+    /**
+     * Start a label update: pages used from now on are not evicted until the
+     * next one.
+     */
+    void begin() {
+        mStamp++;
+    }
+
+    /**
+     * @return the entry of the label, drawn into a page if it was not cached
+     */
+    Entry get(TextStyle text, String label, float width, float height) {
+        mKey.text = text;
+        mKey.label = label;
+        Entry e = mEntries.get(mKey);
+
+        /* the style may have been scaled in the meantime */
+        if (e != null && (e.width != width || e.height != height)) {
+            e.page.keys.remove(mKey);
+            mEntries.remove(mKey);
+            e = null;
+        }
+
+        if (e == null) {
+            Page page = place(width, height);
+
+            e = new Entry();
+            e.page = page;
+            e.x = page.x;
+            e.y = page.y;
+            e.width = width;
+            e.height = height;
+
+            mCanvas.setBitmap(page.texture.bitmap);
+            mCanvas.drawText(label, e.x, e.y + height - text.fontDescent, text.paint, text.stroke);
+            page.x += (int) Math.ceil(width);
+
+            /* upload again */
+            page.texture.loaded = false;
+
+            Key key = new Key();
+            key.text = text;
+            key.label = label;
+            mEntries.put(key, e);
+            page.keys.add(key);
+        }
+
+        e.page.used = mStamp;
+        return e;
+    }
+
+    /**
+     * Find the page and set its position for the next string.
+     */
+    private Page place(float width, float height) {
+        int w = (int) Math.ceil(width);
+        int h = (int) Math.ceil(height);
+
+        Page page = mCurPage;
+        if (page != null) {
+            if (page.x + w > TEXTURE_WIDTH) {
+                page.x = 0;
+                page.y += page.rowHeight;
+                page.rowHeight = 0;
+            }
+            if (page.y + h <= TEXTURE_HEIGHT) {
+                page.rowHeight = Math.max(page.rowHeight, h);
+                return page;
+            }
+        }
+
+        page = null;
+        if (mPages.size() >= MAX_PAGES) {
+            /* least recently used page without references */
+            for (Page p : mPages) {
+                if (p.refs > 0 || p.used == mStamp)
+                    continue;
+                if (page == null || p.used - page.used < 0)
+                    page = p;
+            }
+        }
+        if (page != null) {
+            evict(page);
+        } else {
+            page = new Page();
+            mPages.add(page);
+        }
+
+        page.rowHeight = h;
+        mCurPage = page;
+        return page;
+    }
+
+    private void evict(Page page) {
+        for (Key key : page.keys)
+            mEntries.remove(key);
+        page.keys.clear();
+        page.x = page.y = page.rowHeight = 0;
+        page.texture.bitmap.eraseColor(Color.TRANSPARENT);
+        page.texture.loaded = false;
+    }
+
+    /**
+     * @return a texture of the page for a bucket, the page can not be
+     * evicted until {@link #release(Page)}.
+     */
+    TextureItem acquire(Page page) {
+        page.refs++;
+        return TextureItem.clone(page.texture);
+    }
+
+    void release(Page page) {
+        page.refs--;
+    }
+
+    /**
+     * Upload the pages again, their texture ids are not valid in a new GL
+     * context. Buckets acquire new clones of the pages with the next label
+     * update.
+     */
+    void invalidateTextures() {
+        for (Page page : mPages) {
+            page.texture.id = -1;
+            page.texture.loaded = false;
+        }
+    }
+
+    static synchronized void onSurfaceCreated() {
+        if (sInstance != null) {
+            synchronized (sInstance) {
+                sInstance.invalidateTextures();
+            }
+        }
+    }
+
+    int getNumEntries() {
+        return mEntries.size();
+    }
+
+    int getNumPages() {
+        return mPages.size();
+    }
+}
@@ -214,6 +214,34 @@ public class VertexData extends Inlist.List<Chunk> {
         used += 6;
     }
 
+    /**
+     * Add all elements of the array.
+     */
+    public void add(short[] values) {
+        for (int pos = 0; pos < values.length; ) {
+            if (used == SIZE)
+                getNext();
+
+            int length = Math.min(SIZE - used, values.length - pos);
+            System.arraycopy(values, pos, vertices, used, length);
+            used += length;
+            pos += length;
+        }
+    }
+
+    /**
+     * @return a copy of the elements added
+     */
+    public short[] toArray() {
+        short[] values = new short[countSize()];
+        int pos = 0;
+        for (Chunk it = head(); it != null; it = it.next) {
+            System.arraycopy(it.vertices, 0, values, pos, it.used);
+            pos += it.used;
+        }
+        return values;
+    }
+
     public boolean empty() {
         return cur == null;
     }
@@ -25,9 +25,11 @@ import org.oscim.core.TagSet;
 import org.oscim.theme.rule.Rule;
 import org.oscim.theme.rule.Rule.Element;
 import org.oscim.theme.rule.Rule.RuleVisitor;
+import org.oscim.theme.rule.RuleIndex;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.utils.ArrayUtils;
 import org.oscim.utils.LRUCache;
+import org.oscim.utils.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,12 +48,19 @@ public class RenderTheme implements IRenderTheme {
 
     private final int mLevels;
     private final Rule[] mRules;
+    private final RuleIndex mRuleIndex;
     private final boolean mMapsforgeTheme;
 
     private final Map<String, String> mTransformBackwardKeyMap, mTransformForwardKeyMap;
     private final Map<Tag, Tag> mTransformBackwardTagMap, mTransformForwardTagMap;
 
-    class RenderStyleCache {
+    /**
+     * Matching cache for one geometry type. Each thread calling
+     * {@link #matchElement} gets its own set of caches, so that matching
+     * needs no locking. Static, so that the caches held by long living
+     * loader threads do not reference the theme.
+     */
+    static class RenderStyleCache {
         final int matchType;
         final LRUCache<MatchingCacheKey, RenderStyleItem> cache;
         final MatchingCacheKey cacheKey;
@@ -61,6 +70,9 @@ public class RenderTheme implements IRenderTheme {
 
         RenderStyleItem prevItem;
 
+        /* statistics, only written by the owning thread */
+        int hits, sameHits, misses;
+
         public RenderStyleCache(int type) {
             cache = new LRUCache<MatchingCacheKey, RenderStyleItem>(MATCHING_CACHE_SIZE);
             instructionList = new ArrayList<RenderStyle>(4);
@@ -73,14 +85,44 @@ public class RenderTheme implements IRenderTheme {
         }
     }
 
-    class RenderStyleItem {
+    static class RenderStyleItem {
         RenderStyleItem next;
         int zoom;
         RenderStyle[] list;
         MatchingCacheKey key;
     }
 
-    private final RenderStyleCache[] mStyleCache;
+    /**
+     * Per thread matching caches for NODE, LINE and POLY. The values do not
+     * reference the theme, so the entries of threads which outlive the theme
+     * become stale once the theme is released.
+     */
+    private final ThreadLocal<RenderStyleCache[]> mStyleCache = new ThreadLocal<>();
+
+    /**
+     * All matching caches, for statistics
+     */
+    private final ArrayList<RenderStyleCache[]> mStyleCaches = new ArrayList<>();
+
+    private boolean mDisposed;
+
+    private RenderStyleCache[] getStyleCaches() {
+        RenderStyleCache[] caches = mStyleCache.get();
+        if (caches != null)
+            return caches;
+
+        caches = new RenderStyleCache[3];
+        caches[0] = new RenderStyleCache(Element.NODE);
+        caches[1] = new RenderStyleCache(Element.LINE);
+        caches[2] = new RenderStyleCache(Element.POLY);
+        synchronized (mStyleCaches) {
+            /* no statistics after dispose, caches are not retained */
+            if (!mDisposed)
+                mStyleCaches.add(caches);
+        }
+        mStyleCache.set(caches);
+        return caches;
+    }
 
     public RenderTheme(int mapBackground, float baseTextSize, Rule[] rules, int levels) {
         this(mapBackground, baseTextSize, rules, levels, false);
@@ -104,24 +146,23 @@ public class RenderTheme implements IRenderTheme {
         mBaseTextSize = baseTextSize;
         mLevels = levels;
         mRules = rules;
+        mRuleIndex = rules.length >= RuleIndex.MIN_RULES ? new RuleIndex(rules) : null;
         mMapsforgeTheme = mapsforgeTheme;
 
         mTransformForwardKeyMap = transformKeyMap;
         mTransformBackwardKeyMap = ArrayUtils.swap(transformKeyMap);
         mTransformForwardTagMap = transformTagMap;
         mTransformBackwardTagMap = ArrayUtils.swap(transformTagMap);
-
-        mStyleCache = new RenderStyleCache[3];
-        mStyleCache[0] = new RenderStyleCache(Element.NODE);
-        mStyleCache[1] = new RenderStyleCache(Element.LINE);
-        mStyleCache[2] = new RenderStyleCache(Element.POLY);
     }
 
     @Override
     public void dispose() {
-
-        for (int i = 0; i < 3; i++)
-            mStyleCache[i].cache.clear();
+        /* caches of other threads are released with this theme */
+        synchronized (mStyleCaches) {
+            mStyleCaches.clear();
+            mDisposed = true;
+        }
+        mStyleCache.remove();
 
         for (Rule rule : mRules)
             rule.dispose();
@@ -146,9 +187,46 @@ public class RenderTheme implements IRenderTheme {
         return mMapsforgeTheme;
     }
 
-    //AtomicInteger hitCount = new AtomicInteger(0);
-    //AtomicInteger missCount = new AtomicInteger(0);
-    //AtomicInteger sameCount = new AtomicInteger(0);
+    /**
+     * @return number of matches found in the caches, including
+     * {@link #getCacheSameHits()}.
+     */
+    public int getCacheHits() {
+        int hits = 0;
+        synchronized (mStyleCaches) {
+            for (RenderStyleCache[] caches : mStyleCaches)
+                for (RenderStyleCache cache : caches)
+                    hits += cache.hits + cache.sameHits;
+        }
+        return hits;
+    }
+
+    /**
+     * @return number of matches where the tags were equal to the previous
+     * element of the same geometry type.
+     */
+    public int getCacheSameHits() {
+        int hits = 0;
+        synchronized (mStyleCaches) {
+            for (RenderStyleCache[] caches : mStyleCaches)
+                for (RenderStyleCache cache : caches)
+                    hits += cache.sameHits;
+        }
+        return hits;
+    }
+
+    /**
+     * @return number of matches that needed to walk the rules.
+     */
+    public int getCacheMisses() {
+        int misses = 0;
+        synchronized (mStyleCaches) {
+            for (RenderStyleCache[] caches : mStyleCaches)
+                for (RenderStyleCache cache : caches)
+                    misses += cache.misses;
+        }
+        return misses;
+    }
 
     @Override
     public RenderStyle[] matchElement(GeometryType geometryType, TagSet tags, int zoomLevel) {
@@ -165,126 +243,126 @@ public class RenderTheme implements IRenderTheme {
             return null;
         }
 
-        RenderStyleCache cache = mStyleCache[type - 1];
+        RenderStyleCache cache = getStyleCaches()[type - 1];
 
         /* NOTE: maximum zoom level supported is 32 */
         int zoomMask = 1 << zoomLevel;
 
-        synchronized (cache) {
-
-            if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
-                /* previous instructions zoom does not match */
-                cache.cacheKey.set(tags, null);
-            } else {
-                /* compare if tags match previous instructions */
-                if (cache.cacheKey.set(tags, cache.prevItem.key)) {
-                    ri = cache.prevItem;
-                    //log.debug(hitCount + "/" + sameCount.incrementAndGet()
-                    //        + "/" + missCount + "same hit " + tags);
-                }
+        if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
+            /* previous instructions zoom does not match */
+            cache.cacheKey.set(tags, null);
+        } else {
+            /* compare if tags match previous instructions */
+            if (cache.cacheKey.set(tags, cache.prevItem.key)) {
+                ri = cache.prevItem;
+                cache.sameHits++;
             }
+        }
 
-            if (ri == null) {
-                /* get instruction for current cacheKey */
-                ris = cache.getRenderInstructions();
-
-                for (ri = ris; ri != null; ri = ri.next) {
-                    if ((ri.zoom & zoomMask) != 0) {
-                        /* cache hit */
+        if (ri == null) {
+            /* get instruction for current cacheKey */
+            ris = cache.getRenderInstructions();
 
-                        //log.debug(hitCount.incrementAndGet()
-                        //       + "/" + sameCount + "/" + missCount
-                        //       + " cache hit " + tags);
-                        break;
-                    }
+            for (ri = ris; ri != null; ri = ri.next) {
+                if ((ri.zoom & zoomMask) != 0) {
+                    /* cache hit */
+                    cache.hits++;
+                    break;
                 }
             }
+        }
 
-            if (ri == null) {
-                /* cache miss */
-                //missCount.incrementAndGet();
+        if (ri == null) {
+            /* cache miss */
+            cache.misses++;
 
-                List<RenderStyle> matches = cache.instructionList;
-                matches.clear();
+            List<RenderStyle> matches = cache.instructionList;
+            matches.clear();
 
+            Tag[] matchTags = cache.cacheKey.mTags;
+            if (mRuleIndex != null && Parameters.THEME_RULE_INDEX) {
+                long[] candidates = mRuleIndex.candidates(cache.matchType, matchTags, zoomMask);
+                for (int i = RuleIndex.next(candidates, 0); i >= 0; i = RuleIndex.next(candidates, i + 1))
+                    mRules[i].matchElement(cache.matchType, matchTags, zoomMask, matches);
+            } else {
                 for (Rule rule : mRules)
-                    rule.matchElement(cache.matchType, cache.cacheKey.mTags, zoomMask, matches);
-
-                int size = matches.size();
-                if (size > 1) {
-                    for (int i = 0; i < size - 1; i++) {
-                        RenderStyle r = matches.get(i);
-                        for (int j = i + 1; j < size; j++) {
-                            if (matches.get(j) == r) {
-                                log.debug("fix duplicate instruction! "
-                                        + Arrays.deepToString(cache.cacheKey.mTags)
-                                        + " zoom:" + zoomLevel + " "
-                                        + r.getClass().getName());
-                                matches.remove(j--);
-                                size--;
-                            }
+                    rule.matchElement(cache.matchType, matchTags, zoomMask, matches);
+            }
+
+            int size = matches.size();
+            if (size > 1) {
+                for (int i = 0; i < size - 1; i++) {
+                    RenderStyle r = matches.get(i);
+                    for (int j = i + 1; j < size; j++) {
+                        if (matches.get(j) == r) {
+                            log.debug("fix duplicate instruction! "
+                                    + Arrays.deepToString(cache.cacheKey.mTags)
+                                    + " zoom:" + zoomLevel + " "
+                                    + r.getClass().getName());
+                            matches.remove(j--);
+                            size--;
                         }
                     }
                 }
-                /* check if same instructions are used in another level */
-                for (ri = ris; ri != null; ri = ri.next) {
-                    if (size == 0) {
-                        if (ri.list != null)
-                            continue;
+            }
+            /* check if same instructions are used in another level */
+            for (ri = ris; ri != null; ri = ri.next) {
+                if (size == 0) {
+                    if (ri.list != null)
+                        continue;
 
-                        /* both matchinglists are empty */
-                        break;
-                    }
+                    /* both matchinglists are empty */
+                    break;
+                }
 
-                    if (ri.list == null)
-                        continue;
+                if (ri.list == null)
+                    continue;
 
-                    if (ri.list.length != size)
-                        continue;
+                if (ri.list.length != size)
+                    continue;
 
-                    int i = 0;
-                    for (RenderStyle r : ri.list) {
-                        if (r != matches.get(i))
-                            break;
-                        i++;
-                    }
-                    if (i == size)
-                        /* both matching lists contain the same items */
+                int i = 0;
+                for (RenderStyle r : ri.list) {
+                    if (r != matches.get(i))
                         break;
+                    i++;
                 }
+                if (i == size)
+                    /* both matching lists contain the same items */
+                    break;
+            }
 
-                if (ri != null) {
-                    /* we found a same matchting list on another zoomlevel add
-                     * this zoom level to the existing RenderInstructionItem. */
-                    ri.zoom |= zoomMask;
+            if (ri != null) {
+                /* we found a same matchting list on another zoomlevel add
+                 * this zoom level to the existing RenderInstructionItem. */
+                ri.zoom |= zoomMask;
 
-                    //log.debug(zoomLevel + " same instructions " + size + " "
-                    //                + Arrays.deepToString(tags));
-                } else {
-                    //log.debug(zoomLevel + " new instructions " + size + " "
-                    //                + Arrays.deepToString(tags));
+                //log.debug(zoomLevel + " same instructions " + size + " "
+                //                + Arrays.deepToString(tags));
+            } else {
+                //log.debug(zoomLevel + " new instructions " + size + " "
+                //                + Arrays.deepToString(tags));
 
-                    ri = new RenderStyleItem();
-                    ri.zoom = zoomMask;
+                ri = new RenderStyleItem();
+                ri.zoom = zoomMask;
 
-                    if (size > 0) {
-                        ri.list = new RenderStyle[size];
-                        matches.toArray(ri.list);
-                    }
+                if (size > 0) {
+                    ri.list = new RenderStyle[size];
+                    matches.toArray(ri.list);
+                }
 
-                    /* attach this list to the one found for MatchingKey */
-                    if (ris != null) {
-                        ri.next = ris.next;
-                        ri.key = ris.key;
-                        ris.next = ri;
-                    } else {
-                        ri.key = new MatchingCacheKey(cache.cacheKey);
-                        cache.cache.put(ri.key, ri);
-                    }
+                /* attach this list to the one found for MatchingKey */
+                if (ris != null) {
+                    ri.next = ris.next;
+                    ri.key = ris.key;
+                    ris.next = ri;
+                } else {
+                    ri.key = new MatchingCacheKey(cache.cacheKey);
+                    cache.cache.put(ri.key, ri);
                 }
             }
-            cache.prevItem = ri;
         }
+        cache.prevItem = ri;
         return ri.list;
     }
 
@@ -20,6 +20,7 @@ package org.oscim.theme.rule;
 import org.oscim.core.Tag;
 import org.oscim.theme.rule.RuleBuilder.RuleType;
 import org.oscim.theme.styles.RenderStyle;
+import org.oscim.utils.Parameters;
 import org.oscim.utils.Utils;
 
 import java.util.List;
@@ -57,6 +58,11 @@ public class Rule {
     public final boolean selectFirstMatch;
     public final boolean selectWhenMatched;
 
+    /**
+     * index over subRules, null when there are only few
+     */
+    private final RuleIndex mSubIndex;
+
     Rule(int element, int zoom, int selector, Rule[] subRules, RenderStyle[] styles) {
         this.element = element;
         this.zoom = zoom;
@@ -66,19 +72,31 @@ public class Rule {
 
         selectFirstMatch = (selector & Selector.FIRST) != 0;
         selectWhenMatched = (selector & Selector.WHEN_MATCHED) != 0;
+
+        mSubIndex = this.subRules.length >= RuleIndex.MIN_RULES ? new RuleIndex(this.subRules) : null;
     }
 
     public boolean matchesTags(Tag[] tags) {
         return true;
     }
 
+    /**
+     * @return keys of which one must be present for {@link #matchesTags}
+     * to succeed, or null if the rule may match without any of them.
+     */
+    String[] getRequiredKeys() {
+        return null;
+    }
+
     public boolean matchElement(int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
         if (((element & type) == 0) || ((zoom & zoomLevel) == 0) || !matchesTags(tags))
             return false;
 
         boolean matched = false;
         if (subRules != EMPTY_RULES) {
-            if (selectFirstMatch) {
+            if (mSubIndex != null && Parameters.THEME_RULE_INDEX) {
+                matched = matchIndexed(type, tags, zoomLevel, result);
+            } else if (selectFirstMatch) {
                 /* only add first matching rule and when-matched rules iff a
                  * previous rule matched */
                 for (Rule r : subRules) {
@@ -114,6 +132,29 @@ public class Rule {
         return true;
     }
 
+    /**
+     * Same as the loops in {@link #matchElement} but only for the subRules
+     * which may match according to the index. Skipped rules would not
+     * have matched, so the 'matched' state is the same.
+     */
+    private boolean matchIndexed(int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
+        boolean matched = false;
+        long[] candidates = mSubIndex.candidates(type, tags, zoomLevel);
+
+        for (int i = RuleIndex.next(candidates, 0); i >= 0; i = RuleIndex.next(candidates, i + 1)) {
+            Rule r = subRules[i];
+            if (selectFirstMatch) {
+                if (matched ^ r.selectWhenMatched)
+                    continue;
+            } else if (r.selectWhenMatched && !matched) {
+                continue;
+            }
+            if (r.matchElement(type, tags, zoomLevel, result))
+                matched = true;
+        }
+        return matched;
+    }
+
     public void dispose() {
         for (RenderStyle ri : styles)
             ri.dispose();
@@ -188,6 +229,11 @@ public class Rule {
             mKey = key;
         }
 
+        @Override
+        String[] getRequiredKeys() {
+            return new String[]{mKey};
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             for (Tag tag : tags)
@@ -229,6 +275,11 @@ public class Rule {
             mValue = value;
         }
 
+        @Override
+        String[] getRequiredKeys() {
+            return new String[]{mKey};
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             for (Tag tag : tags)
@@ -259,6 +310,11 @@ public class Rule {
                 mValues = values;
         }
 
+        @Override
+        String[] getRequiredKeys() {
+            return mKeys;
+        }
+
         @Override
         public boolean matchesTags(Tag[] tags) {
             if (mKeys == null) {
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme.rule;
+
+import org.oscim.core.Tag;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index over a list of sibling rules to find the rules that can match an
+ * element without testing each rule.
+ * <p/>
+ * Rules which can only match when a tag with one of their keys is present
+ * are dispatched by tag key, all other rules are always tested. Candidates
+ * are additionally filtered by element type and zoom level and returned
+ * as bitset in rule order, so that selectFirstMatch/selectWhenMatched
+ * semantics of the caller are kept.
+ */
+public class RuleIndex {
+
+    /**
+     * Minimum number of rules worth to be indexed.
+     */
+    public static final int MIN_RULES = 8;
+
+    private final int mNumRules;
+    private final int[] mElements;
+    private final int[] mZooms;
+
+    /**
+     * rules that need to be tested for any tags
+     */
+    private final int[] mAnyRules;
+
+    /**
+     * rules that can only match with a tag of the given key
+     */
+    private final HashMap<String, int[]> mKeyRules;
+
+    public RuleIndex(Rule[] rules) {
+        mNumRules = rules.length;
+        mElements = new int[mNumRules];
+        mZooms = new int[mNumRules];
+
+        List<Integer> anyRules = new ArrayList<>();
+        HashMap<String, List<Integer>> keyRules = new HashMap<>();
+
+        for (int i = 0; i < mNumRules; i++) {
+            Rule r = rules[i];
+            mElements[i] = r.element;
+            mZooms[i] = r.zoom;
+
+            String[] keys = r.getRequiredKeys();
+            if (keys == null) {
+                anyRules.add(i);
+                continue;
+            }
+            for (String key : keys) {
+                List<Integer> l = keyRules.get(key);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    keyRules.put(key, l);
+                }
+                /* keys may be listed twice */
+                if (l.isEmpty() || l.get(l.size() - 1) != i)
+                    l.add(i);
+            }
+        }
+
+        mAnyRules = toArray(anyRules);
+        mKeyRules = new HashMap<>(keyRules.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : keyRules.entrySet())
+            mKeyRules.put(e.getKey(), toArray(e.getValue()));
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = list.get(i);
+        return result;
+    }
+
+    /**
+     * @param type      the element type.
+     * @param tags      the element tags.
+     * @param zoomLevel the zoom level bit.
+     * @return bitset of rule indices which may match, in rule order.
+     */
+    public long[] candidates(int type, Tag[] tags, int zoomLevel) {
+        long[] bits = new long[(mNumRules + 63) >> 6];
+
+        add(bits, mAnyRules, type, zoomLevel);
+
+        for (Tag tag : tags) {
+            int[] rules = mKeyRules.get(tag.key);
+            if (rules != null)
+                add(bits, rules, type, zoomLevel);
+        }
+        return bits;
+    }
+
+    private void add(long[] bits, int[] rules, int type, int zoomLevel) {
+        for (int i : rules) {
+            if ((mElements[i] & type) != 0 && (mZooms[i] & zoomLevel) != 0)
+                bits[i >> 6] |= 1L << (i & 63);
+        }
+    }
+
+    /**
+     * @return the next set bit in 'bits' starting at 'from', or -1.
+     */
+    public static int next(long[] bits, int from) {
+        int w = from >> 6;
+        if (w >= bits.length)
+            return -1;
+
+        long b = bits[w] & (-1L << (from & 63));
+        while (b == 0) {
+            if (++w == bits.length)
+                return -1;
+            b = bits[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(b);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleIndex[rules:" + mNumRules
+                + " any:" + mAnyRules.length
+                + " keys:" + mKeyRules.size() + "]";
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling;
+
+import org.oscim.core.Tile;
+
+/**
+ * Implemented by tile data sources and http engines which can request tiles
+ * before they are queried, e.g. to pipeline network requests.
+ */
+public interface ITilePrefetcher {
+
+    /**
+     * Start loading a tile which is likely queried soon, must not block.
+     *
+     * @param tile the queued tile.
+     */
+    void prefetch(Tile tile);
+
+    /**
+     * Implemented by tile data sources which may prefetch tiles, depending
+     * on how they are set up.
+     */
+    interface Source {
+
+        /**
+         * @return the prefetcher, null if the source does not prefetch tiles.
+         */
+        ITilePrefetcher getPrefetcher();
+    }
+}
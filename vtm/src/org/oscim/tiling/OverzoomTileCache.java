@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling;
+
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.utils.LRUCache;
+
+import java.util.List;
+
+/**
+ * A bounded cache of decoded parent tiles used by {@link OverzoomTileDataSource}.
+ * <p/>
+ * Holds copies of the MapElements of the last queried overzoom tiles, so that
+ * children beyond the overzoom level can be clipped from the decoded parent
+ * instead of querying the data source again.
+ * One instance is shared by all data sources of a TileSource, i.e. it is
+ * accessed by all loader threads.
+ */
+public class OverzoomTileCache {
+
+    public static final int DEFAULT_SIZE = 16;
+
+    private final LRUCache<Key, MapElement[]> mCache;
+    private final Key mKey = new Key();
+
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param size the maximum number of parent tiles to hold.
+     */
+    public OverzoomTileCache(int size) {
+        mCache = new LRUCache<>(size);
+    }
+
+    /**
+     * @return the decoded elements of the parent tile or null if not cached.
+     * The returned elements must not be modified.
+     */
+    public synchronized MapElement[] get(Tile tile) {
+        MapElement[] elements = mCache.get(mKey.set(tile));
+        if (elements != null)
+            mHits++;
+        else
+            mMisses++;
+        return elements;
+    }
+
+    /**
+     * @return true if the parent tile is cached, without counting a hit or miss.
+     */
+    public synchronized boolean contains(Tile tile) {
+        return mCache.containsKey(mKey.set(tile));
+    }
+
+    /**
+     * @param tile     the parent tile.
+     * @param elements copies of the decoded elements, owned by the cache afterwards.
+     */
+    public synchronized void put(Tile tile, List<MapElement> elements) {
+        mCache.put(new Key().set(tile), elements.toArray(new MapElement[elements.size()]));
+    }
+
+    public synchronized void clear() {
+        mCache.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized void resetStats() {
+        mHits = 0;
+        mMisses = 0;
+    }
+
+    private static final class Key {
+        int x, y, z;
+
+        Key set(Tile tile) {
+            x = tile.tileX;
+            y = tile.tileY;
+            z = tile.zoomLevel;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return x == other.x && y == other.y && z == other.z;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + x;
+            result = 31 * result + y;
+            return 31 * result + z;
+        }
+    }
+}
@@ -14,16 +14,31 @@
  */
 package org.oscim.tiling;
 
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
 
-public class OverzoomTileDataSource implements ITileDataSource {
+import java.util.ArrayList;
+import java.util.List;
+
+public class OverzoomTileDataSource implements ITileDataSource, ITilePrefetcher, ITilePrefetcher.Source {
 
     private final ITileDataSource tileDataSource;
     private final int overZoom;
+    private final OverzoomTileCache cache;
 
     public OverzoomTileDataSource(ITileDataSource tileDataSource, int overZoom) {
+        this(tileDataSource, overZoom, null);
+    }
+
+    /**
+     * @param cache the (shared) cache of decoded parent tiles, may be null.
+     */
+    public OverzoomTileDataSource(ITileDataSource tileDataSource, int overZoom, OverzoomTileCache cache) {
         this.tileDataSource = tileDataSource;
         this.overZoom = overZoom;
+        this.cache = cache;
     }
 
     public ITileDataSource getDataSource() {
@@ -38,10 +53,49 @@ public class OverzoomTileDataSource implements ITileDataSource {
         if (diff > 0) {
             mapTile = new MapTile(tile.node, tile.tileX >> diff, tile.tileY >> diff, overZoom);
             dataSink = new OverzoomDataSink(sink, mapTile, tile);
+
+            if (cache != null) {
+                MapElement[] elements = cache.get(mapTile);
+                if (elements != null) {
+                    for (MapElement element : elements)
+                        dataSink.process(new MapElement(element));
+                    dataSink.completed(QueryResult.SUCCESS);
+                    return;
+                }
+                dataSink = new CacheSink(dataSink, mapTile);
+            }
         }
         tileDataSource.query(mapTile, dataSink);
     }
 
+    @Override
+    public ITilePrefetcher getPrefetcher() {
+        if (getSourcePrefetcher() != null)
+            return this;
+        return null;
+    }
+
+    private ITilePrefetcher getSourcePrefetcher() {
+        if (tileDataSource instanceof ITilePrefetcher.Source)
+            return ((ITilePrefetcher.Source) tileDataSource).getPrefetcher();
+        return null;
+    }
+
+    @Override
+    public void prefetch(Tile tile) {
+        ITilePrefetcher prefetcher = getSourcePrefetcher();
+        if (prefetcher == null)
+            return;
+
+        int diff = tile.zoomLevel - overZoom;
+        if (diff > 0) {
+            tile = new Tile(tile.tileX >> diff, tile.tileY >> diff, (byte) overZoom);
+            if (cache != null && cache.contains(tile))
+                return;
+        }
+        prefetcher.prefetch(tile);
+    }
+
     @Override
     public void dispose() {
         tileDataSource.dispose();
@@ -51,4 +105,39 @@ public class OverzoomTileDataSource implements ITileDataSource {
     public void cancel() {
         tileDataSource.cancel();
     }
+
+    /**
+     * Collects copies of the parent tile elements and passes them
+     * to the cache when the query succeeded.
+     */
+    private class CacheSink implements ITileDataSink {
+        private final ITileDataSink sink;
+        private final MapTile tile;
+        private final List<MapElement> elements = new ArrayList<>();
+        private boolean cacheable = true;
+
+        CacheSink(ITileDataSink sink, MapTile tile) {
+            this.sink = sink;
+            this.tile = tile;
+        }
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new MapElement(element));
+            sink.process(element);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            cacheable = false;
+            sink.setTileImage(bitmap);
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            if (cacheable && result == QueryResult.SUCCESS)
+                cache.put(tile, elements);
+            sink.completed(result);
+        }
+    }
 }
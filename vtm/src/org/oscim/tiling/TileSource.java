@@ -31,6 +31,7 @@ public abstract class TileSource {
         protected int zoomMin = Viewport.MIN_ZOOM_LEVEL;
         protected int zoomMax = Viewport.MAX_ZOOM_LEVEL;
         protected int overZoom = BuildingLayer.MIN_ZOOM;
+        protected int overZoomCacheSize = OverzoomTileCache.DEFAULT_SIZE;
         protected FadeStep[] fadeSteps;
         protected String name;
         protected int tileSize = 256;
@@ -55,6 +56,14 @@ public abstract class TileSource {
             return self();
         }
 
+        /**
+         * Number of decoded overzoom tiles to keep for their children, 0 to disable.
+         */
+        public T overZoomCacheSize(int size) {
+            overZoomCacheSize = size;
+            return self();
+        }
+
         public T fadeSteps(FadeStep[] fadeSteps) {
             this.fadeSteps = fadeSteps;
             return self();
@@ -86,6 +95,7 @@ public abstract class TileSource {
     protected int mZoomMin = Viewport.MIN_ZOOM_LEVEL;
     protected int mZoomMax = Viewport.MAX_ZOOM_LEVEL;
     protected int mOverZoom = BuildingLayer.MIN_ZOOM;
+    protected int mOverZoomCacheSize = OverzoomTileCache.DEFAULT_SIZE;
     protected FadeStep[] mFadeSteps;
     protected String mName;
     protected int mTileSize = 256;
@@ -93,6 +103,8 @@ public abstract class TileSource {
     protected final Options options = new Options();
     public ITileCache tileCache;
 
+    private OverzoomTileCache mOverzoomCache;
+
     protected TileSource() {
     }
 
@@ -111,6 +123,7 @@ public abstract class TileSource {
         mZoomMin = builder.zoomMin;
         mZoomMax = builder.zoomMax;
         mOverZoom = builder.overZoom;
+        mOverZoomCacheSize = builder.overZoomCacheSize;
         mFadeSteps = builder.fadeSteps;
         mName = builder.name;
         mTileSize = builder.tileSize;
@@ -145,6 +158,24 @@ public abstract class TileSource {
         return mOverZoom;
     }
 
+    /**
+     * @return the cache of decoded overzoom tiles shared by all data sources
+     * of this TileSource, or null if disabled.
+     */
+    public synchronized OverzoomTileCache getOverzoomCache() {
+        if (mOverzoomCache == null && mOverZoomCacheSize > 0)
+            mOverzoomCache = new OverzoomTileCache(mOverZoomCacheSize);
+        return mOverzoomCache;
+    }
+
+    /**
+     * Drop decoded overzoom tiles, e.g. when the underlying data changed.
+     */
+    protected synchronized void clearOverzoomCache() {
+        if (mOverzoomCache != null)
+            mOverzoomCache.clear();
+    }
+
     public void setFadeSteps(FadeStep[] fadeSteps) {
         mFadeSteps = fadeSteps;
     }
@@ -0,0 +1,607 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent {@link ITileCache} for desktop and server JVMs.
+ * <p/>
+ * Tiles are appended to pack segment files of fixed size and found through
+ * a memory-mapped hash index, see {@link PackSegment} and {@link PackIndex}.
+ * Cached tiles are read directly from the mapped segments. Tiles are written
+ * by a single background thread, lookups run concurrently.
+ * <p/>
+ * The index grows when it is full, up to {@link #MAX_CAPACITY} tiles.
+ * When the segments exceed the cache size the oldest segment is removed.
+ * Tiles which were read since their segment was filled are moved to the
+ * current segment before (second chance, an approximation of LRU).
+ * <p/>
+ * Each record has a CRC32 which is checked on reading. After a crash the
+ * index is rebuilt from the segments.
+ * <p/>
+ * Call {@link #dispose()} when the cache is no longer used.
+ */
+public class DiskTileCache implements ITileCache {
+    static final Logger log = LoggerFactory.getLogger(DiskTileCache.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    static final String INDEX_FILE = "tiles.idx";
+
+    /**
+     * Maximum number of tiles waiting to be written, further tiles are not
+     * cached.
+     */
+    static final int MAX_PENDING = 64;
+
+    /**
+     * Maximum number of index slots, 96MB of index file.
+     */
+    static final int MAX_CAPACITY = 1 << 22;
+
+    private static final int MAX_ZOOM = 28;
+
+    private final File mDir;
+    private final int mSegmentSize;
+
+    private final RandomAccessFile mIndexFile;
+    private final FileLock mFileLock;
+    private final PackIndex mIndex;
+
+    /**
+     * Guards the index and segments: the writer modifies them while holding
+     * the write lock, lookups hold the read lock.
+     */
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, PackSegment> mSegments = new TreeMap<>();
+    private boolean mDisposed;
+
+    /* only used by the writer */
+    private PackSegment mActive;
+    private long mSize;
+    private final CRC32 mCrc = new CRC32();
+
+    /* id of the active segment, used as access stamp */
+    private volatile int mActiveId;
+    private volatile long mCacheSize;
+
+    private final ThreadPoolExecutor mWriter;
+    private final ArrayList<ByteArrayOutputStream> mCacheBuffers = new ArrayList<>();
+
+    class CacheTileReader implements TileReader {
+        final InputStream mInputStream;
+        final Tile mTile;
+
+        CacheTileReader(Tile tile, InputStream is) {
+            mTile = tile;
+            mInputStream = is;
+        }
+
+        @Override
+        public Tile getTile() {
+            return mTile;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return mInputStream;
+        }
+    }
+
+    class CacheTileWriter implements TileWriter {
+        final ByteArrayOutputStream mOutputStream;
+        final Tile mTile;
+
+        CacheTileWriter(Tile tile, ByteArrayOutputStream os) {
+            mTile = tile;
+            mOutputStream = os;
+        }
+
+        @Override
+        public Tile getTile() {
+            return mTile;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return mOutputStream;
+        }
+
+        @Override
+        public void complete(boolean success) {
+            saveTile(mTile, mOutputStream, success);
+        }
+    }
+
+    /**
+     * @param dir       the cache directory, created if it does not exist.
+     * @param cacheSize the size of the cached tiles in bytes.
+     * @throws IOException if the cache can not be opened or is used by
+     *                     another process.
+     */
+    public DiskTileCache(File dir, long cacheSize) throws IOException {
+        this(dir, cacheSize, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize the size of a segment file, the unit of eviction.
+     */
+    public DiskTileCache(File dir, long cacheSize, int segmentSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can not create cache directory " + dir);
+        if (segmentSize <= PackSegment.HEADER_SIZE + PackSegment.RECORD_HEADER_SIZE)
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+
+        mDir = dir;
+        mSegmentSize = segmentSize;
+        mCacheSize = cacheSize;
+
+        mIndexFile = new RandomAccessFile(new File(dir, INDEX_FILE), "rw");
+        try {
+            FileChannel channel = mIndexFile.getChannel();
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null)
+                throw new IOException("Cache is in use: " + dir);
+            mFileLock = lock;
+
+            mIndex = new PackIndex(channel, getCapacity(cacheSize));
+            openSegments();
+            if (mIndex.isClean())
+                removeMissing();
+            else
+                rebuildIndex();
+            mIndex.setClean(false);
+        } catch (IOException e) {
+            mIndexFile.close();
+            throw e;
+        }
+
+        if (!mSegments.isEmpty()) {
+            mActive = mSegments.lastEntry().getValue();
+            mActiveId = mActive.id;
+        }
+
+        mWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "DiskTileCache");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+
+        /* the cache size may have been reduced */
+        setCacheSize(cacheSize);
+    }
+
+    /**
+     * @return the initial number of index slots for the cache size, assuming
+     * 4kB per tile.
+     */
+    static int getCapacity(long cacheSize) {
+        long n = Math.max(1 << 12, Math.min(1 << 20, cacheSize / 4096));
+        return Integer.highestOneBit((int) (n - 1)) << 1;
+    }
+
+    private void openSegments() throws IOException {
+        String[] names = mDir.list();
+        if (names == null)
+            throw new IOException("Can not list cache directory " + mDir);
+
+        for (String name : names) {
+            int id = PackSegment.getId(name);
+            if (id < 0)
+                continue;
+            File file = new File(mDir, name);
+            PackSegment segment = PackSegment.open(file, id);
+            if (segment == null) {
+                log.debug("remove invalid segment {}", file);
+                if (!file.delete())
+                    log.debug("could not delete {}", file);
+                continue;
+            }
+            mSegments.put(id, segment);
+            mSize += segment.getFill();
+        }
+    }
+
+    /**
+     * Remove the tiles of deleted segments from the index.
+     */
+    private void removeMissing() {
+        ArrayList<Long> keys = new ArrayList<>();
+        for (int i = 0, n = mIndex.capacity(); i < n; i++) {
+            long key = mIndex.getKey(i);
+            if (key != 0 && !mSegments.containsKey(mIndex.getSegment(i)))
+                keys.add(key);
+        }
+        for (Long key : keys)
+            mIndex.remove(key);
+    }
+
+    /**
+     * Add the records of all segments to the index, later records replace
+     * older ones.
+     */
+    private void rebuildIndex() {
+        mIndex.clear();
+        for (PackSegment segment : mSegments.values()) {
+            int offset = PackSegment.HEADER_SIZE;
+            for (int next; (next = segment.next(offset)) > 0; offset = next) {
+                long key = segment.getKey(offset);
+                if (mIndex.find(key) < 0 && mIndex.isFull())
+                    continue;
+                mIndex.put(key, segment.id, offset, segment.getLength(offset), segment.id);
+            }
+        }
+        log.debug("rebuilt index: {} tiles", mIndex.size());
+    }
+
+    static long getKey(Tile tile) {
+        if (tile.zoomLevel < 0 || tile.zoomLevel > MAX_ZOOM)
+            return 0;
+        return (1L << 63)
+                | ((long) tile.zoomLevel << 56)
+                | ((long) tile.tileX << 28)
+                | tile.tileY;
+    }
+
+    @Override
+    public TileWriter writeTile(Tile tile) {
+        ByteArrayOutputStream os;
+
+        synchronized (mCacheBuffers) {
+            if (mCacheBuffers.size() == 0)
+                os = new ByteArrayOutputStream(32 * 1024);
+            else
+                os = mCacheBuffers.remove(mCacheBuffers.size() - 1);
+        }
+        return new CacheTileWriter(tile, os);
+    }
+
+    void saveTile(Tile tile, ByteArrayOutputStream data, boolean success) {
+        final byte[] bytes = success ? data.toByteArray() : null;
+
+        synchronized (mCacheBuffers) {
+            data.reset();
+            mCacheBuffers.add(data);
+        }
+
+        final long key = getKey(tile);
+        if (bytes == null || key == 0)
+            return;
+
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(key, bytes);
+            }
+        });
+    }
+
+    @Override
+    public TileReader getTile(Tile tile) {
+        long key = getKey(tile);
+        if (key == 0)
+            return null;
+
+        PackSegment segment;
+        ByteBuffer data;
+        int offset;
+
+        mLock.readLock().lock();
+        try {
+            if (mDisposed)
+                return null;
+
+            int slot = mIndex.find(key);
+            if (slot < 0)
+                return null;
+
+            segment = mSegments.get(mIndex.getSegment(slot));
+            if (segment == null)
+                return null;
+
+            offset = mIndex.getOffset(slot);
+            data = segment.getData(offset, key, mIndex.getLength(slot));
+            if (data == null)
+                return null;
+
+            mIndex.setAccess(slot, mActiveId);
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        if (!segment.check(offset, data)) {
+            log.debug("{} invalid cache record", tile);
+            return null;
+        }
+        return new CacheTileReader(tile, new ByteBufferInputStream(data));
+    }
+
+    @Override
+    public void setCacheSize(long size) {
+        mCacheSize = size;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                growIndex(getCapacity(mCacheSize));
+                trim();
+            }
+        });
+    }
+
+    /**
+     * Wait until the pending tiles are written.
+     */
+    void flush() {
+        if (mWriter.isShutdown())
+            return;
+        try {
+            mWriter.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.debug("flush: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write the pending tiles and close the cache.
+     */
+    public void dispose() {
+        mWriter.shutdown();
+        try {
+            mWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        mLock.writeLock().lock();
+        try {
+            if (mDisposed)
+                return;
+            mDisposed = true;
+
+            for (PackSegment segment : mSegments.values())
+                segment.force();
+            mIndex.setClean(true);
+
+            mFileLock.release();
+            mIndexFile.close();
+        } catch (IOException e) {
+            log.debug("dispose: {}", e.getMessage());
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * [on writer thread]
+     */
+    private void write(long key, byte[] data) {
+        if (mIndex.find(key) < 0) {
+            /* make room for a new key */
+            while (mIndex.isFull()) {
+                if (growIndex(mIndex.capacity() << 1) || evictOldest())
+                    continue;
+
+                /* all tiles are in the active segment */
+                if (mSegments.size() != 1)
+                    return;
+                try {
+                    roll();
+                } catch (IOException e) {
+                    log.debug("could not create segment: {}", e.getMessage());
+                    return;
+                }
+            }
+        }
+        append(key, data, crc(data), mActiveId);
+        trim();
+    }
+
+    /**
+     * [on writer thread]
+     *
+     * @return true if the index has grown.
+     */
+    private boolean growIndex(int capacity) {
+        capacity = Math.min(capacity, MAX_CAPACITY);
+        if (capacity <= mIndex.capacity())
+            return false;
+
+        mLock.writeLock().lock();
+        try {
+            if (mDisposed)
+                return false;
+            mIndex.grow(capacity);
+            return true;
+        } catch (IOException e) {
+            log.debug("could not grow index: {}", e.getMessage());
+            return false;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private int crc(byte[] data) {
+        mCrc.reset();
+        mCrc.update(data, 0, data.length);
+        return (int) mCrc.getValue();
+    }
+
+    /**
+     * [on writer thread]
+     */
+    private boolean append(long key, byte[] data, int crc, int access) {
+        if (PackSegment.HEADER_SIZE + PackSegment.RECORD_HEADER_SIZE + data.length > mSegmentSize)
+            return false;
+
+        try {
+            if (mActive == null || !mActive.fits(data.length))
+                roll();
+        } catch (IOException e) {
+            log.debug("could not create segment: {}", e.getMessage());
+            return false;
+        }
+
+        int offset = mActive.append(key, data, 0, data.length, crc);
+        mSize += PackSegment.RECORD_HEADER_SIZE + data.length;
+
+        mLock.writeLock().lock();
+        try {
+            mIndex.put(key, mActive.id, offset, data.length, Math.max(access, mActiveId));
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Start a new segment.
+     * [on writer thread]
+     */
+    private void roll() throws IOException {
+        int id = mSegments.isEmpty() ? 0 : mSegments.lastKey() + 1;
+        PackSegment segment = PackSegment.create(mDir, id, mSegmentSize);
+
+        mLock.writeLock().lock();
+        try {
+            mSegments.put(id, segment);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        if (mActive != null)
+            mActive.force();
+
+        mActive = segment;
+        mActiveId = id;
+        mSize += segment.getFill();
+    }
+
+    /**
+     * [on writer thread]
+     */
+    private void trim() {
+        while (mSize > mCacheSize) {
+            if (!evictOldest())
+                break;
+        }
+    }
+
+    /**
+     * Remove the oldest segment, tiles which were read since it was filled
+     * are moved to the active segment, up to half of its size.
+     * [on writer thread]
+     *
+     * @return false if there is no segment to evict.
+     */
+    private boolean evictOldest() {
+        if (mSegments.size() < 2)
+            return false;
+
+        Map.Entry<Integer, PackSegment> first = mSegments.firstEntry();
+        PackSegment old = first.getValue();
+
+        ArrayList<Long> keys = new ArrayList<>();
+        for (int i = 0, n = mIndex.capacity(); i < n; i++) {
+            long key = mIndex.getKey(i);
+            if (key != 0 && mIndex.getSegment(i) == old.id)
+                keys.add(key);
+        }
+
+        int budget = old.getFill() / 2;
+        for (Long key : keys) {
+            int slot = mIndex.find(key);
+            int offset = mIndex.getOffset(slot);
+            int length = mIndex.getLength(slot);
+            int access = mIndex.getAccess(slot);
+
+            ByteBuffer data = null;
+            if (access > old.id && length <= budget) {
+                data = old.getData(offset, key, length);
+                if (data != null && !old.check(offset, data))
+                    data = null;
+            }
+            if (data != null) {
+                byte[] bytes = new byte[length];
+                data.get(bytes);
+                if (append(key, bytes, crc(bytes), access)) {
+                    budget -= length;
+                    continue;
+                }
+            }
+            mLock.writeLock().lock();
+            try {
+                mIndex.remove(key);
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        mLock.writeLock().lock();
+        try {
+            mSegments.remove(old.id);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        mSize -= old.getFill();
+
+        /* may fail while mapped on some platforms, then it is evicted
+         * again when the cache is opened */
+        if (!old.file.delete())
+            log.debug("could not delete {}", old.file);
+        return true;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped hash table of the tile records: open addressing with linear
+ * probing. The table is rehashed into a larger one by {@link #grow(int)}.
+ * <p/>
+ * A slot holds the key (0 when empty), the segment id, the record offset,
+ * the data length and the id of the active segment at the last access.
+ * <p/>
+ * Modifications must be done while holding the write lock of the cache,
+ * lookups while holding the read lock.
+ */
+final class PackIndex {
+
+    static final int MAGIC = 0x56544d49;
+    static final int VERSION = 1;
+
+    /* magic, version, capacity, count, clean */
+    static final int HEADER_SIZE = 32;
+    static final int CLEAN = 16;
+
+    static final int SLOT_SIZE = 24;
+    private static final int SEGMENT = 8;
+    private static final int OFFSET = 12;
+    private static final int LENGTH = 16;
+    private static final int ACCESS = 20;
+
+    private final FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mCapacity;
+    private int mMask;
+    private int mCount;
+
+    /**
+     * @param channel  the index file.
+     * @param capacity number of slots for a new index, a power of two.
+     */
+    PackIndex(FileChannel channel, int capacity) throws IOException {
+        long size = channel.size();
+        if (size >= HEADER_SIZE) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int c = header.getInt(8);
+            if (header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && c > 0 && (c & (c - 1)) == 0
+                    && size == HEADER_SIZE + (long) c * SLOT_SIZE)
+                capacity = c;
+        }
+        mChannel = channel;
+        map(capacity);
+    }
+
+    private void map(int capacity) throws IOException {
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        mCapacity = capacity;
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Rehash all records into a table with more slots, the file grows
+     * accordingly.
+     *
+     * @param capacity the new number of slots, a power of two.
+     */
+    void grow(int capacity) throws IOException {
+        if (capacity <= mCapacity)
+            return;
+
+        ByteBuffer slots = ByteBuffer.allocate(mCapacity * SLOT_SIZE);
+        ByteBuffer table = mBuffer.duplicate();
+        table.position(HEADER_SIZE);
+        table.limit(HEADER_SIZE + mCapacity * SLOT_SIZE);
+        slots.put(table);
+
+        map(capacity);
+        clear();
+        for (int p = 0, n = slots.capacity(); p < n; p += SLOT_SIZE) {
+            long key = slots.getLong(p);
+            if (key != 0)
+                put(key, slots.getInt(p + SEGMENT), slots.getInt(p + OFFSET),
+                        slots.getInt(p + LENGTH), slots.getInt(p + ACCESS));
+        }
+    }
+
+    /**
+     * @return true if the index was closed with {@link #setClean(boolean)}.
+     */
+    boolean isClean() {
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION
+                || mBuffer.getInt(8) != mCapacity || mBuffer.getInt(CLEAN) != 1)
+            return false;
+        mCount = mBuffer.getInt(12);
+        return mCount >= 0 && mCount <= mCapacity;
+    }
+
+    void setClean(boolean clean) {
+        mBuffer.putInt(12, mCount);
+        mBuffer.putInt(CLEAN, clean ? 1 : 0);
+        mBuffer.force();
+    }
+
+    void clear() {
+        for (int i = 0, n = HEADER_SIZE + mCapacity * SLOT_SIZE; i < n; i += 8)
+            mBuffer.putLong(i, 0);
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mBuffer.putInt(8, mCapacity);
+        mCount = 0;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return true if the load factor is too high for new keys.
+     */
+    boolean isFull() {
+        return mCount >= mCapacity - (mCapacity >> 2);
+    }
+
+    private int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mMask;
+    }
+
+    private int pos(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * @return the slot of the key or -1.
+     */
+    int find(long key) {
+        for (int i = hash(key); ; i = (i + 1) & mMask) {
+            long k = mBuffer.getLong(pos(i));
+            if (k == key)
+                return i;
+            if (k == 0)
+                return -1;
+        }
+    }
+
+    long getKey(int slot) {
+        return mBuffer.getLong(pos(slot));
+    }
+
+    int getSegment(int slot) {
+        return mBuffer.getInt(pos(slot) + SEGMENT);
+    }
+
+    int getOffset(int slot) {
+        return mBuffer.getInt(pos(slot) + OFFSET);
+    }
+
+    int getLength(int slot) {
+        return mBuffer.getInt(pos(slot) + LENGTH);
+    }
+
+    int getAccess(int slot) {
+        return mBuffer.getInt(pos(slot) + ACCESS);
+    }
+
+    /**
+     * Set the access stamp, may be called while holding the read lock.
+     */
+    void setAccess(int slot, int access) {
+        mBuffer.putInt(pos(slot) + ACCESS, access);
+    }
+
+    /**
+     * Add or replace the record of the key, the caller must check
+     * {@link #isFull()} for new keys.
+     */
+    void put(long key, int segment, int offset, int length, int access) {
+        int i = hash(key);
+        for (; ; i = (i + 1) & mMask) {
+            long k = mBuffer.getLong(pos(i));
+            if (k == key)
+                break;
+            if (k == 0) {
+                mCount++;
+                break;
+            }
+        }
+        int p = pos(i);
+        mBuffer.putInt(p + SEGMENT, segment);
+        mBuffer.putInt(p + OFFSET, offset);
+        mBuffer.putInt(p + LENGTH, length);
+        mBuffer.putInt(p + ACCESS, access);
+        mBuffer.putLong(p, key);
+    }
+
+    void remove(long key) {
+        int i = find(key);
+        if (i < 0)
+            return;
+
+        /* move following keys of the probe sequence into the gap */
+        for (int j = i; ; ) {
+            j = (j + 1) & mMask;
+            long k = mBuffer.getLong(pos(j));
+            if (k == 0)
+                break;
+            int home = hash(k);
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue;
+            copy(j, i);
+            i = j;
+        }
+        int p = pos(i);
+        for (int n = 0; n < SLOT_SIZE; n += 8)
+            mBuffer.putLong(p + n, 0);
+        mCount--;
+    }
+
+    private void copy(int from, int to) {
+        int f = pos(from);
+        int t = pos(to);
+        for (int n = 0; n < SLOT_SIZE; n += 8)
+            mBuffer.putLong(t + n, mBuffer.getLong(f + n));
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of tile records, mapped into memory as a whole.
+ * <p/>
+ * The segment header holds the end of the last complete record, which is
+ * updated after the record was written. A record is the record header
+ * (magic, key, length and CRC32 of the data) followed by the data.
+ * <p/>
+ * Only the writer appends, readers use absolute reads and duplicates of the
+ * buffer, which are thread-safe.
+ */
+final class PackSegment {
+
+    static final String SUFFIX = ".pack";
+
+    static final int MAGIC = 0x56544d50;
+    static final int VERSION = 1;
+    static final int RECORD_MAGIC = 0x56544d52;
+
+    /* magic, version, id, fill */
+    static final int HEADER_SIZE = 16;
+    private static final int FILL = 12;
+
+    /* magic, key, length, crc */
+    static final int RECORD_HEADER_SIZE = 20;
+
+    final int id;
+    final File file;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mSize;
+    private int mFill;
+
+    private PackSegment(int id, File file, MappedByteBuffer buffer, int size) {
+        this.id = id;
+        this.file = file;
+        mBuffer = buffer;
+        mSize = size;
+    }
+
+    static File getFile(File dir, int id) {
+        return new File(dir, String.format(Locale.ROOT, "%08x", id) + SUFFIX);
+    }
+
+    /**
+     * @return the id of a segment file name, -1 if it is no segment.
+     */
+    static int getId(String name) {
+        if (name.length() != 8 + SUFFIX.length() || !name.endsWith(SUFFIX))
+            return -1;
+        try {
+            return (int) Long.parseLong(name.substring(0, 8), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static PackSegment create(File dir, int id, int size) throws IOException {
+        File file = getFile(dir, id);
+        MappedByteBuffer buffer = map(file, size);
+        PackSegment segment = new PackSegment(id, file, buffer, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, id);
+        segment.setFill(HEADER_SIZE);
+        return segment;
+    }
+
+    /**
+     * @return the segment or null if the file is no valid segment.
+     */
+    static PackSegment open(File file, int id) throws IOException {
+        long length = file.length();
+        if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+            return null;
+
+        int size = (int) length;
+        MappedByteBuffer buffer = map(file, size);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != id)
+            return null;
+
+        int fill = buffer.getInt(FILL);
+        if (fill < HEADER_SIZE || fill > size)
+            return null;
+
+        PackSegment segment = new PackSegment(id, file, buffer, size);
+        segment.mFill = fill;
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            /* the mapping stays valid when the file is closed */
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void setFill(int fill) {
+        mFill = fill;
+        mBuffer.putInt(FILL, fill);
+    }
+
+    /**
+     * @return the end of the last record.
+     */
+    int getFill() {
+        return mFill;
+    }
+
+    boolean fits(int length) {
+        return (long) mFill + RECORD_HEADER_SIZE + length <= mSize;
+    }
+
+    /**
+     * Append a record, only called by the writer.
+     *
+     * @return the offset of the record.
+     */
+    int append(long key, byte[] data, int offset, int length, int crc) {
+        int pos = mFill;
+        ByteBuffer b = mBuffer.duplicate();
+        b.position(pos);
+        b.putInt(RECORD_MAGIC);
+        b.putLong(key);
+        b.putInt(length);
+        b.putInt(crc);
+        b.put(data, offset, length);
+
+        /* the record is complete */
+        setFill(pos + RECORD_HEADER_SIZE + length);
+        return pos;
+    }
+
+    /**
+     * @return the offset of the record after the given one, or -1 if there
+     * is no complete record.
+     */
+    int next(int offset) {
+        if (offset + RECORD_HEADER_SIZE > mFill || mBuffer.getInt(offset) != RECORD_MAGIC)
+            return -1;
+        int length = mBuffer.getInt(offset + 12);
+        if (length < 0 || offset + RECORD_HEADER_SIZE + length > mFill)
+            return -1;
+        return offset + RECORD_HEADER_SIZE + length;
+    }
+
+    long getKey(int offset) {
+        return mBuffer.getLong(offset + 4);
+    }
+
+    int getLength(int offset) {
+        return mBuffer.getInt(offset + 12);
+    }
+
+    /**
+     * @return the data of the record, or null if the record at the offset
+     * is not the expected one.
+     */
+    ByteBuffer getData(int offset, long key, int length) {
+        if (offset < HEADER_SIZE || offset + RECORD_HEADER_SIZE + length > mFill)
+            return null;
+        if (mBuffer.getInt(offset) != RECORD_MAGIC
+                || mBuffer.getLong(offset + 4) != key
+                || mBuffer.getInt(offset + 12) != length)
+            return null;
+
+        ByteBuffer b = mBuffer.duplicate();
+        b.position(offset + RECORD_HEADER_SIZE);
+        b.limit(offset + RECORD_HEADER_SIZE + length);
+        return b.slice();
+    }
+
+    /**
+     * @return true if the CRC32 of the data matches the record.
+     */
+    boolean check(int offset, ByteBuffer data) {
+        return crc(data) == mBuffer.getInt(offset + 16);
+    }
+
+    static int crc(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[Math.min(data.remaining(), 8192)];
+        ByteBuffer b = data.duplicate();
+        while (b.hasRemaining()) {
+            int n = Math.min(b.remaining(), buf.length);
+            b.get(buf, 0, n);
+            crc.update(buf, 0, n);
+        }
+        return (int) crc.getValue();
+    }
+
+    void force() {
+        mBuffer.force();
+    }
+}
@@ -23,6 +23,7 @@ import org.oscim.tiling.ITileCache.TileReader;
 import org.oscim.tiling.ITileCache.TileWriter;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.ITilePrefetcher;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.IOUtils;
 import org.slf4j.Logger;
@@ -38,7 +39,7 @@ import static org.oscim.tiling.QueryResult.DELAYED;
 import static org.oscim.tiling.QueryResult.FAILED;
 import static org.oscim.tiling.QueryResult.SUCCESS;
 
-public class UrlTileDataSource implements ITileDataSource {
+public class UrlTileDataSource implements ITileDataSource, ITilePrefetcher.Source {
     static final Logger log = LoggerFactory.getLogger(UrlTileDataSource.class);
 
     protected final HttpEngine mConn;
@@ -110,6 +111,16 @@ public class UrlTileDataSource implements ITileDataSource {
         }
     }
 
+    /**
+     * @return the http engine when it prefetches tiles.
+     */
+    @Override
+    public ITilePrefetcher getPrefetcher() {
+        if (mConn instanceof ITilePrefetcher)
+            return (ITilePrefetcher) mConn;
+        return null;
+    }
+
     @Override
     public void dispose() {
         mConn.close();
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A cache of decoded map file blocks, shared by all {@link MapDatabase}
+ * instances of a {@link MapFileTileSource}.
+ * <p/>
+ * At low zoom levels one block covers many tiles. The cache holds the POIs
+ * and ways of a block at a query zoom level in map file coordinates, i.e.
+ * before projection and clipping to a tile, together with the tile bitmask
+ * of each way. Blocks are evicted in LRU order when the byte budget is
+ * exceeded.
+ */
+public class BlockCache {
+
+    private final LinkedHashMap<Key, Block> mBlocks = new LinkedHashMap<>(16, 0.75f, true);
+    private final Key mKey = new Key();
+    private final long mMaxBytes;
+
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param maxBytes the approximate maximum size of the cached blocks in bytes.
+     */
+    public BlockCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @param subFile        the start address of the sub-file.
+     * @param blockNumber    the number of the block in the sub-file.
+     * @param queryZoomLevel the zoom level of the query.
+     * @return the decoded block or null if not cached.
+     */
+    synchronized Block get(long subFile, long blockNumber, int queryZoomLevel) {
+        Block block = mBlocks.get(mKey.set(subFile, blockNumber, queryZoomLevel));
+        if (block != null)
+            mHits++;
+        else
+            mMisses++;
+        return block;
+    }
+
+    synchronized void put(long subFile, long blockNumber, int queryZoomLevel, Block block) {
+        if (block.bytes > mMaxBytes)
+            return;
+
+        Key key = new Key().set(subFile, blockNumber, queryZoomLevel);
+        Block old = mBlocks.put(key, block);
+        if (old != null)
+            mBytes -= old.bytes;
+        mBytes += block.bytes;
+
+        Iterator<Block> it = mBlocks.values().iterator();
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            mBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        mBlocks.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * @return the approximate size of the cached blocks in bytes.
+     */
+    public synchronized long getSize() {
+        return mBytes;
+    }
+
+    public long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized int getBlockCount() {
+        return mBlocks.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized void resetStats() {
+        mHits = 0;
+        mMisses = 0;
+    }
+
+    private static final class Key {
+        long subFile;
+        long block;
+        int zoom;
+
+        Key set(long subFile, long block, int zoom) {
+            this.subFile = subFile;
+            this.block = block;
+            this.zoom = zoom;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return subFile == other.subFile && block == other.block && zoom == other.zoom;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + (int) (subFile ^ (subFile >>> 32));
+            result = 31 * result + (int) (block ^ (block >>> 32));
+            return 31 * result + zoom;
+        }
+    }
+
+    /**
+     * The decoded POIs and ways of a block, immutable.
+     */
+    static final class Block {
+        final Element[] pois;
+        final Element[] ways;
+        final long bytes;
+
+        Block(List<Element> pois, List<Element> ways) {
+            this.pois = pois.toArray(new Element[pois.size()]);
+            this.ways = ways.toArray(new Element[ways.size()]);
+
+            long bytes = 64;
+            for (Element e : this.pois)
+                bytes += e.bytes();
+            for (Element e : this.ways)
+                bytes += e.bytes();
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A decoded POI or way in map file coordinates, immutable.
+     */
+    static final class Element {
+        final Tag[] tags;
+        final byte layer;
+
+        /* POI position */
+        final int latitude;
+        final int longitude;
+
+        /* way geometry */
+        final float[] points;
+        final int[] index;
+        final GeometryType type;
+        final boolean hasLabel;
+        final float labelX, labelY;
+        final int tileBitmask;
+
+        private Element(TagSet tags, byte layer, int latitude, int longitude) {
+            this.tags = tags.asArray();
+            this.layer = layer;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.points = null;
+            this.index = null;
+            this.type = GeometryType.POINT;
+            this.hasLabel = false;
+            this.labelX = this.labelY = 0;
+            this.tileBitmask = 0;
+        }
+
+        private Element(MapElement e, byte layer, int tileBitmask) {
+            this.tags = e.tags.asArray();
+            this.layer = layer;
+            this.latitude = 0;
+            this.longitude = 0;
+            this.points = Arrays.copyOf(e.points, e.pointNextPos);
+
+            int indexSize = 0;
+            while (indexSize < e.index.length && e.index[indexSize] != -1)
+                indexSize++;
+            this.index = Arrays.copyOf(e.index, indexSize);
+
+            this.type = e.type;
+            this.hasLabel = e.labelPosition != null;
+            this.labelX = hasLabel ? e.labelPosition.x : 0;
+            this.labelY = hasLabel ? e.labelPosition.y : 0;
+            this.tileBitmask = tileBitmask;
+        }
+
+        static Element poi(TagSet tags, byte layer, int latitude, int longitude) {
+            return new Element(tags, layer, latitude, longitude);
+        }
+
+        static Element way(MapElement e, byte layer, int tileBitmask) {
+            return new Element(e, layer, tileBitmask);
+        }
+
+        /**
+         * Set the way geometry, tags and label position to the element.
+         */
+        void get(MapElement e) {
+            e.clear();
+            e.tags.set(tags);
+
+            float[] p = e.ensurePointSize(points.length >> 1, false);
+            System.arraycopy(points, 0, p, 0, points.length);
+            e.pointNextPos = points.length;
+
+            int[] idx = e.ensureIndexSize(index.length, false);
+            System.arraycopy(index, 0, idx, 0, index.length);
+            if (idx.length > index.length)
+                idx[index.length] = -1;
+
+            e.type = type;
+            if (hasLabel)
+                e.setLabelPosition(labelX, labelY);
+            else
+                e.labelPosition = null;
+        }
+
+        long bytes() {
+            long bytes = 64 + tags.length * 8;
+            if (points != null)
+                bytes += points.length * 4 + index.length * 4;
+            return bytes;
+        }
+    }
+}
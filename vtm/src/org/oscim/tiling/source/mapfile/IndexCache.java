@@ -45,6 +45,7 @@ class IndexCache {
 
     private final Map<IndexCacheEntryKey, byte[]> map;
     private final RandomAccessFile randomAccessFile;
+    private final MappedFile mappedFile;
 
     /**
      * @param randomAccessFile the map file from which the index should be read and cached.
@@ -53,9 +54,22 @@ class IndexCache {
      */
     IndexCache(RandomAccessFile randomAccessFile, int capacity) {
         this.randomAccessFile = randomAccessFile;
+        this.mappedFile = null;
         this.map = Collections.synchronizedMap(new LRUCache<IndexCacheEntryKey, byte[]>(capacity));
     }
 
+    /**
+     * Reads index entries directly from the memory mapped map file, without
+     * caching and locking.
+     *
+     * @param mappedFile the memory mapped map file.
+     */
+    IndexCache(MappedFile mappedFile) {
+        this.randomAccessFile = null;
+        this.mappedFile = mappedFile;
+        this.map = Collections.emptyMap();
+    }
+
     /**
      * Destroy the cache at the end of its lifetime.
      */
@@ -73,7 +87,22 @@ class IndexCache {
      * @param blockNumber      the number of the block in the map file.
      * @return the index entry or -1 if the block number is invalid.
      */
-    synchronized long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+    long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+        if (this.mappedFile != null) {
+            // check if the block number is out of bounds
+            if (blockNumber < 0 || blockNumber >= subFileParameter.numberOfBlocks) {
+                return -1;
+            }
+            long indexEntryPosition = subFileParameter.indexStartAddress + blockNumber
+                    * SubFileParameter.BYTES_PER_INDEX_ENTRY;
+            return this.mappedFile.getFiveBytesLong(indexEntryPosition);
+        }
+        synchronized (this) {
+            return readIndexEntry(subFileParameter, blockNumber);
+        }
+    }
+
+    private long readIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
         try {
             // check if the block number is out of bounds
             if (blockNumber >= subFileParameter.numberOfBlocks) {
@@ -214,24 +214,54 @@ public class MapDatabase implements ITileDataSource {
     private int zoomLevelMin = 0;
     private int zoomLevelMax = Byte.MAX_VALUE;
 
+    /**
+     * Tables of recurring name, house number and ref tags.
+     */
+    private final TagTable mNameTable;
+    private final TagTable mHouseNumberTable;
+    private final TagTable mRefTable;
+    private int mLocalizationSerial;
+
+    /**
+     * Collect decoded elements for the block cache, when not null.
+     */
+    private List<BlockCache.Element> mDecodedPois;
+    private List<BlockCache.Element> mDecodedWays;
+
     public MapDatabase(MapFileTileSource tileSource) throws IOException {
         mTileSource = tileSource;
-        try {
-            /* open the file in read only mode */
-            mInputFile = new RandomAccessFile(tileSource.mapFile, "r");
-            mFileSize = mInputFile.length();
-            mReadBuffer = new ReadBuffer(mInputFile);
+        if (tileSource.mappedFile != null) {
+            /* read from the memory mapping shared by the tile source */
+            mFileSize = tileSource.mappedFile.size();
+            mReadBuffer = new MappedReadBuffer(tileSource.mappedFile);
+        } else {
+            try {
+                /* open the file in read only mode */
+                mInputFile = new RandomAccessFile(tileSource.mapFile, "r");
+                mFileSize = mInputFile.length();
+                mReadBuffer = new ReadBuffer(mInputFile);
 
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            /* make sure that the file is closed */
-            dispose();
-            throw new IOException();
+            } catch (IOException e) {
+                log.error(e.getMessage());
+                /* make sure that the file is closed */
+                dispose();
+                throw new IOException();
+            }
         }
 
         mTileProjection = new TileProjection();
         mTileClipper = new TileClipper(0, 0, 0, 0);
         mTileSeparator = new TileSeparator(0, 0, 0, 0);
+
+        mNameTable = new TagTable(Tag.KEY_NAME, TagTable.DEFAULT_SIZE) {
+            @Override
+            String decodeValue(String value) {
+                return mTileSource.extractLocalized(value);
+            }
+        };
+        mHouseNumberTable = new TagTable(Tag.KEY_HOUSE_NUMBER, TagTable.DEFAULT_SIZE);
+        mRefTable = new TagTable(Tag.KEY_REF, TagTable.DEFAULT_SIZE);
+        mLocalizationSerial = tileSource.localizationSerial;
     }
 
     public MapFileTileSource getTileSource() {
@@ -406,6 +436,60 @@ public class MapDatabase implements ITileDataSource {
         }
     }
 
+    /**
+     * Decodes the POIs and ways of the current block at the query zoom level
+     * for the block cache, without projecting them to the tile.
+     */
+    private BlockCache.Block decodeBlock(QueryParameters queryParameters,
+                                         SubFileParameter subFileParameter) {
+        QueryParameters blockParameters = new QueryParameters();
+        blockParameters.queryZoomLevel = queryParameters.queryZoomLevel;
+        blockParameters.useTileBitmask = false;
+
+        mDecodedPois = new ArrayList<>();
+        mDecodedWays = new ArrayList<>();
+        try {
+            processBlock(blockParameters, subFileParameter, null, null, null, null);
+            return new BlockCache.Block(mDecodedPois, mDecodedWays);
+        } finally {
+            mDecodedPois = null;
+            mDecodedWays = null;
+        }
+    }
+
+    /**
+     * Processes a decoded block from the block cache.
+     */
+    private void processBlock(QueryParameters queryParameters, BlockCache.Block block,
+                              ITileDataSink mapDataSink) {
+        MapElement e = mElem;
+
+        for (BlockCache.Element poi : block.pois) {
+            e.tags.set(poi.tags);
+            e.labelPosition = null;
+            mTileProjection.projectPoint(poi.latitude, poi.longitude, e);
+
+            if (!mTileSeparator.separate(e))
+                continue;
+
+            e.setLayer(poi.layer);
+            mapDataSink.process(e);
+        }
+
+        for (BlockCache.Element way : block.ways) {
+            if (queryParameters.useTileBitmask
+                    && (way.tileBitmask & queryParameters.queryTileBitmask) == 0)
+                continue;
+
+            way.get(e);
+            if (!processWayGeometry(queryParameters, e))
+                continue;
+
+            e.setLayer(way.layer);
+            mapDataSink.process(e);
+        }
+    }
+
     private void setTileClipping(QueryParameters queryParameters, SubFileParameter subFileParameter,
                                  long currentRow, long currentCol) {
         long numRows = queryParameters.toBlockY - queryParameters.fromBlockY;
@@ -483,6 +567,17 @@ public class MapDatabase implements ITileDataSource {
                                SubFileParameter subFileParameter, BoundingBox boundingBox,
                                Selector selector, MapReadResult mapReadResult) throws IOException {
 
+        /* names depend on the preferred language */
+        if (mLocalizationSerial != mTileSource.localizationSerial) {
+            mLocalizationSerial = mTileSource.localizationSerial;
+            mNameTable.clear();
+        }
+
+        /* blocks are cached for tile queries only */
+        BlockCache blockCache = mTileSource.blockCache;
+        boolean useBlockCache = blockCache != null && mapDataSink != null
+                && mapReadResult == null && !mTileSource.experimental;
+
         /* read and process all blocks from top to bottom and from left to right */
         for (long row = queryParams.fromBlockY; row <= queryParams.toBlockY; row++) {
             for (long column = queryParams.fromBlockX; column <= queryParams.toBlockX; column++) {
@@ -494,6 +589,17 @@ public class MapDatabase implements ITileDataSource {
                  * file */
                 long blockNumber = row * subFileParameter.blocksWidth + column;
 
+                /* use the decoded block if cached */
+                BlockCache.Block block = null;
+                if (useBlockCache) {
+                    block = blockCache.get(subFileParameter.startAddress, blockNumber,
+                            queryParams.queryZoomLevel);
+                    if (block != null) {
+                        processBlock(queryParams, block, mapDataSink);
+                        continue;
+                    }
+                }
+
                 /* get the current index entry */
                 long blockIndexEntry = mTileSource.databaseIndexCache.getIndexEntry(subFileParameter,
                         blockNumber);
@@ -559,11 +665,9 @@ public class MapDatabase implements ITileDataSource {
                     return;
                 }
 
-                /* seek to the current block in the map file */
-                mInputFile.seek(subFileParameter.startAddress + blockPointer);
-
                 /* read the current block into the buffer */
-                if (!mReadBuffer.readFromFile(blockSize)) {
+                if (!mReadBuffer.readFromFile(subFileParameter.startAddress + blockPointer,
+                        blockSize)) {
                     /* skip the current block */
                     log.warn("reading current block has failed: " + blockSize);
                     return;
@@ -580,7 +684,14 @@ public class MapDatabase implements ITileDataSource {
                 mTileLatitude = (int) (tileLatitudeDeg * 1E6);
                 mTileLongitude = (int) (tileLongitudeDeg * 1E6);
 
-                processBlock(queryParams, subFileParameter, mapDataSink, boundingBox, selector, mapReadResult);
+                if (useBlockCache) {
+                    block = decodeBlock(queryParams, subFileParameter);
+                    blockCache.put(subFileParameter.startAddress, blockNumber,
+                            queryParams.queryZoomLevel, block);
+                    processBlock(queryParams, block, mapDataSink);
+                } else {
+                    processBlock(queryParams, subFileParameter, mapDataSink, boundingBox, selector, mapReadResult);
+                }
             }
         }
     }
@@ -619,6 +730,7 @@ public class MapDatabase implements ITileDataSource {
         for (int elementCounter = numberOfPois; elementCounter != 0; --elementCounter) {
             /* reset to common tag position */
             e.tags.clear();
+            e.labelPosition = null;
 
             if (mDebugFile) {
                 /* get and check the POI signature */
@@ -655,14 +767,12 @@ public class MapDatabase implements ITileDataSource {
             /* bit 1-3 enable optional features
              * check if the POI has a name */
             if ((featureByte & POI_FEATURE_NAME) != 0) {
-                String str = mTileSource.extractLocalized(mReadBuffer.readUTF8EncodedString());
-                e.tags.add(new Tag(Tag.KEY_NAME, str, false));
+                addTag(e, mReadBuffer.readTag(mNameTable));
             }
 
             /* check if the POI has a house number */
             if ((featureByte & POI_FEATURE_HOUSE_NUMBER) != 0) {
-                String str = mReadBuffer.readUTF8EncodedString();
-                e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
+                addTag(e, mReadBuffer.readTag(mHouseNumberTable));
             }
 
             /* check if the POI has an elevation */
@@ -670,6 +780,11 @@ public class MapDatabase implements ITileDataSource {
                 String str = Integer.toString(mReadBuffer.readSignedInt());
                 e.tags.add(new Tag(Tag.KEY_ELE, str, false));
             }
+
+            if (mDecodedPois != null) {
+                mDecodedPois.add(BlockCache.Element.poi(e.tags, layer, latitude, longitude));
+                continue;
+            }
             mTileProjection.projectPoint(latitude, longitude, e);
 
             if (!mTileSeparator.separate(e))
@@ -796,6 +911,33 @@ public class MapDatabase implements ITileDataSource {
 
     private int stringOffset = -1;
 
+    /**
+     * Projects the way to the tile and clips it.
+     *
+     * @return false if the way is not within the tile.
+     */
+    private boolean processWayGeometry(QueryParameters queryParameters, MapElement e) {
+        mTileProjection.project(e);
+
+        // Avoid clipping for buildings, which slows rendering.
+        // But clip everything if buildings are displayed.
+        if (!e.tags.containsKey(Tag.KEY_BUILDING)
+                && !e.tags.containsKey(Tag.KEY_BUILDING_PART)) {
+            if (!mTileClipper.clip(e))
+                return false;
+        } else if (queryParameters.queryZoomLevel >= BuildingLayer.MIN_ZOOM) {
+            if (!mTileSeparator.separate(e))
+                return false;
+        }
+        e.simplify(1, true);
+        return true;
+    }
+
+    private static void addTag(MapElement e, Tag tag) {
+        if (tag != null)
+            e.tags.add(tag);
+    }
+
     /**
      * Processes the given number of ways.
      *
@@ -812,6 +954,10 @@ public class MapDatabase implements ITileDataSource {
         Tag[] wayTags = mTileSource.fileInfo.wayTags;
         MapElement e = mElem;
 
+        BoundingBox wayFilterBbox = null;
+        if (ways != null && filterRequired && wayFilterEnabled)
+            wayFilterBbox = boundingBox.extendMeters(wayFilterDistance);
+
         int wayDataBlocks;
 
         // skip string block
@@ -840,6 +986,7 @@ public class MapDatabase implements ITileDataSource {
                 }
             }
 
+            int tileBitmask = 0;
             if (queryParameters.useTileBitmask) {
                 elementCounter = mReadBuffer.skipWays(queryParameters.queryTileBitmask,
                         elementCounter);
@@ -872,8 +1019,8 @@ public class MapDatabase implements ITileDataSource {
                     return false;
                 }
 
-                /* ignore the way tile bitmask (2 bytes) */
-                mReadBuffer.skipBytes(2);
+                /* get the way tile bitmask (2 bytes) */
+                tileBitmask = mReadBuffer.readShort() & 0xffff;
             }
 
             /* get the special byte which encodes multiple flags */
@@ -903,31 +1050,25 @@ public class MapDatabase implements ITileDataSource {
             if (mTileSource.experimental) {
                 if (hasName) {
                     int textPos = mReadBuffer.readUnsignedInt();
-                    String str = mTileSource.extractLocalized(mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos));
-                    e.tags.add(new Tag(Tag.KEY_NAME, str, false));
+                    addTag(e, mReadBuffer.readTagAt(mNameTable, stringOffset + textPos));
                 }
                 if (hasHouseNr) {
                     int textPos = mReadBuffer.readUnsignedInt();
-                    String str = mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
-                    e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
+                    addTag(e, mReadBuffer.readTagAt(mHouseNumberTable, stringOffset + textPos));
                 }
                 if (hasRef) {
                     int textPos = mReadBuffer.readUnsignedInt();
-                    String str = mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
-                    e.tags.add(new Tag(Tag.KEY_REF, str, false));
+                    addTag(e, mReadBuffer.readTagAt(mRefTable, stringOffset + textPos));
                 }
             } else {
                 if (hasName) {
-                    String str = mTileSource.extractLocalized(mReadBuffer.readUTF8EncodedString());
-                    e.tags.add(new Tag(Tag.KEY_NAME, str, false));
+                    addTag(e, mReadBuffer.readTag(mNameTable));
                 }
                 if (hasHouseNr) {
-                    String str = mReadBuffer.readUTF8EncodedString();
-                    e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
+                    addTag(e, mReadBuffer.readTag(mHouseNumberTable));
                 }
                 if (hasRef) {
-                    String str = mReadBuffer.readUTF8EncodedString();
-                    e.tags.add(new Tag(Tag.KEY_REF, str, false));
+                    addTag(e, mReadBuffer.readTag(mRefTable));
                 }
             }
 
@@ -953,6 +1094,7 @@ public class MapDatabase implements ITileDataSource {
 
             for (int wayDataBlock = 0; wayDataBlock < wayDataBlocks; wayDataBlock++) {
                 e.clear();
+                e.labelPosition = null;
 
                 List<GeoPoint[]> wayNodes = null;
                 if (ways != null)
@@ -968,24 +1110,18 @@ public class MapDatabase implements ITileDataSource {
 
                 if (labelPosition != null && wayDataBlock == 0)
                     e.setLabelPosition(e.points[0] + labelPosition[0], e.points[1] + labelPosition[1]);
-                mTileProjection.project(e);
 
-                // Avoid clipping for buildings, which slows rendering.
-                // But clip everything if buildings are displayed.
-                if (!e.tags.containsKey(Tag.KEY_BUILDING)
-                        && !e.tags.containsKey(Tag.KEY_BUILDING_PART)) {
-                    if (!mTileClipper.clip(e))
-                        continue;
-                } else if (queryParameters.queryZoomLevel >= BuildingLayer.MIN_ZOOM) {
-                    if (!mTileSeparator.separate(e))
-                        continue;
+                if (mDecodedWays != null) {
+                    mDecodedWays.add(BlockCache.Element.way(e, layer, tileBitmask));
+                    continue;
                 }
-                e.simplify(1, true);
+
+                if (!processWayGeometry(queryParameters, e))
+                    continue;
 
                 e.setLayer(layer);
 
                 if (ways != null) {
-                    BoundingBox wayFilterBbox = boundingBox.extendMeters(wayFilterDistance);
                     GeoPoint[][] wayNodesArray = wayNodes.toArray(new GeoPoint[wayNodes.size()][]);
                     if (!filterRequired || !wayFilterEnabled || wayFilterBbox.intersectsArea(wayNodesArray)) {
                         List<Tag> tags = new ArrayList<>();
@@ -1162,8 +1298,8 @@ public class MapDatabase implements ITileDataSource {
      * @return true if tile is part of database.
      */
     public boolean supportsTile(Tile tile) {
-        return tile.getBoundingBox().intersects(mTileSource.getMapInfo().boundingBox)
-                && (tile.zoomLevel >= this.zoomLevelMin && tile.zoomLevel <= this.zoomLevelMax);
+        return tile.zoomLevel >= this.zoomLevelMin && tile.zoomLevel <= this.zoomLevelMax
+                && tile.getBoundingBox().intersects(mTileSource.getMapInfo().boundingBox);
     }
 
     /**
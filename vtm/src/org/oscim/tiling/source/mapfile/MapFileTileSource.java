@@ -47,7 +47,16 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
     IndexCache databaseIndexCache;
     boolean experimental;
     File mapFile;
+    MappedFile mappedFile;
     private RandomAccessFile mInputFile;
+    private boolean memoryMapped;
+    BlockCache blockCache;
+    private long blockCacheSize;
+
+    /**
+     * Incremented when the localization of names changes.
+     */
+    volatile int localizationSerial;
 
     /**
      * The preferred language when extracting labels from this tile source.
@@ -80,6 +89,9 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
     @Override
     public void setCallback(Callback callback) {
         this.callback = callback;
+        localizationSerial++;
+        clearBlockCache();
+        clearOverzoomCache();
     }
 
     public boolean setMapFile(String filename) {
@@ -98,9 +110,47 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
         return true;
     }
 
+    /**
+     * Read the map file via a memory mapping shared by all loader threads,
+     * instead of a file handle per loader. Takes effect on next {@link #open()}.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Cache decoded blocks, which are shared by neighboring tiles at low
+     * zoom levels. Takes effect on next {@link #open()}.
+     *
+     * @param bytes the approximate maximum size of the cache, 0 to disable (default).
+     */
+    public void setBlockCacheSize(long bytes) {
+        this.blockCacheSize = bytes;
+    }
+
+    /**
+     * @return the block cache or null if disabled.
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    private void clearBlockCache() {
+        BlockCache cache = blockCache;
+        if (cache != null)
+            cache.clear();
+    }
+
     @Override
     public void setPreferredLanguage(String preferredLanguage) {
         this.preferredLanguage = preferredLanguage;
+        localizationSerial++;
+        clearBlockCache();
+        clearOverzoomCache();
     }
 
     @Override
@@ -137,7 +187,15 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
             }
             fileInfo = fileHeader.getMapFileInfo();
             mapFile = file;
-            databaseIndexCache = new IndexCache(mInputFile, INDEX_CACHE_SIZE);
+            if (memoryMapped) {
+                mappedFile = new MappedFile(mInputFile);
+                databaseIndexCache = new IndexCache(mappedFile);
+            } else {
+                databaseIndexCache = new IndexCache(mInputFile, INDEX_CACHE_SIZE);
+            }
+
+            if (blockCacheSize > 0)
+                blockCache = new BlockCache(blockCacheSize);
 
             // Experimental?
             //experimental = fileInfo.fileVersion == 4;
@@ -155,7 +213,7 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
     @Override
     public ITileDataSource getDataSource() {
         try {
-            return new OverzoomTileDataSource(new MapDatabase(this), mOverZoom);
+            return new OverzoomTileDataSource(new MapDatabase(this), mOverZoom, getOverzoomCache());
         } catch (IOException e) {
             log.debug(e.getMessage());
         }
@@ -166,6 +224,9 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
     public void close() {
         IOUtils.closeQuietly(mInputFile);
         mInputFile = null;
+        /* the mapping is released when unreferenced */
+        mappedFile = null;
+        blockCache = null;
         fileHeader = null;
         fileInfo = null;
         mapFile = null;
@@ -174,6 +235,7 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
             databaseIndexCache.destroy();
             databaseIndexCache = null;
         }
+        clearOverzoomCache();
     }
 
     public MapInfo getMapInfo() {
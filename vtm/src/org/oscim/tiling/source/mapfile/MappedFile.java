@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.utils.Parameters;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only memory mapping of a map file, shared by all {@link MapDatabase}
+ * instances of a {@link MapFileTileSource}.
+ * <p/>
+ * A single MappedByteBuffer is limited to 2GB, so the file is mapped in
+ * segments. Segments overlap by {@link Parameters#MAXIMUM_BUFFER_SIZE}, so
+ * that every block which may be read lies completely within one segment.
+ * <p/>
+ * Only absolute reads are used on the segments, which are thread-safe.
+ */
+class MappedFile {
+
+    /**
+     * Distance between the start of two segments.
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    private final ByteBuffer[] mSegments;
+    private final long mSize;
+
+    /**
+     * @param file the opened map file, may be closed after mapping.
+     */
+    MappedFile(RandomAccessFile file) throws IOException {
+        FileChannel channel = file.getChannel();
+        mSize = channel.size();
+
+        long overlap = Parameters.MAXIMUM_BUFFER_SIZE;
+        int numSegments = (int) Math.max(1, (mSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        mSegments = new ByteBuffer[numSegments];
+
+        for (int i = 0; i < numSegments; i++) {
+            long start = i * SEGMENT_SIZE;
+            long length = Math.min(SEGMENT_SIZE + overlap, mSize - start);
+            mSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+    }
+
+    /**
+     * @return the size of the file in bytes.
+     */
+    long size() {
+        return mSize;
+    }
+
+    /**
+     * @return the segment which contains the data at the given file position.
+     */
+    ByteBuffer getSegment(long position) {
+        return mSegments[(int) (position / SEGMENT_SIZE)];
+    }
+
+    /**
+     * @return the offset of the file position in its segment.
+     */
+    static int getSegmentOffset(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+
+    /**
+     * Converts five bytes at the given file position to an unsigned long.
+     * <p/>
+     * The byte order is big-endian.
+     */
+    long getFiveBytesLong(long position) {
+        ByteBuffer data = getSegment(position);
+        int offset = getSegmentOffset(position);
+
+        return (data.get(offset) & 0xffL) << 32
+                | (data.getInt(offset + 1) & 0xffffffffL);
+    }
+}
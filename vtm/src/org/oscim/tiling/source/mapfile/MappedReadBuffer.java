@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.Tag;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * A {@link ReadBuffer} which decodes directly from a {@link MappedFile}.
+ * <p/>
+ * Reading a block does not copy any data but only selects the segment and
+ * offset of the block. Buffer positions are relative to the block start,
+ * like in ReadBuffer.
+ */
+class MappedReadBuffer extends ReadBuffer {
+    private static final String CHARSET_UTF8 = "UTF-8";
+    private static final Logger LOG = Logger.getLogger(MappedReadBuffer.class.getName());
+
+    private final MappedFile mFile;
+
+    /**
+     * the segment of the current block
+     */
+    private ByteBuffer mData;
+
+    /**
+     * offset of the current block in the segment
+     */
+    private int mBase;
+
+    /**
+     * size of the current block
+     */
+    private int mLength;
+
+    /**
+     * file position after the current block, like the file pointer of
+     * a RandomAccessFile
+     */
+    private long mFilePosition;
+
+    /**
+     * buffer to decode strings
+     */
+    private byte[] mStringBuffer = new byte[64];
+
+    MappedReadBuffer(MappedFile file) {
+        super(null);
+        mFile = file;
+    }
+
+    /**
+     * Reads the block following the previous block.
+     */
+    @Override
+    public boolean readFromFile(int length) {
+        return readFromFile(mFilePosition, length);
+    }
+
+    @Override
+    public boolean readFromFile(long position, int length) {
+        if (length < 0 || position < 0 || position + length > mFile.size())
+            return false;
+
+        ByteBuffer data = mFile.getSegment(position);
+        int base = MappedFile.getSegmentOffset(position);
+        if (base + length > data.limit()) {
+            LOG.warning("invalid read length: " + length);
+            return false;
+        }
+        mData = data;
+        mBase = base;
+        mLength = length;
+        mBufferPosition = 0;
+        mFilePosition = position + length;
+        return true;
+    }
+
+    @Override
+    public byte readByte() {
+        return mData.get(mBase + mBufferPosition++);
+    }
+
+    @Override
+    public int readInt() {
+        int pos = mBase + mBufferPosition;
+        mBufferPosition += 4;
+        return mData.getInt(pos);
+    }
+
+    @Override
+    public long readLong() {
+        int pos = mBase + mBufferPosition;
+        mBufferPosition += 8;
+        return mData.getLong(pos);
+    }
+
+    @Override
+    public int readShort() {
+        int pos = mBase + mBufferPosition;
+        mBufferPosition += 2;
+        return mData.getShort(pos);
+    }
+
+    @Override
+    public int readSignedInt() {
+        ByteBuffer data = mData;
+        int pos = mBase + mBufferPosition;
+        int result = 0;
+        int shift = 0;
+
+        /* up to four bytes with seven data bits */
+        byte b = data.get(pos++);
+        while ((b & 0x80) != 0 && shift < 28) {
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+            b = data.get(pos++);
+        }
+        /* last byte with six data bits and the sign bit */
+        int flag = ((b & 0x40) >> 6);
+        result |= (b & 0x3f) << shift;
+
+        mBufferPosition = pos - mBase;
+        return (result ^ -flag) + flag;
+    }
+
+    @Override
+    public void readSignedInt(int[] values, int length) {
+        for (int i = 0; i < length; i++)
+            values[i] = readSignedInt();
+    }
+
+    @Override
+    public int readUnsignedInt() {
+        ByteBuffer data = mData;
+        int pos = mBase + mBufferPosition;
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get(pos++);
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+
+        mBufferPosition = pos - mBase;
+        return result;
+    }
+
+    @Override
+    public String readUTF8EncodedString(int stringLength) {
+        if (copyString(stringLength)) {
+            try {
+                return new String(mStringBuffer, 0, stringLength, CHARSET_UTF8);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        LOG.warning("invalid string length: " + stringLength);
+        return null;
+    }
+
+    @Override
+    Tag readTag(TagTable table, int stringLength) {
+        if (copyString(stringLength))
+            return table.get(mStringBuffer, 0, stringLength);
+
+        LOG.warning("invalid string length: " + stringLength);
+        return null;
+    }
+
+    /**
+     * Copy the string bytes at the current position into the string buffer.
+     *
+     * @return false if the length is invalid.
+     */
+    private boolean copyString(int stringLength) {
+        if (stringLength <= 0 || mBufferPosition + stringLength > mLength)
+            return false;
+
+        if (mStringBuffer.length < stringLength)
+            mStringBuffer = new byte[stringLength];
+
+        ByteBuffer data = mData;
+        int pos = mBase + mBufferPosition;
+        for (int i = 0; i < stringLength; i++)
+            mStringBuffer[i] = data.get(pos + i);
+
+        mBufferPosition += stringLength;
+        return true;
+    }
+
+    @Override
+    int getBufferSize() {
+        return mLength;
+    }
+
+    @Override
+    int skipWays(int queryTileBitmask, int elements) {
+        ByteBuffer data = mData;
+        int cnt = elements;
+
+        lastTagPosition = -1;
+
+        while (cnt > 0) {
+            // read way size (unsigned int)
+            int skip = readUnsignedInt();
+
+            // invalid way size
+            if (skip < 0)
+                return -1;
+
+            // check if way matches queryTileBitmask
+            int pos = mBase + mBufferPosition;
+            if ((data.getShort(pos) & queryTileBitmask) == 0) {
+
+                // remember last tags position
+                if ((data.get(pos + 2) & WAY_NUMBER_OF_TAGS_BITMASK) != 0)
+                    lastTagPosition = mBufferPosition + 2;
+
+                mBufferPosition += skip;
+                cnt--;
+            } else {
+                mBufferPosition += 2;
+                break;
+            }
+        }
+        return cnt;
+    }
+}
@@ -14,18 +14,30 @@
  */
 package org.oscim.tiling.source.mapfile;
 
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
 import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
 import org.oscim.tiling.TileDataSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class MultiMapDatabase implements ITileDataSource {
+    private static final Logger log = LoggerFactory.getLogger(MultiMapDatabase.class);
 
     private final List<MapDatabase> mapDatabases = new ArrayList<>();
+    private MultiMapIndex index;
+    private ExecutorService executor;
 
     public MultiMapDatabase() {
     }
@@ -34,19 +46,102 @@ public class MultiMapDatabase implements ITileDataSource {
         if (mapDatabases.contains(mapDatabase)) {
             throw new IllegalArgumentException("Duplicate map database");
         }
+        index = null;
         return mapDatabases.add(mapDatabase);
     }
 
+    /**
+     * Query overlapping map databases in parallel on the given executor.
+     * The results are passed to the sink in the order the databases were added.
+     * The executor must not run the tile loaders, which wait for the queries.
+     *
+     * @param executor the executor or null to query sequentially (default).
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the map databases which support the tile, in order.
+     */
+    private List<MapDatabase> getMapDatabases(Tile tile) {
+        if (index == null)
+            index = new MultiMapIndex(mapDatabases);
+
+        List<MapDatabase> result = new ArrayList<>();
+        for (int i : index.getCandidates(tile)) {
+            MapDatabase mapDatabase = mapDatabases.get(i);
+            if (mapDatabase.supportsTile(tile))
+                result.add(mapDatabase);
+        }
+        return result;
+    }
+
     @Override
     public void query(MapTile tile, ITileDataSink sink) {
         TileDataSink dataSink = new TileDataSink(sink);
-        for (MapDatabase mapDatabase : mapDatabases) {
-            if (mapDatabase.supportsTile(tile))
+        List<MapDatabase> databases = getMapDatabases(tile);
+
+        if (executor == null || databases.size() < 2) {
+            for (MapDatabase mapDatabase : databases)
                 mapDatabase.query(tile, dataSink);
+        } else {
+            queryParallel(tile, databases, dataSink);
         }
         sink.completed(dataSink.getResult());
     }
 
+    private void queryParallel(final MapTile tile, List<MapDatabase> databases,
+                               TileDataSink dataSink) {
+        List<Future<BufferSink>> futures = new ArrayList<>(databases.size() - 1);
+        for (int i = 1; i < databases.size(); i++) {
+            final MapDatabase mapDatabase = databases.get(i);
+            futures.add(executor.submit(new Callable<BufferSink>() {
+                @Override
+                public BufferSink call() {
+                    BufferSink bufferSink = new BufferSink();
+                    mapDatabase.query(tile, bufferSink);
+                    return bufferSink;
+                }
+            }));
+        }
+
+        /* the first database is queried on the loader thread */
+        databases.get(0).query(tile, dataSink);
+
+        /* wait for every query also when interrupted: MapDatabase is not
+         * thread-safe, so a running query must not overlap the next one. */
+        boolean interrupted = false;
+        for (Future<BufferSink> future : futures) {
+            BufferSink bufferSink = null;
+            while (true) {
+                try {
+                    bufferSink = future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    log.error(e.getMessage(), e.getCause());
+                    break;
+                }
+            }
+            if (interrupted)
+                continue;
+
+            if (bufferSink == null) {
+                dataSink.completed(QueryResult.FAILED);
+                continue;
+            }
+            for (MapElement element : bufferSink.elements)
+                dataSink.process(element);
+            dataSink.completed(bufferSink.result);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            dataSink.completed(QueryResult.FAILED);
+        }
+    }
+
     @Override
     public void dispose() {
         for (MapDatabase mapDatabase : mapDatabases) {
@@ -63,106 +158,111 @@ public class MultiMapDatabase implements ITileDataSource {
 
     public MapReadResult readLabels(Tile tile) {
         MapReadResult mapReadResult = new MapReadResult();
-        for (MapDatabase mdb : mapDatabases) {
-            if (mdb.supportsTile(tile)) {
-                MapReadResult result = mdb.readLabels(tile);
-                if (result == null) {
-                    continue;
-                }
-                boolean isWater = mapReadResult.isWater & result.isWater;
-                mapReadResult.isWater = isWater;
-                mapReadResult.add(result, false);
+        for (MapDatabase mdb : getMapDatabases(tile)) {
+            MapReadResult result = mdb.readLabels(tile);
+            if (result == null) {
+                continue;
             }
+            boolean isWater = mapReadResult.isWater & result.isWater;
+            mapReadResult.isWater = isWater;
+            mapReadResult.add(result, false);
         }
         return mapReadResult;
     }
 
     public MapReadResult readLabels(Tile upperLeft, Tile lowerRight) {
         MapReadResult mapReadResult = new MapReadResult();
-        for (MapDatabase mdb : mapDatabases) {
-            if (mdb.supportsTile(upperLeft)) {
-                MapReadResult result = mdb.readLabels(upperLeft, lowerRight);
-                if (result == null) {
-                    continue;
-                }
-                boolean isWater = mapReadResult.isWater & result.isWater;
-                mapReadResult.isWater = isWater;
-                mapReadResult.add(result, false);
+        for (MapDatabase mdb : getMapDatabases(upperLeft)) {
+            MapReadResult result = mdb.readLabels(upperLeft, lowerRight);
+            if (result == null) {
+                continue;
             }
+            boolean isWater = mapReadResult.isWater & result.isWater;
+            mapReadResult.isWater = isWater;
+            mapReadResult.add(result, false);
         }
         return mapReadResult;
     }
 
     public MapReadResult readMapData(Tile tile) {
         MapReadResult mapReadResult = new MapReadResult();
-        for (MapDatabase mdb : mapDatabases) {
-            if (mdb.supportsTile(tile)) {
-                MapReadResult result = mdb.readMapData(tile);
-                if (result == null) {
-                    continue;
-                }
-                boolean isWater = mapReadResult.isWater & result.isWater;
-                mapReadResult.isWater = isWater;
-                mapReadResult.add(result, false);
+        for (MapDatabase mdb : getMapDatabases(tile)) {
+            MapReadResult result = mdb.readMapData(tile);
+            if (result == null) {
+                continue;
             }
+            boolean isWater = mapReadResult.isWater & result.isWater;
+            mapReadResult.isWater = isWater;
+            mapReadResult.add(result, false);
         }
         return mapReadResult;
     }
 
     public MapReadResult readMapData(Tile upperLeft, Tile lowerRight) {
         MapReadResult mapReadResult = new MapReadResult();
-        for (MapDatabase mdb : mapDatabases) {
-            if (mdb.supportsTile(upperLeft)) {
-                MapReadResult result = mdb.readMapData(upperLeft, lowerRight);
-                if (result == null) {
-                    continue;
-                }
-                boolean isWater = mapReadResult.isWater & result.isWater;
-                mapReadResult.isWater = isWater;
-                mapReadResult.add(result, false);
+        for (MapDatabase mdb : getMapDatabases(upperLeft)) {
+            MapReadResult result = mdb.readMapData(upperLeft, lowerRight);
+            if (result == null) {
+                continue;
             }
+            boolean isWater = mapReadResult.isWater & result.isWater;
+            mapReadResult.isWater = isWater;
+            mapReadResult.add(result, false);
         }
         return mapReadResult;
     }
 
     public MapReadResult readPoiData(Tile tile) {
         MapReadResult mapReadResult = new MapReadResult();
-        for (MapDatabase mdb : mapDatabases) {
-            if (mdb.supportsTile(tile)) {
-                MapReadResult result = mdb.readPoiData(tile);
-                if (result == null) {
-                    continue;
-                }
-                boolean isWater = mapReadResult.isWater & result.isWater;
-                mapReadResult.isWater = isWater;
-                mapReadResult.add(result, false);
+        for (MapDatabase mdb : getMapDatabases(tile)) {
+            MapReadResult result = mdb.readPoiData(tile);
+            if (result == null) {
+                continue;
             }
+            boolean isWater = mapReadResult.isWater & result.isWater;
+            mapReadResult.isWater = isWater;
+            mapReadResult.add(result, false);
         }
         return mapReadResult;
     }
 
     public MapReadResult readPoiData(Tile upperLeft, Tile lowerRight) {
         MapReadResult mapReadResult = new MapReadResult();
-        for (MapDatabase mdb : mapDatabases) {
-            if (mdb.supportsTile(upperLeft)) {
-                MapReadResult result = mdb.readPoiData(upperLeft, lowerRight);
-                if (result == null) {
-                    continue;
-                }
-                boolean isWater = mapReadResult.isWater & result.isWater;
-                mapReadResult.isWater = isWater;
-                mapReadResult.add(result, false);
+        for (MapDatabase mdb : getMapDatabases(upperLeft)) {
+            MapReadResult result = mdb.readPoiData(upperLeft, lowerRight);
+            if (result == null) {
+                continue;
             }
+            boolean isWater = mapReadResult.isWater & result.isWater;
+            mapReadResult.isWater = isWater;
+            mapReadResult.add(result, false);
         }
         return mapReadResult;
     }
 
     public boolean supportsTile(Tile tile) {
-        for (MapDatabase mdb : mapDatabases) {
-            if (mdb.supportsTile(tile)) {
-                return true;
-            }
+        return !getMapDatabases(tile).isEmpty();
+    }
+
+    /**
+     * Collects copies of the elements of a map database queried in parallel.
+     */
+    static class BufferSink implements ITileDataSink {
+        final List<MapElement> elements = new ArrayList<>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new MapElement(element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
         }
-        return false;
     }
 }
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 public class MultiMapFileTileSource extends TileSource implements IMapFileTileSource {
 
@@ -35,6 +36,7 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
 
     private final List<MapFileTileSource> mapFileTileSources = new ArrayList<>();
     private final Map<MapFileTileSource, int[]> zoomsByTileSource = new HashMap<>();
+    private ExecutorService queryExecutor;
 
     public MultiMapFileTileSource() {
         this(Viewport.MIN_ZOOM_LEVEL, Viewport.MAX_ZOOM_LEVEL);
@@ -62,6 +64,15 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
         return result;
     }
 
+    /**
+     * Query map files which overlap a tile in parallel on the given executor,
+     * see {@link MultiMapDatabase#setExecutor(ExecutorService)}.
+     * The executor is not shut down by the tile source.
+     */
+    public void setQueryExecutor(ExecutorService queryExecutor) {
+        this.queryExecutor = queryExecutor;
+    }
+
     public BoundingBox getBoundingBox() {
         BoundingBox boundingBox = null;
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
@@ -73,6 +84,7 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
     @Override
     public ITileDataSource getDataSource() {
         MultiMapDatabase multiMapDatabase = new MultiMapDatabase();
+        multiMapDatabase.setExecutor(queryExecutor);
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
             try {
                 MapDatabase mapDatabase = new MapDatabase(mapFileTileSource);
@@ -84,7 +96,7 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
                 log.debug(e.getMessage());
             }
         }
-        return new OverzoomTileDataSource(multiMapDatabase, mOverZoom);
+        return new OverzoomTileDataSource(multiMapDatabase, mOverZoom, getOverzoomCache());
     }
 
     @Override
@@ -103,6 +115,7 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
             mapFileTileSource.close();
         }
+        clearOverzoomCache();
     }
 
     @Override
@@ -110,6 +123,7 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
             mapFileTileSource.setCallback(callback);
         }
+        clearOverzoomCache();
     }
 
     @Override
@@ -117,5 +131,6 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
             mapFileTileSource.setPreferredLanguage(preferredLanguage);
         }
+        clearOverzoomCache();
     }
 }
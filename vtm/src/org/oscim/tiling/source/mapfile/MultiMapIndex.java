@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grid index over the bounding boxes of the databases of a
+ * {@link MultiMapDatabase}.
+ * <p/>
+ * Each grid cell at {@link #INDEX_ZOOM} holds the databases whose bounding
+ * box touches the cell, so tiles at or above that zoom level are looked up
+ * in constant time. Candidates still need to be checked with
+ * {@link MapDatabase#supportsTile(Tile)}.
+ */
+class MultiMapIndex {
+
+    static final byte INDEX_ZOOM = 7;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<Long, int[]> mCells = new HashMap<>();
+    private final int[] mAll;
+
+    MultiMapIndex(List<MapDatabase> mapDatabases) {
+        int size = mapDatabases.size();
+        mAll = new int[size];
+
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        int max = (1 << INDEX_ZOOM) - 1;
+
+        for (int i = 0; i < size; i++) {
+            MapDatabase mapDatabase = mapDatabases.get(i);
+            mAll[i] = i;
+
+            MapInfo mapInfo = mapDatabase.getTileSource().getMapInfo();
+            if (mapInfo == null)
+                continue;
+
+            BoundingBox bbox = mapInfo.boundingBox;
+
+            /* extend by one cell to include cells that only touch the box */
+            int minX = Math.max(0, MercatorProjection.longitudeToTileX(bbox.getMinLongitude(), INDEX_ZOOM) - 1);
+            int maxX = Math.min(max, MercatorProjection.longitudeToTileX(bbox.getMaxLongitude(), INDEX_ZOOM) + 1);
+            int minY = Math.max(0, MercatorProjection.latitudeToTileY(bbox.getMaxLatitude(), INDEX_ZOOM) - 1);
+            int maxY = Math.min(max, MercatorProjection.latitudeToTileY(bbox.getMinLatitude(), INDEX_ZOOM) + 1);
+
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    Long key = key(x, y);
+                    List<Integer> cell = cells.get(key);
+                    if (cell == null) {
+                        cell = new ArrayList<>();
+                        cells.put(key, cell);
+                    }
+                    cell.add(i);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, List<Integer>> e : cells.entrySet()) {
+            List<Integer> cell = e.getValue();
+            int[] indices = new int[cell.size()];
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = cell.get(i);
+            mCells.put(e.getKey(), indices);
+        }
+    }
+
+    private static Long key(int x, int y) {
+        return ((long) x << 32) | y;
+    }
+
+    /**
+     * @return the indices of the databases which may contain the tile, in
+     * ascending order. The array must not be modified.
+     */
+    int[] getCandidates(Tile tile) {
+        if (tile.zoomLevel < INDEX_ZOOM)
+            return mAll;
+
+        int shift = tile.zoomLevel - INDEX_ZOOM;
+        int[] indices = mCells.get(key(tile.tileX >> shift, tile.tileY >> shift));
+        return indices != null ? indices : EMPTY;
+    }
+}
@@ -31,13 +31,15 @@ import java.util.logging.Logger;
 
 /**
  * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
+ *
+ * @see MappedReadBuffer
  */
 public class ReadBuffer {
     private static final String CHARSET_UTF8 = "UTF-8";
     private static final Logger LOG = Logger.getLogger(ReadBuffer.class.getName());
 
     private byte[] mBufferData;
-    private int mBufferPosition;
+    int mBufferPosition;
     private final RandomAccessFile mInputFile;
 
     private final List<Integer> mTagIds = new ArrayList<>();
@@ -94,6 +96,20 @@ public class ReadBuffer {
         return mInputFile.read(mBufferData, 0, length) == length;
     }
 
+    /**
+     * Reads the given amount of bytes at the given file position into the
+     * read buffer and resets the internal buffer position.
+     *
+     * @param position the position in the file.
+     * @param length   the amount of bytes to read from the file.
+     * @return true if the whole data was read successfully, false otherwise.
+     * @throws IOException if an error occurs while reading the file.
+     */
+    public boolean readFromFile(long position, int length) throws IOException {
+        mInputFile.seek(position);
+        return readFromFile(length);
+    }
+
     /**
      * Converts four bytes from the read buffer to a signed int.
      * <p/>
@@ -376,6 +392,47 @@ public class ReadBuffer {
         return result;
     }
 
+    /**
+     * Decodes a variable amount of bytes from the read buffer to a tag.
+     *
+     * @param table the tag table of the tag key.
+     * @return the tag from the table (may be null).
+     */
+    Tag readTag(TagTable table) {
+        return readTag(table, readUnsignedInt());
+    }
+
+    /**
+     * Decodes the given amount of bytes from the read buffer to a tag.
+     *
+     * @param table        the tag table of the tag key.
+     * @param stringLength the length of the value in bytes.
+     * @return the tag from the table (may be null).
+     */
+    Tag readTag(TagTable table, int stringLength) {
+        if (stringLength > 0 && mBufferPosition + stringLength <= mBufferData.length) {
+            mBufferPosition += stringLength;
+            return table.get(mBufferData, mBufferPosition - stringLength, stringLength);
+        }
+        LOG.warning("invalid string length: " + stringLength);
+        return null;
+    }
+
+    /**
+     * Decodes a variable amount of bytes from the read buffer to a tag.
+     *
+     * @param table    the tag table of the tag key.
+     * @param position buffer offset position of the value
+     * @return the tag from the table (may be null).
+     */
+    Tag readTagAt(TagTable table, int position) {
+        int curPosition = mBufferPosition;
+        mBufferPosition = position;
+        Tag result = readTag(table, readUnsignedInt());
+        mBufferPosition = curPosition;
+        return result;
+    }
+
     /**
      * @return the current buffer position.
      */
@@ -451,7 +508,7 @@ public class ReadBuffer {
         return true;
     }
 
-    private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
+    static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
     int lastTagPosition;
 
     int skipWays(int queryTileBitmask, int elements) {
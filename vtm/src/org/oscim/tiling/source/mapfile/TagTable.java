@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.Tag;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A table of the tags decoded for one key, e.g. name or house number,
+ * looked up by the UTF-8 encoded value in the map file.
+ * <p/>
+ * Recurring values are returned as the same immutable Tag instance, without
+ * decoding a String or creating a Tag. The table is direct-mapped with a
+ * fixed size: a value replaces the entry with the same hash slot.
+ * <p/>
+ * Not thread-safe, each {@link MapDatabase} holds its own tables.
+ */
+class TagTable {
+    private static final String CHARSET_UTF8 = "UTF-8";
+
+    static final int DEFAULT_SIZE = 1024;
+
+    private final String mKey;
+    private final int mMask;
+    private final byte[][] mBytes;
+    private final Tag[] mTags;
+
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param key  the tag key.
+     * @param size the number of entries, a power of two.
+     */
+    TagTable(String key, int size) {
+        if (Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("size must be a power of two: " + size);
+        mKey = key;
+        mMask = size - 1;
+        mBytes = new byte[size][];
+        mTags = new Tag[size];
+    }
+
+    /**
+     * @return the tag for the encoded value.
+     */
+    Tag get(byte[] data, int offset, int length) {
+        int hash = 1;
+        for (int i = offset, end = offset + length; i < end; i++)
+            hash = 31 * hash + data[i];
+
+        int slot = (hash ^ (hash >>> 16)) & mMask;
+
+        byte[] bytes = mBytes[slot];
+        if (bytes != null && equals(bytes, data, offset, length)) {
+            mHits++;
+            return mTags[slot];
+        }
+        mMisses++;
+
+        bytes = new byte[length];
+        System.arraycopy(data, offset, bytes, 0, length);
+
+        String value;
+        try {
+            value = new String(bytes, 0, length, CHARSET_UTF8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        Tag tag = new Tag(mKey, decodeValue(value), false);
+
+        mBytes[slot] = bytes;
+        mTags[slot] = tag;
+        return tag;
+    }
+
+    private static boolean equals(byte[] bytes, byte[] data, int offset, int length) {
+        if (bytes.length != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != data[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Override to transform decoded values, e.g. to extract the localized name.
+     */
+    String decodeValue(String value) {
+        return value;
+    }
+
+    void clear() {
+        for (int i = 0; i <= mMask; i++) {
+            mBytes[i] = null;
+            mTags[i] = null;
+        }
+    }
+
+    int getHitCount() {
+        return mHits;
+    }
+
+    int getMissCount() {
+        return mMisses;
+    }
+}
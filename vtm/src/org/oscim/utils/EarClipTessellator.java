@@ -0,0 +1,828 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+import org.oscim.renderer.bucket.VertexData;
+
+import java.util.Arrays;
+
+/**
+ * A pure Java polygon tessellator based on ear clipping, used when the
+ * native {@link TessJNI} is not available.
+ * <p/>
+ * Holes are merged into the outer ring by bridges, large polygons use a
+ * z-order curve to find points in ears. Degenerate rings are cured by
+ * removing local self-intersections and by splitting the polygon. The
+ * algorithm follows Mapbox earcut (ISC license). No vertices are added,
+ * so the result always references the input vertices.
+ * <p/>
+ * Inner rings with the orientation of the outer ring are not holes, as
+ * with the positive winding rule of TessJNI.
+ */
+public class EarClipTessellator implements ITessellator {
+
+    /**
+     * Use the z-order curve for polygons with more points.
+     */
+    private static final int HASH_POINTS = 80;
+
+    private static final int NIL = -1;
+
+    private final ThreadLocal<Context> mContext = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
+
+    @Override
+    public int tessellate(float[] points, int[] index, int ipos, int numRings, VertexData outTris) {
+        return mContext.get().tessellate(points, index, ipos, numRings, outTris);
+    }
+
+    /**
+     * The nodes of the linked rings, stored in arrays and reused.
+     */
+    private static final class Context {
+        int size;
+        int[] id = new int[64];
+        double[] x = new double[64];
+        double[] y = new double[64];
+        int[] prev = new int[64];
+        int[] next = new int[64];
+        int[] z = new int[64];
+        int[] prevZ = new int[64];
+        int[] nextZ = new int[64];
+        boolean[] steiner = new boolean[64];
+
+        /* leftmost nodes of the holes */
+        int[] holes = new int[8];
+        int numHoles;
+
+        double minX, minY, invSize;
+
+        VertexData out;
+        int numIndices;
+        boolean flip;
+
+        int tessellate(float[] points, int[] index, int ipos, int numRings, VertexData outTris) {
+            out = outTris;
+            numIndices = 0;
+
+            int pos = 0;
+            for (int i = 0; i < ipos; i++)
+                pos += index[i];
+
+            int vertex = 0;
+            int start = ipos;
+            int startPos = pos;
+            for (int i = ipos, end = ipos + numRings; ; i++) {
+                int length = i < end ? index[i] : -1;
+                if (length < 0 || (length & 1) != 0) {
+                    vertex = polygon(points, index, start, i, startPos, vertex);
+                    break;
+                }
+                pos += length;
+                if (length == 0) {
+                    /* start next polygon */
+                    vertex = polygon(points, index, start, i, startPos, vertex);
+                    start = i + 1;
+                    startPos = pos;
+                }
+            }
+            out = null;
+
+            if (vertex < 0)
+                return 0;
+            return numIndices;
+        }
+
+        /**
+         * Tessellate the rings from index start to end.
+         *
+         * @return the next vertex id or -1 when there are too many vertices.
+         */
+        int polygon(float[] points, int[] index, int start, int end, int pos, int vertex) {
+            if (vertex < 0)
+                return vertex;
+
+            size = 0;
+            numHoles = 0;
+
+            int outer = NIL;
+            double outerArea = 0;
+            int numPoints = 0;
+
+            int ppos = pos;
+            for (int i = start; i < end; i++) {
+                int length = index[i];
+                if (length >= 6) {
+                    double area = signedArea(points, ppos, length);
+                    if (numPoints == 0) {
+                        outerArea = area;
+                        outer = linkedList(points, ppos, length, vertex, true);
+                        computeBounds(points, ppos, length);
+                    } else if (outer != NIL && area != 0 && (area > 0) != (outerArea > 0)) {
+                        int hole = linkedList(points, ppos, length, vertex, false);
+                        if (hole != NIL) {
+                            if (hole == next[hole])
+                                steiner[hole] = true;
+                            addHole(getLeftmost(hole));
+                        }
+                    }
+                    numPoints += length >> 1;
+                    vertex += length >> 1;
+                }
+                ppos += length;
+            }
+            if (vertex > Short.MAX_VALUE)
+                return -1;
+            if (outerArea == 0 || outer == NIL || next[outer] == prev[outer])
+                return vertex;
+
+            flip = outerArea < 0;
+
+            if (numHoles > 0)
+                outer = eliminateHoles(outer);
+
+            if (numPoints <= HASH_POINTS)
+                invSize = 0;
+
+            earcut(outer, 0);
+            return vertex;
+        }
+
+        void computeBounds(float[] points, int pos, int length) {
+            double minX = points[pos], maxX = minX;
+            double minY = points[pos + 1], maxY = minY;
+            for (int i = pos + 2, end = pos + length; i < end; i += 2) {
+                double x = points[i];
+                double y = points[i + 1];
+                if (x < minX) minX = x;
+                if (y < minY) minY = y;
+                if (x > maxX) maxX = x;
+                if (y > maxY) maxY = y;
+            }
+            this.minX = minX;
+            this.minY = minY;
+            double invSize = Math.max(maxX - minX, maxY - minY);
+            this.invSize = invSize != 0 ? 1 / invSize : 0;
+        }
+
+        /**
+         * @return twice the signed area, positive for counter-clockwise
+         * rings in a y-up coordinate system.
+         */
+        static double signedArea(float[] points, int pos, int length) {
+            double sum = 0;
+            for (int i = pos, j = pos + length - 2, end = pos + length; i < end; i += 2) {
+                sum += ((double) points[j] - points[i]) * ((double) points[i + 1] + points[j + 1]);
+                j = i;
+            }
+            return sum;
+        }
+
+        /**
+         * Create a linked ring with the given orientation.
+         */
+        int linkedList(float[] points, int pos, int length, int vertex, boolean ccw) {
+            int last = NIL;
+            if (ccw == (signedArea(points, pos, length) > 0)) {
+                for (int i = 0; i < length; i += 2)
+                    last = insertNode(vertex + (i >> 1), points[pos + i], points[pos + i + 1], last);
+            } else {
+                for (int i = length - 2; i >= 0; i -= 2)
+                    last = insertNode(vertex + (i >> 1), points[pos + i], points[pos + i + 1], last);
+            }
+            if (last != NIL && equals(last, next[last])) {
+                removeNode(last);
+                last = next[last];
+            }
+            return last;
+        }
+
+        void addHole(int node) {
+            if (numHoles == holes.length) {
+                int[] tmp = new int[numHoles * 2];
+                System.arraycopy(holes, 0, tmp, 0, numHoles);
+                holes = tmp;
+            }
+            holes[numHoles++] = node;
+        }
+
+        /**
+         * Remove ears, with the passes: 0 plain, 1 filtered points,
+         * 2 cured local self-intersections, then split the polygon.
+         */
+        void earcut(int ear, int pass) {
+            if (ear == NIL)
+                return;
+
+            if (pass == 0 && invSize != 0)
+                indexCurve(ear);
+
+            int stop = ear;
+            while (prev[ear] != next[ear]) {
+                int p = prev[ear];
+                int n = next[ear];
+
+                if (invSize != 0 ? isEarHashed(ear) : isEar(ear)) {
+                    addTriangle(p, ear, n);
+                    removeNode(ear);
+                    ear = next[n];
+                    stop = next[n];
+                    continue;
+                }
+
+                ear = n;
+
+                if (ear == stop) {
+                    if (pass == 0) {
+                        earcut(filterPoints(ear, NIL), 1);
+                    } else if (pass == 1) {
+                        ear = cureLocalIntersections(filterPoints(ear, NIL));
+                        earcut(ear, 2);
+                    } else {
+                        splitEarcut(ear);
+                    }
+                    break;
+                }
+            }
+        }
+
+        void addTriangle(int a, int b, int c) {
+            if (flip)
+                out.add((short) id[c], (short) id[b], (short) id[a]);
+            else
+                out.add((short) id[a], (short) id[b], (short) id[c]);
+            numIndices += 3;
+        }
+
+        boolean isEar(int ear) {
+            int a = prev[ear], b = ear, c = next[ear];
+            if (area(a, b, c) >= 0)
+                return false; // reflex
+
+            double ax = x[a], bx = x[b], cx = x[c];
+            double ay = y[a], by = y[b], cy = y[c];
+
+            double x0 = ax < bx ? (ax < cx ? ax : cx) : (bx < cx ? bx : cx);
+            double y0 = ay < by ? (ay < cy ? ay : cy) : (by < cy ? by : cy);
+            double x1 = ax > bx ? (ax > cx ? ax : cx) : (bx > cx ? bx : cx);
+            double y1 = ay > by ? (ay > cy ? ay : cy) : (by > cy ? by : cy);
+
+            for (int p = next[c]; p != a; p = next[p]) {
+                if (x[p] >= x0 && x[p] <= x1 && y[p] >= y0 && y[p] <= y1
+                        && pointInTriangle(ax, ay, bx, by, cx, cy, x[p], y[p])
+                        && area(prev[p], p, next[p]) >= 0)
+                    return false;
+            }
+            return true;
+        }
+
+        boolean isEarHashed(int ear) {
+            int a = prev[ear], b = ear, c = next[ear];
+            if (area(a, b, c) >= 0)
+                return false; // reflex
+
+            double ax = x[a], bx = x[b], cx = x[c];
+            double ay = y[a], by = y[b], cy = y[c];
+
+            double x0 = ax < bx ? (ax < cx ? ax : cx) : (bx < cx ? bx : cx);
+            double y0 = ay < by ? (ay < cy ? ay : cy) : (by < cy ? by : cy);
+            double x1 = ax > bx ? (ax > cx ? ax : cx) : (bx > cx ? bx : cx);
+            double y1 = ay > by ? (ay > cy ? ay : cy) : (by > cy ? by : cy);
+
+            int minZ = zOrder(x0, y0);
+            int maxZ = zOrder(x1, y1);
+
+            int p = prevZ[ear];
+            int n = nextZ[ear];
+
+            /* look for points inside the triangle in both directions */
+            while (p != NIL && z[p] >= minZ && n != NIL && z[n] <= maxZ) {
+                if (p != a && p != c && inEar(p, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                    return false;
+                p = prevZ[p];
+
+                if (n != a && n != c && inEar(n, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                    return false;
+                n = nextZ[n];
+            }
+
+            /* look for remaining points in decreasing z-order */
+            while (p != NIL && z[p] >= minZ) {
+                if (p != a && p != c && inEar(p, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                    return false;
+                p = prevZ[p];
+            }
+
+            /* look for remaining points in increasing z-order */
+            while (n != NIL && z[n] <= maxZ) {
+                if (n != a && n != c && inEar(n, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                    return false;
+                n = nextZ[n];
+            }
+            return true;
+        }
+
+        private boolean inEar(int p, double x0, double y0, double x1, double y1,
+                              double ax, double ay, double bx, double by, double cx, double cy) {
+            return x[p] >= x0 && x[p] <= x1 && y[p] >= y0 && y[p] <= y1
+                    && pointInTriangle(ax, ay, bx, by, cx, cy, x[p], y[p])
+                    && area(prev[p], p, next[p]) >= 0;
+        }
+
+        /**
+         * Go through all polygon nodes and cure small local self-intersections.
+         */
+        int cureLocalIntersections(int start) {
+            int p = start;
+            do {
+                int a = prev[p];
+                int b = next[next[p]];
+
+                if (!equals(a, b) && intersects(a, p, next[p], b)
+                        && locallyInside(a, b) && locallyInside(b, a)) {
+                    addTriangle(a, p, b);
+
+                    /* remove two nodes involved */
+                    removeNode(p);
+                    removeNode(next[p]);
+
+                    p = start = b;
+                }
+                p = next[p];
+            } while (p != start);
+
+            return filterPoints(p, NIL);
+        }
+
+        /**
+         * Try splitting the polygon into two and tessellate them independently.
+         */
+        void splitEarcut(int start) {
+            int a = start;
+            do {
+                int b = next[next[a]];
+                while (b != prev[a]) {
+                    if (id[a] != id[b] && isValidDiagonal(a, b)) {
+                        int c = splitPolygon(a, b);
+
+                        a = filterPoints(a, next[a]);
+                        c = filterPoints(c, next[c]);
+
+                        earcut(a, 0);
+                        earcut(c, 0);
+                        return;
+                    }
+                    b = next[b];
+                }
+                a = next[a];
+            } while (a != start);
+        }
+
+        /**
+         * Link every hole into the outer ring, producing a single ring
+         * without holes.
+         */
+        int eliminateHoles(int outer) {
+            /* sort by x, insertion sort as there are only a few holes */
+            for (int i = 1; i < numHoles; i++) {
+                int h = holes[i];
+                int j = i - 1;
+                while (j >= 0 && x[holes[j]] > x[h]) {
+                    holes[j + 1] = holes[j];
+                    j--;
+                }
+                holes[j + 1] = h;
+            }
+
+            for (int i = 0; i < numHoles; i++)
+                outer = eliminateHole(holes[i], outer);
+
+            return outer;
+        }
+
+        int eliminateHole(int hole, int outer) {
+            int bridge = findHoleBridge(hole, outer);
+            if (bridge == NIL)
+                return outer;
+
+            int bridgeReverse = splitPolygon(bridge, hole);
+
+            /* filter collinear points around the cuts */
+            filterPoints(bridgeReverse, next[bridgeReverse]);
+            return filterPoints(bridge, next[bridge]);
+        }
+
+        /**
+         * David Eberly's algorithm for finding a bridge between hole and
+         * outer polygon.
+         */
+        int findHoleBridge(int hole, int outer) {
+            int p = outer;
+            double hx = x[hole];
+            double hy = y[hole];
+            double qx = Double.NEGATIVE_INFINITY;
+            int m = NIL;
+
+            /* find a segment intersected by a ray from the hole's leftmost
+             * point to the left; segment's endpoint with lesser x will be
+             * potential connection point */
+            do {
+                int n = next[p];
+                if (hy <= y[p] && hy >= y[n] && y[n] != y[p]) {
+                    double px = x[p] + (hy - y[p]) * (x[n] - x[p]) / (y[n] - y[p]);
+                    if (px <= hx && px > qx) {
+                        qx = px;
+                        m = x[p] < x[n] ? p : n;
+                        if (px == hx)
+                            return m; // hole touches outer segment
+                    }
+                }
+                p = n;
+            } while (p != outer);
+
+            if (m == NIL)
+                return NIL;
+
+            /* look for points inside the triangle of hole point, segment
+             * intersection and endpoint; if there are no points found, we
+             * have a valid connection; otherwise choose the point of the
+             * minimum angle with the ray as connection point */
+            int stop = m;
+            double mx = x[m];
+            double my = y[m];
+            double tanMin = Double.POSITIVE_INFINITY;
+
+            p = m;
+            do {
+                if (hx >= x[p] && x[p] >= mx && hx != x[p]
+                        && pointInTriangle(hy < my ? hx : qx, hy, mx, my,
+                        hy < my ? qx : hx, hy, x[p], y[p])) {
+
+                    double tan = Math.abs(hy - y[p]) / (hx - x[p]);
+
+                    if (locallyInside(p, hole)
+                            && (tan < tanMin || (tan == tanMin
+                            && (x[p] > x[m] || (x[p] == x[m] && sectorContainsSector(m, p)))))) {
+                        m = p;
+                        tanMin = tan;
+                    }
+                }
+                p = next[p];
+            } while (p != stop);
+
+            return m;
+        }
+
+        boolean sectorContainsSector(int m, int p) {
+            return area(prev[m], m, prev[p]) < 0 && area(next[p], m, next[m]) < 0;
+        }
+
+        /**
+         * Interlink polygon nodes in z-order.
+         */
+        void indexCurve(int start) {
+            int p = start;
+            do {
+                if (z[p] == 0)
+                    z[p] = zOrder(x[p], y[p]);
+                prevZ[p] = prev[p];
+                nextZ[p] = next[p];
+                p = next[p];
+            } while (p != start);
+
+            nextZ[prevZ[p]] = NIL;
+            prevZ[p] = NIL;
+
+            sortLinked(p);
+        }
+
+        /**
+         * Simon Tatham's linked list merge sort.
+         */
+        int sortLinked(int list) {
+            int inSize = 1;
+            int numMerges;
+            do {
+                int p = list;
+                int tail = NIL;
+                list = NIL;
+                numMerges = 0;
+
+                while (p != NIL) {
+                    numMerges++;
+                    int q = p;
+                    int pSize = 0;
+                    for (int i = 0; i < inSize; i++) {
+                        pSize++;
+                        q = nextZ[q];
+                        if (q == NIL)
+                            break;
+                    }
+                    int qSize = inSize;
+
+                    while (pSize > 0 || (qSize > 0 && q != NIL)) {
+                        int e;
+                        if (pSize != 0 && (qSize == 0 || q == NIL || z[p] <= z[q])) {
+                            e = p;
+                            p = nextZ[p];
+                            pSize--;
+                        } else {
+                            e = q;
+                            q = nextZ[q];
+                            qSize--;
+                        }
+
+                        if (tail != NIL)
+                            nextZ[tail] = e;
+                        else
+                            list = e;
+
+                        prevZ[e] = tail;
+                        tail = e;
+                    }
+                    p = q;
+                }
+                nextZ[tail] = NIL;
+                inSize *= 2;
+            } while (numMerges > 1);
+
+            return list;
+        }
+
+        /**
+         * z-order of a point given coords and inverse of the longer side
+         * of data bbox.
+         */
+        int zOrder(double px, double py) {
+            /* coords are transformed into non-negative 15-bit integer range */
+            int x = (int) ((px - minX) * invSize * 32767);
+            int y = (int) ((py - minY) * invSize * 32767);
+
+            x = (x | (x << 8)) & 0x00FF00FF;
+            x = (x | (x << 4)) & 0x0F0F0F0F;
+            x = (x | (x << 2)) & 0x33333333;
+            x = (x | (x << 1)) & 0x55555555;
+
+            y = (y | (y << 8)) & 0x00FF00FF;
+            y = (y | (y << 4)) & 0x0F0F0F0F;
+            y = (y | (y << 2)) & 0x33333333;
+            y = (y | (y << 1)) & 0x55555555;
+
+            return x | (y << 1);
+        }
+
+        /**
+         * @return the leftmost node of a ring.
+         */
+        int getLeftmost(int start) {
+            int p = start;
+            int leftmost = start;
+            do {
+                if (x[p] < x[leftmost] || (x[p] == x[leftmost] && y[p] < y[leftmost]))
+                    leftmost = p;
+                p = next[p];
+            } while (p != start);
+
+            return leftmost;
+        }
+
+        static boolean pointInTriangle(double ax, double ay, double bx, double by,
+                                       double cx, double cy, double px, double py) {
+            return (cx - px) * (ay - py) >= (ax - px) * (cy - py)
+                    && (ax - px) * (by - py) >= (bx - px) * (ay - py)
+                    && (bx - px) * (cy - py) >= (cx - px) * (by - py);
+        }
+
+        /**
+         * Check if a diagonal between two polygon nodes is valid (lies in
+         * polygon interior).
+         */
+        boolean isValidDiagonal(int a, int b) {
+            return id[next[a]] != id[b] && id[prev[a]] != id[b] && !intersectsPolygon(a, b)
+                    && (locallyInside(a, b) && locallyInside(b, a) && middleInside(a, b)
+                    && (area(prev[a], a, prev[b]) != 0 || area(a, prev[b], b) != 0)
+                    || equals(a, b) && area(prev[a], a, next[a]) > 0
+                    && area(prev[b], b, next[b]) > 0);
+        }
+
+        /**
+         * @return the signed area of a triangle, negative for
+         * counter-clockwise triangles in a y-up coordinate system.
+         */
+        double area(int p, int q, int r) {
+            return (y[q] - y[p]) * (x[r] - x[q]) - (x[q] - x[p]) * (y[r] - y[q]);
+        }
+
+        boolean equals(int p1, int p2) {
+            return x[p1] == x[p2] && y[p1] == y[p2];
+        }
+
+        /**
+         * Check if two segments intersect.
+         */
+        boolean intersects(int p1, int q1, int p2, int q2) {
+            int o1 = sign(area(p1, q1, p2));
+            int o2 = sign(area(p1, q1, q2));
+            int o3 = sign(area(p2, q2, p1));
+            int o4 = sign(area(p2, q2, q1));
+
+            if (o1 != o2 && o3 != o4)
+                return true; // general case
+
+            if (o1 == 0 && onSegment(p1, p2, q1))
+                return true; // p1, q1 and p2 are collinear and p2 lies on p1q1
+            if (o2 == 0 && onSegment(p1, q2, q1))
+                return true; // p1, q1 and q2 are collinear and q2 lies on p1q1
+            if (o3 == 0 && onSegment(p2, p1, q2))
+                return true; // p2, q2 and p1 are collinear and p1 lies on p2q2
+            return o4 == 0 && onSegment(p2, q1, q2); // p2, q2 and q1 are collinear and q1 lies on p2q2
+        }
+
+        /**
+         * For collinear points p, q, r, check if point q lies on segment pr.
+         */
+        boolean onSegment(int p, int q, int r) {
+            return x[q] <= Math.max(x[p], x[r]) && x[q] >= Math.min(x[p], x[r])
+                    && y[q] <= Math.max(y[p], y[r]) && y[q] >= Math.min(y[p], y[r]);
+        }
+
+        static int sign(double v) {
+            return v > 0 ? 1 : v < 0 ? -1 : 0;
+        }
+
+        /**
+         * Check if a polygon diagonal intersects any polygon segments.
+         */
+        boolean intersectsPolygon(int a, int b) {
+            int p = a;
+            do {
+                int n = next[p];
+                if (id[p] != id[a] && id[n] != id[a] && id[p] != id[b] && id[n] != id[b]
+                        && intersects(p, n, a, b))
+                    return true;
+                p = n;
+            } while (p != a);
+
+            return false;
+        }
+
+        /**
+         * Check if a polygon diagonal is locally inside the polygon.
+         */
+        boolean locallyInside(int a, int b) {
+            return area(prev[a], a, next[a]) < 0
+                    ? area(a, b, next[a]) >= 0 && area(a, prev[a], b) >= 0
+                    : area(a, b, prev[a]) < 0 || area(a, next[a], b) < 0;
+        }
+
+        /**
+         * Check if the middle point of a polygon diagonal is inside the polygon.
+         */
+        boolean middleInside(int a, int b) {
+            int p = a;
+            boolean inside = false;
+            double px = (x[a] + x[b]) / 2;
+            double py = (y[a] + y[b]) / 2;
+            do {
+                int n = next[p];
+                if (((y[p] > py) != (y[n] > py)) && y[n] != y[p]
+                        && (px < (x[n] - x[p]) * (py - y[p]) / (y[n] - y[p]) + x[p]))
+                    inside = !inside;
+                p = n;
+            } while (p != a);
+
+            return inside;
+        }
+
+        /**
+         * Link two polygon vertices with a bridge; if the vertices belong to
+         * the same ring, it splits polygon into two; if one belongs to the
+         * outer ring and another to a hole, it merges it into a single ring.
+         *
+         * @return the copy of b.
+         */
+        int splitPolygon(int a, int b) {
+            int a2 = newNode(id[a], x[a], y[a]);
+            int b2 = newNode(id[b], x[b], y[b]);
+            int an = next[a];
+            int bp = prev[b];
+
+            next[a] = b;
+            prev[b] = a;
+
+            next[a2] = an;
+            prev[an] = a2;
+
+            prev[a2] = b2;
+            next[b2] = a2;
+
+            prev[b2] = bp;
+            next[bp] = b2;
+
+            return b2;
+        }
+
+        /**
+         * Eliminate colinear or duplicate points.
+         */
+        int filterPoints(int start, int end) {
+            if (start == NIL)
+                return start;
+            if (end == NIL)
+                end = start;
+
+            int p = start;
+            boolean again;
+            do {
+                again = false;
+
+                if (!steiner[p] && (equals(p, next[p]) || area(prev[p], p, next[p]) == 0)) {
+                    removeNode(p);
+                    p = end = prev[p];
+                    if (p == next[p])
+                        break;
+                    again = true;
+                } else {
+                    p = next[p];
+                }
+            } while (again || p != end);
+
+            return end;
+        }
+
+        /**
+         * Create a node and link it with the previous one in a circular
+         * doubly linked list.
+         */
+        int insertNode(int vertex, double px, double py, int last) {
+            int p = newNode(vertex, px, py);
+
+            if (last == NIL) {
+                prev[p] = p;
+                next[p] = p;
+            } else {
+                next[p] = next[last];
+                prev[p] = last;
+                prev[next[last]] = p;
+                next[last] = p;
+            }
+            return p;
+        }
+
+        void removeNode(int p) {
+            prev[next[p]] = prev[p];
+            next[prev[p]] = next[p];
+
+            if (prevZ[p] != NIL)
+                nextZ[prevZ[p]] = nextZ[p];
+            if (nextZ[p] != NIL)
+                prevZ[nextZ[p]] = prevZ[p];
+        }
+
+        int newNode(int vertex, double px, double py) {
+            if (size == id.length)
+                grow();
+
+            int p = size++;
+            id[p] = vertex;
+            x[p] = px;
+            y[p] = py;
+            prev[p] = NIL;
+            next[p] = NIL;
+            z[p] = 0;
+            prevZ[p] = NIL;
+            nextZ[p] = NIL;
+            steiner[p] = false;
+            return p;
+        }
+
+        void grow() {
+            int capacity = id.length * 2;
+            id = Arrays.copyOf(id, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+            z = Arrays.copyOf(z, capacity);
+            prevZ = Arrays.copyOf(prevZ, capacity);
+            nextZ = Arrays.copyOf(nextZ, capacity);
+            steiner = Arrays.copyOf(steiner, capacity);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+import org.oscim.core.GeometryBuffer;
+import org.oscim.renderer.bucket.VertexData;
+
+/**
+ * A polygon tessellator used by {@link Tessellator}.
+ * <p/>
+ * Implementations must be thread-safe, they are called concurrently by the
+ * tile loaders.
+ */
+public interface ITessellator {
+
+    /**
+     * Tessellate polygons with holes into triangles, like {@link TessJNI}
+     * with the positive winding rule.
+     * <p/>
+     * The rings start at index position ipos, the points of the first ring
+     * start at the sum of the previous ring lengths in points. Rings with less
+     * than three points are skipped. A ring length of 0 starts the next
+     * polygon.
+     * <p/>
+     * The triangles are added as ids of the vertices of the tessellated rings,
+     * i.e. skipped rings are not counted. Triangles have the orientation of
+     * the outer ring.
+     *
+     * @param points   the {@link GeometryBuffer#points}
+     * @param index    the {@link GeometryBuffer#index}
+     * @param ipos     the position of the first ring in index
+     * @param numRings the number of rings
+     * @param outTris  the triangle vertex ids
+     * @return number of vertex ids added to outTris, 0 if tessellation failed
+     */
+    int tessellate(float[] points, int[] index, int ipos, int numRings, VertexData outTris);
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 Hannes Janetzek
+ * Copyright 2018-2019 Gustl22
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+import org.oscim.renderer.bucket.VertexData;
+import org.oscim.utils.math.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tessellator using the native libtess2 binding {@link TessJNI}.
+ */
+public class JniTessellator implements ITessellator {
+    static final Logger log = LoggerFactory.getLogger(JniTessellator.class);
+
+    private static Boolean sAvailable;
+
+    /**
+     * @return true if the native library is loaded.
+     */
+    public static synchronized boolean isAvailable() {
+        if (sAvailable == null) {
+            try {
+                new TessJNI(0).dispose();
+                sAvailable = Boolean.TRUE;
+            } catch (Throwable t) {
+                log.debug("TessJNI not available: {}", t.toString());
+                sAvailable = Boolean.FALSE;
+            }
+        }
+        return sAvailable;
+    }
+
+    @Override
+    public int tessellate(float[] points, int[] index, int ipos, int numRings, VertexData outTris) {
+        int numPoints = 0;
+        for (int i = ipos, end = ipos + numRings; i < end && index[i] >= 0; i++)
+            numPoints += index[i];
+
+        int buckets = FastMath.log2(MathUtils.nextPowerOfTwo(numPoints));
+        buckets -= 2;
+        //log.debug("tess use {}", buckets);
+
+        TessJNI tess = new TessJNI(buckets);
+
+        tess.addContour2D(index, points, ipos, numRings);
+        //log.debug("tess ipos:{} rings:{}", ipos, numRings);
+
+        if (!tess.tesselate()) {
+            tess.dispose();
+            return 0;
+        }
+
+        int nverts = tess.getVertexCount() * 2;
+        int nelems = tess.getElementCount() * 3;
+
+        //log.debug("tess elems:{} verts:{} points:{}", nelems, nverts, numPoints);
+
+        if (numPoints != nverts) {
+            log.debug("tess ----- skip poly: " + nverts + " " + numPoints);
+            tess.dispose();
+            return 0;
+        }
+
+        short[] ids = new short[nelems];
+        tess.getElementsWithInputVertexIds(ids, 0, 0, nelems);
+        tess.dispose();
+
+        for (int i = 0; i < nelems; i++) {
+            // FIXME why sometimes negative indices are produced?
+            if (ids[i] < 0)
+                return 0;
+        }
+        outTris.add(ids);
+
+        return nelems;
+    }
+}
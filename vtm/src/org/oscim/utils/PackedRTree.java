@@ -0,0 +1,471 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+import org.oscim.core.Box;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A static R-tree for mostly static data, packed into flat arrays.
+ * <p/>
+ * The tree is bulk loaded with Sort-Tile-Recursive: each level is sorted into
+ * vertical slices by x and within the slices by y, then groups of
+ * {@link #NODE_SIZE} consecutive entries form the nodes of the next level.
+ * <p/>
+ * Changes are collected and the tree is rebuilt on the next search or on
+ * {@link #build()}. The rebuild creates a new tree (copy-on-write), searches
+ * which are running concurrently keep using the previous one. Removing an item
+ * is O(n).
+ */
+public class PackedRTree<T> implements SpatialIndex<T> {
+
+    public static final int NODE_SIZE = 16;
+
+    /* the items and their boxes (xmin, ymin, xmax, ymax) */
+    private Object[] mItems;
+    private double[] mBoxes;
+    private int mSize;
+
+    private volatile Tree mTree;
+
+    public PackedRTree() {
+        this(16);
+    }
+
+    /**
+     * @param capacity the initial number of items.
+     */
+    public PackedRTree(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mItems = new Object[capacity];
+        mBoxes = new double[capacity * 4];
+    }
+
+    /**
+     * Insert all items with their boxes and build the tree.
+     */
+    public synchronized void load(List<Box> boxes, List<T> items) {
+        if (boxes.size() != items.size())
+            throw new IllegalArgumentException("boxes and items differ in size");
+
+        ensureCapacity(mSize + items.size());
+        for (int i = 0, n = items.size(); i < n; i++)
+            add(boxes.get(i), items.get(i));
+        build();
+    }
+
+    @Override
+    public synchronized void insert(Box box, T item) {
+        ensureCapacity(mSize + 1);
+        add(box, item);
+    }
+
+    private void add(Box box, T item) {
+        int b = mSize << 2;
+        mBoxes[b] = box.xmin;
+        mBoxes[b + 1] = box.ymin;
+        mBoxes[b + 2] = box.xmax;
+        mBoxes[b + 3] = box.ymax;
+        mItems[mSize++] = item;
+        mTree = null;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= mItems.length)
+            return;
+        size = Math.max(size, mItems.length * 3 / 2);
+        mItems = Arrays.copyOf(mItems, size);
+        mBoxes = Arrays.copyOf(mBoxes, size * 4);
+    }
+
+    @Override
+    public synchronized boolean remove(Box box, T item) {
+        for (int i = 0; i < mSize; i++) {
+            if (mItems[i] != item)
+                continue;
+
+            /* move the last item into its place */
+            int last = --mSize;
+            mItems[i] = mItems[last];
+            mItems[last] = null;
+            System.arraycopy(mBoxes, last << 2, mBoxes, i << 2, 4);
+            mTree = null;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Arrays.fill(mItems, 0, mSize, null);
+        mSize = 0;
+        mTree = null;
+    }
+
+    /**
+     * Build the tree now, otherwise it is built by the next search after
+     * changes.
+     */
+    public void build() {
+        getTree();
+    }
+
+    private Tree getTree() {
+        Tree tree = mTree;
+        if (tree != null)
+            return tree;
+
+        synchronized (this) {
+            if (mTree == null)
+                mTree = new Tree(mItems, mBoxes, mSize);
+            return mTree;
+        }
+    }
+
+    @Override
+    public List<T> search(Box bbox, List<T> results) {
+        if (results == null)
+            results = new ArrayList<T>(16);
+
+        getTree().search(bbox, null, results, null);
+        return results;
+    }
+
+    @Override
+    public boolean search(Box bbox, SearchCb<T> cb, Object context) {
+        return getTree().search(bbox, cb, null, context);
+    }
+
+    /**
+     * Find the k items whose boxes are nearest to a point, ordered by
+     * distance. Items containing the point have distance 0.
+     *
+     * @param maxDistance the maximum distance of the items
+     */
+    public List<T> searchNearest(double x, double y, int k, double maxDistance, List<T> results) {
+        if (results == null)
+            results = new ArrayList<T>(k);
+
+        getTree().searchNearest(x, y, k, maxDistance * maxDistance, results);
+        return results;
+    }
+
+    private static final class Tree {
+        final Object[] items;
+
+        /* boxes of the items in packed order followed by the nodes */
+        final double[] boxes;
+
+        /* for the nodes: position of the first child */
+        final int[] children;
+
+        /* end position of each level, the last level holds the root */
+        final int[] levels;
+
+        Tree(Object[] srcItems, double[] srcBoxes, int numItems) {
+            items = new Object[numItems];
+
+            int numNodes = numItems;
+            int numLevels = 1;
+            for (int n = numItems; n > 1; numLevels++) {
+                n = (n + NODE_SIZE - 1) / NODE_SIZE;
+                numNodes += n;
+            }
+
+            boxes = new double[numNodes * 4];
+            children = new int[numNodes];
+            levels = new int[numLevels];
+
+            int[] order = new int[numItems];
+            double[] keys = new double[numItems];
+            for (int i = 0; i < numItems; i++)
+                order[i] = i;
+
+            /* sort items */
+            sortTiles(srcBoxes, order, keys, numItems);
+            for (int i = 0; i < numItems; i++) {
+                int id = order[i];
+                items[i] = srcItems[id];
+                System.arraycopy(srcBoxes, id << 2, boxes, i << 2, 4);
+            }
+            levels[0] = numItems;
+
+            /* build levels */
+            int start = 0;
+            int end = numItems;
+            for (int level = 1; level < numLevels; level++) {
+                int pos = end;
+                for (int i = start; i < end; i += NODE_SIZE) {
+                    int b = pos << 2;
+                    double xmin = Double.POSITIVE_INFINITY;
+                    double ymin = Double.POSITIVE_INFINITY;
+                    double xmax = Double.NEGATIVE_INFINITY;
+                    double ymax = Double.NEGATIVE_INFINITY;
+                    for (int j = i, n = Math.min(i + NODE_SIZE, end); j < n; j++) {
+                        int c = j << 2;
+                        xmin = Math.min(xmin, boxes[c]);
+                        ymin = Math.min(ymin, boxes[c + 1]);
+                        xmax = Math.max(xmax, boxes[c + 2]);
+                        ymax = Math.max(ymax, boxes[c + 3]);
+                    }
+                    boxes[b] = xmin;
+                    boxes[b + 1] = ymin;
+                    boxes[b + 2] = xmax;
+                    boxes[b + 3] = ymax;
+                    children[pos++] = i;
+                }
+                start = end;
+                end = pos;
+                levels[level] = end;
+
+                /* sort nodes of the new level, they keep their children */
+                int n = end - start;
+                if (level < numLevels - 1 && n > NODE_SIZE)
+                    sortNodes(start, n, order, keys);
+            }
+        }
+
+        private void sortNodes(int start, int n, int[] order, double[] keys) {
+            for (int i = 0; i < n; i++)
+                order[i] = start + i;
+
+            sortTiles(boxes, order, keys, n);
+
+            double[] tmpBoxes = new double[n * 4];
+            int[] tmpChildren = new int[n];
+            for (int i = 0; i < n; i++) {
+                int id = order[i];
+                System.arraycopy(boxes, id << 2, tmpBoxes, i << 2, 4);
+                tmpChildren[i] = children[id];
+            }
+            System.arraycopy(tmpBoxes, 0, boxes, start << 2, n * 4);
+            System.arraycopy(tmpChildren, 0, children, start, n);
+        }
+
+        /**
+         * Sort-Tile-Recursive order of n boxes, given by their ids in order.
+         */
+        private static void sortTiles(double[] boxes, int[] order, double[] keys, int n) {
+            if (n <= NODE_SIZE)
+                return;
+
+            int numNodes = (n + NODE_SIZE - 1) / NODE_SIZE;
+            int numSlices = (int) Math.ceil(Math.sqrt(numNodes));
+            int sliceSize = numSlices * NODE_SIZE;
+
+            /* sort by center x, then each slice by center y */
+            for (int i = 0; i < n; i++) {
+                int b = order[i] << 2;
+                keys[i] = boxes[b] + boxes[b + 2];
+            }
+            sort(order, keys, 0, n - 1);
+
+            for (int s = 0; s < n; s += sliceSize) {
+                int e = Math.min(s + sliceSize, n);
+                for (int i = s; i < e; i++) {
+                    int b = order[i] << 2;
+                    keys[i] = boxes[b + 1] + boxes[b + 3];
+                }
+                sort(order, keys, s, e - 1);
+            }
+        }
+
+        /**
+         * Quicksort of ids by keys, from left to right inclusive.
+         */
+        private static void sort(int[] ids, double[] keys, int left, int right) {
+            while (right - left > 16) {
+                double pivot = keys[(left + right) >>> 1];
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (keys[i] < pivot)
+                        i++;
+                    while (keys[j] > pivot)
+                        j--;
+                    if (i <= j) {
+                        swap(ids, keys, i++, j--);
+                    }
+                }
+                /* recurse into the smaller part */
+                if (j - left < right - i) {
+                    sort(ids, keys, left, j);
+                    left = i;
+                } else {
+                    sort(ids, keys, i, right);
+                    right = j;
+                }
+            }
+            for (int i = left + 1; i <= right; i++) {
+                for (int j = i; j > left && keys[j - 1] > keys[j]; j--)
+                    swap(ids, keys, j, j - 1);
+            }
+        }
+
+        private static void swap(int[] ids, double[] keys, int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double k = keys[i];
+            keys[i] = keys[j];
+            keys[j] = k;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> boolean search(Box bbox, SearchCb<T> cb, List<T> results, Object context) {
+            if (items.length == 0)
+                return true;
+
+            int[] stack = new int[levels.length * NODE_SIZE * 2];
+            int sp = 0;
+            int root = levels[levels.length - 1] - 1;
+            if (!overlaps(root, bbox))
+                return true;
+
+            stack[sp++] = root;
+            stack[sp++] = levels.length - 1;
+
+            while (sp > 0) {
+                int level = stack[--sp];
+                int pos = stack[--sp];
+
+                if (level == 0) {
+                    T item = (T) items[pos];
+                    if (results != null)
+                        results.add(item);
+                    else if (!cb.call(item, context))
+                        return false;
+                    continue;
+                }
+
+                int first = children[pos];
+                int end = Math.min(first + NODE_SIZE, levels[level - 1]);
+                for (int i = end - 1; i >= first; i--) {
+                    if (!overlaps(i, bbox))
+                        continue;
+                    stack[sp++] = i;
+                    stack[sp++] = level - 1;
+                }
+            }
+            return true;
+        }
+
+        private boolean overlaps(int pos, Box bbox) {
+            int b = pos << 2;
+            return boxes[b] <= bbox.xmax && boxes[b + 2] >= bbox.xmin
+                    && boxes[b + 1] <= bbox.ymax && boxes[b + 3] >= bbox.ymin;
+        }
+
+        private double squareDistance(int pos, double x, double y) {
+            int b = pos << 2;
+            double dx = Math.max(Math.max(boxes[b] - x, 0), x - boxes[b + 2]);
+            double dy = Math.max(Math.max(boxes[b + 1] - y, 0), y - boxes[b + 3]);
+            return dx * dx + dy * dy;
+        }
+
+        /**
+         * Best-first search with a binary heap of nodes and items ordered by
+         * distance. An item popped from the heap is nearer than all remaining
+         * entries.
+         */
+        @SuppressWarnings("unchecked")
+        <T> void searchNearest(double x, double y, int k, double maxSqDist, List<T> results) {
+            if (items.length == 0 || k <= 0)
+                return;
+
+            double[] dist = new double[64];
+            int[] entries = new int[128];
+            int size = 0;
+
+            int pos = levels[levels.length - 1] - 1;
+            int level = levels.length - 1;
+            int found = 0;
+
+            if (squareDistance(pos, x, y) > maxSqDist)
+                return;
+
+            while (true) {
+                if (level == 0) {
+                    results.add((T) items[pos]);
+                    if (++found == k)
+                        return;
+                } else {
+                    int first = children[pos];
+                    int end = Math.min(first + NODE_SIZE, levels[level - 1]);
+                    for (int i = first; i < end; i++) {
+                        double d = squareDistance(i, x, y);
+                        if (d > maxSqDist)
+                            continue;
+
+                        if (size == dist.length) {
+                            dist = Arrays.copyOf(dist, size * 2);
+                            entries = Arrays.copyOf(entries, size * 4);
+                        }
+                        /* push, entries hold position and level */
+                        int c = size++;
+                        while (c > 0) {
+                            int parent = (c - 1) >> 1;
+                            if (dist[parent] <= d)
+                                break;
+                            dist[c] = dist[parent];
+                            entries[c * 2] = entries[parent * 2];
+                            entries[c * 2 + 1] = entries[parent * 2 + 1];
+                            c = parent;
+                        }
+                        dist[c] = d;
+                        entries[c * 2] = i;
+                        entries[c * 2 + 1] = level - 1;
+                    }
+                }
+
+                if (size == 0)
+                    return;
+
+                /* pop */
+                pos = entries[0];
+                level = entries[1];
+                size--;
+                double d = dist[size];
+                int e0 = entries[size * 2];
+                int e1 = entries[size * 2 + 1];
+                int c = 0;
+                while (true) {
+                    int child = c * 2 + 1;
+                    if (child >= size)
+                        break;
+                    if (child + 1 < size && dist[child + 1] < dist[child])
+                        child++;
+                    if (d <= dist[child])
+                        break;
+                    dist[c] = dist[child];
+                    entries[c * 2] = entries[child * 2];
+                    entries[c * 2 + 1] = entries[child * 2 + 1];
+                    c = child;
+                }
+                dist[c] = d;
+                entries[c * 2] = e0;
+                entries[c * 2 + 1] = e1;
+            }
+        }
+    }
+}
@@ -31,6 +31,12 @@ public final class Parameters {
      */
     public static boolean CUSTOM_TILE_SIZE = false;
 
+    /**
+     * Incremental label placement: when only the map position changed, keep
+     * placed labels and place only labels entering the view or of new tiles.
+     */
+    public static boolean INCREMENTAL_LABELS = false;
+
     /**
      * If true the <code>MapEventLayer2</code> will be used instead of default <code>MapEventLayer</code>.
      */
@@ -56,6 +62,24 @@ public final class Parameters {
      */
     public static boolean POT_TEXTURES = false;
 
+    /**
+     * Match theme rules via {@link org.oscim.theme.rule.RuleIndex} instead of testing each rule.
+     */
+    public static boolean THEME_RULE_INDEX = true;
+
+    /**
+     * Draw labels from a signed distance field glyph atlas instead of
+     * rasterizing each label, must be set before creating label layers.
+     * Needs Bitmap.getPixels(), falls back to bitmap text otherwise (e.g. GWT).
+     */
+    public static boolean SDF_TEXT = false;
+
+    /**
+     * Keep rasterized label strings in texture pages across label updates,
+     * so only new strings are drawn.
+     */
+    public static boolean TEXT_CACHE = false;
+
     /**
      * Texture atlas in themes.
      */
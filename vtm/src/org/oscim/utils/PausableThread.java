@@ -35,7 +35,7 @@ public abstract class PausableThread extends Thread {
     /**
      * Causes the current thread to wait until this thread is pausing.
      */
-    public final void awaitPausing() {
+    public void awaitPausing() {
         synchronized (this) {
 
             while (!isPausing()) {
@@ -66,7 +66,7 @@ public abstract class PausableThread extends Thread {
     /**
      * @return true if this thread is currently pausing, false otherwise.
      */
-    public final synchronized boolean isPausing() {
+    public synchronized boolean isPausing() {
         return mPausing;
     }
 
@@ -83,7 +83,7 @@ public abstract class PausableThread extends Thread {
     /**
      * The paused thread should continue with its work.
      */
-    public final synchronized void proceed() {
+    public synchronized void proceed() {
         if (mShouldPause) {
             mShouldPause = false;
             notify();
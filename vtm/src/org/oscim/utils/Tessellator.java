@@ -1,6 +1,6 @@
 /*
  * Copyright 2013 Hannes Janetzek
- * Copyright 2018 Gustl22
+ * Copyright 2018-2019 Gustl22
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -19,15 +19,38 @@ package org.oscim.utils;
 
 import org.oscim.core.GeometryBuffer;
 import org.oscim.renderer.bucket.VertexData;
-import org.oscim.utils.math.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-
 public class Tessellator {
     static final Logger log = LoggerFactory.getLogger(Tessellator.class);
 
+    private static volatile ITessellator sTessellator;
+
+    /**
+     * @return the tessellator, {@link JniTessellator} if the native library
+     * is available, {@link EarClipTessellator} otherwise.
+     */
+    public static ITessellator getTessellator() {
+        ITessellator tessellator = sTessellator;
+        if (tessellator == null) {
+            if (JniTessellator.isAvailable())
+                tessellator = new JniTessellator();
+            else
+                tessellator = new EarClipTessellator();
+            sTessellator = tessellator;
+        }
+        return tessellator;
+    }
+
+    /**
+     * Set the tessellator, e.g. {@link EarClipTessellator} on platforms
+     * without the native library.
+     */
+    public static void setTessellator(ITessellator tessellator) {
+        sTessellator = tessellator;
+    }
+
     /**
      * Special version for ExtrusionLayer to match indices with vertex positions.
      * Tessellates polygon in tris elements.
@@ -45,91 +68,89 @@ public class Tessellator {
     public static int tessellate(float[] points, int ppos, int numPoints, int[] index,
                                  int ipos, int numRings, int vertexOffset, VertexData outTris) {
 
-        int buckets = FastMath.log2(MathUtils.nextPowerOfTwo(numPoints));
-        buckets -= 2;
-        //log.debug("tess use {}", buckets);
-
-        TessJNI tess = new TessJNI(buckets);
-
-        tess.addContour2D(index, points, ipos, numRings);
-        //log.debug("tess ipos:{} rings:{}", ipos, numRings);
-
-        if (!tess.tesselate())
-            return 0;
-
-        int nverts = tess.getVertexCount() * 2;
-        int nelems = tess.getElementCount() * 3;
-
-        //log.debug("tess elems:{} verts:{} points:{}", nelems, nverts, numPoints);
-
-        if (numPoints != nverts) {
-            log.debug("tess ----- skip poly: " + nverts + " " + numPoints);
-            tess.dispose();
-            return 0;
-        }
-
-        int sumIndices = 0;
+        VertexData.Chunk chunk = outTris.obtainChunk();
+        int pos = chunk.used;
+        outTris.releaseChunk();
 
-        VertexData.Chunk vd = outTris.obtainChunk();
+        int sumIndices = getTessellator().tessellate(points, index, ipos, numRings, outTris);
 
-        for (int offset = 0; offset < nelems; ) {
-            int size = nelems - offset;
-
-            if (VertexData.SIZE == vd.used) {
-                vd = outTris.obtainChunk();
+        for (int i = 0; i < sumIndices; i++) {
+            if (pos == VertexData.SIZE) {
+                chunk = chunk.next;
+                pos = 0;
             }
+            int vertex = chunk.vertices[pos] * 2;
 
-            if (size > VertexData.SIZE - vd.used)
-                size = VertexData.SIZE - vd.used;
-
-            tess.getElementsWithInputVertexIds(vd.vertices, vd.used, offset, size);
-
-            int start = vd.used;
-            int end = start + size;
-            short[] indices = vd.vertices;
-
-            for (int i = start; i < end; i++) {
-                if (indices[i] < 0) {
-                    log.debug(">>>> eeek {} {} {}",
-                            start, end,
-                            Arrays.toString(Arrays.copyOfRange(indices, start, end)));
-                    break;
-                }
-                indices[i] *= 2;
-            }
             /* when a ring has an odd number of points one (or rather two)
              * additional vertices will be added. so the following rings
              * needs extra offset */
             int shift = 0;
-            for (int i = 0, m = numRings - 1; i < m; i++) {
-                shift += (index[ipos + i]);
+            for (int j = 0, m = numRings - 1; j < m; j++) {
+                shift += (index[ipos + j]);
 
                 /* even number of points? */
-                if (((index[ipos + i] >> 1) & 1) == 0)
+                if (((index[ipos + j] >> 1) & 1) == 0)
                     continue;
 
-                for (int j = start; j < end; j++)
-                    if (indices[j] >= shift)
-                        indices[j] += 2;
+                if (vertex >= shift)
+                    vertex += 2;
 
                 shift += 2;
             }
 
             /* shift by vertexOffset */
-            for (int i = start; i < end; i++)
-                indices[i] += vertexOffset;
+            chunk.vertices[pos++] = (short) (vertex + vertexOffset);
+        }
 
-            sumIndices += size;
+        return sumIndices;
+    }
+
+    /**
+     * Tessellates a {@link GeometryBuffer} to triangles and adds the points of
+     * the tessellated rings.
+     *
+     * @param geom         the input GeometryBuffer as POLY
+     * @param scale        the scale of the points
+     * @param outPoints    the points as {@link VertexData}
+     * @param outTris      the triangle indices as {@link VertexData}
+     * @param vertexOffset shift outTris index with offset
+     * @return number of indices of outTris (0 if tessellation failed)
+     */
+    public static int tessellate(GeometryBuffer geom, float scale,
+                                 VertexData outPoints, VertexData outTris, int vertexOffset) {
+        int[] index = geom.index;
+        float[] points = geom.points;
+        int numRings = 0;
+        for (int i = 0; i < index.length && index[i] >= 0; i++)
+            numRings++;
 
-            vd.used += size;
-            outTris.releaseChunk();
+        VertexData.Chunk chunk = outTris.obtainChunk();
+        int pos = chunk.used;
+        outTris.releaseChunk();
 
-            offset += size;
+        int numIndices = getTessellator().tessellate(points, index, 0, numRings, outTris);
+        if (numIndices == 0)
+            return 0;
+
+        /* shift by vertexOffset */
+        for (int i = 0; i < numIndices; i++) {
+            if (pos == VertexData.SIZE) {
+                chunk = chunk.next;
+                pos = 0;
+            }
+            chunk.vertices[pos] = (short) (chunk.vertices[pos] + vertexOffset);
+            pos++;
         }
 
-        tess.dispose();
+        /* add points of tessellated rings */
+        for (int i = 0, ppos = 0; i < numRings; ppos += index[i++]) {
+            if (index[i] < 6 || (index[i] & 1) != 0)
+                continue;
+            for (int j = ppos, end = ppos + index[i]; j < end; j += 2)
+                outPoints.add(points[j] * scale, points[j + 1] * scale);
+        }
 
-        return sumIndices;
+        return numIndices;
     }
 
     /**
@@ -142,45 +163,23 @@ public class Tessellator {
      */
     public static int tessellate(GeometryBuffer geom, GeometryBuffer outMesh) {
         int[] index = geom.index;
-        float[] points = geom.points;
-        int ipos = 0;
         int numRings = 0;
-        int numPoints = 0;
-        for (int i = 0; i < index.length && index[i] >= 0; i++) {
-            numPoints += index[i];
+        for (int i = 0; i < index.length && index[i] >= 0; i++)
             numRings++;
-        }
-
-        int buckets = FastMath.log2(MathUtils.nextPowerOfTwo(numPoints));
-        buckets -= 2;
-        //log.debug("tess use {}", buckets);
 
-        TessJNI tess = new TessJNI(buckets);
-
-        tess.addContour2D(index, points, ipos, numRings);
-
-        if (!tess.tesselate())
-            return 0;
-
-        int nverts = tess.getVertexCount() * 2;
-        int nelems = tess.getElementCount() * 3;
-
-        if (numPoints != nverts) {
-            log.debug("tess ----- skip poly: " + nverts + " " + numPoints);
-            tess.dispose();
+        VertexData tris = new VertexData();
+        int nelems = getTessellator().tessellate(geom.points, index, 0, numRings, tris);
+        if (nelems == 0) {
+            tris.dispose();
             return 0;
         }
 
-        outMesh.index = new int[nelems];
-
-        short[] ids = new short[nelems];
-        tess.getElementsWithInputVertexIds(ids, 0, 0, nelems);
-        tess.dispose();
+        short[] ids = tris.toArray();
+        tris.dispose();
 
-        for (int k = 0; k < ids.length; k++) {
-            if (ids[k] < 0) return 0; // FIXME why sometimes negative indices are produced?
+        outMesh.index = new int[nelems];
+        for (int k = 0; k < nelems; k++)
             outMesh.index[k] = ids[k];
-        }
 
         return nelems;
     }
@@ -292,6 +292,18 @@ public final class GeometryUtils {
      * @return the intersection point
      */
     public static float[] intersectionLines2D(float[] pA, float[] vA, float[] pB, float[] vB) {
+        return intersectionLines2D(pA, vA, pB, vB, new float[2]);
+    }
+
+    /**
+     * @param pA           position vector of A
+     * @param vA           direction vector of A
+     * @param pB           position vector of B
+     * @param vB           direction vector of B
+     * @param intersection the intersection point output
+     * @return the intersection point or null if the lines are parallel
+     */
+    public static float[] intersectionLines2D(float[] pA, float[] vA, float[] pB, float[] vB, float[] intersection) {
         // pA + ldA * vA == pB + ldB * vB;
 
         float det = vB[0] * vA[1] - vB[1] * vA[0];
@@ -301,7 +313,6 @@ public final class GeometryUtils {
         }
         float lambA = ((pB[1] - pA[1]) * vB[0] - (pB[0] - pA[0]) * vB[1]) / det;
 
-        float[] intersection = new float[2];
         intersection[0] = pA[0] + lambA * vA[0];
         intersection[1] = pA[1] + lambA * vA[1];
 
@@ -163,6 +163,18 @@ public class OBB2D {
         originY = Vec2.dot(vec, CORNER_0, AXIS_2);
     }
 
+    /**
+     * Move the box by dx, dy.
+     */
+    public void translate(float dx, float dy) {
+        for (int c = CORNER_X; c < 8; c += 2) {
+            vec[c] += dx;
+            vec[c + 1] += dy;
+        }
+        originX += dx * vec[AXIS_1] + dy * vec[AXIS_1 + 1];
+        originY += dx * vec[AXIS_2] + dy * vec[AXIS_2 + 1];
+    }
+
     //    public OBB2D(float cx, float cy, float w, float h, float angle) {
     //        float rcos = (float) Math.cos(angle);
     //        float rsin = (float) Math.sin(angle);
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 Gustl22
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils.geom;
+
+import java.util.Arrays;
+
+/**
+ * A growable polyline of projected coordinates, packed into a double array.
+ * <p/>
+ * The points are grouped into blocks of {@link #BLOCK_SIZE} segments. Each
+ * block keeps its bounding box, so blocks outside of the viewport can be
+ * skipped. When a block is complete the Douglas-Peucker tolerance of its
+ * points is computed: the simplified line for a squared tolerance t consists
+ * of the points with {@link #getTolerance(int)} > t, which is the same result
+ * as {@link SimplifyDP} within each block. The first and last point of a
+ * block and all points of the incomplete last block are always kept.
+ * <p/>
+ * Appending a point is O(1) amortized.
+ */
+public class ProjectedPath {
+
+    /**
+     * Number of segments per block.
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private double[] mPoints = new double[BLOCK_SIZE * 2];
+    private float[] mTolerances = new float[BLOCK_SIZE];
+    private double[] mBounds = new double[4];
+    private int mSize;
+
+    private int[] mStack = new int[32];
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return the number of points.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the packed x,y coordinates, valid up to 2 * {@link #size()}.
+     */
+    public double[] getPoints() {
+        return mPoints;
+    }
+
+    public double getX(int i) {
+        return mPoints[i << 1];
+    }
+
+    public double getY(int i) {
+        return mPoints[(i << 1) + 1];
+    }
+
+    /**
+     * @return the squared distance up to which point i is removed by
+     * simplification, Float.MAX_VALUE for points which are always kept.
+     */
+    public float getTolerance(int i) {
+        return mTolerances[i];
+    }
+
+    public void add(double x, double y) {
+        int i = mSize;
+        if ((i << 1) == mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, mPoints.length << 1);
+            mTolerances = Arrays.copyOf(mTolerances, mTolerances.length << 1);
+        }
+        mPoints[i << 1] = x;
+        mPoints[(i << 1) + 1] = y;
+        mTolerances[i] = Float.MAX_VALUE;
+        mSize++;
+
+        if (i % BLOCK_SIZE == 0) {
+            int b = (i / BLOCK_SIZE) << 2;
+            if (b == mBounds.length)
+                mBounds = Arrays.copyOf(mBounds, mBounds.length << 1);
+            mBounds[b] = mBounds[b + 2] = x;
+            mBounds[b + 1] = mBounds[b + 3] = y;
+        }
+        if (i == 0)
+            return;
+
+        /* extend the block containing the segment (i-1, i) */
+        int b = ((i - 1) / BLOCK_SIZE) << 2;
+        if (x < mBounds[b])
+            mBounds[b] = x;
+        else if (x > mBounds[b + 2])
+            mBounds[b + 2] = x;
+        if (y < mBounds[b + 1])
+            mBounds[b + 1] = y;
+        else if (y > mBounds[b + 3])
+            mBounds[b + 3] = y;
+
+        if (i % BLOCK_SIZE == 0)
+            simplify(i - BLOCK_SIZE, i);
+    }
+
+    /**
+     * @return the number of blocks containing at least one segment.
+     */
+    public int getBlockCount() {
+        if (mSize < 2)
+            return 0;
+        return (mSize - 2) / BLOCK_SIZE + 1;
+    }
+
+    /**
+     * @return the index of the first point of block b.
+     */
+    public int getBlockStart(int b) {
+        return b * BLOCK_SIZE;
+    }
+
+    /**
+     * @return the index of the last point of block b, which is also the first
+     * point of block b + 1.
+     */
+    public int getBlockEnd(int b) {
+        return Math.min((b + 1) * BLOCK_SIZE, mSize - 1);
+    }
+
+    /**
+     * @return true if the bounding box of block b intersects the given box.
+     */
+    public boolean intersects(int b, double minX, double minY, double maxX, double maxY) {
+        b <<= 2;
+        return mBounds[b] <= maxX && mBounds[b + 2] >= minX
+                && mBounds[b + 1] <= maxY && mBounds[b + 3] >= minY;
+    }
+
+    /**
+     * Compute the Douglas-Peucker tolerances of the points between first and
+     * last. A point is kept as long as the tolerance is below both its own
+     * distance and the tolerance of the point which split its parent segment.
+     */
+    private void simplify(int first, int last) {
+        double[] p = mPoints;
+        float[] tolerances = mTolerances;
+        int[] stack = mStack;
+        int sp = 0;
+        float parent = Float.MAX_VALUE;
+
+        while (true) {
+            int index = -1;
+            double maxSqDist = -1;
+            for (int i = first + 1; i < last; i++) {
+                double sqDist = squareSegmentDistance(p, i, first, last);
+                if (sqDist > maxSqDist) {
+                    index = i;
+                    maxSqDist = sqDist;
+                }
+            }
+
+            if (index >= 0) {
+                float tolerance = Math.min((float) maxSqDist, parent);
+                tolerances[index] = tolerance;
+
+                if (sp + 6 > stack.length)
+                    stack = mStack = Arrays.copyOf(stack, stack.length + 48);
+
+                stack[sp++] = first;
+                stack[sp++] = index;
+                stack[sp++] = Float.floatToIntBits(tolerance);
+
+                stack[sp++] = index;
+                stack[sp++] = last;
+                stack[sp++] = Float.floatToIntBits(tolerance);
+            }
+
+            if (sp == 0)
+                break;
+
+            parent = Float.intBitsToFloat(stack[--sp]);
+            last = stack[--sp];
+            first = stack[--sp];
+        }
+    }
+
+    /**
+     * Square distance from point a to the segment b,c.
+     */
+    static double squareSegmentDistance(double[] p, int a, int b, int c) {
+        a <<= 1;
+        b <<= 1;
+        c <<= 1;
+        double x = p[b];
+        double y = p[b + 1];
+
+        double dx = p[c] - x;
+        double dy = p[c + 1] - y;
+
+        if (dx != 0 || dy != 0) {
+            double t = ((p[a] - x) * dx + (p[a + 1] - y) * dy) / (dx * dx + dy * dy);
+
+            if (t > 1) {
+                x = p[c];
+                y = p[c + 1];
+            } else if (t > 0) {
+                x += dx * t;
+                y += dy * t;
+            }
+        }
+
+        dx = p[a] - x;
+        dy = p[a + 1] - y;
+
+        return dx * dx + dy * dy;
+    }
+}